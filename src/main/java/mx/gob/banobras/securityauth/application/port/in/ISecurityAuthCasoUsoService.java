@@ -1,29 +1,18 @@
 package mx.gob.banobras.securityauth.application.port.in;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import mx.gob.banobras.securityauth.infraestructure.config.dto.CacheResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.CipherResponseDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapBatchResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
 
 public interface ISecurityAuthCasoUsoService {
 
-	/**
-	 * Metodo para obtener validar el token y autenticación con LDAP.
-	 * 
-	 * @param securityAuthDTO - DTO que contien los datos para validar en LDAP y Tokenizer.
-	 * @return regresa el objeto con los datos de LDAP.
-	 * @throws Exception Excepción durante el proceso de generar el Token.
-	 */
-	public LdapResponseDTO authenticationTokenLdap(SecurityAuthDTO securityAuthDTO);
-	
-	/**
-	 * Metodo para obtener la autenticación con LDAP.
-	 * 
-	 * @param securityAuthDTO - DTO que contien los datos para validar en LDAP.
-	 * @return regresa el objeto con los datos de LDAP.
-	 * @throws Exception Excepción durante el proceso.
-	 */
-	public LdapResponseDTO authenticationLdap(SecurityAuthDTO securityAuthDTO);
-		
 	/**
 	 * Metodo para obtener encirptar una cedena.
 	 * 
@@ -45,12 +34,95 @@ public interface ISecurityAuthCasoUsoService {
 	
 	
 	/**
-	 * Metodo para obtener todos los datos el usuario en LDAP.
+	 * Metodo asincrono para validar el token y autenticar con LDAP, la consulta
+	 * a LDAP se realiza en el pool de hilos de LDAP.
+	 * 
+	 * @param securityAuthDTO - DTO que contien los datos para validar en LDAP y Tokenizer.
+	 * @return regresa el objeto con los datos de LDAP al terminar la consulta.
+	 */
+	public CompletableFuture<LdapResponseDTO> authenticationTokenLdapAsync(SecurityAuthDTO securityAuthDTO);
+	
+	/**
+	 * Metodo asincrono para obtener la autenticación con LDAP.
+	 * 
+	 * @param securityAuthDTO - DTO que contien los datos para validar en LDAP.
+	 * @return regresa el objeto con los datos de LDAP al terminar la consulta.
+	 */
+	public CompletableFuture<LdapResponseDTO> authenticationLdapAsync(SecurityAuthDTO securityAuthDTO);
+	
+	/**
+	 * Metodo asincrono para obtener todos los datos el usuario en LDAP.
 	 * 
 	 * @param securityAuthDTO - DTO que contien los datos para validar en LDAP y Tokenizer.
-	 * @return regresa el objeto con los datos de LDAP.
-	 * @throws Exception Excepción durante el proceso de generar el Token.
+	 * @return regresa el objeto con los datos de LDAP al terminar la consulta.
+	 */
+	public CompletableFuture<LdapResponseDTO> allDataUserLdapAsync(SecurityAuthDTO securityAuthDTO);
+	
+	/**
+	 * Metodo asincrono para obtener los datos de una lista de usuarios en LDAP.
+	 * 
+	 * @param securityAuthDTO - DTO que contien los datos para validar el token.
+	 * @param userNames       - Usuarios a buscar.
+	 * @return regresa un elemento por usuario con sus datos o el error.
+	 */
+	public CompletableFuture<LdapBatchResponseDTO> allDataUsersLdapAsync(SecurityAuthDTO securityAuthDTO,
+			List<String> userNames);
+	
+	/**
+	 * Metodo para validar el token antes de iniciar la exportacion de usuarios.
+	 * 
+	 * @param securityAuthDTO - DTO que contien los datos para validar el token.
+	 * @return regresa el estatus 200 si el token es valido, o el error.
+	 */
+	public LdapResponseDTO validaTokenExportacion(SecurityAuthDTO securityAuthDTO);
+
+	/**
+	 * Metodo para validar los atributos de la exportacion antes de iniciar la
+	 * respuesta, con las mismas reglas que la lista de atributos (fields) de
+	 * los datos del usuario.
+	 * 
+	 * @param atributos - Atributos separados por coma, nulo para los de omision.
+	 * @return regresa el estatus 200 si los atributos son validos, o 400.
+	 */
+	public LdapResponseDTO validaAtributosExportacion(String atributos);
+
+	/**
+	 * Metodo para reservar un lugar para la exportacion antes de iniciar la
+	 * respuesta, el lugar se libera con liberaExportacion al terminar.
+	 * 
+	 * @return regresa el estatus 200 si hay lugar, o 503 si se alcanzo el
+	 *         maximo de exportaciones simultaneas.
+	 */
+	public LdapResponseDTO reservaExportacion();
+
+	/**
+	 * Metodo para liberar el lugar de una exportacion terminada.
+	 */
+	public void liberaExportacion();
+	
+	/**
+	 * Metodo para escribir en formato NDJSON (un objeto JSON por linea) los
+	 * usuarios miembros de un grupo o de los grupos de un aplicativo.
+	 * 
+	 * @param grupo        - Nombre o DN del grupo.
+	 * @param app          - Aplicativo, se exportan los miembros de sus grupos.
+	 * @param atributos    - Atributos separados por coma, nulo para los de la configuracion.
+	 * @param tamanoPagina - Usuarios por pagina, nulo para el de la configuracion.
+	 * @param salida       - Flujo donde se escriben los usuarios.
+	 * @return regresa el numero de usuarios exportados.
+	 * @throws IOException Excepción al escribir la respuesta.
+	 */
+	public long exportaMiembros(String grupo, String app, String atributos, Integer tamanoPagina,
+			OutputStream salida) throws IOException;
+	
+	/**
+	 * Metodo para eliminar de la cache los datos de un usuario, antes se valida
+	 * el token.
+	 * 
+	 * @param securityAuthDTO - DTO que contien los datos para validar el token.
+	 * @param userName        - Usuario a eliminar de la cache.
+	 * @return regresa el numero de entradas eliminadas, o el error del token.
 	 */
-	public LdapResponseDTO allDataUserLdap(SecurityAuthDTO securityAuthDTO);
+	public CacheResponseDTO invalidaCacheUsuario(SecurityAuthDTO securityAuthDTO, String userName);
 	
 }
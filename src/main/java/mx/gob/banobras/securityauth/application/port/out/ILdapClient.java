@@ -3,6 +3,7 @@ package mx.gob.banobras.securityauth.application.port.out;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
@@ -38,4 +39,26 @@ public interface ILdapClient {
 	
 	public LdapVO allDataUserLdap (SecurityAuthDTO securityAuthDTO) throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException;
 	
+	/**
+	 * Metodo para buscar varios usuarios con una sola busqueda en LDAP.
+	 * 
+	 * @param userNames usuarios a buscar.
+	 * @param appName   aplicativo para filtrar los grupos.
+	 * @return List datos de los usuarios encontrados, los no encontrados no se
+	 *         incluyen.
+	 * @throws NamingException Excepción durante el proceso.
+	 */
+	public List<LdapVO> allDataUsersLdap(List<String> userNames, String appName) throws NamingException;
+	
+	/**
+	 * Metodo para eliminar de la cache los datos de un usuario, las
+	 * implementaciones sin cache no realizan ninguna accion.
+	 * 
+	 * @param userName usuario a eliminar de la cache.
+	 * @return int numero de entradas eliminadas.
+	 */
+	public default int invalidaCacheUsuario(String userName) {
+		return 0;
+	}
+	
 }
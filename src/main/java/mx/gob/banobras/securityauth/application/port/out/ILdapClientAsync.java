@@ -0,0 +1,56 @@
+package mx.gob.banobras.securityauth.application.port.out;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import mx.gob.banobras.securityauth.common.util.Deadline;
+
+import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapVO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+/**
+ * ILdapClientAsync.java:
+ * 
+ * Interface de puerto de salida asincrono, para buscar el usuario sin
+ * bloquear el hilo de la peticion.
+ * 
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+public interface ILdapClientAsync {
+
+	/**
+	 * Metodo para buscar el usuario.
+	 * 
+	 * @param securityAuthDTO componente que contiene el usuario a buscar.
+	 * @return CompletableFuture con la respuesta de LDAP, termina con excepción
+	 *         si falla la comunicacion o no hay hilos disponibles.
+	 */
+	public CompletableFuture<LdapResponseDTO> autenticationAsync(SecurityAuthDTO securityAuthDTO);
+
+	/**
+	 * Metodo para obtener todos los datos del usuario.
+	 * 
+	 * @param securityAuthDTO componente que contiene el usuario a buscar.
+	 * @return CompletableFuture con los datos del usuario, nulo si no existe.
+	 */
+	public CompletableFuture<LdapVO> allDataUserLdapAsync(SecurityAuthDTO securityAuthDTO);
+
+	/**
+	 * Metodo para buscar varios usuarios, la lista se divide en bloques que se
+	 * buscan en paralelo con una busqueda por bloque.
+	 * 
+	 * @param userNames usuarios a buscar.
+	 * @param appName   aplicativo para filtrar los grupos.
+	 * @param deadline  tiempo limite de la peticion, nulo sin limite.
+	 * @return CompletableFuture con los usuarios encontrados, la llave es el
+	 *         usuario en minusculas.
+	 */
+	public CompletableFuture<Map<String, LdapVO>> allDataUsersLdapAsync(List<String> userNames, String appName,
+			Deadline deadline);
+
+}
@@ -0,0 +1,53 @@
+package mx.gob.banobras.securityauth.application.port.out;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.naming.NamingException;
+
+/**
+ * ILdapExportClient.java:
+ * 
+ * Interface de puerto de salida, para recorrer los miembros de un grupo o de
+ * los grupos de un aplicativo con busqueda paginada.
+ * 
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+public interface ILdapExportClient {
+
+	/**
+	 * Metodo para recorrer los usuarios miembros de un grupo o de los grupos de
+	 * un aplicativo, cada usuario se entrega al consumidor en cuanto se lee.
+	 * 
+	 * @param grupo        nombre (CN) o DN del grupo, nulo si se busca por
+	 *                     aplicativo.
+	 * @param app          nombre del aplicativo contenido en el nombre de sus
+	 *                     grupos, nulo si se busca por grupo.
+	 * @param atributos    atributos del usuario a obtener.
+	 * @param tamanoPagina usuarios por pagina.
+	 * @param consumidor   recibe los atributos de cada usuario.
+	 * @return long numero de usuarios entregados.
+	 * @throws NamingException Excepción durante la busqueda.
+	 */
+	public long exportaMiembros(String grupo, String app, String[] atributos, int tamanoPagina,
+			Consumer<Map<String, Object>> consumidor) throws NamingException;
+
+	/**
+	 * Metodo para reservar un lugar para una exportacion, cada exportacion usa
+	 * una conexion dedicada a LDAP durante toda la respuesta. Se debe llamar
+	 * antes de iniciar la respuesta y liberar el lugar al terminar.
+	 * 
+	 * @return boolean verdadero si hay lugar, falso si se alcanzo el maximo de
+	 *         exportaciones simultaneas.
+	 */
+	public boolean reservaExportacion();
+
+	/**
+	 * Metodo para liberar el lugar de una exportacion terminada.
+	 */
+	public void liberaExportacion();
+
+}
@@ -27,4 +27,15 @@ public interface ITokenClient {
 	 */
 	public TokenizerResponseDTO validToken(SecurityAuthDTO securityAuthDTO) ;
 	
+	/**
+	 * Metodo para abrir la conexion con el tokenizer antes de recibir
+	 * peticiones (almacen de certificados, TLS y clases del cliente HTTP).
+	 * 
+	 * @param timeoutMs tiempo maximo de la conexion, en milisegundos.
+	 * @return verdadero si el tokenizer respondio.
+	 */
+	public default boolean precalienta(long timeoutMs) {
+		return true;
+	}
+	
 }
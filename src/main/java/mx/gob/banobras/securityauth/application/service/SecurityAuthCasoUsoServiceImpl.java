@@ -11,24 +11,59 @@ package mx.gob.banobras.securityauth.application.service;
  * @since JDK 17
  */
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.naming.ServiceUnavailableException;
+import javax.naming.TimeLimitExceededException;
+
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+
+import com.google.gson.Gson;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import mx.gob.banobras.securityauth.application.port.in.ISecurityAuthCasoUsoService;
 import mx.gob.banobras.securityauth.application.port.out.ILdapClient;
+import mx.gob.banobras.securityauth.application.port.out.ILdapClientAsync;
+import mx.gob.banobras.securityauth.application.port.out.ILdapExportClient;
 import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
 import mx.gob.banobras.securityauth.common.util.CipherAESCommon;
 import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.DeadlineExceededException;
 import mx.gob.banobras.securityauth.common.util.ErrorDetail;
+import mx.gob.banobras.securityauth.common.util.Especulacion;
 import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapVO;
 import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapVOMapperDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.LdapAttributeProfiles;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.CacheResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.CipherResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.DataDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
-import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapBatchItemDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapBatchResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
@@ -43,118 +78,83 @@ public class SecurityAuthCasoUsoServiceImpl implements ISecurityAuthCasoUsoServi
 	private final ITokenClient iTokenClient;
 	/** Variable para inejctar la clase ILdapOutPort, para conexión a LDAP */
 	private final ILdapClient iLdapClient;
+	/** Variable para inejctar la clase ILdapClientAsync, para consultas asincronas a LDAP */
+	private final ILdapClientAsync iLdapClientAsync;
+	/** Variable para inejctar la clase ILdapExportClient, para exportar usuarios de LDAP */
+	private final ILdapExportClient iLdapExportClient;
 	/** Injection variable para la clase CipherAESCommon */
 	private final CipherAESCommon cipherAESCommon;
+	/** Perfiles de atributos de los datos del usuario */
+	private final LdapAttributeProfiles ldapAttributeProfiles;
+	/** Consultas especulativas a LDAP descartadas por token invalido */
+	private final Counter ldapDescartadas;
+	/** Tiempo de la validacion del token sin consulta adelantada */
+	private final Timer tokenSecuencial;
+	/** Tiempo de la validacion del token con la consulta a LDAP adelantada */
+	private final Timer tokenEspeculativa;
+	/** Tiempo de la consulta a LDAP despues de validar el token */
+	private final Timer ldapSecuencial;
+	/** Tiempo de la consulta a LDAP adelantada */
+	private final Timer ldapEspeculativa;
+
+	/**
+	 * Con el valor uno la consulta a LDAP inicia junto con la validacion del
+	 * token, en el pool de LDAP, y se descarta si el token no es valido. Las
+	 * validaciones de password no se adelantan. Por omision esta desactivado,
+	 * con un token invalido se consulta el directorio.
+	 */
+	@Value("${app.ldap.speculative.enabled:0}")
+	boolean consultaEspeculativa;
 
 	/** Variable que contiene la url del ldap */
 	@Value("${app.ldap.server}")
 	String ldapServer;
 
+	/** Usuarios por pagina en la exportacion */
+	@Value("${app.ldap.export.page-size:500}")
+	int tamanoPaginaExportacion;
+
+	/** Maximo de usuarios por pagina en la exportacion */
+	@Value("${app.ldap.export.max-page-size:1000}")
+	int maxTamanoPaginaExportacion;
+
+	/** Atributos que se exportan si la peticion no los indica */
+	@Value("${app.ldap.export.attributes:sAMAccountName,cn,givenName,initials,mail,department,title,userAccountControl}")
+	String atributosExportacion;
+
+	/** Maximo de usuarios en la consulta por lista */
+	@Value("${app.ldap.batch.max-users:500}")
+	int maxUsuariosLista;
+
 	/**
 	 * Constructor para inyectar los objetos Tokenizer, ILdapOutPort y
 	 * CipherAESCommon
 	 * 
 	 * @param tokenizer       Objeto de dominio el Api Tokenizer.
 	 * @param iLdapOutPort    Interface de puerto de salida para conectarse al LDAP.
+	 * @param iLdapClientAsync Interface de puerto de salida asincrono de LDAP.
+	 * @param iLdapExportClient Interface de puerto de salida para exportar usuarios.
 	 * @param CipherAESCommon componente para desencriptar datos.
+	 * @param ldapAttributeProfiles perfiles de atributos de los datos del usuario.
+	 * @param meterRegistry registro de metricas.
 	 * 
 	 */
-	public SecurityAuthCasoUsoServiceImpl(ILdapClient iLdapClient, ITokenClient iTokenClient,
-			CipherAESCommon cipherAESCommon) {
+	public SecurityAuthCasoUsoServiceImpl(ILdapClient iLdapClient, ILdapClientAsync iLdapClientAsync,
+			ILdapExportClient iLdapExportClient, ITokenClient iTokenClient, CipherAESCommon cipherAESCommon,
+			LdapAttributeProfiles ldapAttributeProfiles, MeterRegistry meterRegistry) {
 		this.iLdapClient = iLdapClient;
+		this.iLdapClientAsync = iLdapClientAsync;
+		this.iLdapExportClient = iLdapExportClient;
 		this.iTokenClient = iTokenClient;
 		this.cipherAESCommon = cipherAESCommon;
-	}
-
-	/**
-	 * Metodo para validar el Token y autenticar el usuario.
-	 * 
-	 * @param securityAuthDTO Objeto que contien los datos para la validación y
-	 *                        autenticacion.
-	 * @return LdapResponseDTO objeto que contiene los datos del usuario en LDAP.
-	 * 
-	 */
-	@Override
-	public LdapResponseDTO authenticationTokenLdap(SecurityAuthDTO securityAuthDTO) {
-		/** Variable que contiene el objeto de respuesta */
-		LdapResponseDTO ldapResponseDTO = null;
-		TokenizerResponseDTO tokenizerResponseDTO = null;
-		ErrorMessageDTO errorMessageDTO = null;
-		try {
-			/** Descripta las credenciales */
-			securityAuthDTO = cipherAESCommon.getDataCredentials(securityAuthDTO);
-			log.info("Valida el token");
-			tokenizerResponseDTO = iTokenClient.validToken(securityAuthDTO);
-			if (tokenizerResponseDTO.getStatusCode() == 200) {
-				log.info("Token valido");
-				log.info(new StringBuilder().append("Valida si existe el usuario en LDAP: ")
-						.append(securityAuthDTO.getUserName()));
-				ldapResponseDTO = iLdapClient.autentication(securityAuthDTO);
-
-			} else {
-					log.info("Error al validar el token");
-					errorMessageDTO = new ErrorMessageDTO();
-					errorMessageDTO.setStatusCode(tokenizerResponseDTO.getErrorMessageDTO().getStatusCode());
-					errorMessageDTO.setTimestamp(tokenizerResponseDTO.getErrorMessageDTO().getTimestamp());
-					errorMessageDTO.setMessage(tokenizerResponseDTO.getErrorMessageDTO().getMessage());
-					errorMessageDTO.setDetail(tokenizerResponseDTO.getErrorMessageDTO().getDetail());
-					/** Respuesta del Servicio */
-					ldapResponseDTO = new LdapResponseDTO();
-					ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
-					ldapResponseDTO.setStatusCode(tokenizerResponseDTO.getStatusCode());
-			}
-
-		} catch (Exception ex1) {
-			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), ex1);
-			errorMessageDTO = new ErrorMessageDTO();
-			errorMessageDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
-			errorMessageDTO.setTimestamp(new Date());
-			errorMessageDTO.setMessage(ex1.getMessage());
-			errorMessageDTO.setDetail(ErrorDetail.getDetail(ex1));
-			/** Respuiesta del servicio **/
-			ldapResponseDTO = new LdapResponseDTO();
-			ldapResponseDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
-			ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
-		}
-		return ldapResponseDTO;
-	}
-
-	/**
-	 * Metodo para autentifica el usuario en LDAP
-	 * 
-	 * @param tokenizerDTO Objeto que contien los datos para generar el toekn.
-	 * @return TokenizerResponseDTO regresa el objeto TokenizerResponseDTO que
-	 *         contiene los datos del toekn.
-	 * 
-	 */
-	@Override
-	public LdapResponseDTO authenticationLdap(SecurityAuthDTO securityAuthDTO) {
-
-		/** Variable que contiene el objeto de respuesta de LDAP */
-		LdapResponseDTO ldapResponseDTO = null;
-		ErrorMessageDTO errorMessageDTO = null;
-		try {
-			/** Descripta las credenciales */
-			securityAuthDTO = cipherAESCommon.getDataCredentials(securityAuthDTO);
-
-			log.info(new StringBuilder().append("Valida si existe el usuario en LDAP: ")
-					.append(securityAuthDTO.getUserName()));
-			ldapResponseDTO = iLdapClient.autentication(securityAuthDTO);
-		
-		} catch (Exception ex1) {
-			ex1.printStackTrace();
-			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), ex1);
-			errorMessageDTO = new ErrorMessageDTO();
-			errorMessageDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
-			errorMessageDTO.setTimestamp(new Date());
-			errorMessageDTO.setMessage(ex1.getMessage());
-			errorMessageDTO.setDetail(ErrorDetail.getDetail(ex1));
-			/** Respuesta del servicio **/
-			ldapResponseDTO = new LdapResponseDTO();
-			ldapResponseDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
-			ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
-		}
-		return ldapResponseDTO;
+		this.ldapAttributeProfiles = ldapAttributeProfiles;
+		this.tokenSecuencial = etapa("token", false, meterRegistry);
+		this.tokenEspeculativa = etapa("token", true, meterRegistry);
+		this.ldapSecuencial = etapa("ldap", false, meterRegistry);
+		this.ldapEspeculativa = etapa("ldap", true, meterRegistry);
+		this.ldapDescartadas = Counter.builder("auth.speculative.ldap.discarded")
+				.description("Consultas a LDAP adelantadas que se descartaron por token invalido")
+				.register(meterRegistry);
 	}
 
 	/**
@@ -227,66 +227,499 @@ public class SecurityAuthCasoUsoServiceImpl implements ISecurityAuthCasoUsoServi
 		log.info("Termina decode service");
 		return cipherResponseDTO;
 	}
-	
-	
-	
 
+	/**
+	 * Metodo asincrono para validar el Token y autenticar el usuario, el token
+	 * se valida en el hilo de la peticion y la consulta a LDAP en el pool de
+	 * hilos de LDAP. En modo especulativo la consulta a LDAP inicia antes de
+	 * validar el token y se descarta si el token no es valido.
+	 * 
+	 * @param securityAuthDTO Objeto que contien los datos para la validación y
+	 *                        autenticacion.
+	 * @return CompletableFuture con los datos del usuario en LDAP.
+	 */
 	@Override
-	public LdapResponseDTO allDataUserLdap(SecurityAuthDTO securityAuthDTO) {
-		/** Variable que contiene el objeto de respuesta de LDAP */
-		LdapResponseDTO ldapResponseDTO = null;
-		LdapVO ldapVO = null;
-		TokenizerResponseDTO tokenizerResponseDTO = null;
-		ErrorMessageDTO errorMessageDTO = null;
+	public CompletableFuture<LdapResponseDTO> authenticationTokenLdapAsync(SecurityAuthDTO securityAuthDTO) {
+		CompletableFuture<LdapResponseDTO> consultaLdap = null;
+		Especulacion especulacion = null;
 		try {
-			log.info("Busca los datos del usuario en LDAP");
+			/** Descripta las credenciales */
+			SecurityAuthDTO datos = cipherAESCommon.getDataCredentials(securityAuthDTO);
+			boolean especulativa = isEspeculativa(datos);
+			if (especulativa) {
+				log.info(new StringBuilder().append("Valida el token y el usuario en LDAP: ")
+						.append(datos.getUserName()));
+				especulacion = new Especulacion();
+				datos.setEspeculacion(especulacion);
+				consultaLdap = mideLdap(iLdapClientAsync.autenticationAsync(datos), especulativa);
+			}
+			log.info("Valida el token");
+			TokenizerResponseDTO tokenizerResponseDTO = validaToken(datos, especulativa);
+			if (tokenizerResponseDTO.getStatusCode() != 200) {
+				log.info("Error al validar el token");
+				descarta(especulacion);
+				return CompletableFuture.completedFuture(respuestaToken(tokenizerResponseDTO));
+			}
+			log.info("Token valido");
+			autoriza(especulacion);
+			if (consultaLdap == null) {
+				log.info(new StringBuilder().append("Valida si existe el usuario en LDAP: ")
+						.append(datos.getUserName()));
+				consultaLdap = mideLdap(iLdapClientAsync.autenticationAsync(datos), especulativa);
+			}
+			return consultaLdap.exceptionally(this::respuestaError);
+		} catch (Exception ex1) {
+			descarta(especulacion);
+			return CompletableFuture.completedFuture(respuestaError(ex1));
+		}
+	}
 
+	/**
+	 * Metodo asincrono para autenticar el usuario en LDAP.
+	 * 
+	 * @param securityAuthDTO Objeto que contien los datos para la autenticacion.
+	 * @return CompletableFuture con los datos del usuario en LDAP.
+	 */
+	@Override
+	public CompletableFuture<LdapResponseDTO> authenticationLdapAsync(SecurityAuthDTO securityAuthDTO) {
+		try {
 			/** Descripta las credenciales */
 			securityAuthDTO = cipherAESCommon.getDataCredentials(securityAuthDTO);
+			log.info(new StringBuilder().append("Valida si existe el usuario en LDAP: ")
+					.append(securityAuthDTO.getUserName()));
+			return iLdapClientAsync.autenticationAsync(securityAuthDTO).exceptionally(this::respuestaError);
+		} catch (Exception ex1) {
+			return CompletableFuture.completedFuture(respuestaError(ex1));
+		}
+	}
 
+	/**
+	 * Metodo asincrono para obtener todos los datos del usuario en LDAP.
+	 * 
+	 * @param securityAuthDTO Objeto que contien los datos para la validación.
+	 * @return CompletableFuture con los datos del usuario en LDAP, nulo si el
+	 *         usuario no existe.
+	 */
+	@Override
+	public CompletableFuture<LdapResponseDTO> allDataUserLdapAsync(SecurityAuthDTO securityAuthDTO) {
+		CompletableFuture<LdapVO> consultaLdap = null;
+		Especulacion especulacion = null;
+		try {
+			log.info("Busca los datos del usuario en LDAP");
+			if (!ldapAttributeProfiles.esValida(securityAuthDTO)) {
+				LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+				ldapResponseDTO.setStatusCode(HttpStatus.BAD_REQUEST.value());
+				ldapResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(HttpStatus.BAD_REQUEST.value(), new Date(),
+						ConstantsSecurityAuth.MSG_ATTRIBUTE_PROFILE_INVALID.getName()));
+				return CompletableFuture.completedFuture(ldapResponseDTO);
+			}
+			/** Descripta las credenciales */
+			SecurityAuthDTO datos = cipherAESCommon.getDataCredentials(securityAuthDTO);
+			boolean especulativa = isEspeculativa(datos);
+			if (especulativa) {
+				log.info(new StringBuilder().append("Valida el token y obtiene los datos en LDAP: ")
+						.append(datos.getUserName()));
+				especulacion = new Especulacion();
+				datos.setEspeculacion(especulacion);
+				consultaLdap = mideLdap(iLdapClientAsync.allDataUserLdapAsync(datos), especulativa);
+			}
 			log.info("Valida el token");
-			tokenizerResponseDTO = iTokenClient.validToken(securityAuthDTO);
-
-			if (tokenizerResponseDTO.getStatusCode() == 200) {
-				log.info(new StringBuilder().append("Obtiene los datos en LDAP: ")
-						.append(securityAuthDTO.getUserName()));
-				ldapVO = iLdapClient.allDataUserLdap(securityAuthDTO);
-
-				if (ldapVO != null) {
-					LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
-					LdapDTO ldapDTO = mapperLdapDTO.mapperVOtoDTO(ldapVO);
-					ldapResponseDTO = new LdapResponseDTO();
-					ldapResponseDTO.setStatusCode(HttpStatus.OK.value());
-					ldapResponseDTO.setLdapDTO(ldapDTO);
+			TokenizerResponseDTO tokenizerResponseDTO = validaToken(datos, especulativa);
+			if (tokenizerResponseDTO.getStatusCode() != 200) {
+				log.info("Error al validar el Token");
+				descarta(especulacion);
+				return CompletableFuture.completedFuture(respuestaToken(tokenizerResponseDTO));
+			}
+			autoriza(especulacion);
+			if (consultaLdap == null) {
+				log.info(new StringBuilder().append("Obtiene los datos en LDAP: ").append(datos.getUserName()));
+				consultaLdap = mideLdap(iLdapClientAsync.allDataUserLdapAsync(datos), especulativa);
+			}
+			return consultaLdap.thenApply(ldapVO -> {
+				if (ldapVO == null) {
+					return null;
+				}
+				LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+				ldapResponseDTO.setStatusCode(HttpStatus.OK.value());
+				ldapResponseDTO.setLdapDTO(new LdapVOMapperDTO().mapperVOtoDTO(ldapVO));
+				return ldapResponseDTO;
+			}).exceptionally(this::respuestaError);
+		} catch (Exception ex1) {
+			descarta(especulacion);
+			return CompletableFuture.completedFuture(respuestaError(ex1));
+		}
+	}
+
+	/**
+	 * Metodo asincrono para obtener los datos de una lista de usuarios en LDAP,
+	 * los usuarios repetidos se buscan una sola vez.
+	 * 
+	 * @param securityAuthDTO Objeto que contien los datos para validar el token.
+	 * @param userNames       usuarios a buscar.
+	 * @return CompletableFuture con un elemento por usuario, con sus datos o el
+	 *         error.
+	 */
+	@Override
+	public CompletableFuture<LdapBatchResponseDTO> allDataUsersLdapAsync(SecurityAuthDTO securityAuthDTO,
+			List<String> userNames) {
+		LdapBatchResponseDTO ldapBatchResponseDTO = new LdapBatchResponseDTO();
+		try {
+			/** Usuarios sin repetir, en el orden de la peticion */
+			Map<String, String> usuarios = new LinkedHashMap<>();
+			if (userNames != null) {
+				for (String userName : userNames) {
+					if (userName != null && !userName.isBlank()) {
+						usuarios.putIfAbsent(userName.trim().toLowerCase(Locale.ROOT), userName.trim());
+					}
 				}
-			} else {
+			}
+			if (usuarios.isEmpty() || usuarios.size() > maxUsuariosLista) {
+				ldapBatchResponseDTO.setStatusCode(HttpStatus.BAD_REQUEST.value());
+				ldapBatchResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(HttpStatus.BAD_REQUEST.value(),
+						new Date(), ConstantsSecurityAuth.MSG_BATCH_SIZE_INVALID.getName()));
+				return CompletableFuture.completedFuture(ldapBatchResponseDTO);
+			}
+
+			/** Descripta las credenciales */
+			securityAuthDTO = cipherAESCommon.getDataCredentials(securityAuthDTO);
+			log.info("Valida el token");
+			TokenizerResponseDTO tokenizerResponseDTO = iTokenClient.validToken(securityAuthDTO);
+			if (tokenizerResponseDTO.getStatusCode() != 200) {
 				log.info("Error al validar el Token");
-				errorMessageDTO = new ErrorMessageDTO();
-				errorMessageDTO.setStatusCode(tokenizerResponseDTO.getErrorMessageDTO().getStatusCode());
-				errorMessageDTO.setTimestamp(tokenizerResponseDTO.getErrorMessageDTO().getTimestamp());
-				errorMessageDTO.setMessage(tokenizerResponseDTO.getErrorMessageDTO().getMessage());
-				errorMessageDTO.setDetail(tokenizerResponseDTO.getErrorMessageDTO().getDetail());
-				/** Respuesta del Servicio */
-				ldapResponseDTO = new LdapResponseDTO();
-				ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
-				ldapResponseDTO.setStatusCode(tokenizerResponseDTO.getStatusCode());
+				LdapResponseDTO ldapResponseDTO = respuestaToken(tokenizerResponseDTO);
+				ldapBatchResponseDTO.setStatusCode(ldapResponseDTO.getStatusCode());
+				ldapBatchResponseDTO.setErrorMessageDTO(ldapResponseDTO.getErrorMessageDTO());
+				return CompletableFuture.completedFuture(ldapBatchResponseDTO);
 			}
-		} 
-		catch (Exception ex1) {
-			ex1.printStackTrace();
-			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), ex1);
-			errorMessageDTO = new ErrorMessageDTO();
+
+			log.info(new StringBuilder().append("Obtiene los datos en LDAP de ").append(usuarios.size())
+					.append(" usuarios"));
+			return iLdapClientAsync.allDataUsersLdapAsync(new ArrayList<>(usuarios.values()),
+					securityAuthDTO.getAppName(), securityAuthDTO.getDeadline()).thenApply(encontrados -> {
+						LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
+						List<LdapBatchItemDTO> items = new ArrayList<>(usuarios.size());
+						for (Map.Entry<String, String> usuario : usuarios.entrySet()) {
+							LdapVO ldapVO = encontrados.get(usuario.getKey());
+							if (ldapVO != null) {
+								items.add(new LdapBatchItemDTO(usuario.getValue(), HttpStatus.OK.value(),
+										mapperLdapDTO.mapperVOtoDTO(ldapVO), null));
+							} else {
+								items.add(new LdapBatchItemDTO(usuario.getValue(), HttpStatus.FORBIDDEN.value(), null,
+										new ErrorMessageDTO(1, new Date(),
+												ConstantsSecurityAuth.MSG_USER_NOT_FOUND.getName())));
+							}
+						}
+						return new LdapBatchResponseDTO(HttpStatus.OK.value(), items, null);
+					}).exceptionally(ex -> {
+						LdapResponseDTO ldapResponseDTO = respuestaError(ex);
+						return new LdapBatchResponseDTO(ldapResponseDTO.getStatusCode(), null,
+								ldapResponseDTO.getErrorMessageDTO());
+					});
+		} catch (Exception ex1) {
+			LdapResponseDTO ldapResponseDTO = respuestaError(ex1);
+			ldapBatchResponseDTO.setStatusCode(ldapResponseDTO.getStatusCode());
+			ldapBatchResponseDTO.setErrorMessageDTO(ldapResponseDTO.getErrorMessageDTO());
+			return CompletableFuture.completedFuture(ldapBatchResponseDTO);
+		}
+	}
+
+	/**
+	 * Metodo para validar el token antes de iniciar la exportacion de usuarios.
+	 * 
+	 * @param securityAuthDTO Objeto que contien los datos para validar el token.
+	 * @return LdapResponseDTO con estatus 200 si el token es valido, o el error.
+	 */
+	@Override
+	public LdapResponseDTO validaTokenExportacion(SecurityAuthDTO securityAuthDTO) {
+		try {
+			/** Descripta las credenciales */
+			securityAuthDTO = cipherAESCommon.getDataCredentials(securityAuthDTO);
+			log.info("Valida el token");
+			TokenizerResponseDTO tokenizerResponseDTO = iTokenClient.validToken(securityAuthDTO);
+			if (tokenizerResponseDTO.getStatusCode() != 200) {
+				log.info("Error al validar el Token");
+				return respuestaToken(tokenizerResponseDTO);
+			}
+			LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+			ldapResponseDTO.setStatusCode(HttpStatus.OK.value());
+			return ldapResponseDTO;
+		} catch (Exception ex1) {
+			return respuestaError(ex1);
+		}
+	}
+
+	/**
+	 * Metodo para validar los atributos de la exportacion antes de iniciar la
+	 * respuesta.
+	 * 
+	 * @param atributos atributos separados por coma, nulo para los de omision.
+	 * @return LdapResponseDTO con estatus 200 si los atributos son validos, o
+	 *         400.
+	 */
+	@Override
+	public LdapResponseDTO validaAtributosExportacion(String atributos) {
+		LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+		try {
+			atributosExportacion(atributos);
+			ldapResponseDTO.setStatusCode(HttpStatus.OK.value());
+		} catch (IllegalArgumentException ex) {
+			ldapResponseDTO.setStatusCode(HttpStatus.BAD_REQUEST.value());
+			ldapResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(HttpStatus.BAD_REQUEST.value(), new Date(),
+					ConstantsSecurityAuth.MSG_ATTRIBUTE_PROFILE_INVALID.getName()));
+		}
+		return ldapResponseDTO;
+	}
+
+	/**
+	 * Metodo para reservar un lugar para la exportacion antes de iniciar la
+	 * respuesta.
+	 * 
+	 * @return LdapResponseDTO con estatus 200 si hay lugar, o 503.
+	 */
+	@Override
+	public LdapResponseDTO reservaExportacion() {
+		LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+		if (iLdapExportClient.reservaExportacion()) {
+			ldapResponseDTO.setStatusCode(HttpStatus.OK.value());
+		} else {
+			ldapResponseDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+			ldapResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(HttpStatus.SERVICE_UNAVAILABLE.value(),
+					new Date(), ConstantsSecurityAuth.MSG_EXPORT_BUSY.getName()));
+		}
+		return ldapResponseDTO;
+	}
+
+	/**
+	 * Metodo para liberar el lugar de una exportacion terminada.
+	 */
+	@Override
+	public void liberaExportacion() {
+		iLdapExportClient.liberaExportacion();
+	}
+
+	/**
+	 * Metodo para escribir en formato NDJSON los usuarios miembros de un grupo o
+	 * de los grupos de un aplicativo, cada usuario se escribe en cuanto se lee de
+	 * LDAP. Si la busqueda falla despues de iniciar la respuesta se escribe una
+	 * ultima linea con el error.
+	 * 
+	 * @param grupo        nombre o DN del grupo.
+	 * @param app          aplicativo.
+	 * @param atributos    atributos separados por coma.
+	 * @param tamanoPagina usuarios por pagina.
+	 * @param salida       flujo de la respuesta.
+	 * @return long numero de usuarios exportados.
+	 * @throws IOException Excepción al escribir la respuesta.
+	 */
+	@Override
+	public long exportaMiembros(String grupo, String app, String atributos, Integer tamanoPagina,
+			OutputStream salida) throws IOException {
+		Gson gson = new Gson();
+		String[] listaAtributos = atributosExportacion(atributos);
+		int pagina = tamanoPagina == null || tamanoPagina <= 0 ? tamanoPaginaExportacion
+				: Math.min(tamanoPagina, maxTamanoPaginaExportacion);
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+		long total = 0;
+		try {
+			log.info(new StringBuilder().append("Inicia exportacion de usuarios, grupo: ").append(grupo)
+					.append(", aplicativo: ").append(app));
+			total = iLdapExportClient.exportaMiembros(grupo, app, listaAtributos, pagina, usuario -> {
+				try {
+					writer.write(gson.toJson(usuario));
+					writer.write('\n');
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		} catch (UncheckedIOException ex) {
+			/** El cliente cerro la conexion */
+			throw ex.getCause();
+		} catch (Exception ex) {
+			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), ex);
+			writer.write(gson.toJson(Map.of("error", String.valueOf(ex.getMessage()))));
+			writer.write('\n');
+		} finally {
+			writer.flush();
+		}
+		return total;
+	}
+
+	/**
+	 * Metodo para obtener los atributos de la exportacion, los de omision o los
+	 * del consumidor validados por LdapAttributeProfiles.
+	 * 
+	 * @param atributos atributos separados por coma, nulo para los de omision.
+	 * @return String[] atributos a consultar.
+	 * @throws IllegalArgumentException si algun atributo no es valido o se
+	 *                                  excede el maximo.
+	 */
+	private String[] atributosExportacion(String atributos) {
+		if (atributos == null || atributos.isBlank()) {
+			return Arrays.stream(atributosExportacion.split(ConstantsSecurityAuth.COMMA.getName())).map(String::trim)
+					.filter(atributo -> !atributo.isEmpty()).distinct().toArray(String[]::new);
+		}
+		return ldapAttributeProfiles.campos(atributos).toArray(new String[0]);
+	}
+
+	/**
+	 * Metodo para saber si la consulta a LDAP se adelanta a la validacion del
+	 * token. Las validaciones de password no se adelantan, un bind con un token
+	 * invalido incrementaria badPwdCount y podria bloquear la cuenta.
+	 * 
+	 * @param securityAuthDTO datos de la peticion.
+	 * @return boolean verdadero si la consulta a LDAP inicia con el token.
+	 */
+	private boolean isEspeculativa(SecurityAuthDTO securityAuthDTO) {
+		return consultaEspeculativa && !securityAuthDTO.isValidUserPwd();
+	}
+
+	/**
+	 * Metodo para validar el token y registrar el tiempo de la etapa.
+	 * 
+	 * @param securityAuthDTO datos de la peticion.
+	 * @param especulativa    verdadero si LDAP se consulta al mismo tiempo.
+	 * @return TokenizerResponseDTO respuesta del tokenizer.
+	 */
+	private TokenizerResponseDTO validaToken(SecurityAuthDTO securityAuthDTO, boolean especulativa) {
+		long inicio = System.nanoTime();
+		try {
+			return iTokenClient.validToken(securityAuthDTO);
+		} finally {
+			(especulativa ? tokenEspeculativa : tokenSecuencial).record(System.nanoTime() - inicio,
+					TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Metodo para registrar el tiempo de la consulta a LDAP, desde que inicia
+	 * hasta que termina en el pool de LDAP.
+	 * 
+	 * @param consulta     consulta a LDAP en curso.
+	 * @param especulativa verdadero si inicio junto con la validacion del token.
+	 * @return CompletableFuture la misma consulta.
+	 */
+	private <T> CompletableFuture<T> mideLdap(CompletableFuture<T> consulta, boolean especulativa) {
+		long inicio = System.nanoTime();
+		Timer timer = especulativa ? ldapEspeculativa : ldapSecuencial;
+		consulta.whenComplete((resultado, ex) -> timer.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS));
+		return consulta;
+	}
+
+	/**
+	 * Metodo para descartar la consulta a LDAP adelantada cuando el token no es
+	 * valido. Si la consulta aun espera en el pool de LDAP ya no se ejecuta; si
+	 * ya se ejecuta termina con el tiempo limite de la peticion, su resultado
+	 * se ignora y no se guarda en cache.
+	 * 
+	 * @param especulacion estado de la consulta, nulo si no se adelanto.
+	 */
+	private void descarta(Especulacion especulacion) {
+		if (especulacion != null && especulacion.rechaza()) {
+			log.info("Se descarta la consulta a LDAP");
+			ldapDescartadas.increment();
+		}
+	}
+
+	/**
+	 * Metodo para aceptar la consulta a LDAP adelantada, su resultado se puede
+	 * guardar en cache.
+	 * 
+	 * @param especulacion estado de la consulta, nulo si no se adelanto.
+	 */
+	private static void autoriza(Especulacion especulacion) {
+		if (especulacion != null) {
+			especulacion.autoriza();
+		}
+	}
+
+	/**
+	 * @return Timer de la etapa de la peticion, token o ldap.
+	 */
+	private static Timer etapa(String etapa, boolean especulativa, MeterRegistry meterRegistry) {
+		return Timer.builder("auth.stage.duration").description("Tiempo de cada etapa de la autenticacion")
+				.tag("stage", etapa).tag("mode", especulativa ? "speculative" : "sequential")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Metodo para crear la respuesta cuando el token no es valido.
+	 * 
+	 * @param tokenizerResponseDTO respuesta del Api Tokenizer.
+	 * @return LdapResponseDTO respuesta con el error del token.
+	 */
+	private LdapResponseDTO respuestaToken(TokenizerResponseDTO tokenizerResponseDTO) {
+		ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
+		errorMessageDTO.setStatusCode(tokenizerResponseDTO.getErrorMessageDTO().getStatusCode());
+		errorMessageDTO.setTimestamp(tokenizerResponseDTO.getErrorMessageDTO().getTimestamp());
+		errorMessageDTO.setMessage(tokenizerResponseDTO.getErrorMessageDTO().getMessage());
+		errorMessageDTO.setDetail(tokenizerResponseDTO.getErrorMessageDTO().getDetail());
+		/** Respuesta del Servicio */
+		LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+		ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
+		ldapResponseDTO.setStatusCode(tokenizerResponseDTO.getStatusCode());
+		return ldapResponseDTO;
+	}
+
+	/**
+	 * Metodo para crear la respuesta de error de una consulta, si el pool de
+	 * hilos de LDAP esta lleno responde servicio no disponible y si se agota el
+	 * tiempo limite de la peticion responde 504.
+	 * 
+	 * @param ex excepción de la consulta.
+	 * @return LdapResponseDTO respuesta con el error.
+	 */
+	private LdapResponseDTO respuestaError(Throwable ex) {
+		Throwable causa = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+		ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
+		errorMessageDTO.setTimestamp(new Date());
+		LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+		if (causa instanceof RejectedExecutionException) {
+			log.error(new StringBuilder().append("Pool de hilos de LDAP lleno: ").append(causa.getMessage()));
+			errorMessageDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+			errorMessageDTO.setMessage(ConstantsSecurityAuth.MSG_NO_SERVICE_LDAP.getName());
+			ldapResponseDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+		} else if (causa instanceof ServiceUnavailableException) {
+			/** Circuit breaker abierto, bulkhead lleno o sin conexiones en el pool */
+			log.error(new StringBuilder().append("LDAP no disponible: ").append(causa.getMessage()));
+			errorMessageDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+			errorMessageDTO.setMessage(ConstantsSecurityAuth.MSG_NO_SERVICE_LDAP.getName());
+			ldapResponseDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+		} else if (causa instanceof DeadlineExceededException || causa instanceof TimeoutException
+				|| causa instanceof TimeLimitExceededException) {
+			log.error(new StringBuilder().append("Tiempo limite agotado: ").append(causa.getMessage()));
+			errorMessageDTO.setStatusCode(HttpStatus.GATEWAY_TIMEOUT.value());
+			errorMessageDTO.setMessage(ConstantsSecurityAuth.MSG_DEADLINE_EXCEEDED.getName());
+			ldapResponseDTO.setStatusCode(HttpStatus.GATEWAY_TIMEOUT.value());
+		} else {
+			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), causa);
 			errorMessageDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
-			errorMessageDTO.setTimestamp(new Date());
-			errorMessageDTO.setMessage(ex1.getMessage());
-			errorMessageDTO.setDetail(ErrorDetail.getDetail(ex1));
-			/** Respuesta del servicio **/
-			ldapResponseDTO = new LdapResponseDTO();
+			errorMessageDTO.setMessage(causa.getMessage());
+			errorMessageDTO.setDetail(ErrorDetail.getDetail(causa));
 			ldapResponseDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
-			ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
 		}
+		ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
 		return ldapResponseDTO;
+	}
 
+	/**
+	 * Metodo para eliminar de la cache los datos de un usuario, solo si el
+	 * token es valido.
+	 * 
+	 * @param securityAuthDTO Objeto que contien los datos para validar el token.
+	 * @param userName        Usuario a eliminar de la cache.
+	 * @return CacheResponseDTO regresa el numero de entradas eliminadas, o el
+	 *         error del token.
+	 */
+	@Override
+	public CacheResponseDTO invalidaCacheUsuario(SecurityAuthDTO securityAuthDTO, String userName) {
+		LdapResponseDTO tokenResponseDTO = validaTokenExportacion(securityAuthDTO);
+		if (tokenResponseDTO.getStatusCode() != HttpStatus.OK.value()) {
+			return new CacheResponseDTO(tokenResponseDTO.getStatusCode(), userName, 0,
+					tokenResponseDTO.getErrorMessageDTO());
+		}
+		log.info(new StringBuilder().append("Elimina de cache el usuario: ").append(userName));
+		return new CacheResponseDTO(HttpStatus.OK.value(), userName, iLdapClient.invalidaCacheUsuario(userName),
+				null);
 	}
 
 }
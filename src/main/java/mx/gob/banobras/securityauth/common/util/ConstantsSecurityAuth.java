@@ -33,6 +33,26 @@ public enum ConstantsSecurityAuth {
 	MSG_USER_BLOCKED_FAILED_ATTEMPTS("Usuario bloqueado por 3 intentos fallidos."),
 	/** Constante para el mensaje de el pássword es incorrectos */
 	MSG_PASSWORD_INCORRECT("El password es incorrecto."),
+	/** Constante para el mensaje de lista de usuarios vacia o mayor al maximo */
+	MSG_BATCH_SIZE_INVALID("La lista de usuarios esta vacía o excede el máximo permitido."),
+	/** Constante para el mensaje de exportacion sin grupo ni aplicativo */
+	MSG_EXPORT_FILTER_EMPTY("Se debe indicar el grupo o el aplicativo a exportar."),
+	/** Constante para el mensaje de perfil o lista de atributos no valida */
+	MSG_ATTRIBUTE_PROFILE_INVALID("El perfil o la lista de atributos solicitada no es válida."),
+	/** Constante para el mensaje de tiempo limite agotado */
+	MSG_DEADLINE_EXCEEDED("Se agotó el tiempo de espera de la petición."),
+	/** Constante para el mensaje de token invalido o expirado */
+	MSG_TOKEN_INVALID("El token no es válido o ha expirado."),
+	/** Constante para el mensaje de maximo de exportaciones simultaneas */
+	MSG_EXPORT_BUSY("Se alcanzó el máximo de exportaciones simultáneas, intente más tarde."),
+	/** Constante de la propiedad JNDI del tiempo para conectar a LDAP */
+	LDAP_CONNECT_TIMEOUT("com.sun.jndi.ldap.connect.timeout"),
+	/** Constante de la propiedad JNDI del tiempo de espera de respuesta de LDAP */
+	LDAP_READ_TIMEOUT("com.sun.jndi.ldap.read.timeout"),
+	/** Constante de la propiedad JNDI de la fabrica de sockets de LDAP */
+	LDAP_SOCKET_FACTORY("java.naming.ldap.factory.socket"),
+	/** Constante del encabezado con el tiempo limite de la peticion */
+	REQUEST_TIMEOUT("request-timeout"),
 	/** COnstante para validar el localhost IPV4 */
 	LOCALHOST_IPV4 ("127.0.0.1"),
 	/** COnstante para validar el localhost IPV6 */
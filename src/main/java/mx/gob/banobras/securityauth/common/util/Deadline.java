@@ -0,0 +1,80 @@
+package mx.gob.banobras.securityauth.common.util;
+
+/**
+ * Deadline.java:
+ *
+ * Clase con el tiempo limite de una peticion. Se crea al recibir la peticion
+ * y viaja con los datos de la operacion hasta los clientes de LDAP y del
+ * tokenizer, que toman sus tiempos de espera del tiempo restante.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+public final class Deadline {
+
+	/** Momento en que vence la peticion, en nanosegundos de System.nanoTime */
+	private final long venceNanos;
+
+	private Deadline(long venceNanos) {
+		this.venceNanos = venceNanos;
+	}
+
+	/**
+	 * Metodo para crear el tiempo limite a partir de este momento.
+	 *
+	 * @param timeoutMs tiempo de la peticion, en milisegundos.
+	 * @return Deadline tiempo limite.
+	 */
+	public static Deadline of(long timeoutMs) {
+		return new Deadline(System.nanoTime() + timeoutMs * 1_000_000L);
+	}
+
+	/**
+	 * @return milisegundos restantes, cero si ya vencio.
+	 */
+	public long restanteMs() {
+		return Math.max(0, (venceNanos - System.nanoTime()) / 1_000_000L);
+	}
+
+	/**
+	 * @return verdadero si ya no queda tiempo.
+	 */
+	public boolean isVencido() {
+		return restanteMs() <= 0;
+	}
+
+	/**
+	 * Metodo para obtener el tiempo restante limitado a un maximo, como
+	 * entero para los tiempos de espera de JNDI y HTTP.
+	 *
+	 * @param deadline tiempo limite, nulo si la peticion no lo tiene.
+	 * @param maximoMs tiempo que se usa sin tiempo limite, en milisegundos.
+	 * @return int milisegundos restantes.
+	 * @throws DeadlineExceededException si ya no queda tiempo.
+	 */
+	public static int restanteMs(Deadline deadline, long maximoMs) {
+		if (deadline == null) {
+			return (int) Math.min(Integer.MAX_VALUE, maximoMs);
+		}
+		long restante = deadline.restanteMs();
+		if (restante <= 0) {
+			throw new DeadlineExceededException();
+		}
+		return (int) Math.min(restante, Math.min(Integer.MAX_VALUE, maximoMs));
+	}
+
+	/**
+	 * Metodo para validar que la peticion aun tenga tiempo.
+	 *
+	 * @param deadline tiempo limite, nulo si la peticion no lo tiene.
+	 * @throws DeadlineExceededException si ya no queda tiempo.
+	 */
+	public static void verifica(Deadline deadline) {
+		if (deadline != null && deadline.isVencido()) {
+			throw new DeadlineExceededException();
+		}
+	}
+
+}
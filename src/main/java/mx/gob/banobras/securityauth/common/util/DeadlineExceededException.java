@@ -0,0 +1,25 @@
+package mx.gob.banobras.securityauth.common.util;
+
+/**
+ * DeadlineExceededException.java:
+ *
+ * Excepcion que indica que se agoto el tiempo limite de la peticion.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DeadlineExceededException() {
+		super(ConstantsSecurityAuth.MSG_DEADLINE_EXCEEDED.getName());
+	}
+
+	public DeadlineExceededException(Throwable causa) {
+		super(ConstantsSecurityAuth.MSG_DEADLINE_EXCEEDED.getName(), causa);
+	}
+
+}
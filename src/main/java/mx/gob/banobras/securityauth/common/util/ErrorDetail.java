@@ -25,7 +25,7 @@ public class ErrorDetail {
 	 * @param exception 
 	 * @return String con el detalle del error.
 	 */
-	public static String getDetail(Exception exception) {
+	public static String getDetail(Throwable exception) {
 		StringBuilder exceptionDetail = new StringBuilder();
 		exceptionDetail.append(exception.getLocalizedMessage());
 		/** contador para el numero de mensajes a regresar **/
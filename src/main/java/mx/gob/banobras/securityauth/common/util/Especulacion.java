@@ -0,0 +1,93 @@
+package mx.gob.banobras.securityauth.common.util;
+
+/**
+ * Especulacion.java:
+ *
+ * Clase con el estado de una consulta a LDAP que inicia antes de validar el
+ * token. Viaja con los datos de la operacion hasta los clientes de LDAP: la
+ * consulta que aun espera en el pool no se ejecuta si el token se rechaza, y
+ * las escrituras en cache se difieren hasta que el token se acepta, una
+ * consulta descartada nunca llena la cache.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+public final class Especulacion {
+
+	/** Resultado de la validacion del token, verdadero si se acepto */
+	private final CompletableFuture<Boolean> token = new CompletableFuture<>();
+
+	/**
+	 * Metodo para indicar que el token se acepto, se ejecutan las acciones
+	 * pendientes.
+	 */
+	public void autoriza() {
+		token.complete(Boolean.TRUE);
+	}
+
+	/**
+	 * Metodo para indicar que el token se rechazo, las acciones pendientes se
+	 * descartan.
+	 *
+	 * @return verdadero si la consulta se descarto, falso si el token ya se
+	 *         habia aceptado o rechazado.
+	 */
+	public boolean rechaza() {
+		return token.complete(Boolean.FALSE);
+	}
+
+	/**
+	 * @return verdadero si el token ya se rechazo.
+	 */
+	public boolean isRechazada() {
+		return Boolean.FALSE.equals(token.getNow(null));
+	}
+
+	/**
+	 * Metodo para ejecutar una accion solo si el token se acepta, de inmediato
+	 * si ya se acepto.
+	 *
+	 * @param accion accion a ejecutar, como guardar en cache.
+	 */
+	public void alAutorizar(Runnable accion) {
+		token.thenAccept(aceptado -> {
+			if (aceptado) {
+				accion.run();
+			}
+		});
+	}
+
+	/**
+	 * Metodo para ejecutar la accion de inmediato en una consulta normal o
+	 * diferirla en una consulta especulativa.
+	 *
+	 * @param especulacion estado de la consulta, nulo si no es especulativa.
+	 * @param accion       accion a ejecutar.
+	 */
+	public static void alAutorizar(Especulacion especulacion, Runnable accion) {
+		if (especulacion == null) {
+			accion.run();
+		} else {
+			especulacion.alAutorizar(accion);
+		}
+	}
+
+	/**
+	 * Metodo para no iniciar una consulta cuyo token ya se rechazo.
+	 *
+	 * @param especulacion estado de la consulta, nulo si no es especulativa.
+	 * @throws CancellationException si el token ya se rechazo.
+	 */
+	public static void verifica(Especulacion especulacion) {
+		if (especulacion != null && especulacion.isRechazada()) {
+			throw new CancellationException("Consulta especulativa descartada");
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package mx.gob.banobras.securityauth.common.util;
+
+/**
+ * LdapFilterUtil.java:
+ *
+ * Clase con utilerias para armar filtros de busqueda de LDAP (RFC 4515).
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+public final class LdapFilterUtil {
+
+	private LdapFilterUtil() {
+	}
+
+	/**
+	 * Metodo para escapar un valor que se incluye en un filtro de LDAP.
+	 *
+	 * @param valor valor a escapar.
+	 * @return String valor con los caracteres especiales escapados.
+	 */
+	public static String escapaValor(String valor) {
+		if (valor == null) {
+			return "";
+		}
+		StringBuilder sb = null;
+		for (int i = 0; i < valor.length(); i++) {
+			char c = valor.charAt(i);
+			String reemplazo = switch (c) {
+			case '\\' -> "\\5c";
+			case '*' -> "\\2a";
+			case '(' -> "\\28";
+			case ')' -> "\\29";
+			case '\0' -> "\\00";
+			default -> null;
+			};
+			if (reemplazo != null && sb == null) {
+				sb = new StringBuilder(valor.length() + 8).append(valor, 0, i);
+			}
+			if (sb != null) {
+				if (reemplazo != null) {
+					sb.append(reemplazo);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb == null ? valor : sb.toString();
+	}
+
+}
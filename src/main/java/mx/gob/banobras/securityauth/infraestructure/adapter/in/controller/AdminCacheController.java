@@ -0,0 +1,93 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.in.controller;
+
+/**
+ * AdminCacheController.java:
+ * 
+ * Clase controller que expone los servicios de administracion de la cache de usuarios.
+ * 
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see Documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.Date;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import mx.gob.banobras.securityauth.application.port.in.ISecurityAuthCasoUsoService;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.ErrorDetail;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.CacheResponseDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+@RestController
+public class AdminCacheController implements IAdminCacheController {
+
+	/** Trazas de la aplicación */
+	Logger log = LogManager.getLogger(AdminCacheController.class);
+
+	/** Injection variable para la interfaz iSecurityAuthInputPort */
+	private final ISecurityAuthCasoUsoService iSecurityAuthInputPort;
+
+	/** Consturctor de las interfaces que usa el controller */
+	public AdminCacheController(ISecurityAuthCasoUsoService iSecurityAuthInputPort) {
+		this.iSecurityAuthInputPort = iSecurityAuthInputPort;
+	}
+
+	/**
+	 * Metodo para eliminar de la cache los datos de un usuario.
+	 * 
+	 * @param userName       - Usuario a eliminar.
+	 * @param credentials    - Credenciales encriptadas.
+	 * @param token-auth     - Token de autenticacion.
+	 * @param app-name       - Nombre del sistema que consume el servicio.
+	 * @param consumer-id    - Capa del sistema que consume el servicio.
+	 * @param functional-id  - Funcionalidad que consume el servicio.
+	 * @param transaction-id - Identificador de la transaccion.
+	 * 
+	 * @return CacheResponseDTO objeto con el numero de entradas eliminadas.
+	 * 
+	 */
+	@Override
+	public ResponseEntity<CacheResponseDTO> invalidaCacheUsuario(@PathVariable("userName") String userName,
+			@RequestHeader(value = "credentials") String credentials,
+			@RequestHeader(value = "token-auth") String tokenAuth,
+			@RequestHeader(value = "app-name") String appName,
+			@RequestHeader(value = "consumer-id") String consumerId,
+			@RequestHeader(value = "functional-id") String functionalId,
+			@RequestHeader(value = "transaction-id") String transactionId) {
+		CacheResponseDTO cacheResponseDTO = null;
+		ErrorMessageDTO errorMessageDTO = null;
+		try {
+			ThreadContext.put(ConstantsSecurityAuth.TRANSACTION_ID.getName(), transactionId);
+			log.info("Inicia eliminar usuario de cache");
+			SecurityAuthDTO securityAuthDTO = new SecurityAuthDTO(credentials, null, null, tokenAuth, appName,
+					consumerId, functionalId, transactionId, false);
+			cacheResponseDTO = iSecurityAuthInputPort.invalidaCacheUsuario(securityAuthDTO, userName);
+		} catch (Exception e) {
+			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), e);
+			errorMessageDTO = new ErrorMessageDTO();
+			errorMessageDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
+			errorMessageDTO.setTimestamp(new Date());
+			errorMessageDTO.setMessage(ConstantsSecurityAuth.MSG_ERROR_500.getName());
+			errorMessageDTO.setDetail(ErrorDetail.getDetail(e));
+			/** Respuesta del servicio */
+			cacheResponseDTO = new CacheResponseDTO();
+			cacheResponseDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
+			cacheResponseDTO.setUserName(userName);
+			cacheResponseDTO.setErrorMessageDTO(errorMessageDTO);
+		} finally {
+			ThreadContext.clearStack();
+			log.info("Finaliza eliminar usuario de cache");
+		}
+		return new ResponseEntity<>(cacheResponseDTO, HttpStatus.valueOf(cacheResponseDTO.getStatusCode()));
+	}
+
+}
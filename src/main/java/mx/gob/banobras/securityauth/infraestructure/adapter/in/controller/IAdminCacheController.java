@@ -0,0 +1,64 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.in.controller;
+
+/**
+ * IAdminCacheController.java:
+ * 
+ * Interface para exponer los servicios de administracion de la cache de usuarios.
+ * 
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see Documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.CacheResponseDTO;
+
+@Tag(name = "Administraci&oacute;n de cache.", description = "Servicio para administrar la cache de usuarios de LDAP.")
+@RequestMapping("/security-auth/v1/admin/cache")
+public interface IAdminCacheController {
+
+	/**
+	 * Metodo para eliminar de la cache los datos de un usuario.
+	 * 
+	 * @param userName       - Usuario a eliminar.
+	 * @param credentials    - Credenciales encriptadas.
+	 * @param token-auth     - Token de autenticacion.
+	 * @param app-name       - Nombre del sistema que consume el servicio.
+	 * @param consumer-id    - Capa del sistema que consume el servicio.
+	 * @param functional-id  - Funcionalidad que consume el servicio.
+	 * @param transaction-id - Identificador de la transaccion.
+	 * 
+	 * @return CacheResponseDTO objeto con el numero de entradas eliminadas.
+	 * 
+	 */
+	@Operation(summary = "Servicio para eliminar un usuario de la cache.", description = "Servicio para eliminar un usuario de la cache, la siguiente consulta se realiza en el Directorio Activo.")
+	@Parameter(name = "userName", required = true, description = "Usuario a eliminar de la cache.", example = "elenao")
+	@Parameter(name = "credentials", required = true, description = "Credenciales encriptadas, usuario y password.", example = "0FFA7868B0A8CE36ED6C98230E7AC933")
+	@Parameter(name = "token-auth", required = true, description = "Token de autenticaci&oacute;n", example = "Bearer eyJ0eXAiOiJKV1Qi...")
+	@Parameter(name = "app-name", required = true, description = "Nombre del sistema que consume el servicio.", example = "SICOVI")
+	@Parameter(name = "consumer-id", required = true, description = "Capa del sistema que consuem el servicio.", example = "UI SICOVI")
+	@Parameter(name = "functional-id", required = true, description = "Funcionalidad que consume el servicio.", example = "Administra cache")
+	@Parameter(name = "transaction-id", required = true, description = "Identificador &uacute;nico para identificar la operación, funcionalidad o transacci&oacute;n, generado por c&oacute;digo UUID", example = "9680e51f-4766-4124-a3ff-02e9c3a5f9d6")
+	@ApiResponse(responseCode = "200", description = "Usuario eliminado de la cache.")
+	@ApiResponse(responseCode = "400", description = "Solicitud err&oacute;nea.")
+	@ApiResponse(responseCode = "401", description = "Token no v&aacute;lido.")
+	@ApiResponse(responseCode = "500", description = "Error interno.")
+	@DeleteMapping("/ldap-user/{userName}")
+	public ResponseEntity<CacheResponseDTO> invalidaCacheUsuario(@PathVariable("userName") String userName,
+			@RequestHeader(value = "credentials") String credentials,
+			@RequestHeader(value = "token-auth") String tokenAuth,
+			@RequestHeader(value = "app-name") String appName,
+			@RequestHeader(value = "consumer-id") String consumerId,
+			@RequestHeader(value = "functional-id") String functionalId,
+			@RequestHeader(value = "transaction-id") String transactionId);
+
+}
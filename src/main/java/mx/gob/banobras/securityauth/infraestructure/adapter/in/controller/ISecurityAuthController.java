@@ -10,17 +10,24 @@ package mx.gob.banobras.securityauth.infraestructure.adapter.in.controller;
  * @since JDK 17
  */
 
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapBatchRequestDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapBatchResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
 
 @Tag(name = "Autenticación de usuarios en Directorio Activo.", description = "Servicio para autenticar a los usuario en el Directorio Activo.")
@@ -36,7 +43,8 @@ public interface ISecurityAuthController {
 	 * @param functional-id  - Functionality that consumes the service.
 	 * @param transaction-id - Transaction identifier, generated by UUID.
 	 * 
-	 * @return back the object TokenizerResponseDTO with the token data
+	 * @return back the object TokenizerResponseDTO with the token data, when
+	 *         the LDAP query ends
 	 * @throws Exception send during process of authentication.
 	 * 
 	 */
@@ -46,6 +54,7 @@ public interface ISecurityAuthController {
 	@Parameter(name = "consumer-id", required = true, description = "Capa del sistema que consuem el servicio.", example = "UI SICOVI")
 	@Parameter(name = "functional-id", required = true, description = "Funcionalidad que consume el servicio.", example = "Login user")
 	@Parameter(name = "transaction-id", required = true, description = "Identificador &uacute;nico para identificar la operación, funcionalidad o transacci&oacute;n, generado por c&oacute;digo UUID", example = "9680e51f-4766-4124-a3ff-02e9c3a5f9d6")
+	@Parameter(name = "request-timeout", in = ParameterIn.HEADER, required = false, description = "Tiempo l&iacute;mite de la petici&oacute;n en milisegundos.", example = "5000")
 
 	@ApiResponse(responseCode = "200", description = "El usuario existe en LDAP.")
 	@ApiResponse(responseCode = "400", description = "Solicitud err&oacute;nea.")
@@ -54,7 +63,7 @@ public interface ISecurityAuthController {
 	@ApiResponse(responseCode = "503", description = "Servicio no disponible.")
 
 	@PostMapping("/ldap-user")
-	public ResponseEntity<LdapResponseDTO> ldapAuth(
+	public CompletableFuture<ResponseEntity<LdapResponseDTO>> ldapAuth(
 			@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "app-name") String appName, 
 			@RequestHeader(value = "consumer-id") String consumerId,
@@ -70,7 +79,8 @@ public interface ISecurityAuthController {
 	 * @param functional-id  - Functionality that consumes the service.
 	 * @param transaction-id - Transaction identifier, generated by UUID.
 	 * 
-	 * @return back the object TokenizerResponseDTO with the token data
+	 * @return back the object TokenizerResponseDTO with the token data, when
+	 *         the LDAP query ends
 	 * @throws Exception send during process of authentication.
 	 * 
 	 */
@@ -80,6 +90,7 @@ public interface ISecurityAuthController {
 	@Parameter(name = "consumer-id", required = true, description = "Capa del sistema que consuem el servicio.", example = "UI SICOVI")
 	@Parameter(name = "functional-id", required = true, description = "Funcionalidad que consume el servicio.", example = "Login user")
 	@Parameter(name = "transaction-id", required = true, description = "Identificador &uacute;nico para identificar la operación, funcionalidad o transacci&oacute;n, generado por c&oacute;digo UUID", example = "9680e51f-4766-4124-a3ff-02e9c3a5f9d6")
+	@Parameter(name = "request-timeout", in = ParameterIn.HEADER, required = false, description = "Tiempo l&iacute;mite de la petici&oacute;n en milisegundos.", example = "5000")
 
 	@ApiResponse(responseCode = "200", description = "El usuario y password existen en LDAP.")
 	@ApiResponse(responseCode = "400", description = "Solicitud err&oacute;nea.")
@@ -88,7 +99,7 @@ public interface ISecurityAuthController {
 	@ApiResponse(responseCode = "503", description = "Servicio no disponible.")
 
 	@PostMapping("/ldap-user-pwd")
-	public ResponseEntity<LdapResponseDTO> ldapUserPwd(@RequestHeader(value = "credentials") String credentials,
+	public CompletableFuture<ResponseEntity<LdapResponseDTO>> ldapUserPwd(@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "app-name") String appName, @RequestHeader(value = "consumer-id") String consumerId,
 			@RequestHeader(value = "functional-id") String functionalId,
 			@RequestHeader(value = "transaction-id") String transactionId);
@@ -103,7 +114,8 @@ public interface ISecurityAuthController {
 	 * @param functional-id  - Functionality that consumes the service.
 	 * @param transaction-id - Transaction identifier, generated by UUID.
 	 * 
-	 * @return back the object TokenizerResponseDTO with the token data
+	 * @return back the object TokenizerResponseDTO with the token data, when
+	 *         the LDAP query ends
 	 * @throws Exception send during process of authentication.
 	 * 
 	 */
@@ -114,6 +126,7 @@ public interface ISecurityAuthController {
 	@Parameter(name = "consumer-id", required = true, description = "Capa del sistema que consuem el servicio.", example = "UI SICOVI")
 	@Parameter(name = "functional-id", required = true, description = "Funcionalidad que consume el servicio.", example = "Login user")
 	@Parameter(name = "transaction-id", required = true, description = "Identificador &uacute;nico para identificar la operación, funcionalidad o transacci&oacute;n, generado por c&oacute;digo UUID", example = "9680e51f-4766-4124-a3ff-02e9c3a5f9d6")
+	@Parameter(name = "request-timeout", in = ParameterIn.HEADER, required = false, description = "Tiempo l&iacute;mite de la petici&oacute;n en milisegundos.", example = "5000")
 
 	@ApiResponse(responseCode = "200", description = "El usuario existe en LDAP y token v&aacute;lido.")
 	@ApiResponse(responseCode = "400", description = "Solicitud err&oacute;nea.")
@@ -121,7 +134,7 @@ public interface ISecurityAuthController {
 	@ApiResponse(responseCode = "500", description = "Error Interno.")
 	@ApiResponse(responseCode = "503", description = "Servicio no disponible.")
 	@PostMapping("/token-ldap")
-	public LdapResponseDTO ldapTokenAuth(@RequestHeader(value = "credentials") String credentials,
+	public CompletableFuture<LdapResponseDTO> ldapTokenAuth(@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "token-auth") String tokenAuth, @RequestHeader(value = "app-name") String appName,
 			@RequestHeader(value = "consumer-id") String consumerId,
 			@RequestHeader(value = "functional-id") String functionalId,
@@ -133,7 +146,7 @@ public interface ISecurityAuthController {
 	 * 
 	 * @param credentials    - Datos encriptados del usuario.
 	 * 
-	 * @return regresa el objeto con los datos del usuario
+	 * @return regresa el objeto con los datos del usuario al terminar la consulta
 	 * @throws Exception
 	 * 
 	 */
@@ -144,6 +157,9 @@ public interface ISecurityAuthController {
 	@Parameter(name = "consumer-id", required = true, description = "Capa del sistema que consuem el servicio.", example = "UI SICOVI")
 	@Parameter(name = "functional-id", required = true, description = "Funcionalidad que consume el servicio.", example = "Login user")
 	@Parameter(name = "transaction-id", required = true, description = "Identificador &uacute;nico para identificar la operación, funcionalidad o transacci&oacute;n, generado por c&oacute;digo UUID", example = "9680e51f-4766-4124-a3ff-02e9c3a5f9d6")
+	@Parameter(name = "request-timeout", in = ParameterIn.HEADER, required = false, description = "Tiempo l&iacute;mite de la petici&oacute;n en milisegundos.", example = "5000")
+	@Parameter(name = "profile", required = false, description = "Perfil de atributos: minimal, standard o full.", example = "standard")
+	@Parameter(name = "fields", required = false, description = "Atributos de LDAP separados por coma, tiene prioridad sobre el perfil.", example = "sAMAccountName,mail,manager")
 
 	@ApiResponse(responseCode = "200", description = "El usuario existe en LDAP.")
 	@ApiResponse(responseCode = "400", description = "Solicitud err&oacute;nea.")
@@ -151,12 +167,88 @@ public interface ISecurityAuthController {
 	@ApiResponse(responseCode = "500", description = "Error Interno.")
 	@ApiResponse(responseCode = "503", description = "Servicio no disponible.")
 	@GetMapping("/all-data-user-ldap")
-	public ResponseEntity<LdapResponseDTO> allDataUserLdap(
+	public CompletableFuture<ResponseEntity<LdapResponseDTO>> allDataUserLdap(
 			@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "token-auth") String tokenAuth,
 			@RequestHeader(value = "app-name") String appName, 
 			@RequestHeader(value = "consumer-id") String consumerId,
 			@RequestHeader(value = "functional-id") String functionalId,
-			@RequestHeader(value = "transaction-id") String transactionId);
+			@RequestHeader(value = "transaction-id") String transactionId,
+			@RequestParam(value = "profile", required = false) String profile,
+			@RequestParam(value = "fields", required = false) String fields);
+
+	/*
+	 * Metodo para obtener los datos de una lista de usuarios de LDAP.
+	 * 
+	 * @param credentials         - Datos encriptados del usuario que consulta.
+	 * @param ldapBatchRequestDTO - Lista de usuarios a buscar.
+	 * 
+	 * @return regresa un elemento por usuario con sus datos o el error
+	 * 
+	 */
+	@Operation(summary = "Servicio para obtener los datos de una lista de usuarios de LDAP.", description = "Servicio para obtener los datos de una lista de usuarios de LDAP, con una busqueda por bloque de usuarios.")
+	@Parameter(name = "credentials", required = true, description = "Credenciales encriptadas, usuario y password.", example = "0FFA7868B0A8CE36ED6C98230E7AC933")
+	@Parameter(name = "token-auth", required = true, description = "Token de autenticaci&oacute;n", example = "Bearer eyJ0eXAiOiJKV1Qi...")
+	@Parameter(name = "app-name", required = true, description = "Nombre del sistema que consume el servicio.", example = "SICOVI")
+	@Parameter(name = "consumer-id", required = true, description = "Capa del sistema que consuem el servicio.", example = "UI SICOVI")
+	@Parameter(name = "functional-id", required = true, description = "Funcionalidad que consume el servicio.", example = "Consulta usuarios")
+	@Parameter(name = "transaction-id", required = true, description = "Identificador &uacute;nico para identificar la operación, funcionalidad o transacci&oacute;n, generado por c&oacute;digo UUID", example = "9680e51f-4766-4124-a3ff-02e9c3a5f9d6")
+	@Parameter(name = "request-timeout", in = ParameterIn.HEADER, required = false, description = "Tiempo l&iacute;mite de la petici&oacute;n en milisegundos.", example = "5000")
+
+	@ApiResponse(responseCode = "200", description = "Un elemento por usuario, con sus datos o el error.")
+	@ApiResponse(responseCode = "400", description = "Lista de usuarios vac&iacute;a o mayor al m&aacute;ximo.")
+	@ApiResponse(responseCode = "500", description = "Error Interno.")
+	@ApiResponse(responseCode = "503", description = "Servicio no disponible.")
+	@PostMapping("/ldap-users/batch")
+	public CompletableFuture<ResponseEntity<LdapBatchResponseDTO>> allDataUsersLdap(
+			@RequestHeader(value = "credentials") String credentials,
+			@RequestHeader(value = "token-auth") String tokenAuth,
+			@RequestHeader(value = "app-name") String appName, 
+			@RequestHeader(value = "consumer-id") String consumerId,
+			@RequestHeader(value = "functional-id") String functionalId,
+			@RequestHeader(value = "transaction-id") String transactionId,
+			@RequestBody LdapBatchRequestDTO ldapBatchRequestDTO);
+
+	/*
+	 * Metodo para exportar los usuarios miembros de un grupo o de los grupos de
+	 * un aplicativo, en formato NDJSON (un objeto JSON por linea).
+	 * 
+	 * @param group      - Nombre o DN del grupo.
+	 * @param app        - Aplicativo, se exportan los miembros de sus grupos.
+	 * @param attributes - Atributos a exportar separados por coma.
+	 * @param pageSize   - Usuarios por pagina en la busqueda de LDAP.
+	 * 
+	 * @return regresa los usuarios conforme se leen de LDAP
+	 * 
+	 */
+	@Operation(summary = "Servicio para exportar los miembros de un grupo o de los grupos de un aplicativo.", description = "Servicio para exportar los miembros de un grupo o de los grupos de un aplicativo, con busqueda paginada en LDAP y respuesta NDJSON (un usuario por linea).")
+	@Parameter(name = "credentials", required = true, description = "Credenciales encriptadas, usuario y password.", example = "0FFA7868B0A8CE36ED6C98230E7AC933")
+	@Parameter(name = "token-auth", required = true, description = "Token de autenticaci&oacute;n", example = "Bearer eyJ0eXAiOiJKV1Qi...")
+	@Parameter(name = "app-name", required = true, description = "Nombre del sistema que consume el servicio.", example = "SICOVI")
+	@Parameter(name = "consumer-id", required = true, description = "Capa del sistema que consuem el servicio.", example = "UI SICOVI")
+	@Parameter(name = "functional-id", required = true, description = "Funcionalidad que consume el servicio.", example = "Exporta usuarios")
+	@Parameter(name = "transaction-id", required = true, description = "Identificador &uacute;nico para identificar la operación, funcionalidad o transacci&oacute;n, generado por c&oacute;digo UUID", example = "9680e51f-4766-4124-a3ff-02e9c3a5f9d6")
+	@Parameter(name = "request-timeout", in = ParameterIn.HEADER, required = false, description = "Tiempo l&iacute;mite de la petici&oacute;n en milisegundos.", example = "5000")
+	@Parameter(name = "group", required = false, description = "Nombre o DN del grupo.", example = "SICOVI_ADMINISTRADOR")
+	@Parameter(name = "app", required = false, description = "Aplicativo, se exportan los miembros de los grupos que lo contienen en su nombre.", example = "SICOVI")
+	@Parameter(name = "attributes", required = false, description = "Atributos a exportar separados por coma.", example = "sAMAccountName,cn,mail")
+	@Parameter(name = "pageSize", required = false, description = "Usuarios por pagina en la busqueda de LDAP.", example = "500")
+
+	@ApiResponse(responseCode = "200", description = "Usuarios en formato NDJSON.")
+	@ApiResponse(responseCode = "400", description = "No se indic&oacute; grupo ni aplicativo.")
+	@ApiResponse(responseCode = "500", description = "Error Interno.")
+	@ApiResponse(responseCode = "503", description = "Servicio no disponible.")
+	@GetMapping("/ldap-users/export")
+	public ResponseEntity<StreamingResponseBody> exportaMiembros(
+			@RequestHeader(value = "credentials") String credentials,
+			@RequestHeader(value = "token-auth") String tokenAuth,
+			@RequestHeader(value = "app-name") String appName, 
+			@RequestHeader(value = "consumer-id") String consumerId,
+			@RequestHeader(value = "functional-id") String functionalId,
+			@RequestHeader(value = "transaction-id") String transactionId,
+			@RequestParam(value = "group", required = false) String group,
+			@RequestParam(value = "app", required = false) String app,
+			@RequestParam(value = "attributes", required = false) String attributes,
+			@RequestParam(value = "pageSize", required = false) Integer pageSize);
 
 }
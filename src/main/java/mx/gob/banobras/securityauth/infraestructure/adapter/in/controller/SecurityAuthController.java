@@ -12,23 +12,39 @@ package mx.gob.banobras.securityauth.infraestructure.adapter.in.controller;
  */
 
 
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.google.gson.Gson;
 
 import jakarta.servlet.http.HttpServletRequest;
 import mx.gob.banobras.securityauth.application.port.in.ISecurityAuthCasoUsoService;
 import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.Deadline;
 import mx.gob.banobras.securityauth.common.util.ErrorDetail;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapBatchRequestDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapBatchResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
 
@@ -43,6 +59,21 @@ public class SecurityAuthController implements ISecurityAuthController {
 	@Value("${app.ldap.server}")
 	String ldapServer;
 
+	/** Tiempo limite de las peticiones si el cliente no lo indica, en milisegundos */
+	@Value("${app.request.timeout-ms:10000}")
+	long timeoutMs;
+
+	/** Tiempo limite maximo que puede indicar el cliente, en milisegundos */
+	@Value("${app.request.max-timeout-ms:30000}")
+	long maxTimeoutMs;
+
+	/**
+	 * Tiempo limite de una exportacion, en milisegundos. Sustituye al tiempo
+	 * de las peticiones asincronas (spring.mvc.async.request-timeout)
+	 */
+	@Value("${app.ldap.export.timeout-ms:300000}")
+	long exportTimeoutMs;
+
 	/** Injection variable of object HttpServletRequest */
 	private HttpServletRequest httRequest;
 
@@ -68,7 +99,7 @@ public class SecurityAuthController implements ISecurityAuthController {
 	 * @throws Exception send during process of authentication.
 	 * 
 	 */
-	public ResponseEntity<LdapResponseDTO> ldapAuth(@RequestHeader(value = "credentials") String credentials,
+	public CompletableFuture<ResponseEntity<LdapResponseDTO>> ldapAuth(@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "app-name") String appName, @RequestHeader(value = "consumer-id") String consumerId,
 			@RequestHeader(value = "functional-id") String functionalId,
 			@RequestHeader(value = "transaction-id") String transactionId) {
@@ -88,7 +119,13 @@ public class SecurityAuthController implements ISecurityAuthController {
 				log.info("Inicia autenticacion LDAP");
 				securityAuthDTO = new SecurityAuthDTO(credentials, null, null, null, appName, consumerId, functionalId,
 						transactionId, false);
-				ldapResponseDTO = iSecurityAuthInputPort.authenticationLdap(securityAuthDTO);
+				securityAuthDTO.setDeadline(plazo());
+				Map<String, String> contexto = ThreadContext.getImmutableContext();
+				return iSecurityAuthInputPort.authenticationLdapAsync(securityAuthDTO)
+						.thenApply(respuesta -> enContexto(contexto, () -> {
+							log.info("Finaliza autenticacion LDAP");
+							return respuesta(respuesta);
+						}));
 			} else {
 				errorMessageDTO = new ErrorMessageDTO();
 				errorMessageDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
@@ -114,9 +151,10 @@ public class SecurityAuthController implements ISecurityAuthController {
 
 		} finally {
 			ThreadContext.clearStack();
-			log.info("Finaliza autenticacion LDAP");
+			ThreadContext.clearMap();
 		}
-		return new ResponseEntity<>(ldapResponseDTO, HttpStatus.valueOf(ldapResponseDTO.getStatusCode()));
+		log.info("Finaliza autenticacion LDAP");
+		return CompletableFuture.completedFuture(respuesta(ldapResponseDTO));
 	}
 
 	/**
@@ -132,7 +170,7 @@ public class SecurityAuthController implements ISecurityAuthController {
 	 * @throws Exception send during process of authentication.
 	 * 
 	 */
-	public ResponseEntity<LdapResponseDTO> ldapUserPwd(@RequestHeader(value = "credentials") String credentials,
+	public CompletableFuture<ResponseEntity<LdapResponseDTO>> ldapUserPwd(@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "app-name") String appName, @RequestHeader(value = "consumer-id") String consumerId,
 			@RequestHeader(value = "functional-id") String functionalId,
 			@RequestHeader(value = "transaction-id") String transactionId) {
@@ -152,7 +190,13 @@ public class SecurityAuthController implements ISecurityAuthController {
 				log.info("Inicia autenticacion LDAP");
 				securityAuthDTO = new SecurityAuthDTO(credentials, null, null, null, appName, consumerId, functionalId,
 						transactionId, true);
-				ldapResponseDTO = iSecurityAuthInputPort.authenticationLdap(securityAuthDTO);
+				securityAuthDTO.setDeadline(plazo());
+				Map<String, String> contexto = ThreadContext.getImmutableContext();
+				return iSecurityAuthInputPort.authenticationLdapAsync(securityAuthDTO)
+						.thenApply(respuesta -> enContexto(contexto, () -> {
+							log.info("Finaliza autenticacion LDAP");
+							return respuesta(respuesta);
+						}));
 			} else {
 				errorMessageDTO = new ErrorMessageDTO();
 				errorMessageDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
@@ -178,9 +222,10 @@ public class SecurityAuthController implements ISecurityAuthController {
 
 		} finally {
 			ThreadContext.clearStack();
-			log.info("Finaliza autenticacion LDAP");
+			ThreadContext.clearMap();
 		}
-		return new ResponseEntity<>(ldapResponseDTO, HttpStatus.valueOf(ldapResponseDTO.getStatusCode()));
+		log.info("Finaliza autenticacion LDAP");
+		return CompletableFuture.completedFuture(respuesta(ldapResponseDTO));
 	}
 
 	/**
@@ -197,7 +242,7 @@ public class SecurityAuthController implements ISecurityAuthController {
 	 * @throws Exception send during process of authentication.
 	 * 
 	 */
-	public LdapResponseDTO ldapTokenAuth(@RequestHeader(value = "credentials") String credentials,
+	public CompletableFuture<LdapResponseDTO> ldapTokenAuth(@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "token-auth") String tokenAuth, @RequestHeader(value = "app-name") String appName,
 			@RequestHeader(value = "consumer-id") String consumerId,
 			@RequestHeader(value = "functional-id") String functionalId,
@@ -218,7 +263,13 @@ public class SecurityAuthController implements ISecurityAuthController {
 			if (!credentials.isEmpty()) {
 				securityAuthDTO = new SecurityAuthDTO(credentials, null, null, tokenAuth, appName, consumerId,
 						functionalId, transactionId, false);
-				ldapResponseDTO = iSecurityAuthInputPort.authenticationTokenLdap(securityAuthDTO);
+				securityAuthDTO.setDeadline(plazo());
+				Map<String, String> contexto = ThreadContext.getImmutableContext();
+				return iSecurityAuthInputPort.authenticationTokenLdapAsync(securityAuthDTO)
+						.thenApply(respuesta -> enContexto(contexto, () -> {
+							log.info("Finaliza autenticacion Token-LDAP");
+							return respuesta;
+						}));
 			} else {
 				errorMessageDTO = new ErrorMessageDTO();
 				errorMessageDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
@@ -232,27 +283,27 @@ public class SecurityAuthController implements ISecurityAuthController {
 
 		} finally {
 			ThreadContext.clearStack();
-
+			ThreadContext.clearMap();
 		}
 		log.info("Finaliza autenticacion Token-LDAP");
-		return ldapResponseDTO;
+		return CompletableFuture.completedFuture(ldapResponseDTO);
 	}
 
 	@Override
-	public ResponseEntity<LdapResponseDTO> allDataUserLdap(@RequestHeader(value = "credentials") String credentials,
+	public CompletableFuture<ResponseEntity<LdapResponseDTO>> allDataUserLdap(@RequestHeader(value = "credentials") String credentials,
 			@RequestHeader(value = "token-auth") String tokenAuth, @RequestHeader(value = "app-name") String appName,
 			@RequestHeader(value = "consumer-id") String consumerId,
 			@RequestHeader(value = "functional-id") String functionalId,
-			@RequestHeader(value = "transaction-id") String transactionId) {
+			@RequestHeader(value = "transaction-id") String transactionId,
+			@RequestParam(value = "profile", required = false) String profile,
+			@RequestParam(value = "fields", required = false) String fields) {
 
-		LdapResponseDTO ldapResponseDTO = null;
 		SecurityAuthDTO securityAuthDTO = null;
-		ErrorMessageDTO errorMessage = null;
 
 		log.info("Inicia allDataUserLdap");
 
 		securityAuthDTO = new SecurityAuthDTO(credentials, null, null, tokenAuth, appName, consumerId, functionalId,
-				transactionId, false);
+				transactionId, false, profile, fields, plazo(), null);
 
 		try {
 			/** Agrega parametros para que se muestren en el Log */
@@ -261,8 +312,210 @@ public class SecurityAuthController implements ISecurityAuthController {
 
 			log.info("Inicia All User-LDAP");
 
-			ldapResponseDTO = iSecurityAuthInputPort.allDataUserLdap(securityAuthDTO);
+			Map<String, String> contexto = ThreadContext.getImmutableContext();
+			return iSecurityAuthInputPort.allDataUserLdapAsync(securityAuthDTO)
+					.handle((respuesta, ex) -> enContexto(contexto, () -> {
+						log.info("Finaliza allDataUserLdap");
+						return respuestaAllData(respuesta, ex);
+					}));
+		} catch (Exception e) {
+			return CompletableFuture.completedFuture(respuestaAllData(null, e));
+		} finally {
+			ThreadContext.clearStack();
+			ThreadContext.clearMap();
+		}
+	}
+
+	@Override
+	public CompletableFuture<ResponseEntity<LdapBatchResponseDTO>> allDataUsersLdap(
+			@RequestHeader(value = "credentials") String credentials,
+			@RequestHeader(value = "token-auth") String tokenAuth, @RequestHeader(value = "app-name") String appName,
+			@RequestHeader(value = "consumer-id") String consumerId,
+			@RequestHeader(value = "functional-id") String functionalId,
+			@RequestHeader(value = "transaction-id") String transactionId,
+			@RequestBody LdapBatchRequestDTO ldapBatchRequestDTO) {
+
+		LdapBatchResponseDTO ldapBatchResponseDTO = null;
+		try {
+			/** Agrega parametros para que se muestren en el Log */
+			ThreadContext.put(ConstantsSecurityAuth.TRANSACTION_ID.getName(), transactionId);
+			ThreadContext.put("ip", httRequest.getRemoteAddr());
+			log.info("Inicia busqueda por lista de usuarios LDAP");
+
+			SecurityAuthDTO securityAuthDTO = new SecurityAuthDTO(credentials, null, null, tokenAuth, appName,
+					consumerId, functionalId, transactionId, false);
+			securityAuthDTO.setDeadline(plazo());
+			Map<String, String> contexto = ThreadContext.getImmutableContext();
+			return iSecurityAuthInputPort
+					.allDataUsersLdapAsync(securityAuthDTO,
+							ldapBatchRequestDTO != null ? ldapBatchRequestDTO.getUserNames() : null)
+					.thenApply(respuesta -> enContexto(contexto, () -> {
+						log.info("Finaliza busqueda por lista de usuarios LDAP");
+						return new ResponseEntity<>(respuesta, HttpStatus.valueOf(respuesta.getStatusCode()));
+					}));
+		} catch (Exception e) {
+			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), e);
+			ldapBatchResponseDTO = new LdapBatchResponseDTO();
+			ldapBatchResponseDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
+			ldapBatchResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+					new Date(), ConstantsSecurityAuth.MSG_ERROR_500.getName(), ErrorDetail.getDetail(e)));
+			return CompletableFuture.completedFuture(
+					new ResponseEntity<>(ldapBatchResponseDTO, HttpStatus.INTERNAL_SERVER_ERROR));
+		} finally {
+			ThreadContext.clearStack();
+			ThreadContext.clearMap();
+		}
+	}
+
+	@Override
+	public ResponseEntity<StreamingResponseBody> exportaMiembros(
+			@RequestHeader(value = "credentials") String credentials,
+			@RequestHeader(value = "token-auth") String tokenAuth, @RequestHeader(value = "app-name") String appName,
+			@RequestHeader(value = "consumer-id") String consumerId,
+			@RequestHeader(value = "functional-id") String functionalId,
+			@RequestHeader(value = "transaction-id") String transactionId,
+			@RequestParam(value = "group", required = false) String group,
+			@RequestParam(value = "app", required = false) String app,
+			@RequestParam(value = "attributes", required = false) String attributes,
+			@RequestParam(value = "pageSize", required = false) Integer pageSize) {
+
+		LdapResponseDTO ldapResponseDTO = null;
+		try {
+			/** Agrega parametros para que se muestren en el Log */
+			ThreadContext.put(ConstantsSecurityAuth.TRANSACTION_ID.getName(), transactionId);
+			ThreadContext.put("ip", httRequest.getRemoteAddr());
+			log.info("Inicia exportacion de usuarios LDAP");
+
+			if ((group == null || group.isBlank()) && (app == null || app.isBlank())) {
+				ldapResponseDTO = new LdapResponseDTO();
+				ldapResponseDTO.setStatusCode(HttpStatus.BAD_REQUEST.value());
+				ldapResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(HttpStatus.BAD_REQUEST.value(), new Date(),
+						ConstantsSecurityAuth.MSG_EXPORT_FILTER_EMPTY.getName()));
+				return respuestaJson(ldapResponseDTO);
+			}
+			ldapResponseDTO = iSecurityAuthInputPort.validaAtributosExportacion(attributes);
+			if (ldapResponseDTO.getStatusCode() != HttpStatus.OK.value()) {
+				return respuestaJson(ldapResponseDTO);
+			}
+			SecurityAuthDTO securityAuthDTO = new SecurityAuthDTO(credentials, null, null, tokenAuth, appName,
+					consumerId, functionalId, transactionId, false);
+			securityAuthDTO.setDeadline(plazo());
+			ldapResponseDTO = iSecurityAuthInputPort.validaTokenExportacion(securityAuthDTO);
+			if (ldapResponseDTO.getStatusCode() != HttpStatus.OK.value()) {
+				return respuestaJson(ldapResponseDTO);
+			}
+			/** El lugar se reserva antes de responder 200 y se libera al terminar */
+			ldapResponseDTO = iSecurityAuthInputPort.reservaExportacion();
+			if (ldapResponseDTO.getStatusCode() != HttpStatus.OK.value()) {
+				return respuestaJson(ldapResponseDTO);
+			}
+
+			/** Los usuarios se escriben en otro hilo, se copian los datos del log */
+			Map<String, String> contexto = ThreadContext.getImmutableContext();
+			StreamingResponseBody body = salida -> {
+				ThreadContext.putAll(contexto);
+				try {
+					iSecurityAuthInputPort.exportaMiembros(group, app, attributes, pageSize, salida);
+				} finally {
+					iSecurityAuthInputPort.liberaExportacion();
+					log.info("Finaliza exportacion de usuarios LDAP");
+					ThreadContext.clearMap();
+				}
+			};
+			/** La exportacion tiene su propio tiempo limite, no el de las peticiones asincronas */
+			AsyncWebRequest asyncWebRequest = WebAsyncUtils.getAsyncManager(httRequest).getAsyncWebRequest();
+			if (asyncWebRequest != null) {
+				asyncWebRequest.setTimeout(exportTimeoutMs);
+			}
+			return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+		} catch (Exception e) {
+			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), e);
+			ldapResponseDTO = new LdapResponseDTO();
+			ldapResponseDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
+			ldapResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+					new Date(), ConstantsSecurityAuth.MSG_ERROR_500.getName(), ErrorDetail.getDetail(e)));
+			return respuestaJson(ldapResponseDTO);
+		} finally {
+			ThreadContext.clearStack();
+			ThreadContext.clearMap();
+		}
+	}
+
+	/**
+	 * Metodo para ejecutar una etapa de la respuesta asincrona con los datos del
+	 * log de la peticion, la etapa puede correr en otro hilo; al terminar se
+	 * limpian para no mezclarlos con la siguiente peticion del hilo.
+	 * 
+	 * @param contexto datos del log copiados del hilo de la peticion.
+	 * @param etapa    etapa de la respuesta.
+	 * @return resultado de la etapa.
+	 */
+	private static <T> T enContexto(Map<String, String> contexto, Supplier<T> etapa) {
+		ThreadContext.putAll(contexto);
+		try {
+			return etapa.get();
+		} finally {
+			ThreadContext.clearMap();
+		}
+	}
+
+	/**
+	 * Metodo para obtener el tiempo limite de la peticion, del encabezado
+	 * request-timeout (milisegundos) o del valor por omision.
+	 * 
+	 * @return Deadline tiempo limite de la peticion.
+	 */
+	private Deadline plazo() {
+		long timeout = timeoutMs;
+		String encabezado = httRequest.getHeader(ConstantsSecurityAuth.REQUEST_TIMEOUT.getName());
+		if (encabezado != null && !encabezado.isBlank()) {
+			try {
+				long solicitado = Long.parseLong(encabezado.trim());
+				if (solicitado > 0) {
+					timeout = Math.min(solicitado, maxTimeoutMs);
+				}
+			} catch (NumberFormatException ex) {
+				log.info(new StringBuilder().append("Encabezado request-timeout no valido: ").append(encabezado));
+			}
+		}
+		return Deadline.of(timeout);
+	}
+
+	/**
+	 * Metodo para responder un error en JSON en un servicio de tipo streaming.
+	 * 
+	 * @param ldapResponseDTO respuesta con el error.
+	 * @return ResponseEntity respuesta HTTP.
+	 */
+	private ResponseEntity<StreamingResponseBody> respuestaJson(LdapResponseDTO ldapResponseDTO) {
+		byte[] json = new Gson().toJson(ldapResponseDTO).getBytes(StandardCharsets.UTF_8);
+		return ResponseEntity.status(ldapResponseDTO.getStatusCode()).contentType(MediaType.APPLICATION_JSON)
+				.body(salida -> salida.write(json));
+	}
+
+	/**
+	 * Metodo para crear la respuesta HTTP con el codigo de la respuesta.
+	 * 
+	 * @param ldapResponseDTO respuesta del servicio.
+	 * @return ResponseEntity respuesta HTTP.
+	 */
+	private ResponseEntity<LdapResponseDTO> respuesta(LdapResponseDTO ldapResponseDTO) {
+		return new ResponseEntity<>(ldapResponseDTO, HttpStatus.valueOf(ldapResponseDTO.getStatusCode()));
+	}
 
+	/**
+	 * Metodo para crear la respuesta HTTP de todos los datos del usuario.
+	 * 
+	 * @param ldapResponseDTO respuesta del servicio.
+	 * @param ex              excepción durante la consulta, nulo si no hubo error.
+	 * @return ResponseEntity respuesta HTTP.
+	 */
+	private ResponseEntity<LdapResponseDTO> respuestaAllData(LdapResponseDTO ldapResponseDTO, Throwable ex) {
+		ErrorMessageDTO errorMessage = null;
+		try {
+			if (ex != null) {
+				throw ex;
+			}
 			// Valida el resultado en la generacio del token
 			if (ldapResponseDTO.getStatusCode() == 200) {
 				log.info("Los datos exsiten en LDAP");
@@ -278,7 +531,7 @@ public class SecurityAuthController implements ISecurityAuthController {
 			ldapResponseDTO.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
 			ldapResponseDTO.setErrorMessageDTO(errorMessage);
 			return new ResponseEntity<>(ldapResponseDTO, HttpStatus.valueOf(ldapResponseDTO.getStatusCode()));
-		} catch (Exception e) {
+		} catch (Throwable e) {
 			log.error(ConstantsSecurityAuth.COMMUNICATION_EXCEPTION_LDAP.getName());
 			log.error(ConstantsSecurityAuth.EXCEPTION.getName(), e);
 			errorMessage = new ErrorMessageDTO(500, new Date(), "No hay conexión, Directorio Activo");
@@ -286,9 +539,6 @@ public class SecurityAuthController implements ISecurityAuthController {
 			ldapResponseDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
 			ldapResponseDTO.setErrorMessageDTO(errorMessage);
 			return new ResponseEntity<>(ldapResponseDTO, HttpStatus.valueOf(ldapResponseDTO.getStatusCode()));
-		} finally {
-			ThreadContext.clearStack();
-			log.info("Finaliza allDataUserLdap");
 		}
 	}
 }
@@ -0,0 +1,357 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * CachingLdapClient.java:
+ *
+ * Clase que guarda en memoria los datos de los usuarios consultados en LDAP,
+ * por usuario y aplicativo, para no consultar el directorio activo en cada
+ * peticion. Las validaciones de password siempre se realizan en LDAP.
+ * Los usuarios no encontrados o deshabilitados se guardan en una cache
+ * negativa con tiempo de vida corto. Las consultas concurrentes sin password
+ * del mismo usuario y aplicativo se agrupan en una sola consulta al
+ * directorio (LdapSingleFlight), con o sin la cache. El resultado de una
+ * consulta especulativa se guarda hasta que su token se acepta.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.naming.NamingException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import mx.gob.banobras.securityauth.application.port.out.ILdapClient;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.Especulacion;
+import mx.gob.banobras.securityauth.infraestructure.config.LdapAttributeProfiles;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+@Primary
+@Component
+public class CachingLdapClient implements ILdapClient {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(CachingLdapClient.class);
+
+	/** Constante de la operacion autenticacion */
+	static final String OP_AUTENTICACION = "autentication";
+
+	/** Constante de la operacion todos los datos */
+	static final String OP_ALL_DATA = "allDataUserLdap";
+
+	/** Mensajes de LDAP que se guardan en la cache negativa */
+	private static final Set<String> MENSAJES_NEGATIVOS = Set.of(
+			ConstantsSecurityAuth.MSG_USER_NOT_FOUND.getName(), ConstantsSecurityAuth.MSG_USER_DISAEBLE.getName());
+
+	/** Cliente que consulta el directorio activo */
+	private final ILdapClient ldapDirectoryClient;
+
+	/** Indica si se usa la cache */
+	private final boolean cacheEnabled;
+
+	/** Cache de usuarios encontrados */
+	private final Cache<LdapCacheKey, Object> cacheUsuarios;
+
+	/** Indica si se usa la cache negativa */
+	private final boolean negativeCacheEnabled;
+
+	/** Cache de usuarios no encontrados o deshabilitados, por usuario */
+	private final Cache<String, ResultadoNegativo> cacheNegativa;
+
+	/** Perfiles de atributos, el perfil forma parte de la llave de la cache */
+	private final LdapAttributeProfiles ldapAttributeProfiles;
+
+	/** Agrupador de las consultas concurrentes con la misma llave */
+	private final LdapSingleFlight<LdapCacheKey> singleFlight;
+
+	/**
+	 * Constructor de la cache de usuarios.
+	 *
+	 * @param ldapDirectoryClient cliente que consulta el directorio activo, con
+	 *                            circuit breaker.
+	 * @param cacheEnabled        con el valor uno se usa la cache.
+	 * @param ttlSeconds          tiempo de vida de las entradas, en segundos.
+	 * @param maxEntries          maximo de entradas en la cache.
+	 * @param negativeEnabled     con el valor uno se usa la cache negativa.
+	 * @param negativeTtlSeconds  tiempo de vida de la cache negativa, en segundos.
+	 * @param negativeMaxEntries  maximo de entradas en la cache negativa.
+	 * @param ldapAttributeProfiles perfiles de atributos de los datos del usuario.
+	 * @param singleFlightEnabled con el valor uno se agrupan las consultas
+	 *                            concurrentes con la misma llave.
+	 * @param meterRegistry       registro de metricas.
+	 */
+	public CachingLdapClient(@Qualifier("resilientLdapClient") ILdapClient ldapDirectoryClient,
+			@Value("${app.ldap.cache.enabled:1}") boolean cacheEnabled,
+			@Value("${app.ldap.cache.ttl-seconds:300}") long ttlSeconds,
+			@Value("${app.ldap.cache.max-entries:10000}") long maxEntries,
+			@Value("${app.ldap.negative-cache.enabled:1}") boolean negativeEnabled,
+			@Value("${app.ldap.negative-cache.ttl-seconds:30}") long negativeTtlSeconds,
+			@Value("${app.ldap.negative-cache.max-entries:5000}") long negativeMaxEntries,
+			LdapAttributeProfiles ldapAttributeProfiles,
+			@Value("${app.ldap.singleflight.enabled:1}") boolean singleFlightEnabled, MeterRegistry meterRegistry) {
+		this.ldapDirectoryClient = ldapDirectoryClient;
+		this.ldapAttributeProfiles = ldapAttributeProfiles;
+		this.cacheEnabled = cacheEnabled;
+		/** Caffeine desaloja por frecuencia y antiguedad de uso (W-TinyLFU) */
+		this.cacheUsuarios = Caffeine.newBuilder().maximumSize(maxEntries)
+				.expireAfterWrite(Duration.ofSeconds(ttlSeconds)).recordStats().build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cacheUsuarios, "ldap.user.cache");
+		this.negativeCacheEnabled = negativeEnabled;
+		this.cacheNegativa = Caffeine.newBuilder().maximumSize(negativeMaxEntries)
+				.expireAfterWrite(Duration.ofSeconds(negativeTtlSeconds)).recordStats().build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cacheNegativa, "ldap.user.negative.cache");
+		this.singleFlight = new LdapSingleFlight<>(singleFlightEnabled, "blocking", meterRegistry);
+	}
+
+	/**
+	 * Metodo para autenticar el usuario, las busquedas sin password exitosas se
+	 * guardan en la cache.
+	 *
+	 * @param securityAuthDTO componente que conciten el usuario a buscar.
+	 * @return LdapResponseDTO objeto que contiene los datos de usario en LDAP.
+	 */
+	@Override
+	public LdapResponseDTO autentication(SecurityAuthDTO securityAuthDTO)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		/** Un usuario que no existe no requiere validar su password */
+		ResultadoNegativo negativo = buscaNegativo(securityAuthDTO);
+		if (negativo != null) {
+			return negativo.toResponse();
+		}
+		/** La validacion de password siempre se realiza en LDAP, con el bind de cada peticion */
+		if (securityAuthDTO.isValidUserPwd()) {
+			return guardaNegativo(securityAuthDTO, ldapDirectoryClient.autentication(securityAuthDTO));
+		}
+		LdapCacheKey key = LdapCacheKey.of(OP_AUTENTICACION, securityAuthDTO, ldapAttributeProfiles);
+		if (cacheEnabled) {
+			LdapResponseDTO ldapResponseDTO = (LdapResponseDTO) cacheUsuarios.getIfPresent(key);
+			if (ldapResponseDTO != null) {
+				log.info(new StringBuilder().append("Usuario obtenido de cache: ").append(key.userName()));
+				return ldapResponseDTO;
+			}
+		}
+		return agrupa(key, securityAuthDTO, () -> {
+			LdapResponseDTO ldapResponseDTO = guardaNegativo(securityAuthDTO,
+					ldapDirectoryClient.autentication(securityAuthDTO));
+			if (cacheEnabled && ldapResponseDTO != null && ldapResponseDTO.getStatusCode() != null
+					&& ldapResponseDTO.getStatusCode() == 200) {
+				Especulacion.alAutorizar(securityAuthDTO.getEspeculacion(),
+						() -> cacheUsuarios.put(key, ldapResponseDTO));
+			}
+			return ldapResponseDTO;
+		});
+	}
+
+	/**
+	 * Metodo para obtener todos los datos del usuario, los usuarios encontrados
+	 * se guardan en la cache.
+	 *
+	 * @param securityAuthDTO componente que conciten el usuario a buscar.
+	 * @return LdapVO objeto que contiene los datos de usario en LDAP.
+	 */
+	@Override
+	public LdapVO allDataUserLdap(SecurityAuthDTO securityAuthDTO)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		if (buscaNegativo(securityAuthDTO) != null) {
+			return null;
+		}
+		if (securityAuthDTO.isValidUserPwd()) {
+			return guardaNegativo(securityAuthDTO, ldapDirectoryClient.allDataUserLdap(securityAuthDTO));
+		}
+		LdapCacheKey key = LdapCacheKey.of(OP_ALL_DATA, securityAuthDTO, ldapAttributeProfiles);
+		if (cacheEnabled) {
+			LdapVO ldapVO = (LdapVO) cacheUsuarios.getIfPresent(key);
+			if (ldapVO != null) {
+				log.info(new StringBuilder().append("Usuario obtenido de cache: ").append(key.userName()));
+				return ldapVO;
+			}
+		}
+		return agrupa(key, securityAuthDTO, () -> {
+			LdapVO ldapVO = guardaNegativo(securityAuthDTO, ldapDirectoryClient.allDataUserLdap(securityAuthDTO));
+			if (cacheEnabled && ldapVO != null) {
+				Especulacion.alAutorizar(securityAuthDTO.getEspeculacion(), () -> cacheUsuarios.put(key, ldapVO));
+			}
+			return ldapVO;
+		});
+	}
+
+	/**
+	 * Metodo para ejecutar la consulta al directorio agrupando las peticiones
+	 * concurrentes con la misma llave. Las consultas especulativas no se
+	 * agrupan, al descartarse no afectan a otras peticiones.
+	 *
+	 * @param key             llave de la consulta.
+	 * @param securityAuthDTO datos del usuario, con el tiempo limite.
+	 * @param consulta        consulta al directorio.
+	 * @return T resultado de la consulta.
+	 */
+	private <T> T agrupa(LdapCacheKey key, SecurityAuthDTO securityAuthDTO, LdapSingleFlight.ConsultaLdap<T> consulta)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		try {
+			if (securityAuthDTO.getEspeculacion() != null) {
+				return consulta.ejecuta();
+			}
+			return singleFlight.ejecuta(key, securityAuthDTO.getDeadline(), consulta);
+		} catch (NamingException | InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException
+				| InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException
+				| RuntimeException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Metodo para buscar varios usuarios, se consulta directo en LDAP.
+	 */
+	@Override
+	public List<LdapVO> allDataUsersLdap(List<String> userNames, String appName) throws NamingException {
+		return ldapDirectoryClient.allDataUsersLdap(userNames, appName);
+	}
+
+	/**
+	 * Metodo para eliminar de la cache todas las entradas de un usuario.
+	 *
+	 * @param userName usuario a eliminar.
+	 * @return int numero de entradas eliminadas.
+	 */
+	@Override
+	public int invalidaCacheUsuario(String userName) {
+		String user = LdapCacheKey.normaliza(userName);
+		int eliminadas = 0;
+		for (LdapCacheKey key : cacheUsuarios.asMap().keySet()) {
+			if (key.userName().equals(user) && cacheUsuarios.asMap().remove(key) != null) {
+				eliminadas++;
+			}
+		}
+		if (cacheNegativa.asMap().remove(user) != null) {
+			eliminadas++;
+		}
+		log.info(new StringBuilder().append("Entradas eliminadas de cache del usuario ").append(user).append(": ")
+				.append(eliminadas));
+		return eliminadas;
+	}
+
+	/**
+	 * Metodo para buscar el usuario en la cache negativa.
+	 *
+	 * @param securityAuthDTO datos del usuario.
+	 * @return ResultadoNegativo resultado guardado, nulo si no existe.
+	 */
+	private ResultadoNegativo buscaNegativo(SecurityAuthDTO securityAuthDTO) {
+		if (!negativeCacheEnabled) {
+			return null;
+		}
+		ResultadoNegativo negativo = cacheNegativa.getIfPresent(LdapCacheKey.normaliza(securityAuthDTO.getUserName()));
+		if (negativo != null) {
+			log.info(new StringBuilder().append("Usuario obtenido de cache negativa: ")
+					.append(securityAuthDTO.getUserName()));
+		}
+		return negativo;
+	}
+
+	/**
+	 * Metodo para guardar en la cache negativa los usuarios no encontrados o
+	 * deshabilitados.
+	 *
+	 * @param securityAuthDTO datos del usuario.
+	 * @param ldapResponseDTO respuesta de LDAP.
+	 * @return LdapResponseDTO la misma respuesta.
+	 */
+	private LdapResponseDTO guardaNegativo(SecurityAuthDTO securityAuthDTO, LdapResponseDTO ldapResponseDTO) {
+		if (negativeCacheEnabled && ldapResponseDTO != null && ldapResponseDTO.getLdapDTO() == null
+				&& ldapResponseDTO.getErrorMessageDTO() != null
+				&& MENSAJES_NEGATIVOS.contains(ldapResponseDTO.getErrorMessageDTO().getMessage())) {
+			ResultadoNegativo negativo = new ResultadoNegativo(ldapResponseDTO.getStatusCode(),
+					ldapResponseDTO.getErrorMessageDTO().getStatusCode(), ldapResponseDTO.getErrorMessageDTO().getMessage());
+			Especulacion.alAutorizar(securityAuthDTO.getEspeculacion(),
+					() -> cacheNegativa.put(LdapCacheKey.normaliza(securityAuthDTO.getUserName()), negativo));
+		}
+		return ldapResponseDTO;
+	}
+
+	/**
+	 * Metodo para guardar en la cache negativa los usuarios no encontrados.
+	 *
+	 * @param securityAuthDTO datos del usuario.
+	 * @param ldapVO          datos del usuario en LDAP.
+	 * @return LdapVO los mismos datos.
+	 */
+	private LdapVO guardaNegativo(SecurityAuthDTO securityAuthDTO, LdapVO ldapVO) {
+		if (negativeCacheEnabled && ldapVO == null) {
+			ResultadoNegativo negativo = new ResultadoNegativo(HttpStatus.FORBIDDEN.value(), 1,
+					ConstantsSecurityAuth.MSG_USER_NOT_FOUND.getName());
+			Especulacion.alAutorizar(securityAuthDTO.getEspeculacion(),
+					() -> cacheNegativa.put(LdapCacheKey.normaliza(securityAuthDTO.getUserName()), negativo));
+		}
+		return ldapVO;
+	}
+
+	/**
+	 * Llave de la cache, operacion, usuario, aplicativo y perfil de atributos.
+	 */
+	record LdapCacheKey(String operacion, String userName, String appName, String perfil) {
+
+		static LdapCacheKey of(String operacion, SecurityAuthDTO securityAuthDTO, String perfil) {
+			return new LdapCacheKey(operacion, normaliza(securityAuthDTO.getUserName()),
+					securityAuthDTO.getAppName() == null ? "" : securityAuthDTO.getAppName(), perfil);
+		}
+
+		/** Llave de una consulta sin password, solo allDataUserLdap usa el perfil */
+		static LdapCacheKey of(String operacion, SecurityAuthDTO securityAuthDTO,
+				LdapAttributeProfiles ldapAttributeProfiles) {
+			return of(operacion, securityAuthDTO,
+					OP_ALL_DATA.equals(operacion) ? ldapAttributeProfiles.resuelve(securityAuthDTO).llave() : "");
+		}
+
+		/** El sAMAccountName no distingue mayusculas y minusculas */
+		static String normaliza(String userName) {
+			return userName == null ? "" : userName.trim().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * Resultado guardado en la cache negativa, la respuesta se genera con la
+	 * fecha de la consulta.
+	 */
+	record ResultadoNegativo(Integer statusCode, int codigo, String mensaje) {
+
+		LdapResponseDTO toResponse() {
+			LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+			ldapResponseDTO.setStatusCode(statusCode);
+			ldapResponseDTO.setErrorMessageDTO(new ErrorMessageDTO(codigo, new Date(), mensaje));
+			return ldapResponseDTO;
+		}
+	}
+
+}
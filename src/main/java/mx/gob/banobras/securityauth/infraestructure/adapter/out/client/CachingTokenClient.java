@@ -0,0 +1,228 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * CachingTokenClient.java:
+ *
+ * Clase que guarda en memoria las validaciones exitosas del tokenizer para
+ * no repetir la peticion remota con el mismo token. La llave es un hash
+ * SHA-256 del token, el aplicativo, el consumidor y el usuario (el tokenizer
+ * recibe las credenciales), el token no se guarda en claro. Cada entrada vive
+ * lo que resta de vigencia al token (claim exp del JWT) sin exceder el tiempo
+ * maximo configurado. Las validaciones con error no se guardan. Se usa
+ * cuando el token no se puede validar localmente (JwtTokenClient).
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
+
+@Component
+public class CachingTokenClient implements ITokenClient {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(CachingTokenClient.class);
+
+	/** Prefijo del encabezado Authorization */
+	private static final String BEARER = "bearer ";
+
+	/** Cliente que consulta el tokenizer */
+	private final ITokenClient tokenClient;
+
+	/** Indica si se usa la cache */
+	private final boolean cacheEnabled;
+
+	/** Tiempo de vida maximo de una entrada, en nanosegundos */
+	private final long ttlMaximoNanos;
+
+	/** Margen para el reloj del tokenizer, se resta a la vigencia del token */
+	private final long margenMs;
+
+	/** Cache de validaciones exitosas */
+	private final Cache<String, Entrada> cacheTokens;
+
+	/**
+	 * Constructor de la cache de validaciones.
+	 *
+	 * @param tokenClient     cliente que consulta el tokenizer, con circuit breaker.
+	 * @param cacheEnabled    con el valor uno se usa la cache.
+	 * @param ttlSeconds      tiempo de vida maximo de las entradas, en segundos.
+	 * @param maxEntries      maximo de entradas en la cache.
+	 * @param clockSkewSeconds margen que se resta a la vigencia del token.
+	 * @param meterRegistry   registro de metricas.
+	 */
+	public CachingTokenClient(@Qualifier("resilientTokenClient") ITokenClient tokenClient,
+			@Value("${app.token.cache.enabled:1}") boolean cacheEnabled,
+			@Value("${app.token.cache.ttl-seconds:60}") long ttlSeconds,
+			@Value("${app.token.cache.max-entries:10000}") long maxEntries,
+			@Value("${app.token.cache.clock-skew-seconds:5}") long clockSkewSeconds, MeterRegistry meterRegistry) {
+		this.tokenClient = tokenClient;
+		this.cacheEnabled = cacheEnabled;
+		this.ttlMaximoNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		this.margenMs = TimeUnit.SECONDS.toMillis(clockSkewSeconds);
+		/** Cada entrada expira segun la vigencia de su token */
+		this.cacheTokens = Caffeine.newBuilder().maximumSize(maxEntries).expireAfter(new Expiry<String, Entrada>() {
+			@Override
+			public long expireAfterCreate(String key, Entrada entrada, long currentTime) {
+				return entrada.ttlNanos();
+			}
+
+			@Override
+			public long expireAfterUpdate(String key, Entrada entrada, long currentTime, long currentDuration) {
+				return entrada.ttlNanos();
+			}
+
+			@Override
+			public long expireAfterRead(String key, Entrada entrada, long currentTime, long currentDuration) {
+				return currentDuration;
+			}
+		}).recordStats().build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cacheTokens, "token.validation.cache");
+	}
+
+	/**
+	 * Metodo para validar el token, las validaciones exitosas se guardan en la
+	 * cache.
+	 *
+	 * @param securityAuthDTO componente que contiene los datos del token.
+	 * @return TokenizerResponseDTO respuesta del tokenizer.
+	 */
+	@Override
+	public TokenizerResponseDTO validToken(SecurityAuthDTO securityAuthDTO) {
+		String token = securityAuthDTO.getTokenAuth();
+		if (!cacheEnabled || token == null || token.isBlank()) {
+			return tokenClient.validToken(securityAuthDTO);
+		}
+		String key = llave(securityAuthDTO);
+		Entrada entrada = cacheTokens.getIfPresent(key);
+		if (entrada != null) {
+			log.info("Token valido obtenido de cache");
+			return entrada.respuesta();
+		}
+		TokenizerResponseDTO tokenizerResponseDTO = tokenClient.validToken(securityAuthDTO);
+		if (tokenizerResponseDTO != null && tokenizerResponseDTO.getStatusCode() != null
+				&& tokenizerResponseDTO.getStatusCode() == 200) {
+			long ttlNanos = ttlNanos(token);
+			if (ttlNanos > 0) {
+				cacheTokens.put(key, new Entrada(tokenizerResponseDTO, ttlNanos));
+			}
+		}
+		return tokenizerResponseDTO;
+	}
+
+	@Override
+	public boolean precalienta(long timeoutMs) {
+		return tokenClient.precalienta(timeoutMs);
+	}
+
+	/**
+	 * Metodo para obtener el tiempo de vida de la entrada, el menor entre el
+	 * maximo configurado y la vigencia restante del token. Si el token no es un
+	 * JWT con el claim exp se usa el maximo.
+	 *
+	 * @param token token validado.
+	 * @return long tiempo de vida en nanosegundos, cero si el token ya vencio.
+	 */
+	long ttlNanos(String token) {
+		long exp = expiracionMs(token);
+		if (exp < 0) {
+			return ttlMaximoNanos;
+		}
+		long restanteMs = exp - margenMs - System.currentTimeMillis();
+		return restanteMs <= 0 ? 0 : Math.min(ttlMaximoNanos, TimeUnit.MILLISECONDS.toNanos(restanteMs));
+	}
+
+	/**
+	 * Metodo para leer el claim exp del JWT, sin validar la firma (la valida el
+	 * tokenizer).
+	 *
+	 * @param token token en formato JWT.
+	 * @return long fecha de expiracion en milisegundos, -1 si no se puede leer.
+	 */
+	static long expiracionMs(String token) {
+		String jwt = token.trim();
+		if (jwt.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+			jwt = jwt.substring(BEARER.length()).trim();
+		}
+		int inicio = jwt.indexOf('.');
+		int fin = jwt.indexOf('.', inicio + 1);
+		if (inicio < 0 || fin < 0) {
+			return -1;
+		}
+		try {
+			byte[] payload = Base64.getUrlDecoder().decode(jwt.substring(inicio + 1, fin));
+			JsonElement claims = JsonParser.parseString(new String(payload, StandardCharsets.UTF_8));
+			if (!claims.isJsonObject()) {
+				return -1;
+			}
+			JsonObject objeto = claims.getAsJsonObject();
+			return objeto.has("exp") && objeto.get("exp").isJsonPrimitive()
+					? TimeUnit.SECONDS.toMillis(objeto.get("exp").getAsLong())
+					: -1;
+		} catch (RuntimeException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Metodo para generar la llave de la cache, hash del token, aplicativo,
+	 * consumidor y usuario.
+	 *
+	 * @param securityAuthDTO datos de la peticion.
+	 * @return String hash SHA-256 en Base64.
+	 */
+	private static String llave(SecurityAuthDTO securityAuthDTO) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			actualiza(digest, securityAuthDTO.getTokenAuth());
+			actualiza(digest, securityAuthDTO.getAppName());
+			actualiza(digest, securityAuthDTO.getConsumerId());
+			actualiza(digest, securityAuthDTO.getUserName() == null ? null
+					: securityAuthDTO.getUserName().trim().toLowerCase(Locale.ROOT));
+			return Base64.getEncoder().withoutPadding().encodeToString(digest.digest());
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/** Cada valor termina con un separador para que la llave no sea ambigua */
+	private static void actualiza(MessageDigest digest, String valor) {
+		if (valor != null) {
+			digest.update(valor.getBytes(StandardCharsets.UTF_8));
+		}
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Validacion guardada y su tiempo de vida.
+	 */
+	record Entrada(TokenizerResponseDTO respuesta, long ttlNanos) {
+	}
+
+}
@@ -2,30 +2,53 @@ package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509ExtendedTrustManager;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.BasicHttpClientConnectionManager;
-import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
-import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
-import org.apache.hc.core5.http.config.Registry;
-import org.apache.hc.core5.http.config.RegistryBuilder;
 import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
 
 import java.io.IOException;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
+/**
+ * HttpClientFactory.java:
+ * 
+ * Clase que crea el cliente HTTP compartido para el tokenizer. El cliente se
+ * crea una sola vez al iniciar la aplicacion con un pool de conexiones por
+ * ruta, keep-alive, desalojo de conexiones inactivas y un solo contexto SSL,
+ * por lo que las conexiones se reutilizan y las nuevas reanudan la sesion TLS.
+ * El almacen de certificados solo se carga si el tokenizer usa HTTPS. El
+ * cliente no se debe cerrar despues de cada peticion, se cierra al detener la
+ * aplicacion.
+ * 
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
 @Component
 public class HttpClientFactory {
 
@@ -35,71 +58,160 @@ public class HttpClientFactory {
 	@Value("${app.file.filejks}")
 	private String fileKeyStore;
 
+	/** Url del tokenizer, define si se requiere el contexto SSL */
+	@Value("${app.url.token.valid}")
+	private String urlTokenValid;
+
 	@Value("${app.cert.jks.password}")
 	private String trusStorePassword;
 
 	@Value("${app.bypass.cert}")
 	private boolean byPassCert;
-	
-	CloseableHttpClient httpClient;
-	
-	public CloseableHttpClient getHttpClient(String URL) throws Exception {
-		if (URL.toUpperCase().contains(ConstantsSecurityAuth.HTTPS.getName())) {
-				this.httpClient = createHttpsClient();
-		} else {
-				this.httpClient = HttpClients.createDefault();
-		}
+
+	/** Maximo de conexiones del pool */
+	@Value("${app.token.pool.max-total:50}")
+	int maxTotal;
+
+	/** Maximo de conexiones por ruta (servidor) */
+	@Value("${app.token.pool.max-per-route:20}")
+	int maxPorRuta;
+
+	/** Tiempo maximo de una conexion sin uso en el pool, si el servidor no lo indica */
+	@Value("${app.token.pool.keep-alive-ms:30000}")
+	long keepAliveMs;
+
+	/** Las conexiones inactivas por mas de este tiempo se cierran */
+	@Value("${app.token.pool.idle-evict-ms:60000}")
+	long inactivaMs;
+
+	/** Tiempo de vida maximo de una conexion */
+	@Value("${app.token.pool.time-to-live-ms:300000}")
+	long tiempoVidaMs;
+
+	/** Las conexiones sin uso por mas de este tiempo se validan antes de usarse */
+	@Value("${app.token.pool.validate-after-inactivity-ms:2000}")
+	long validarInactivaMs;
+
+	/** Tiempo de vida de las sesiones TLS en la cache del cliente */
+	@Value("${app.token.tls.session-timeout-s:3600}")
+	int duracionSesionSeg;
+
+	private final MeterRegistry meterRegistry;
+
+	/** Cliente compartido, se crea al iniciar la aplicacion */
+	private CloseableHttpClient httpClient;
+
+	public HttpClientFactory(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * Metodo para obtener el cliente compartido. El mismo cliente atiende HTTP
+	 * y HTTPS.
+	 * 
+	 * @return CloseableHttpClient cliente con pool de conexiones.
+	 */
+	public CloseableHttpClient getHttpClient() {
 		return httpClient;
 	}
 
 	/**
-	 * Metodo para crear la conexion del cliente por Http o Https
+	 * Metodo para crear el cliente con el pool de conexiones al iniciar la
+	 * aplicacion.
 	 * 
-	 * @return
-	 * @throws IOException
+	 * @throws Exception Excepción al cargar el almacen de certificados.
 	 */
-	public CloseableHttpClient createHttpsClient() throws Exception {
-		
+	@PostConstruct
+	public void inicializa() throws Exception {
+		if (System.getenv("app.url.token.valid") != null) {
+			urlTokenValid = System.getenv("app.url.token.valid");
+		}
+		PoolingHttpClientConnectionManagerBuilder builder = PoolingHttpClientConnectionManagerBuilder.create();
+		if (isHttps(urlTokenValid)) {
+			if (byPassCert || Files.isReadable(Path.of(fileKeyStore))) {
+				SSLContext sslContext = createSslContext();
+				SSLSessionContext sesiones = sslContext.getClientSessionContext();
+				sesiones.setSessionTimeout(duracionSesionSeg);
+				builder.setSSLSocketFactory(new SSLConnectionSocketFactory(sslContext));
+			} else {
+				log.error(new StringBuilder().append("No existe el almacen de certificados ").append(fileKeyStore)
+						.append(", el tokenizer se valida con los certificados de la JVM"));
+			}
+		}
+		httpClient = createHttpClient(builder);
+	}
+
+	/**
+	 * Metodo para crear el cliente con el pool de conexiones.
+	 * 
+	 * @param builder configuracion del pool, con el contexto SSL si aplica.
+	 * @return CloseableHttpClient cliente con pool de conexiones.
+	 */
+	private CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManagerBuilder builder) {
+		PoolingHttpClientConnectionManager connectionManager = builder
+				.setMaxConnTotal(maxTotal)
+				.setMaxConnPerRoute(maxPorRuta)
+				.setConnectionTimeToLive(TimeValue.ofMilliseconds(tiempoVidaMs))
+				.setValidateAfterInactivity(TimeValue.ofMilliseconds(validarInactivaMs))
+				.build();
+		new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "tokenizer").bindTo(meterRegistry);
+
+		DefaultConnectionKeepAliveStrategy keepAliveServidor = DefaultConnectionKeepAliveStrategy.INSTANCE;
+		TimeValue keepAliveMaximo = TimeValue.ofMilliseconds(keepAliveMs);
+		log.info(new StringBuilder().append("Cliente HTTP del tokenizer, conexiones: ").append(maxTotal)
+				.append(", por ruta: ").append(maxPorRuta));
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				/** Se usa el keep-alive del servidor, sin exceder el maximo configurado */
+				.setKeepAliveStrategy((response, context) -> keepAliveServidor
+						.getKeepAliveDuration(response, context).min(keepAliveMaximo))
+				.evictExpiredConnections()
+				.evictIdleConnections(TimeValue.ofMilliseconds(inactivaMs))
+				.build();
+	}
+
+	/**
+	 * Metodo para cerrar el cliente y sus conexiones al detener la aplicacion.
+	 */
+	@PreDestroy
+	public void cierra() {
+		if (httpClient != null) {
+			try {
+				httpClient.close();
+			} catch (IOException ex) {
+				log.info(new StringBuilder().append("Error al cerrar el cliente HTTP: ").append(ex.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * @param url url del tokenizer.
+	 * @return verdadero si la url usa HTTPS.
+	 */
+	private static boolean isHttps(String url) {
+		return url != null && url.trim().regionMatches(true, 0, "https:", 0, 6);
+	}
+
+	/**
+	 * Metodo para crear el contexto SSL con el almacen de certificados de
+	 * app.file.filejks, o sin validar certificados si app.bypass.cert es uno.
+	 * Se usa en las conexiones al tokenizer y a LDAP.
+	 * 
+	 * @return SSLContext contexto SSL.
+	 * @throws Exception Excepción al cargar el almacen de certificados.
+	 */
+	public SSLContext createSslContext() throws Exception {
 		SSLContext sslContext = null;
-		SSLConnectionSocketFactory sslConnSocketFactory = null;
 		if(!byPassCert) {
 			log.info("Validar Certificados");
 			sslContext = new SSLContextBuilder()
 					.loadTrustMaterial(new URL("file:" + fileKeyStore), trusStorePassword.toCharArray()).build();
-			sslConnSocketFactory = new SSLConnectionSocketFactory(sslContext);
-			
-			
-	    	Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
-	                .register("https", sslConnSocketFactory)
-	                .register("http", new PlainConnectionSocketFactory())
-	                .build();
-			
-	    	BasicHttpClientConnectionManager connectionManager =
-	                new BasicHttpClientConnectionManager(socketFactoryRegistry);
-
-	    	httpClient = HttpClients.custom()
-	                .setConnectionManager(connectionManager)
-	                .build();
-			
 		} else {
 			log.info("SIN Validar Certificados");
 			sslContext = SSLContext.getInstance(ConstantsSecurityAuth.SSL.getName());
 			sslContext.init(null, new TrustManager[] { MOCK_TRUST_MANAGER }, new SecureRandom());
-			sslConnSocketFactory = new SSLConnectionSocketFactory(sslContext);
-	    	Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
-	                .register("https", sslConnSocketFactory)
-	                .register("http", new PlainConnectionSocketFactory())
-	                .build();
-			
-	    	BasicHttpClientConnectionManager connectionManager =
-	                new BasicHttpClientConnectionManager(socketFactoryRegistry);
-
-	    	httpClient = HttpClients.custom()
-	                .setConnectionManager(connectionManager)
-	                .build();
 		}
-
-		return httpClient;
+		return sslContext;
 	}
 
 	
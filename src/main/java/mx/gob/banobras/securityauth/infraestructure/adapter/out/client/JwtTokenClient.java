@@ -0,0 +1,321 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * JwtTokenClient.java:
+ *
+ * Clase que valida localmente los tokens JWT del tokenizer: firma, vigencia
+ * (exp y nbf), audiencia, emisor y que el usuario y el aplicativo del token
+ * (claims configurables) sean los de la peticion. Las llaves de firma se
+ * obtienen de la URL JWKS del tokenizer (con cache que se refresca) o de un
+ * archivo local (JWKS o llave publica PEM). Si el token no es un JWT firmado,
+ * el algoritmo no es aceptado, la llave no se conoce, no se pueden obtener las
+ * llaves o el token no trae el usuario o el aplicativo, se valida con el
+ * tokenizer remoto (CachingTokenClient). Con app.token.jwt.enabled en cero
+ * siempre se usa el tokenizer remoto.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.DefaultJWKSetCache;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.jwk.source.RemoteJWKSet;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.DefaultResourceRetriever;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
+
+@Primary
+@Component
+public class JwtTokenClient implements ITokenClient {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(JwtTokenClient.class);
+
+	/** Prefijo del encabezado Authorization */
+	private static final String BEARER = "bearer ";
+
+	/** Cliente del tokenizer remoto, con cache */
+	private final ITokenClient cachingTokenClient;
+
+	/** Algoritmos de firma aceptados */
+	private final Set<JWSAlgorithm> algoritmos;
+
+	/** Fuente de las llaves de firma, nulo si la validacion local esta desactivada */
+	private final JWKSource<SecurityContext> llaves;
+
+	/** Procesador que valida la firma y los claims */
+	private final DefaultJWTProcessor<SecurityContext> procesador;
+
+	/** Claim con el usuario del token */
+	private final String claimUsuario;
+
+	/** Claim con el aplicativo del token */
+	private final String claimAplicativo;
+
+	/** Tokens validados localmente */
+	private final Counter validos;
+
+	/** Tokens rechazados localmente */
+	private final Counter invalidos;
+
+	/** Tokens validados con el tokenizer remoto */
+	private final Counter remotos;
+
+	/**
+	 * Constructor del validador local de tokens.
+	 *
+	 * @param cachingTokenClient cliente del tokenizer remoto.
+	 * @param activo             con el valor uno se validan los JWT localmente.
+	 * @param jwksUrl            URL del JWKS del tokenizer.
+	 * @param keyFile            archivo local con el JWKS o la llave publica PEM,
+	 *                           se usa si no hay URL.
+	 * @param algoritmos         algoritmos de firma aceptados, separados por coma.
+	 * @param audiencia          audiencia requerida, vacio para no validarla.
+	 * @param emisor             emisor requerido, vacio para no validarlo.
+	 * @param claimUsuario       claim que debe coincidir con el usuario.
+	 * @param claimAplicativo    claim que debe coincidir con el aplicativo.
+	 * @param margenSeg          tolerancia del reloj para exp y nbf, en segundos.
+	 * @param cacheSeg           tiempo de vida del JWKS en cache, en segundos.
+	 * @param refrescoSeg        tiempo despues del cual se refresca el JWKS.
+	 * @param connectTimeoutMs   tiempo maximo para conectar a la URL JWKS.
+	 * @param readTimeoutMs      tiempo maximo de respuesta de la URL JWKS.
+	 * @param httpClientFactory  fabrica con el almacen de certificados.
+	 * @param meterRegistry      registro de metricas.
+	 * @throws Exception Excepción al leer el archivo de llaves o el almacen de
+	 *                   certificados.
+	 */
+	public JwtTokenClient(@Qualifier("cachingTokenClient") ITokenClient cachingTokenClient,
+			@Value("${app.token.jwt.enabled:0}") boolean activo,
+			@Value("${app.token.jwt.jwks-url:}") String jwksUrl,
+			@Value("${app.token.jwt.key-file:}") String keyFile,
+			@Value("${app.token.jwt.algorithms:RS256}") String algoritmos,
+			@Value("${app.token.jwt.audience:}") String audiencia,
+			@Value("${app.token.jwt.issuer:}") String emisor,
+			@Value("${app.token.jwt.user-claim:sub}") String claimUsuario,
+			@Value("${app.token.jwt.app-claim:app}") String claimAplicativo,
+			@Value("${app.token.jwt.clock-skew-seconds:30}") int margenSeg,
+			@Value("${app.token.jwt.jwks-cache-seconds:3600}") long cacheSeg,
+			@Value("${app.token.jwt.jwks-refresh-seconds:300}") long refrescoSeg,
+			@Value("${app.token.connect-timeout-ms:3000}") int connectTimeoutMs,
+			@Value("${app.token.read-timeout-ms:10000}") int readTimeoutMs, HttpClientFactory httpClientFactory,
+			MeterRegistry meterRegistry) throws Exception {
+		this.cachingTokenClient = cachingTokenClient;
+		this.claimUsuario = claimUsuario.trim();
+		this.claimAplicativo = claimAplicativo.trim();
+		this.algoritmos = Arrays.stream(algoritmos.split(",")).map(String::trim).filter(a -> !a.isEmpty())
+				.map(JWSAlgorithm::parse).collect(Collectors.toSet());
+		this.validos = contador("valid", meterRegistry);
+		this.invalidos = contador("invalid", meterRegistry);
+		this.remotos = contador("remote", meterRegistry);
+
+		if (!activo || (jwksUrl.isBlank() && keyFile.isBlank())) {
+			this.llaves = null;
+			this.procesador = null;
+			return;
+		}
+		if (!jwksUrl.isBlank()) {
+			URL url = new URL(jwksUrl.trim());
+			SSLSocketFactory sslSocketFactory = "https".equalsIgnoreCase(url.getProtocol())
+					? httpClientFactory.createSslContext().getSocketFactory()
+					: null;
+			/** Con una llave desconocida se vuelve a consultar el JWKS (rotacion de llaves) */
+			this.llaves = new RemoteJWKSet<>(url,
+					new DefaultResourceRetriever(connectTimeoutMs, readTimeoutMs,
+							RemoteJWKSet.DEFAULT_HTTP_SIZE_LIMIT, true, sslSocketFactory),
+					new DefaultJWKSetCache(cacheSeg, refrescoSeg, TimeUnit.SECONDS));
+			log.info(new StringBuilder().append("Validacion local de JWT con JWKS: ").append(url));
+		} else {
+			this.llaves = new ImmutableJWKSet<>(leeLlaves(Path.of(keyFile.trim())));
+			log.info(new StringBuilder().append("Validacion local de JWT con el archivo: ").append(keyFile));
+		}
+
+		/** Nimbus consulta los conjuntos con valores nulos, no se usa Set.of */
+		DefaultJWTClaimsVerifier<SecurityContext> verificador = new DefaultJWTClaimsVerifier<>(
+				audiencia.isBlank() ? null : new HashSet<>(List.of(audiencia.trim())),
+				emisor.isBlank() ? null : new JWTClaimsSet.Builder().issuer(emisor.trim()).build(),
+				new HashSet<>(List.of("exp")), null);
+		verificador.setMaxClockSkew(margenSeg);
+		this.procesador = new DefaultJWTProcessor<>();
+		this.procesador.setJWSKeySelector(new JWSVerificationKeySelector<>(this.algoritmos, this.llaves));
+		this.procesador.setJWTClaimsSetVerifier(verificador);
+	}
+
+	/**
+	 * Metodo para validar el token, localmente si es un JWT con una llave
+	 * conocida que trae el usuario y el aplicativo, o con el tokenizer remoto.
+	 *
+	 * @param securityAuthDTO componente que contiene los datos del token.
+	 * @return TokenizerResponseDTO resultado de la validacion.
+	 */
+	@Override
+	public TokenizerResponseDTO validToken(SecurityAuthDTO securityAuthDTO) {
+		SignedJWT jwt = procesador == null ? null : firmado(securityAuthDTO.getTokenAuth());
+		if (jwt == null || !llaveConocida(jwt)) {
+			remotos.increment();
+			return cachingTokenClient.validToken(securityAuthDTO);
+		}
+		try {
+			JWTClaimsSet claims = procesador.process(jwt, null);
+			Boolean usuario = corresponde(claims, claimUsuario, securityAuthDTO.getUserName());
+			Boolean aplicativo = corresponde(claims, claimAplicativo, securityAuthDTO.getAppName());
+			if (usuario == null || aplicativo == null) {
+				/** Sin el usuario o el aplicativo el token no se puede ligar a la peticion */
+				remotos.increment();
+				return cachingTokenClient.validToken(securityAuthDTO);
+			}
+			if (!usuario || !aplicativo) {
+				throw new BadJOSEException(new StringBuilder().append("El token no corresponde al ")
+						.append(usuario ? "aplicativo" : "usuario").append(" de la peticion").toString());
+			}
+			validos.increment();
+			TokenDTO tokenDTO = new TokenDTO();
+			tokenDTO.valid = true;
+			tokenDTO.token = securityAuthDTO.getTokenAuth();
+			return new TokenizerResponseDTO(HttpStatus.OK.value(), tokenDTO, null);
+		} catch (BadJOSEException | JOSEException ex) {
+			invalidos.increment();
+			log.info(new StringBuilder().append("Token rechazado localmente: ").append(ex.getMessage()));
+			return new TokenizerResponseDTO(HttpStatus.UNAUTHORIZED.value(), null,
+					new ErrorMessageDTO(HttpStatus.UNAUTHORIZED.value(), new Date(),
+							ConstantsSecurityAuth.MSG_TOKEN_INVALID.getName(), ex.getMessage()));
+		}
+	}
+
+	/**
+	 * Metodo para comparar un claim del token con el valor de la peticion, sin
+	 * distinguir mayusculas. El claim puede ser una lista de valores.
+	 *
+	 * @param claims claims del token validado.
+	 * @param nombre nombre del claim.
+	 * @param valor  valor de la peticion.
+	 * @return Boolean nulo si el claim o el valor no existen.
+	 */
+	static Boolean corresponde(JWTClaimsSet claims, String nombre, String valor) {
+		Object claim = nombre.isEmpty() ? null : claims.getClaim(nombre);
+		if (claim == null || valor == null || valor.isBlank()) {
+			return null;
+		}
+		String buscado = valor.trim();
+		if (claim instanceof Collection<?> valores) {
+			return valores.stream().anyMatch(v -> v != null && buscado.equalsIgnoreCase(String.valueOf(v).trim()));
+		}
+		return buscado.equalsIgnoreCase(String.valueOf(claim).trim());
+	}
+
+	/**
+	 * Metodo para abrir la conexion con el tokenizer y cargar las llaves de
+	 * firma antes de recibir peticiones.
+	 */
+	@Override
+	public boolean precalienta(long timeoutMs) {
+		if (llaves != null) {
+			try {
+				llaves.get(new JWKSelector(new JWKMatcher.Builder().build()), null);
+			} catch (Exception ex) {
+				log.info(new StringBuilder().append("No se pudieron obtener las llaves JWKS al iniciar: ")
+						.append(ex.getMessage()));
+			}
+		}
+		return cachingTokenClient.precalienta(timeoutMs);
+	}
+
+	/**
+	 * @return JWT firmado con un algoritmo aceptado, nulo si el token es opaco.
+	 */
+	private SignedJWT firmado(String token) {
+		if (token == null || token.isBlank()) {
+			return null;
+		}
+		String valor = token.trim();
+		if (valor.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+			valor = valor.substring(BEARER.length()).trim();
+		}
+		try {
+			SignedJWT jwt = SignedJWT.parse(valor);
+			return algoritmos.contains(jwt.getHeader().getAlgorithm()) ? jwt : null;
+		} catch (ParseException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Metodo para saber si existe la llave de firma del token, la fuente
+	 * remota vuelve a consultar el JWKS si no la encuentra.
+	 */
+	private boolean llaveConocida(SignedJWT jwt) {
+		try {
+			List<JWK> encontradas = llaves.get(new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader())), null);
+			return !encontradas.isEmpty();
+		} catch (Exception ex) {
+			log.info(new StringBuilder().append("No se pudieron obtener las llaves JWKS: ").append(ex.getMessage()));
+			return false;
+		}
+	}
+
+	/**
+	 * Metodo para leer las llaves del archivo local, JWKS en JSON o llaves
+	 * publicas en formato PEM.
+	 */
+	private static JWKSet leeLlaves(Path archivo) throws Exception {
+		String contenido = Files.readString(archivo, StandardCharsets.UTF_8).trim();
+		if (contenido.startsWith("{")) {
+			return JWKSet.parse(contenido);
+		}
+		return new JWKSet(JWK.parseFromPEMEncodedObjects(contenido));
+	}
+
+	private static Counter contador(String resultado, MeterRegistry meterRegistry) {
+		return Counter.builder("token.jwt.validations").tag("result", resultado.toLowerCase(Locale.ROOT))
+				.description("Validaciones de token por resultado: valid e invalid locales, remote con el tokenizer")
+				.register(meterRegistry);
+	}
+
+}
@@ -0,0 +1,189 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapAttributeDecoder.java:
+ *
+ * Clase para leer los atributos del usuario directamente de sus valores, sin
+ * convertir el atributo o el resultado completo a cadena (Attribute.toString
+ * y SearchResult.toString) ni usar excepciones para los atributos que no
+ * existen. Los atributos ausentes regresan cadena vacia, cero o nulo.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchResult;
+
+public final class LdapAttributeDecoder {
+
+	/** Unidad organizacional de las cuentas deshabilitadas */
+	public static final String OU_DESHABILITADAS = "Disabled Accounts";
+
+	/** Bit ACCOUNTDISABLE de userAccountControl */
+	public static final int ACCOUNTDISABLE = 0x2;
+
+	/** Milisegundos entre 1601-01-01 (FILETIME) y 1970-01-01 */
+	private static final long EPOCA_FILETIME_MS = 11644473600000L;
+
+	/** Valores de lockoutTime menores no son fechas (cero, sin bloqueo) */
+	private static final long MINIMO_FILETIME = 100_000L;
+
+	private LdapAttributeDecoder() {
+	}
+
+	/**
+	 * Metodo para obtener el valor de un atributo como texto, los atributos
+	 * con varios valores se separan con coma.
+	 *
+	 * @param attrs  atributos del usuario.
+	 * @param nombre nombre del atributo.
+	 * @return String valor sin espacios al inicio y final, vacio si no existe.
+	 * @throws NamingException Excepción al leer los valores del atributo.
+	 */
+	public static String texto(Attributes attrs, String nombre) throws NamingException {
+		Attribute attr = attrs.get(nombre);
+		if (attr == null || attr.size() == 0) {
+			return "";
+		}
+		if (attr.size() == 1) {
+			return cadena(attr.get()).trim();
+		}
+		StringBuilder valores = new StringBuilder();
+		for (int i = 0; i < attr.size(); i++) {
+			if (i > 0) {
+				valores.append(", ");
+			}
+			valores.append(cadena(attr.get(i)));
+		}
+		return valores.toString().trim();
+	}
+
+	/**
+	 * Metodo para obtener el valor numerico de un atributo.
+	 *
+	 * @param attrs  atributos del usuario.
+	 * @param nombre nombre del atributo.
+	 * @return int valor del atributo, cero si no existe o no es numerico.
+	 * @throws NamingException Excepción al leer los valores del atributo.
+	 */
+	public static int entero(Attributes attrs, String nombre) throws NamingException {
+		long valor = largo(attrs, nombre);
+		return valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE ? 0 : (int) valor;
+	}
+
+	/**
+	 * Metodo para obtener la fecha de un atributo en formato FILETIME de
+	 * Directorio Activo (intervalos de 100 ns desde 1601), como lockoutTime.
+	 *
+	 * @param attrs  atributos del usuario.
+	 * @param nombre nombre del atributo.
+	 * @return Date fecha, nulo si no existe o es cero.
+	 * @throws NamingException Excepción al leer los valores del atributo.
+	 */
+	public static Date fecha(Attributes attrs, String nombre) throws NamingException {
+		long fileTime = largo(attrs, nombre);
+		if (fileTime < MINIMO_FILETIME) {
+			return null;
+		}
+		return new Date(fileTime / 10000L - EPOCA_FILETIME_MS);
+	}
+
+	/**
+	 * Metodo para saber si la cuenta esta activa, la cuenta esta deshabilitada
+	 * si se encuentra en la unidad organizacional Disabled Accounts o tiene el
+	 * bit ACCOUNTDISABLE en userAccountControl.
+	 *
+	 * @param match resultado de la busqueda.
+	 * @param attrs atributos del usuario.
+	 * @return Integer uno si la cuenta esta activa, cero si esta deshabilitada.
+	 * @throws NamingException Excepción al leer los valores del atributo.
+	 */
+	public static Integer activo(SearchResult match, Attributes attrs) throws NamingException {
+		if (contiene(dn(match), OU_DESHABILITADAS)) {
+			return 0;
+		}
+		return (largo(attrs, "userAccountControl") & ACCOUNTDISABLE) != 0 ? 0 : 1;
+	}
+
+	/**
+	 * Metodo para leer el primer valor de un atributo como numero, sin crear
+	 * cadenas intermedias.
+	 *
+	 * @param attrs  atributos del usuario.
+	 * @param nombre nombre del atributo.
+	 * @return long valor del atributo, cero si no existe o no es numerico.
+	 * @throws NamingException Excepción al leer los valores del atributo.
+	 */
+	static long largo(Attributes attrs, String nombre) throws NamingException {
+		Attribute attr = attrs.get(nombre);
+		if (attr == null || attr.size() == 0 || !(attr.get() instanceof String valor)) {
+			return 0;
+		}
+		int inicio = 0;
+		int fin = valor.length();
+		while (inicio < fin && valor.charAt(inicio) == ' ') {
+			inicio++;
+		}
+		while (fin > inicio && valor.charAt(fin - 1) == ' ') {
+			fin--;
+		}
+		boolean negativo = inicio < fin && valor.charAt(inicio) == '-';
+		if (negativo) {
+			inicio++;
+		}
+		/** Hasta 18 digitos no hay desbordamiento en long */
+		if (inicio == fin || fin - inicio > 18) {
+			return 0;
+		}
+		long resultado = 0;
+		for (int i = inicio; i < fin; i++) {
+			char c = valor.charAt(i);
+			if (c < '0' || c > '9') {
+				return 0;
+			}
+			resultado = resultado * 10 + (c - '0');
+		}
+		return negativo ? -resultado : resultado;
+	}
+
+	/**
+	 * @return DN del resultado, el nombre relativo si el proveedor no lo
+	 *         asigna.
+	 */
+	private static String dn(SearchResult match) {
+		try {
+			return match.getNameInNamespace();
+		} catch (UnsupportedOperationException ex) {
+			return match.getName();
+		}
+	}
+
+	/** Busqueda sin distinguir mayusculas y minusculas, sin copiar la cadena */
+	private static boolean contiene(String texto, String buscado) {
+		if (texto == null) {
+			return false;
+		}
+		for (int i = 0, ultimo = texto.length() - buscado.length(); i <= ultimo; i++) {
+			if (texto.regionMatches(true, i, buscado, 0, buscado.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String cadena(Object valor) {
+		if (valor instanceof byte[] bytes) {
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		return valor == null ? "" : valor.toString();
+	}
+
+}
@@ -16,33 +16,43 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
-import java.util.Map;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.naming.AuthenticationException;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import mx.gob.banobras.securityauth.application.port.out.ILdapClient;
 import mx.gob.banobras.securityauth.common.util.CipherAESCommon;
 import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.common.util.DeadlineExceededException;
+import mx.gob.banobras.securityauth.common.util.LdapFilterUtil;
+import mx.gob.banobras.securityauth.infraestructure.config.LdapAttributeProfiles;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
 
-@Component
+/** Con el perfil synthetic se usa SyntheticLdapClient */
+@Profile("!synthetic")
+@Component("ldapDirectoryClient")
 public class LdapClient implements ILdapClient {
 
 	/** Variable para las trazas de la clase */
@@ -72,10 +82,66 @@ public class LdapClient implements ILdapClient {
 	@Value("${app.ldap.validate}")
 	boolean ldapValidate;
 
+	/**
+	 * Con el valor uno el password se valida con un bind en el pool de
+	 * validacion, sin repetir la busqueda del usuario
+	 */
+	@Value("${app.ldap.pwd.rebind:1}")
+	boolean ldapPwdRebind;
+
+	/** Tiempo maximo para conectar con LDAP, en milisegundos */
+	@Value("${app.ldap.connect-timeout-ms:3000}")
+	long ldapConnectTimeoutMs;
+
+	/** Tiempo maximo de espera de cada respuesta de LDAP, en milisegundos */
+	@Value("${app.ldap.read-timeout-ms:10000}")
+	long ldapReadTimeoutMs;
+
+	/** Atributos del usuario que se consultan en LDAP */
+	static final String[] ATRIBUTOS_USUARIO = { "uid", "cn", "sn", "initials", "displayname", "givenName",
+			"mail", "department", "company", "sAMAccountName", "userPrincipalName", "title", "mailNickname",
+			"telephoneNumber", "userAccountControl", "badPwdCount", "lockoutTime", "badPasswordTime",
+			"accountExpires", ConstantsSecurityAuth.MEMBER_OF.getName() };
+
 	private final CipherAESCommon cipherAESCommon;
 
-	public LdapClient(CipherAESCommon cipherAESCommon) {
+	/** Pool de conexiones con el usuario de servicio */
+	private final LdapContextPool ldapServicePool;
+
+	/** Pool de conexiones para validar el password de los usuarios */
+	private final LdapContextPool ldapBindPool;
+
+	/** Componente para obtener los grupos del atributo memberOf */
+	private final MemberOfParser memberOfParser;
+
+	/** Componente para obtener los grupos anidados */
+	private final NestedGroupResolver nestedGroupResolver;
+
+	/** Perfiles de atributos de los datos del usuario */
+	private final LdapAttributeProfiles ldapAttributeProfiles;
+
+	/** Replica en memoria de los usuarios */
+	private final LdapUserReplica ldapUserReplica;
+
+	/** Control local de intentos fallidos */
+	private final LoginAttemptTracker loginAttemptTracker;
+
+	/** Soporte de TLS de las conexiones */
+	private final LdapTlsSupport ldapTlsSupport;
+
+	public LdapClient(CipherAESCommon cipherAESCommon, LdapContextPool ldapServicePool,
+			LdapContextPool ldapBindPool, MemberOfParser memberOfParser, NestedGroupResolver nestedGroupResolver,
+			LdapAttributeProfiles ldapAttributeProfiles, LdapUserReplica ldapUserReplica,
+			LoginAttemptTracker loginAttemptTracker, LdapTlsSupport ldapTlsSupport) {
 		this.cipherAESCommon = cipherAESCommon;
+		this.ldapServicePool = ldapServicePool;
+		this.ldapBindPool = ldapBindPool;
+		this.memberOfParser = memberOfParser;
+		this.nestedGroupResolver = nestedGroupResolver;
+		this.ldapAttributeProfiles = ldapAttributeProfiles;
+		this.ldapUserReplica = ldapUserReplica;
+		this.loginAttemptTracker = loginAttemptTracker;
+		this.ldapTlsSupport = ldapTlsSupport;
 	}
 	
 	private void ObtenerValoresOpenShift() {
@@ -96,28 +162,71 @@ public class LdapClient implements ILdapClient {
 		}
 	}
 
-	private InitialDirContext conexionLdap(boolean findUserPwd, SecurityAuthDTO securityAuthDTO)
+	private InitialDirContext conexionLdap(SecurityAuthDTO securityAuthDTO)
 			throws NamingException {
 		/** Se realiza la asignacion de variables desde OpenShift */
 		ObtenerValoresOpenShift();
-		InitialDirContext ctx = null;
 		Hashtable<String, String> env = new Hashtable<>();
 		env.put(Context.SECURITY_AUTHENTICATION, "simple");
 		env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-		env.put(Context.PROVIDER_URL, ldapServer);
+		/** Con varios servidores JNDI los intenta en orden */
+		env.put(Context.PROVIDER_URL, ldapServer.replace(',', ' '));
 		
 		/** Se realiza la conexion con el usuario y pasword del usuario */
-		if (findUserPwd) {
-			env.put(Context.SECURITY_PRINCIPAL, securityAuthDTO.getUserName() + ldapDominioMail);
-			env.put(Context.SECURITY_CREDENTIALS, securityAuthDTO.getPassword());
-			ctx = new InitialDirContext(env);
-		} else {
-			/** Se realiza la conexion con usuario y pasword del servicio */
-			env.put(Context.SECURITY_PRINCIPAL, ldapUsername);
-			env.put(Context.SECURITY_CREDENTIALS, ldapPassword);
-			ctx = new InitialDirContext(env);
+		env.put(Context.SECURITY_PRINCIPAL, securityAuthDTO.getUserName() + ldapDominioMail);
+		env.put(Context.SECURITY_CREDENTIALS, securityAuthDTO.getPassword());
+		/** Los tiempos de espera no exceden el tiempo restante de la peticion */
+		env.put(ConstantsSecurityAuth.LDAP_CONNECT_TIMEOUT.getName(),
+				String.valueOf(Deadline.restanteMs(securityAuthDTO.getDeadline(), ldapConnectTimeoutMs)));
+		env.put(ConstantsSecurityAuth.LDAP_READ_TIMEOUT.getName(),
+				String.valueOf(Deadline.restanteMs(securityAuthDTO.getDeadline(), ldapReadTimeoutMs)));
+		return ldapTlsSupport.conecta(env);
+	}
+
+	/**
+	 * Metodo para buscar el usuario en la replica en memoria, solo sin
+	 * validacion de password y si la replica esta activa.
+	 * 
+	 * @param securityAuthDTO - Datos del usuario a buscar.
+	 * @return LdapVO datos del usuario, nulo si no esta en la replica.
+	 */
+	private LdapVO buscaUsuarioReplica(SecurityAuthDTO securityAuthDTO) throws NamingException {
+		if (!securityAuthDTO.isValidUserPwd() && ldapUserReplica.isDisponible()
+				&& !nestedGroupResolver.requiereConexion()) {
+			SearchResult match = ldapUserReplica.busca(securityAuthDTO.getUserName());
+			if (match != null) {
+				log.info(new StringBuilder().append("Usuario obtenido de la replica: ")
+						.append(securityAuthDTO.getUserName()));
+				return creaLdapVO(null, match, securityAuthDTO.getAppName(), null, 0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Metodo para buscar el usuario con una conexion del pool del usuario de
+	 * servicio, la conexion se regresa al pool al terminar la busqueda.
+	 * 
+	 * @param securityAuthDTO - Datos del usuario a buscar.
+	 * @return LdapVO datos del usuario, nulo si no existe.
+	 */
+	private LdapVO buscaUsuarioServicio(SecurityAuthDTO securityAuthDTO)
+			throws InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, NamingException {
+		/** Se realiza la asignacion de variables desde OpenShift */
+		ObtenerValoresOpenShift();
+		InitialLdapContext ctx = ldapServicePool.borrow();
+		try {
+			return buscaUsuario(ctx, securityAuthDTO);
+		} catch (CommunicationException | ServiceUnavailableException ex) {
+			ldapServicePool.invalidate(ctx);
+			ctx = null;
+			throw ex;
+		} finally {
+			if (ctx != null) {
+				ldapServicePool.release(ctx);
+			}
 		}
-		return ctx;
 	}
 
 	/**
@@ -158,30 +267,65 @@ public class LdapClient implements ILdapClient {
 
 		/** Condicion para validar en LDAP */
 		if (ldapValidate) {
+			Deadline.verifica(securityAuthDTO.getDeadline());
 			log.info("Se valida usuario en LDAP");
 			log.info("La validacion es por usuario en credentials.");
 			userName = securityAuthDTO.getUserName();
 
+			/** Una cuenta bloqueada se rechaza sin enviar el bind a LDAP */
+			if (securityAuthDTO.isValidUserPwd() && loginAttemptTracker.estaBloqueado(userName)) {
+				ldapResponseDTO.setStatusCode(403);
+				ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
+				errorMessageDTO.setStatusCode(3);
+				errorMessageDTO.setTimestamp(new Date());
+				errorMessageDTO.setMessage(ConstantsSecurityAuth.MSG_USER_BLOCKED_FAILED_ATTEMPTS.getName());
+				ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
+				return ldapResponseDTO;
+			}
+
 			// Valida solo el usuario
-			InitialDirContext ctx = conexionLdap(false, securityAuthDTO);
-			dataLdapVO = buscaUsuario(ctx, securityAuthDTO);
+			/** Sin validacion de password el usuario se toma de la replica si esta activa */
+			LdapVO replicaLdapVO = buscaUsuarioReplica(securityAuthDTO);
+			dataLdapVO = replicaLdapVO != null ? replicaLdapVO : buscaUsuarioServicio(securityAuthDTO);
 			if (dataLdapVO != null) {
 
 				log.info(new StringBuilder().append("Si existe el usuario en LDAP: ").append(userName));
-				
-				if(dataLdapVO.getIntentosFallidos() <= 3) {
+
+				/**
+				 * AD no replica badPwdCount ni badPasswordTime y sus cambios no
+				 * actualizan uSNChanged, con datos de la replica solo se usan los
+				 * intentos locales
+				 */
+				boolean bloqueado = replicaLdapVO != null ? loginAttemptTracker.estaBloqueado(userName)
+						: loginAttemptTracker.sincroniza(userName, dataLdapVO.getIntentosFallidos(),
+								dataLdapVO.getFecBloqueoPassword(), dataLdapVO.getFecUltimoFallo());
+				if (!bloqueado) {
 				
 					if (securityAuthDTO.isValidUserPwd()) {
+						InitialDirContext ctx2 = null;
 						try {
 							log.info("La validacion es por password.");
 							/** valida el usuario y el password */
-							InitialDirContext ctx2 = conexionLdap(securityAuthDTO.isValidUserPwd(), securityAuthDTO);
-							dataLdapVO = buscaUsuario(ctx2, securityAuthDTO);
+							if (ldapPwdRebind) {
+								validaPassword(securityAuthDTO);
+							} else {
+								ctx2 = conexionLdap(securityAuthDTO);
+								dataLdapVO = buscaUsuario(ctx2, securityAuthDTO);
+							}
+							loginAttemptTracker.registraExito(userName);
 							ldapResponseDTO.setStatusCode(200);
 							LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
 							ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
 	
+						} catch (CommunicationException | ServiceUnavailableException ce) {
+							/** Sin comunicacion con LDAP no se puede decir que el password sea incorrecto */
+							throw ce;
 						} catch (Exception ee) {
+							/** Sin tiempo restante no se puede decir que el password sea incorrecto */
+							if (securityAuthDTO.getDeadline() != null && securityAuthDTO.getDeadline().isVencido()) {
+								throw new DeadlineExceededException(ee);
+							}
+							loginAttemptTracker.registraFallo(userName);
 							ldapResponseDTO.setStatusCode(403);		
 							ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
 							errorMessageDTO.setStatusCode(2);
@@ -191,6 +335,8 @@ public class LdapClient implements ILdapClient {
 							ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
 							ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
 							log.info(new StringBuilder().append("EL password es incorrecto."));
+						} finally {
+							cerrarConexion(ctx2);
 						}
 					}else {
 						log.info("La validacion es por uauario.");
@@ -208,7 +354,7 @@ public class LdapClient implements ILdapClient {
 					LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
 					ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
 					ldapResponseDTO.setErrorMessageDTO(errorMessageDTO);
-					log.info(new StringBuilder().append("Usuario bloqueado por 3 intentos fallidos."));
+					log.info(new StringBuilder().append("Usuario bloqueado por intentos fallidos."));
 				}
 
 			} else {
@@ -224,7 +370,7 @@ public class LdapClient implements ILdapClient {
 		} else {
 			dataLdapVO = new LdapVO("usuario01", "*****", "10001", "20002", "usuario01 prueba", "usuario01",
 					"Experto Técnico", "Area Prueba", "1530", 1, "usuario01@banobras.gob.mx",
-					"Usuario01Prueba@banobras.gob.mx", 0, null, null, null, null);
+					"Usuario01Prueba@banobras.gob.mx", 0, null, null, null, null, null, null);
 			
 			ldapResponseDTO.setStatusCode(200);
 			LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
@@ -238,51 +384,119 @@ public class LdapClient implements ILdapClient {
 			throws InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
 			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, NamingException {
 
-		List<String> listaGrupoApp = null;
-		List<String> listaGrupoAll = null;
 		LdapVO dataLdapVO = null;
 
 		/** Busca un usuario en especifico */
-		String searchFilter = "(samaccountName=" + securityAuthDTO.getUserName() + ")";
+		/** El usuario se escapa para que no altere el filtro */
+		String searchFilter = "(samaccountName=" + LdapFilterUtil.escapaValor(securityAuthDTO.getUserName())
+				+ ")";
 		/** crea los filtros a buscar en LDAP */
-		String[] reqAtt = { "uid", "cn", "sn", "initials", "displayname", "givenName", "mail", "department", "company",
-				"sAMAccountName", "userPrincipalName", "title", "mailNickname", "telephoneNumber", "userAccountControl",
-				"badPwdCount", "lockoutTime", "accountExpires", ConstantsSecurityAuth.MEMBER_OF.getName() };
 		SearchControls controls = new SearchControls();
 		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-		controls.setReturningAttributes(reqAtt);
+		controls.setReturningAttributes(ATRIBUTOS_USUARIO);
+		controls.setTimeLimit(limiteBusqueda(securityAuthDTO));
 		NamingEnumeration<SearchResult> objs = ctx.search(ldapSearchBase, searchFilter, controls);
 
 		if (objs.hasMoreElements()) {
 
 			while (objs.hasMoreElements()) {
 				SearchResult match = objs.nextElement();
-				Attributes attrs = match.getAttributes();
-
-				try {
-					/** Variable para guardar todos los perfiles a los que pertence el usuario */
-					listaGrupoApp = findGroupsApp(attrs.get("memberOf").toString(), securityAuthDTO.getAppName());
-					/** Variable para guardar todos los grupos a los que pertence el usuario */
-					listaGrupoAll = findGroupsAll(attrs.get("memberOf").toString());
-				} catch (Exception exnull) {
-					listaGrupoAll = null;
-				}
-
-				dataLdapVO = new LdapVO(cleanText(attrs, "sAMAccountName"),
+				dataLdapVO = creaLdapVO(ctx, match, securityAuthDTO.getAppName(),
 						securityAuthDTO.isValidUserPwd()
 								? cipherAESCommon.encryptStringToAesHex(securityAuthDTO.getPassword())
 								: null,
-						cleanText(attrs, "initials"), cleanText(attrs, "userAccountControl"), cleanText(attrs, "cn"),
-						cleanText(attrs, "givenName"), cleanText(attrs, "title"), cleanText(attrs, "department"),
-						cleanText(attrs, "telephoneNumber"), findDisabled(match, "Disabled Accounts"),
-						cleanText(attrs, "userPrincipalName"), cleanText(attrs, "mail"),
-						cleanTextToInteger(attrs, "badPwdCount"), ldapDateToDateTime(cleanText(attrs, "lockoutTime")),
-						listaGrupoApp, listaGrupoAll, null);
+						controls.getTimeLimit());
 			}
 		}
+		objs.close();
 		return dataLdapVO;
 	}
 
+	/**
+	 * Metodo para crear los datos del usuario a partir del resultado de la
+	 * busqueda.
+	 * 
+	 * @param ctx             conexion con la que se busco al usuario.
+	 * @param match           resultado de la busqueda.
+	 * @param appName         aplicativo para filtrar los grupos.
+	 * @param passwordCifrado password cifrado del usuario, nulo si no se valida.
+	 * @param limiteMs        tiempo limite de la busqueda de grupos anidados,
+	 *                        cero sin limite.
+	 * @return LdapVO datos del usuario.
+	 * @throws NamingException Excepción al leer los atributos.
+	 */
+	private LdapVO creaLdapVO(InitialDirContext ctx, SearchResult match, String appName, String passwordCifrado,
+			int limiteMs) throws NamingException {
+		List<String> listaGrupoApp = null;
+		List<String> listaGrupoAll = null;
+		Attributes attrs = match.getAttributes();
+
+		/** Obtiene en una sola pasada los perfiles del aplicativo y todos los grupos */
+		MemberOfParser.Grupos grupos = obtenGrupos(ctx, match, appName, limiteMs);
+		if (grupos != null) {
+			listaGrupoApp = grupos.grupoAplicativo();
+			listaGrupoAll = grupos.todos();
+		}
+
+		return new LdapVO(LdapAttributeDecoder.texto(attrs, "sAMAccountName"), passwordCifrado,
+				LdapAttributeDecoder.texto(attrs, "initials"), LdapAttributeDecoder.texto(attrs, "userAccountControl"),
+				LdapAttributeDecoder.texto(attrs, "cn"), LdapAttributeDecoder.texto(attrs, "givenName"),
+				LdapAttributeDecoder.texto(attrs, "title"), LdapAttributeDecoder.texto(attrs, "department"),
+				LdapAttributeDecoder.texto(attrs, "telephoneNumber"), LdapAttributeDecoder.activo(match, attrs),
+				LdapAttributeDecoder.texto(attrs, "userPrincipalName"), LdapAttributeDecoder.texto(attrs, "mail"),
+				LdapAttributeDecoder.entero(attrs, "badPwdCount"), LdapAttributeDecoder.fecha(attrs, "lockoutTime"),
+				LdapAttributeDecoder.fecha(attrs, "badPasswordTime"), listaGrupoApp, listaGrupoAll, null, null);
+	}
+
+	/**
+	 * Metodo para buscar varios usuarios con una sola busqueda, con el filtro
+	 * (|(sAMAccountName=a)(sAMAccountName=b)...) en una conexion del pool.
+	 * 
+	 * @param userNames usuarios a buscar.
+	 * @param appName   aplicativo para filtrar los grupos.
+	 * @return List datos de los usuarios encontrados.
+	 * @throws NamingException Excepción durante la busqueda en LDAP.
+	 */
+	@Override
+	public List<LdapVO> allDataUsersLdap(List<String> userNames, String appName) throws NamingException {
+		/** Se realiza la asignacion de variables desde OpenShift */
+		ObtenerValoresOpenShift();
+		List<LdapVO> usuarios = new ArrayList<>(userNames.size());
+		if (userNames.isEmpty()) {
+			return usuarios;
+		}
+		StringBuilder searchFilter = new StringBuilder(userNames.size() * 32).append("(|");
+		for (String userName : userNames) {
+			searchFilter.append("(sAMAccountName=").append(LdapFilterUtil.escapaValor(userName)).append(")");
+		}
+		searchFilter.append(")");
+
+		SearchControls controls = new SearchControls();
+		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		controls.setReturningAttributes(ATRIBUTOS_USUARIO);
+
+		InitialLdapContext ctx = ldapServicePool.borrow();
+		try {
+			NamingEnumeration<SearchResult> objs = ctx.search(ldapSearchBase, searchFilter.toString(), controls);
+			try {
+				while (objs.hasMore()) {
+					usuarios.add(creaLdapVO(ctx, objs.next(), appName, null, controls.getTimeLimit()));
+				}
+			} finally {
+				objs.close();
+			}
+		} catch (CommunicationException | ServiceUnavailableException ex) {
+			ldapServicePool.invalidate(ctx);
+			ctx = null;
+			throw ex;
+		} finally {
+			if (ctx != null) {
+				ldapServicePool.release(ctx);
+			}
+		}
+		return usuarios;
+	}
+
 	@Override
 	public LdapVO allDataUserLdap(SecurityAuthDTO securityAuthDTO)
 			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
@@ -293,156 +507,167 @@ public class LdapClient implements ILdapClient {
 		
 		LdapVO dataLdapVO = null;
 
-		/** Conexion con el usuario de servicio */
-		InitialDirContext ctx = conexionLdap(false, null);
+		/** Se realiza la asignacion de variables desde OpenShift */
+		ObtenerValoresOpenShift();
+		Deadline.verifica(securityAuthDTO.getDeadline());
 
 		/** Busca todos en LDAP */
 		/** String searchFilter = "(objectClass=*)"; **/
 
 		/** Busca el usuario **/
-		String searchFilter = "(samaccountName=" + securityAuthDTO.getUserName() + ")";
+		/** El usuario se escapa para que no altere el filtro */
+		String searchFilter = "(samaccountName=" + LdapFilterUtil.escapaValor(securityAuthDTO.getUserName())
+				+ ")";
+
+		/** Solo se consultan los atributos del perfil solicitado */
+		LdapAttributeProfiles.Proyeccion proyeccion = ldapAttributeProfiles.resuelve(securityAuthDTO);
 
 		SearchControls controls = new SearchControls();
 		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-		NamingEnumeration<?> objs = ctx.search(ldapSearchBase, searchFilter, controls);
+		controls.setReturningAttributes(proyeccion.atributos());
+		controls.setTimeLimit(limiteBusqueda(securityAuthDTO));
 
-		while (objs.hasMoreElements()) {
+		/** Conexion del pool con el usuario de servicio */
+		InitialLdapContext ctx = ldapServicePool.borrow();
+		try {
+			NamingEnumeration<?> objs = ctx.search(ldapSearchBase, searchFilter, controls);
 
-			SearchResult match = (SearchResult) objs.nextElement();
-			Attributes attrs = match.getAttributes();
+			while (objs.hasMoreElements()) {
 
-			/** obtiene los grupos a los que pertenece **/
-			try {
+				SearchResult match = (SearchResult) objs.nextElement();
+				Attributes attrs = match.getAttributes();
 
-				/** Variable para guardar todos los perfiles a los que pertence el usuario */
-				listaGrupoApp = findGroupsApp(attrs.get("memberOf").toString(), securityAuthDTO.getAppName());
-				/** Variable para guardar todos los grupos a los que pertence el usuario */
-				listaGrupoAll = findGroupsAll(attrs.get("memberOf").toString());
+				/** obtiene los grupos a los que pertenece **/
+				MemberOfParser.Grupos grupos = obtenGrupos(ctx, match, securityAuthDTO.getAppName(),
+						controls.getTimeLimit());
+				if (grupos != null) {
+					listaGrupoApp = grupos.grupoAplicativo();
+					listaGrupoAll = grupos.todos();
+				} else if (proyeccion.incluye(ConstantsSecurityAuth.MEMBER_OF.getName())) {
+					listaGrupoAll = new ArrayList<String>();
+					listaGrupoAll.add("-E-");
+				}
 
-			} catch (Exception exnull) {
-				listaGrupoAll = new ArrayList<String>();
-				listaGrupoAll.add("-E-");
+				dataLdapVO = new LdapVO(LdapAttributeDecoder.texto(attrs, "sAMAccountName"),
+						securityAuthDTO.isValidUserPwd()
+								? cipherAESCommon.encryptStringToAesHex(securityAuthDTO.getPassword())
+								: null,
+						LdapAttributeDecoder.texto(attrs, "initials"), 
+						LdapAttributeDecoder.texto(attrs, "userAccountControl"), 
+						LdapAttributeDecoder.texto(attrs, "cn"),
+						LdapAttributeDecoder.texto(attrs, "givenName"), LdapAttributeDecoder.texto(attrs, "title"), 
+						LdapAttributeDecoder.texto(attrs, "department"),
+						LdapAttributeDecoder.texto(attrs, "telephoneNumber"), 
+						LdapAttributeDecoder.activo(match, attrs),
+						LdapAttributeDecoder.texto(attrs, "userPrincipalName"), 
+						LdapAttributeDecoder.texto(attrs, "mail"),
+						LdapAttributeDecoder.entero(attrs, "badPwdCount"), 
+						LdapAttributeDecoder.fecha(attrs, "lockoutTime"),
+						LdapAttributeDecoder.fecha(attrs, "badPasswordTime"),
+						listaGrupoApp, listaGrupoAll, proyeccion.isCompleta() ? attrs.toString() : null,
+						proyeccion.campos() != null ? LdapAttributeProfiles.aMapa(attrs, proyeccion.campos()) : null);
+			}
+			objs.close();
+		} catch (CommunicationException | ServiceUnavailableException ex) {
+			ldapServicePool.invalidate(ctx);
+			ctx = null;
+			throw ex;
+		} finally {
+			if (ctx != null) {
+				ldapServicePool.release(ctx);
 			}
-
-			dataLdapVO = new LdapVO(cleanText(attrs, "sAMAccountName"),
-					securityAuthDTO.isValidUserPwd()
-							? cipherAESCommon.encryptStringToAesHex(securityAuthDTO.getPassword())
-							: null,
-					cleanText(attrs, "initials"), 
-					cleanText(attrs, "userAccountControl"), 
-					cleanText(attrs, "cn"),
-					cleanText(attrs, "givenName"), cleanText(attrs, "title"), 
-					cleanText(attrs, "department"),
-					cleanText(attrs, "telephoneNumber"), 
-					findDisabled(match, "Disabled Accounts"),
-					cleanText(attrs, "userPrincipalName"), 
-					cleanText(attrs, "mail"),
-					cleanTextToInteger(attrs, "badPwdCount"), 
-					ldapDateToDateTime(cleanText(attrs, "lockoutTime")),
-					listaGrupoApp, listaGrupoAll, attrs.toString());
 		}
-		
 
 		return dataLdapVO;
 	}
 
-	private String cleanText(Attributes attrs, String etiqueta) {
-		String cadenaResult = "etiqueta";
-		try {
-			cadenaResult = attrs.get(etiqueta).toString();
-			cadenaResult = cadenaResult.replace(etiqueta, "");
-			cadenaResult = cadenaResult.replace(":", "");
-		} catch (Exception exx) {
-			cadenaResult = "";
-		}
-		return cadenaResult.trim();
-	}
-
-	private Integer cleanTextToInteger(Attributes attrs, String etiqueta) {
-		String cadenaResult = "0";
-		try {
-			cadenaResult = attrs.get(etiqueta).toString();
-			cadenaResult = cadenaResult.replace(etiqueta, "");
-			cadenaResult = cadenaResult.replace(":", "");
-		} catch (Exception exx) {
+	/**
+	 * Metodo para obtener el tiempo limite de la busqueda con el tiempo
+	 * restante de la peticion. LDAP maneja el limite en segundos, por lo que
+	 * el minimo es un segundo; cero indica sin limite.
+	 * 
+	 * @param securityAuthDTO datos de la peticion.
+	 * @return int tiempo limite de la busqueda, en milisegundos.
+	 */
+	private int limiteBusqueda(SecurityAuthDTO securityAuthDTO) {
+		if (securityAuthDTO.getDeadline() == null) {
 			return 0;
 		}
-		return Integer.parseInt(cadenaResult.trim());
+		return Math.max(1000, Deadline.restanteMs(securityAuthDTO.getDeadline(), Integer.MAX_VALUE));
 	}
 
-	private Integer findDisabled(SearchResult match, String etiqueta) {
-		String cadena = match.toString();
-		if (cadena.contains(etiqueta)) {
-			return 0;
-		} else {
-			return 1;
+	/**
+	 * Metodo para obtener los grupos del usuario, con la membresia efectiva si
+	 * esta activa la resolucion de grupos anidados.
+	 * 
+	 * @param ctx      conexion con la que se busco al usuario.
+	 * @param match    resultado de la busqueda del usuario.
+	 * @param app      nombre del aplicativo.
+	 * @param limiteMs tiempo limite de la busqueda de grupos anidados, cero
+	 *                 sin limite.
+	 * @return Grupos grupos del usuario, nulo si no tiene el atributo memberOf.
+	 * @throws NamingException Excepción durante la busqueda en LDAP.
+	 */
+	private MemberOfParser.Grupos obtenGrupos(InitialDirContext ctx, SearchResult match, String app, int limiteMs)
+			throws NamingException {
+		Attribute memberOf = match.getAttributes().get(ConstantsSecurityAuth.MEMBER_OF.getName());
+		if (memberOf != null && nestedGroupResolver.isActivo()) {
+			return memberOfParser.parse(
+					nestedGroupResolver.gruposEfectivos(ctx, match.getNameInNamespace(), memberOf, limiteMs), app);
 		}
+		return memberOfParser.parse(memberOf, app);
 	}
 
-	private List<String> findGroupsApp(String attr, String app) {
-		String[] memberOfList = attr.split("DC=mx,");
-		List<String> listGroup = new ArrayList<>();
-		Map<String, Object> gruposMap = new HashMap<>();
-
-		if (app != null && app.length() > 0) {
-			for (String grupo : memberOfList) {
-				if (grupo.contains(app)) {
-					int ii = grupo.indexOf("CN=");
-					String grupoAux = grupo.substring(ii + 3);
-					int fi = grupoAux.indexOf(",");
-					String valGrupo = grupoAux.substring(0, fi);
-
-					if (!gruposMap.containsValue(valGrupo)) {
-						listGroup.add(valGrupo);
-						gruposMap.put(valGrupo, valGrupo);
-					}
-				}
-			}
+	/**
+	 * Metodo para validar el password del usuario, toma una conexion del pool
+	 * de validacion y realiza el bind con las credenciales del usuario sobre la
+	 * misma conexion, sin abrir una nueva ni repetir la busqueda.
+	 * 
+	 * @param securityAuthDTO - Datos del usuario a validar.
+	 * @throws AuthenticationException si el password es incorrecto.
+	 * @throws NamingException         Excepción durante la comunicacion con LDAP.
+	 */
+	private void validaPassword(SecurityAuthDTO securityAuthDTO) throws NamingException {
+		/** Un bind con password vacio es anonimo y LDAP lo acepta */
+		if (securityAuthDTO.getPassword() == null || securityAuthDTO.getPassword().isEmpty()) {
+			throw new AuthenticationException(ConstantsSecurityAuth.MSG_PASSWORD_INCORRECT.getName());
 		}
-		return listGroup;
-	}
-
-	private List<String> findGroupsAll(String attr) {
-		String[] memberOfList = attr.split("DC=mx,");
-		List<String> listGroup = new ArrayList<>();
-		Map<String, Object> gruposMap = new HashMap<>();
-
-		for (String grupo : memberOfList) {
-			int ii = grupo.indexOf("CN=");
-			String grupoAux = grupo.substring(ii + 3);
-			int fi = grupoAux.indexOf(",");
-			String valGrupo = grupoAux.substring(0, fi);
-
-			if (!gruposMap.containsValue(valGrupo)) {
-				listGroup.add(valGrupo);
-				gruposMap.put(valGrupo, valGrupo);
+		for (int intento = 1;; intento++) {
+			InitialLdapContext ctx = ldapBindPool.borrow();
+			try {
+				ctx.addToEnvironment(Context.SECURITY_PRINCIPAL, securityAuthDTO.getUserName() + ldapDominioMail);
+				ctx.addToEnvironment(Context.SECURITY_CREDENTIALS, securityAuthDTO.getPassword());
+				ctx.reconnect(null);
+				return;
+			} catch (CommunicationException | ServiceUnavailableException ex) {
+				/** La conexion del pool ya no es valida, se reintenta con una nueva */
+				ldapBindPool.invalidate(ctx);
+				ctx = null;
+				if (intento >= 2) {
+					throw ex;
+				}
+				log.info("Conexion de validacion no disponible, se reintenta.");
+			} finally {
+				if (ctx != null) {
+					ldapBindPool.release(ctx);
+				}
 			}
 		}
-		return listGroup;
 	}
 
 	/**
-	 * Meotodo para formatear le fecha de LDAP a Date-
-	 * @param inputDateString
-	 * @return Date
+	 * Metodo para cerrar una conexion que no pertenece al pool.
+	 * 
+	 * @param ctx conexion a cerrar.
 	 */
-	private Date ldapDateToDateTime(String inputDateString) {
-		try {
-			if (inputDateString != null && inputDateString.length() > 5) {
-				if (!inputDateString.isEmpty()) {
-					long fileTime = (Long.parseLong(inputDateString) / 10000L) - +11644473600000L;
-					return new Date(fileTime);
-				} else {
-					return null;
-				}
-
-			} else {
-				return null;
+	private void cerrarConexion(InitialDirContext ctx) {
+		if (ctx != null) {
+			try {
+				ctx.close();
+			} catch (NamingException ex) {
+				log.info(new StringBuilder().append("Error al cerrar conexion LDAP: ").append(ex.getMessage()));
 			}
-		} catch (Exception ex) {
-			return null;
 		}
-
 	}
 
 	/*
@@ -460,7 +685,7 @@ public class LdapClient implements ILdapClient {
 				dataLdapVO = new LdapVO("elenao", "*****", "34505", "10001", "Orozco Siliceo, Elena", 
 						"Elena", "Experto Técnico",
 						"193210-GERENCIA DE SOLUCIONES TECNOLOGICAS", "1001", 1, "elenao@banobras.gob.mx",
-						"ElenaOrozco@banobras.gob.mx", 0, null, listaGrupoApp, listaGrupoAll, null);
+						"ElenaOrozco@banobras.gob.mx", 0, null, null, listaGrupoApp, listaGrupoAll, null, null);
 				ldapResponseDTO.setStatusCode(200);		
 				LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
 				ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
@@ -469,8 +694,8 @@ public class LdapClient implements ILdapClient {
 				listaGrupoAll.add("BITACORAS_AUDITOR");
 				dataLdapVO = new LdapVO("anamaria", "*****", "44504", "20002", "Calderon Sánchez, Ana María", "Ana María",
 						"Experto Técnico", "193210-GERENCIA DE SOLUCIONES TECNOLOGICAS", "1002", 1,
-						"anamaria@banobras.gob.mx", "AnaMariaCalderon@banobras.gob.mx", 0, null, listaGrupoApp,
-						listaGrupoAll, null);
+						"anamaria@banobras.gob.mx", "AnaMariaCalderon@banobras.gob.mx", 0, null, null, listaGrupoApp,
+						listaGrupoAll, null, null);
 				ldapResponseDTO.setStatusCode(200);		
 				LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
 				ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
@@ -489,7 +714,7 @@ public class LdapClient implements ILdapClient {
 				
 				dataLdapVO = new LdapVO("sahelig", "*****", "34503", "30003", "Grrero Barrita, Saheli", "Saheli", "Experto Técnico",
 						"193210-GERENCIA DE SOLUCIONES TECNOLOGICAS", "1003", 1, "sahelig@banobras.gob.mx",
-						"SaheliGerrero@banobras.gob.mx", 0, null, listaGrupoApp, listaGrupoAll, null);
+						"SaheliGerrero@banobras.gob.mx", 0, null, null, listaGrupoApp, listaGrupoAll, null, null);
 				ldapResponseDTO.setStatusCode(200);		
 				LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
 				ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
@@ -498,7 +723,7 @@ public class LdapClient implements ILdapClient {
 				listaGrupoAll.add("BITACORAS_APLICATIVO");
 				dataLdapVO = new LdapVO("mariob", "*****", "664506", "60006", "Barrera Ochoa, Mario", "Mario", "Experto Técnico",
 						"193210-GERENCIA DE SOLUCIONES TECNOLOGICAS", "1066", 1, "mariob@banobras.gob.mx",
-						"MarioBarrera@banobras.gob.mx", 3, null, listaGrupoApp, listaGrupoAll, null);
+						"MarioBarrera@banobras.gob.mx", 3, null, null, listaGrupoApp, listaGrupoAll, null, null);
 				ldapResponseDTO.setStatusCode(403);		
 				ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
 				errorMessageDTO.setStatusCode(3);
@@ -512,7 +737,7 @@ public class LdapClient implements ILdapClient {
 			listaGrupoAll.add("BITACORAS_APLICATIVO");
 			dataLdapVO = new LdapVO("bartolob", "*****", "664506", "60006", "Ochoa Ochoa, Bartolo", "Bartolo", "Experto Técnico",
 					"193210-GERENCIA DE SOLUCIONES TECNOLOGICAS", "1066", 0, "bartolob@banobras.gob.mx",
-					"BartoloOchoa@banobras.gob.mx", 0, null, listaGrupoApp, listaGrupoAll, null);
+					"BartoloOchoa@banobras.gob.mx", 0, null, null, listaGrupoApp, listaGrupoAll, null, null);
 			ldapResponseDTO.setStatusCode(403);		
 			ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
 			errorMessageDTO.setStatusCode(4);
@@ -0,0 +1,178 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapClientAsync.java:
+ *
+ * Clase que ejecuta las consultas a LDAP en el pool de hilos dedicado y
+ * regresa un CompletableFuture, el hilo de la peticion HTTP queda libre
+ * mientras el directorio activo responde. Si la peticion tiene tiempo limite,
+ * el CompletableFuture termina con TimeoutException al agotarse. Las
+ * consultas sin password del mismo usuario y aplicativo que llegan mientras
+ * una esta en curso reciben su resultado (LdapSingleFlight).
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import mx.gob.banobras.securityauth.application.port.out.ILdapClient;
+import mx.gob.banobras.securityauth.application.port.out.ILdapClientAsync;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.common.util.Especulacion;
+import mx.gob.banobras.securityauth.infraestructure.config.LdapAttributeProfiles;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+@Component
+public class LdapClientAsync implements ILdapClientAsync {
+
+	/** Cliente de LDAP */
+	private final ILdapClient iLdapClient;
+
+	/** Pool de hilos para las consultas a LDAP */
+	private final ThreadPoolTaskExecutor ldapExecutor;
+
+	/** Perfiles de atributos, forman parte de la llave de agrupacion */
+	private final LdapAttributeProfiles ldapAttributeProfiles;
+
+	/** Agrupador de las consultas asincronas con la misma llave */
+	private final LdapSingleFlight<CachingLdapClient.LdapCacheKey> singleFlight;
+
+	/** Usuarios por busqueda en la consulta por lista */
+	@Value("${app.ldap.batch.chunk-size:50}")
+	int tamanoBloque;
+
+	public LdapClientAsync(ILdapClient iLdapClient, @Qualifier("ldapExecutor") ThreadPoolTaskExecutor ldapExecutor,
+			LdapAttributeProfiles ldapAttributeProfiles,
+			@Value("${app.ldap.singleflight.enabled:1}") boolean singleFlightEnabled, MeterRegistry meterRegistry) {
+		this.iLdapClient = iLdapClient;
+		this.ldapExecutor = ldapExecutor;
+		this.ldapAttributeProfiles = ldapAttributeProfiles;
+		this.singleFlight = new LdapSingleFlight<>(singleFlightEnabled, "async", meterRegistry);
+	}
+
+	@Override
+	public CompletableFuture<LdapResponseDTO> autenticationAsync(SecurityAuthDTO securityAuthDTO) {
+		return agrupa(CachingLdapClient.OP_AUTENTICACION, securityAuthDTO,
+				() -> inicia(() -> iLdapClient.autentication(securityAuthDTO), securityAuthDTO.getDeadline(),
+						securityAuthDTO.getEspeculacion()));
+	}
+
+	@Override
+	public CompletableFuture<LdapVO> allDataUserLdapAsync(SecurityAuthDTO securityAuthDTO) {
+		return agrupa(CachingLdapClient.OP_ALL_DATA, securityAuthDTO,
+				() -> inicia(() -> iLdapClient.allDataUserLdap(securityAuthDTO), securityAuthDTO.getDeadline(),
+						securityAuthDTO.getEspeculacion()));
+	}
+
+	/**
+	 * Metodo para agrupar las consultas asincronas sin password con la misma
+	 * llave, las peticiones que llegan con una consulta en curso no ocupan un
+	 * hilo del pool. El tiempo limite se aplica a cada peticion. Las consultas
+	 * especulativas no se agrupan, al descartarse no afectan a otras peticiones.
+	 *
+	 * @param operacion       operacion de la llave.
+	 * @param securityAuthDTO datos del usuario.
+	 * @param consulta        inicia la consulta en el pool de LDAP.
+	 * @return CompletableFuture con el resultado.
+	 */
+	private <T> CompletableFuture<T> agrupa(String operacion, SecurityAuthDTO securityAuthDTO,
+			Supplier<CompletableFuture<T>> consulta) {
+		CompletableFuture<T> resultado = securityAuthDTO.isValidUserPwd() || securityAuthDTO.getEspeculacion() != null
+				? consulta.get()
+				: singleFlight.ejecutaAsync(
+						CachingLdapClient.LdapCacheKey.of(operacion, securityAuthDTO, ldapAttributeProfiles),
+						securityAuthDTO.getDeadline(), consulta);
+		return conTiempoLimite(resultado, securityAuthDTO.getDeadline());
+	}
+
+	@Override
+	public CompletableFuture<Map<String, LdapVO>> allDataUsersLdapAsync(List<String> userNames, String appName,
+			Deadline deadline) {
+		List<CompletableFuture<List<LdapVO>>> bloques = new ArrayList<>();
+		for (int i = 0; i < userNames.size(); i += tamanoBloque) {
+			List<String> bloque = List.copyOf(userNames.subList(i, Math.min(i + tamanoBloque, userNames.size())));
+			bloques.add(ejecuta(() -> iLdapClient.allDataUsersLdap(bloque, appName), deadline));
+		}
+		return CompletableFuture.allOf(bloques.toArray(new CompletableFuture<?>[0])).thenApply(sinValor -> {
+			Map<String, LdapVO> usuarios = new HashMap<>(userNames.size() * 2);
+			for (CompletableFuture<List<LdapVO>> bloque : bloques) {
+				for (LdapVO ldapVO : bloque.join()) {
+					usuarios.put(ldapVO.getUsuario().toLowerCase(Locale.ROOT), ldapVO);
+				}
+			}
+			return usuarios;
+		});
+	}
+
+	/**
+	 * Metodo para ejecutar la consulta en el pool de hilos de LDAP.
+	 *
+	 * @param consulta consulta a LDAP.
+	 * @param deadline tiempo limite de la peticion, nulo sin limite.
+	 * @return CompletableFuture con el resultado, termina con
+	 *         RejectedExecutionException si el pool y su cola estan llenos y con
+	 *         TimeoutException si se agota el tiempo limite.
+	 */
+	private <T> CompletableFuture<T> ejecuta(LdapSingleFlight.ConsultaLdap<T> consulta, Deadline deadline) {
+		return conTiempoLimite(inicia(consulta, deadline, null), deadline);
+	}
+
+	/**
+	 * Metodo para iniciar la consulta en el pool de hilos de LDAP, sin aplicar
+	 * el tiempo limite al resultado.
+	 *
+	 * @param consulta     consulta a LDAP.
+	 * @param deadline     tiempo limite de la peticion, nulo sin limite.
+	 * @param especulacion estado de la consulta adelantada, nulo si no es
+	 *                     especulativa.
+	 * @return CompletableFuture con el resultado.
+	 */
+	private <T> CompletableFuture<T> inicia(LdapSingleFlight.ConsultaLdap<T> consulta, Deadline deadline,
+			Especulacion especulacion) {
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					/** El tiempo en la cola del pool tambien cuenta */
+					Deadline.verifica(deadline);
+					/** Si el token se rechazo mientras esperaba en la cola no se consulta LDAP */
+					Especulacion.verifica(especulacion);
+					return consulta.ejecuta();
+				} catch (Exception ex) {
+					throw new CompletionException(ex);
+				}
+			}, ldapExecutor);
+		} catch (RejectedExecutionException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+
+	/**
+	 * La peticion HTTP se libera al agotarse el tiempo, aunque LDAP no haya
+	 * respondido.
+	 */
+	private static <T> CompletableFuture<T> conTiempoLimite(CompletableFuture<T> resultado, Deadline deadline) {
+		return deadline == null ? resultado
+				: resultado.orTimeout(Math.max(1, deadline.restanteMs()), TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,432 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapContextPool.java:
+ *
+ * Pool de conexiones a LDAP, reutiliza los contextos autenticados para evitar
+ * la conexion TCP y el bind en cada peticion. Cuando se configuran varios
+ * controladores de dominio se tiene un pool por servidor y cada conexion se
+ * toma del servidor con menos peticiones en curso, ponderado por su latencia.
+ * Los servidores con fallos consecutivos se retiran y se vuelven a probar en
+ * segundo plano.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.InitialLdapContext;
+
+import org.apache.commons.pool2.impl.AbandonedConfig;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+
+public class LdapContextPool implements AutoCloseable {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(LdapContextPool.class);
+
+	/** Peso de la ultima medicion en la latencia promedio */
+	private static final double ALFA_LATENCIA = 0.2;
+
+	/** Nombre del pool, se usa como etiqueta en las metricas */
+	private final String name;
+
+	/** Servidores LDAP con su pool de conexiones */
+	private final List<Servidor> servidores = new ArrayList<>();
+
+	/** Conexiones prestadas y el servidor al que pertenecen */
+	private final Map<InitialLdapContext, Prestamo> prestamos = new ConcurrentHashMap<>();
+
+	/** Fallos consecutivos para retirar un servidor */
+	private final int fallosExpulsion;
+
+	/** Tiempo minimo que un servidor permanece retirado, en milisegundos */
+	private final long expulsionMs;
+
+	/**
+	 * Constructor del pool de conexiones a un solo servidor.
+	 *
+	 * @param name            nombre del pool.
+	 * @param factory         fabrica de conexiones.
+	 * @param config          configuracion de tamaño, espera y desalojo.
+	 * @param abandonedConfig configuracion para detectar conexiones no devueltas.
+	 */
+	public LdapContextPool(String name, LdapContextPooledFactory factory,
+			GenericObjectPoolConfig<InitialLdapContext> config, AbandonedConfig abandonedConfig) {
+		this(name, List.of(factory), config, abandonedConfig, Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Constructor del pool de conexiones a varios servidores.
+	 *
+	 * @param name            nombre del pool.
+	 * @param factories       fabrica de conexiones de cada servidor.
+	 * @param config          configuracion de tamaño, espera y desalojo, por
+	 *                        servidor.
+	 * @param abandonedConfig configuracion para detectar conexiones no devueltas.
+	 * @param fallosExpulsion fallos consecutivos para retirar un servidor.
+	 * @param expulsionMs     tiempo minimo que un servidor permanece retirado.
+	 */
+	public LdapContextPool(String name, List<LdapContextPooledFactory> factories,
+			GenericObjectPoolConfig<InitialLdapContext> config, AbandonedConfig abandonedConfig, int fallosExpulsion,
+			long expulsionMs) {
+		this.name = name;
+		this.fallosExpulsion = fallosExpulsion;
+		this.expulsionMs = expulsionMs;
+		for (LdapContextPooledFactory factory : factories) {
+			servidores.add(new Servidor(factory, new GenericObjectPool<>(factory, config, abandonedConfig)));
+		}
+	}
+
+	/**
+	 * Metodo para obtener una conexion del pool. Si el servidor elegido falla
+	 * se intenta con el siguiente.
+	 *
+	 * @return InitialLdapContext conexion validada.
+	 * @throws NamingException si no es posible obtener una conexion.
+	 */
+	public InitialLdapContext borrow() throws NamingException {
+		Set<Servidor> intentados = new HashSet<>();
+		Exception ultimo = null;
+		Servidor servidor;
+		while ((servidor = elige(intentados)) != null) {
+			intentados.add(servidor);
+			servidor.pendientes.incrementAndGet();
+			try {
+				InitialLdapContext ctx = servidor.pool.borrowObject();
+				prestamos.put(ctx, new Prestamo(servidor, System.nanoTime()));
+				return ctx;
+			} catch (Exception ex) {
+				servidor.pendientes.decrementAndGet();
+				registraFallo(servidor);
+				ultimo = ex;
+				if (servidores.size() > 1) {
+					log.info(new StringBuilder().append("Sin conexion al servidor ").append(servidor.url)
+							.append(" del pool ").append(name).append(": ").append(ex.getMessage()));
+				}
+			}
+		}
+		throw traduce(ultimo);
+	}
+
+	/**
+	 * Metodo para crear una conexion fuera del pool, en el servidor con menor
+	 * carga, para operaciones largas como las busquedas paginadas. Quien la
+	 * solicita debe cerrarla.
+	 *
+	 * @return InitialLdapContext conexion autenticada.
+	 * @throws NamingException si ningun servidor responde.
+	 */
+	public InitialLdapContext conexionDedicada() throws NamingException {
+		return conexionDedicada(null);
+	}
+
+	/**
+	 * Metodo para crear una conexion fuera del pool en el servidor indicado,
+	 * para procesos que deben leer siempre del mismo controlador de dominio.
+	 * Si el servidor esta retirado o no responde se usa el de menor carga; el
+	 * servidor usado se obtiene de Context.PROVIDER_URL de la conexion. Quien
+	 * la solicita debe cerrarla.
+	 *
+	 * @param url servidor preferido, nulo para elegir el de menor carga.
+	 * @return InitialLdapContext conexion autenticada.
+	 * @throws NamingException si ningun servidor responde.
+	 */
+	public InitialLdapContext conexionDedicada(String url) throws NamingException {
+		Set<Servidor> intentados = new HashSet<>();
+		Exception ultimo = null;
+		Servidor servidor = null;
+		for (Servidor candidato : servidores) {
+			if (!candidato.retirado && candidato.url.equals(url)) {
+				servidor = candidato;
+			}
+		}
+		if (servidor == null) {
+			servidor = elige(intentados);
+		}
+		while (servidor != null) {
+			intentados.add(servidor);
+			try {
+				return servidor.factory.create();
+			} catch (NamingException ex) {
+				registraFallo(servidor);
+				ultimo = ex;
+			}
+			servidor = elige(intentados);
+		}
+		throw traduce(ultimo);
+	}
+
+	/**
+	 * Metodo para regresar una conexion al pool.
+	 *
+	 * @param ctx conexion a regresar.
+	 */
+	public void release(InitialLdapContext ctx) {
+		Prestamo prestamo = prestamos.remove(ctx);
+		if (prestamo == null) {
+			log.info(new StringBuilder().append("La conexion ya no pertenece al pool ").append(name));
+			return;
+		}
+		Servidor servidor = prestamo.servidor();
+		servidor.pendientes.decrementAndGet();
+		servidor.registraExito((System.nanoTime() - prestamo.inicio()) / 1_000_000d);
+		try {
+			servidor.pool.returnObject(ctx);
+		} catch (IllegalStateException ex) {
+			log.info(new StringBuilder().append("La conexion ya no pertenece al pool ").append(name));
+		}
+	}
+
+	/**
+	 * Metodo para descartar una conexion que presento error de comunicacion.
+	 *
+	 * @param ctx conexion a descartar.
+	 */
+	public void invalidate(InitialLdapContext ctx) {
+		Prestamo prestamo = prestamos.remove(ctx);
+		if (prestamo == null) {
+			return;
+		}
+		Servidor servidor = prestamo.servidor();
+		servidor.pendientes.decrementAndGet();
+		registraFallo(servidor);
+		try {
+			servidor.pool.invalidateObject(ctx);
+		} catch (Exception ex) {
+			log.info(new StringBuilder().append("Error al descartar conexion del pool ").append(name)
+					.append(": ").append(ex.getMessage()));
+		}
+	}
+
+	/**
+	 * Metodo para crear las conexiones minimas del pool, un servidor sin
+	 * conexion no impide el arranque.
+	 */
+	public void preparePool() throws Exception {
+		Exception ultimo = null;
+		int preparados = 0;
+		for (Servidor servidor : servidores) {
+			try {
+				servidor.pool.preparePool();
+				preparados++;
+			} catch (Exception ex) {
+				registraFallo(servidor);
+				ultimo = ex;
+			}
+		}
+		if (preparados == 0 && ultimo != null) {
+			throw ultimo;
+		}
+	}
+
+	/**
+	 * Metodo para volver a probar los servidores retirados, si responden se
+	 * regresan al balanceo.
+	 */
+	public void sondeaServidores() {
+		long ahora = System.currentTimeMillis();
+		for (Servidor servidor : servidores) {
+			if (!servidor.retirado || ahora - servidor.retiradoDesde < expulsionMs) {
+				continue;
+			}
+			InitialLdapContext ctx = null;
+			try {
+				long inicio = System.nanoTime();
+				ctx = servidor.factory.create();
+				if (!servidor.factory.validateObject(new DefaultPooledObject<>(ctx))) {
+					throw new NamingException("Validacion fallida");
+				}
+				servidor.fallos.set(0);
+				servidor.registraExito((System.nanoTime() - inicio) / 1_000_000d);
+				servidor.retirado = false;
+				log.info(new StringBuilder().append("Servidor LDAP ").append(servidor.url)
+						.append(" de nuevo disponible en el pool ").append(name));
+			} catch (Exception ex) {
+				servidor.retiradoDesde = ahora;
+				log.info(new StringBuilder().append("Servidor LDAP ").append(servidor.url)
+						.append(" sigue sin responder: ").append(ex.getMessage()));
+			} finally {
+				if (ctx != null) {
+					servidor.factory.destroyObject(new DefaultPooledObject<>(ctx));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Metodo para elegir el servidor con menor carga: peticiones en curso por
+	 * latencia promedio. Si todos estan retirados se elige el retirado hace
+	 * mas tiempo.
+	 */
+	private Servidor elige(Set<Servidor> intentados) {
+		Servidor elegido = null;
+		double menor = Double.MAX_VALUE;
+		Servidor retirado = null;
+		for (Servidor servidor : servidores) {
+			if (intentados.contains(servidor)) {
+				continue;
+			}
+			if (servidor.retirado) {
+				if (retirado == null || servidor.retiradoDesde < retirado.retiradoDesde) {
+					retirado = servidor;
+				}
+				continue;
+			}
+			double carga = (servidor.pendientes.get() + 1) * Math.max(servidor.latenciaMs, 1d);
+			if (carga < menor) {
+				menor = carga;
+				elegido = servidor;
+			}
+		}
+		return elegido != null ? elegido : retirado;
+	}
+
+	private void registraFallo(Servidor servidor) {
+		servidor.errores.incrementAndGet();
+		if (servidor.fallos.incrementAndGet() >= fallosExpulsion && !servidor.retirado && servidores.size() > 1) {
+			servidor.retirado = true;
+			servidor.retiradoDesde = System.currentTimeMillis();
+			servidor.expulsiones.incrementAndGet();
+			servidor.pool.clear();
+			log.error(new StringBuilder().append("Se retira el servidor LDAP ").append(servidor.url)
+					.append(" del pool ").append(name).append(" por ").append(servidor.fallos.get())
+					.append(" fallos consecutivos"));
+		}
+	}
+
+	private NamingException traduce(Exception ex) {
+		if (ex instanceof NamingException ne) {
+			return ne;
+		}
+		NamingException ne = ex == null || ex instanceof NoSuchElementException
+				? new ServiceUnavailableException(ConstantsSecurityAuth.MSG_NO_SERVICE_LDAP.getName())
+				: new NamingException(ex.getMessage());
+		ne.setRootCause(ex);
+		return ne;
+	}
+
+	/**
+	 * Metodo para registrar las metricas de ocupacion y tiempos de espera, por
+	 * servidor.
+	 *
+	 * @param meterRegistry registro de metricas.
+	 */
+	public void registerMetrics(MeterRegistry meterRegistry) {
+		for (Servidor servidor : servidores) {
+			GenericObjectPool<InitialLdapContext> pool = servidor.pool;
+			String url = servidor.url;
+			Gauge.builder("ldap.pool.active", pool, GenericObjectPool::getNumActive).tags("pool", name, "server", url)
+					.description("Conexiones en uso").register(meterRegistry);
+			Gauge.builder("ldap.pool.idle", pool, GenericObjectPool::getNumIdle).tags("pool", name, "server", url)
+					.description("Conexiones libres").register(meterRegistry);
+			Gauge.builder("ldap.pool.waiters", pool, GenericObjectPool::getNumWaiters)
+					.tags("pool", name, "server", url).description("Peticiones esperando una conexion")
+					.register(meterRegistry);
+			Gauge.builder("ldap.pool.max", pool, GenericObjectPool::getMaxTotal).tags("pool", name, "server", url)
+					.description("Maximo de conexiones").register(meterRegistry);
+			Gauge.builder("ldap.pool.borrow.wait.mean", pool, p -> p.getMeanBorrowWaitDuration().toMillis())
+					.tags("pool", name, "server", url).baseUnit("milliseconds")
+					.description("Tiempo promedio de espera por conexion").register(meterRegistry);
+			Gauge.builder("ldap.pool.borrow.wait.max", pool, p -> p.getMaxBorrowWaitDuration().toMillis())
+					.tags("pool", name, "server", url).baseUnit("milliseconds")
+					.description("Tiempo maximo de espera por conexion").register(meterRegistry);
+			FunctionCounter.builder("ldap.pool.created", pool, GenericObjectPool::getCreatedCount)
+					.tags("pool", name, "server", url).description("Conexiones creadas").register(meterRegistry);
+			FunctionCounter.builder("ldap.pool.destroyed", pool, GenericObjectPool::getDestroyedCount)
+					.tags("pool", name, "server", url).description("Conexiones cerradas").register(meterRegistry);
+			FunctionCounter
+					.builder("ldap.pool.destroyed.validation", pool,
+							GenericObjectPool::getDestroyedByBorrowValidationCount)
+					.tags("pool", name, "server", url).description("Conexiones descartadas por validacion")
+					.register(meterRegistry);
+			FunctionCounter.builder("ldap.pool.borrowed", pool, GenericObjectPool::getBorrowedCount)
+					.tags("pool", name, "server", url).description("Conexiones prestadas").register(meterRegistry);
+			Gauge.builder("ldap.server.outstanding", servidor, s -> s.pendientes.get())
+					.tags("pool", name, "server", url).description("Peticiones en curso").register(meterRegistry);
+			Gauge.builder("ldap.server.latency", servidor, s -> s.latenciaMs).tags("pool", name, "server", url)
+					.baseUnit("milliseconds").description("Latencia promedio (EWMA)").register(meterRegistry);
+			Gauge.builder("ldap.server.up", servidor, s -> s.retirado ? 0 : 1).tags("pool", name, "server", url)
+					.description("1 si el servidor esta en el balanceo").register(meterRegistry);
+			FunctionCounter.builder("ldap.server.errors", servidor, s -> s.errores.get())
+					.tags("pool", name, "server", url).description("Errores de conexion o comunicacion")
+					.register(meterRegistry);
+			FunctionCounter.builder("ldap.server.ejections", servidor, s -> s.expulsiones.get())
+					.tags("pool", name, "server", url).description("Veces que se retiro el servidor")
+					.register(meterRegistry);
+		}
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void close() {
+		log.info(new StringBuilder().append("Se cierra el pool LDAP ").append(name));
+		for (Servidor servidor : servidores) {
+			servidor.pool.close();
+		}
+	}
+
+	/**
+	 * Servidor LDAP con su pool de conexiones y su estado en el balanceo.
+	 */
+	private static final class Servidor {
+
+		private final String url;
+		private final LdapContextPooledFactory factory;
+		private final GenericObjectPool<InitialLdapContext> pool;
+		private final AtomicInteger pendientes = new AtomicInteger();
+		private final AtomicInteger fallos = new AtomicInteger();
+		private final AtomicLong errores = new AtomicLong();
+		private final AtomicLong expulsiones = new AtomicLong();
+		private volatile double latenciaMs;
+		private volatile boolean retirado;
+		private volatile long retiradoDesde;
+
+		Servidor(LdapContextPooledFactory factory, GenericObjectPool<InitialLdapContext> pool) {
+			this.url = factory.getLdapServer();
+			this.factory = factory;
+			this.pool = pool;
+		}
+
+		void registraExito(double ms) {
+			fallos.set(0);
+			double actual = latenciaMs;
+			latenciaMs = actual == 0 ? ms : actual + ALFA_LATENCIA * (ms - actual);
+		}
+	}
+
+	/**
+	 * Conexion prestada, servidor al que pertenece e inicio del prestamo.
+	 */
+	private record Prestamo(Servidor servidor, long inicio) {
+	}
+
+}
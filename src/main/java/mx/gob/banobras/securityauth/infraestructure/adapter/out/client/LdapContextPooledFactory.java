@@ -0,0 +1,186 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapContextPooledFactory.java:
+ *
+ * Fabrica de conexiones a LDAP para el pool, crea, valida y cierra los
+ * contextos autenticados con el usuario indicado.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+
+public class LdapContextPooledFactory extends BasePooledObjectFactory<InitialLdapContext> {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(LdapContextPooledFactory.class);
+
+	/** Atributo del RootDSE que se consulta para validar la conexion */
+	private static final String[] ATRIBUTO_VALIDACION = { "supportedLDAPVersion" };
+
+	/** Variable que contiene la url del ldap */
+	private final String ldapServer;
+
+	/** Variable que contiene el usuario de conexion en ldap */
+	private final String ldapUsername;
+
+	/** Variable que contiene el password de conexion en ldap */
+	private final String ldapPassword;
+
+	/** Tiempo maximo para conectar con el servidor, en milisegundos */
+	private final int connectTimeoutMs;
+
+	/** Tiempo maximo de espera de cada respuesta, en milisegundos */
+	private final int readTimeoutMs;
+
+	/** Soporte de TLS, nulo para conexiones sin cifrar */
+	private final LdapTlsSupport ldapTlsSupport;
+
+	/**
+	 * Constructor de la fabrica de conexiones.
+	 *
+	 * @param ldapServer   url del servidor LDAP.
+	 * @param ldapUsername usuario con el que se autentica la conexion.
+	 * @param ldapPassword password del usuario.
+	 */
+	public LdapContextPooledFactory(String ldapServer, String ldapUsername, String ldapPassword) {
+		this(ldapServer, ldapUsername, ldapPassword, 0, 0);
+	}
+
+	/**
+	 * Constructor de la fabrica de conexiones con tiempos de espera.
+	 *
+	 * @param ldapServer       url del servidor LDAP.
+	 * @param ldapUsername     usuario con el que se autentica la conexion.
+	 * @param ldapPassword     password del usuario.
+	 * @param connectTimeoutMs tiempo para conectar, cero sin limite.
+	 * @param readTimeoutMs    tiempo de espera de cada respuesta, cero sin limite.
+	 */
+	public LdapContextPooledFactory(String ldapServer, String ldapUsername, String ldapPassword, int connectTimeoutMs,
+			int readTimeoutMs) {
+		this(ldapServer, ldapUsername, ldapPassword, connectTimeoutMs, readTimeoutMs, null);
+	}
+
+	/**
+	 * Constructor de la fabrica de conexiones con tiempos de espera y TLS.
+	 *
+	 * @param ldapServer       url del servidor LDAP.
+	 * @param ldapUsername     usuario con el que se autentica la conexion.
+	 * @param ldapPassword     password del usuario.
+	 * @param connectTimeoutMs tiempo para conectar, cero sin limite.
+	 * @param readTimeoutMs    tiempo de espera de cada respuesta, cero sin limite.
+	 * @param ldapTlsSupport   soporte de TLS, nulo sin cifrar.
+	 */
+	public LdapContextPooledFactory(String ldapServer, String ldapUsername, String ldapPassword, int connectTimeoutMs,
+			int readTimeoutMs, LdapTlsSupport ldapTlsSupport) {
+		this.ldapServer = ldapServer;
+		this.ldapUsername = ldapUsername;
+		this.ldapPassword = ldapPassword;
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.readTimeoutMs = readTimeoutMs;
+		this.ldapTlsSupport = ldapTlsSupport;
+	}
+
+	/**
+	 * Metodo para crear una nueva conexion autenticada a LDAP.
+	 *
+	 * @return InitialLdapContext contexto conectado.
+	 * @throws NamingException Excepción durante la conexion.
+	 */
+	@Override
+	public InitialLdapContext create() throws NamingException {
+		Hashtable<String, String> env = new Hashtable<>();
+		env.put(Context.SECURITY_AUTHENTICATION, "simple");
+		env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+		env.put(Context.PROVIDER_URL, ldapServer);
+		env.put(Context.SECURITY_PRINCIPAL, ldapUsername);
+		env.put(Context.SECURITY_CREDENTIALS, ldapPassword);
+		if (connectTimeoutMs > 0) {
+			env.put(ConstantsSecurityAuth.LDAP_CONNECT_TIMEOUT.getName(), String.valueOf(connectTimeoutMs));
+		}
+		if (readTimeoutMs > 0) {
+			env.put(ConstantsSecurityAuth.LDAP_READ_TIMEOUT.getName(), String.valueOf(readTimeoutMs));
+		}
+		log.info(new StringBuilder().append("Se crea conexion LDAP al servidor: ").append(ldapServer));
+		return ldapTlsSupport != null ? ldapTlsSupport.conecta(env) : new InitialLdapContext(env, null);
+	}
+
+	/**
+	 * @return la url del servidor LDAP.
+	 */
+	public String getLdapServer() {
+		return ldapServer;
+	}
+
+	@Override
+	public PooledObject<InitialLdapContext> wrap(InitialLdapContext ctx) {
+		return new DefaultPooledObject<>(ctx);
+	}
+
+	/**
+	 * Metodo para validar que la conexion siga activa, consulta un atributo
+	 * del RootDSE.
+	 *
+	 * @param pooledObject conexion a validar.
+	 * @return boolean verdadero si la conexion responde.
+	 */
+	@Override
+	public boolean validateObject(PooledObject<InitialLdapContext> pooledObject) {
+		try {
+			pooledObject.getObject().getAttributes("", ATRIBUTO_VALIDACION);
+			return true;
+		} catch (NamingException ex) {
+			log.info(new StringBuilder().append("Conexion LDAP no valida: ").append(ex.getMessage()));
+			return false;
+		}
+	}
+
+	/**
+	 * Metodo para restablecer las credenciales de la conexion al regresar al
+	 * pool, en caso de que se haya autenticado con otro usuario. No genera
+	 * trafico con el servidor, las credenciales se usan en la siguiente
+	 * autenticacion de la conexion.
+	 *
+	 * @param pooledObject conexion que regresa al pool.
+	 * @throws NamingException Excepción al actualizar el ambiente.
+	 */
+	@Override
+	public void passivateObject(PooledObject<InitialLdapContext> pooledObject) throws NamingException {
+		InitialLdapContext ctx = pooledObject.getObject();
+		if (!ldapUsername.equals(ctx.getEnvironment().get(Context.SECURITY_PRINCIPAL))) {
+			ctx.addToEnvironment(Context.SECURITY_PRINCIPAL, ldapUsername);
+			ctx.addToEnvironment(Context.SECURITY_CREDENTIALS, ldapPassword);
+		}
+	}
+
+	/**
+	 * Metodo para cerrar la conexion cuando sale del pool.
+	 *
+	 * @param pooledObject conexion a cerrar.
+	 */
+	@Override
+	public void destroyObject(PooledObject<InitialLdapContext> pooledObject) {
+		try {
+			pooledObject.getObject().close();
+		} catch (NamingException ex) {
+			log.info(new StringBuilder().append("Error al cerrar conexion LDAP: ").append(ex.getMessage()));
+		}
+	}
+
+}
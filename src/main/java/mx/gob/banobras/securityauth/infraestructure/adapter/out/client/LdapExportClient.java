@@ -0,0 +1,200 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapExportClient.java:
+ *
+ * Clase que recorre los miembros de un grupo, o de los grupos de un
+ * aplicativo, con el control Simple Paged Results. Usa una conexion dedicada
+ * fuera del pool para no retener una conexion del pool durante toda la
+ * exportacion, y entrega cada usuario en cuanto se lee para que la memoria no
+ * dependa del numero de usuarios. Las exportaciones simultaneas se limitan
+ * para no abrir conexiones dedicadas sin limite contra el directorio.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import mx.gob.banobras.securityauth.application.port.out.ILdapExportClient;
+import mx.gob.banobras.securityauth.common.util.LdapFilterUtil;
+import mx.gob.banobras.securityauth.infraestructure.config.LdapAttributeProfiles;
+
+@Component
+public class LdapExportClient implements ILdapExportClient {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(LdapExportClient.class);
+
+	/** Variable que contiene el filtro para la busqueda en ldap */
+	@Value("${app.ldap.search.base}")
+	String ldapSearchBase;
+
+	/** Pool de conexiones con el usuario de servicio */
+	private final LdapContextPool ldapServicePool;
+
+	/** Lugares para exportaciones simultaneas */
+	private final Semaphore exportaciones;
+
+	/** Exportaciones rechazadas por falta de lugar */
+	private final Counter rechazadas;
+
+	/**
+	 * Constructor del cliente de exportacion.
+	 *
+	 * @param ldapServicePool pool de conexiones con el usuario de servicio.
+	 * @param maxConcurrent   maximo de exportaciones simultaneas.
+	 * @param meterRegistry   registro de metricas.
+	 */
+	public LdapExportClient(LdapContextPool ldapServicePool,
+			@Value("${app.ldap.export.max-concurrent:4}") int maxConcurrent, MeterRegistry meterRegistry) {
+		this.ldapServicePool = ldapServicePool;
+		this.exportaciones = new Semaphore(maxConcurrent);
+		Gauge.builder("ldap.export.in.progress", exportaciones, lugares -> maxConcurrent - lugares.availablePermits())
+				.description("Exportaciones en curso, cada una con una conexion dedicada").register(meterRegistry);
+		this.rechazadas = Counter.builder("ldap.export.rejected")
+				.description("Exportaciones rechazadas por el maximo de exportaciones simultaneas")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public boolean reservaExportacion() {
+		if (exportaciones.tryAcquire()) {
+			return true;
+		}
+		rechazadas.increment();
+		log.error("Se alcanzo el maximo de exportaciones simultaneas");
+		return false;
+	}
+
+	@Override
+	public void liberaExportacion() {
+		exportaciones.release();
+	}
+
+	@Override
+	public long exportaMiembros(String grupo, String app, String[] atributos, int tamanoPagina,
+			Consumer<Map<String, Object>> consumidor) throws NamingException {
+		/** Se realiza la asignacion de variables desde OpenShift */
+		if (System.getenv("app.ldap.search.base") != null) {
+			ldapSearchBase = System.getenv("app.ldap.search.base");
+		}
+		InitialLdapContext ctx = ldapServicePool.conexionDedicada();
+		try {
+			List<String> grupos = buscaGrupos(ctx, grupo, app);
+			if (grupos.isEmpty()) {
+				log.info("No se encontraron grupos para exportar.");
+				return 0;
+			}
+			StringBuilder filtro = new StringBuilder("(&(objectCategory=person)(objectClass=user)(|");
+			for (String dn : grupos) {
+				filtro.append("(memberOf=").append(LdapFilterUtil.escapaValor(dn)).append(")");
+			}
+			filtro.append("))");
+
+			SearchControls controls = new SearchControls();
+			controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+			controls.setReturningAttributes(atributos);
+
+			long total = 0;
+			int paginas = 0;
+			byte[] cookie = null;
+			do {
+				ctx.setRequestControls(new Control[] { paginacion(tamanoPagina, cookie) });
+				NamingEnumeration<SearchResult> objs = ctx.search(ldapSearchBase, filtro.toString(), controls);
+				try {
+					while (objs.hasMore()) {
+						consumidor.accept(LdapAttributeProfiles.aMapa(objs.next().getAttributes(), atributos));
+						total++;
+					}
+				} finally {
+					objs.close();
+				}
+				paginas++;
+				cookie = cookie(ctx.getResponseControls());
+			} while (cookie != null && cookie.length > 0);
+			log.info(new StringBuilder().append("Exportacion terminada: ").append(total).append(" usuarios en ")
+					.append(paginas).append(" paginas de ").append(grupos.size()).append(" grupos"));
+			return total;
+		} finally {
+			ctx.close();
+		}
+	}
+
+	/**
+	 * Metodo para obtener los DN de los grupos a exportar: el grupo indicado o
+	 * los grupos cuyo nombre contiene el aplicativo.
+	 */
+	private List<String> buscaGrupos(InitialLdapContext ctx, String grupo, String app) throws NamingException {
+		List<String> grupos = new ArrayList<>();
+		String filtro;
+		if (grupo != null && !grupo.isBlank()) {
+			if (grupo.regionMatches(true, 0, "CN=", 0, 3)) {
+				grupos.add(grupo);
+				return grupos;
+			}
+			filtro = "(&(objectClass=group)(cn=" + LdapFilterUtil.escapaValor(grupo) + "))";
+		} else {
+			filtro = "(&(objectClass=group)(cn=*" + LdapFilterUtil.escapaValor(app) + "*))";
+		}
+		SearchControls controls = new SearchControls();
+		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		controls.setReturningAttributes(new String[0]);
+		NamingEnumeration<SearchResult> objs = ctx.search(ldapSearchBase, filtro, controls);
+		try {
+			while (objs.hasMore()) {
+				grupos.add(objs.next().getNameInNamespace());
+			}
+		} finally {
+			objs.close();
+		}
+		return grupos;
+	}
+
+	private Control paginacion(int tamanoPagina, byte[] cookie) throws NamingException {
+		try {
+			return new PagedResultsControl(tamanoPagina, cookie, Control.CRITICAL);
+		} catch (IOException ex) {
+			NamingException ne = new NamingException("Error al crear el control de paginacion");
+			ne.setRootCause(ex);
+			throw ne;
+		}
+	}
+
+	private byte[] cookie(Control[] controles) {
+		if (controles != null) {
+			for (Control control : controles) {
+				if (control instanceof PagedResultsResponseControl paginado) {
+					return paginado.getCookie();
+				}
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,41 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapServerProbe.java:
+ *
+ * Clase que prueba en segundo plano los servidores LDAP retirados del
+ * balanceo, para regresarlos cuando vuelven a responder.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.List;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class LdapServerProbe {
+
+	/** Pools de conexiones a LDAP */
+	private final List<LdapContextPool> pools;
+
+	public LdapServerProbe(List<LdapContextPool> pools) {
+		this.pools = pools;
+	}
+
+	/**
+	 * Metodo para probar los servidores retirados de cada pool.
+	 */
+	@Scheduled(initialDelayString = "${app.ldap.balance.probe-interval-ms:10000}",
+			fixedDelayString = "${app.ldap.balance.probe-interval-ms:10000}")
+	public void sondea() {
+		for (LdapContextPool pool : pools) {
+			pool.sondeaServidores();
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapSingleFlight.java:
+ *
+ * Clase que agrupa las consultas concurrentes al directorio con la misma
+ * llave (operacion, usuario, aplicativo y perfil). La primera peticion
+ * ejecuta la consulta y las demas que llegan mientras esta en curso esperan
+ * y reciben el mismo resultado o la misma excepcion. La consulta en curso se
+ * elimina al terminar, no se guarda ningun resultado (eso lo hace la cache).
+ * Si la consulta falla por el tiempo limite de la peticion que la ejecuto, las
+ * peticiones en espera que aun tienen tiempo la repiten una vez en lugar de
+ * recibir ese error.
+ * Se usa una instancia para las llamadas bloqueantes y otra para las
+ * asincronas, la metrica ldap.singleflight.collapsed se etiqueta por modo.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.TimeLimitExceededException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.common.util.DeadlineExceededException;
+
+public class LdapSingleFlight<K> {
+
+	/** Indica si se agrupan las consultas */
+	private final boolean activo;
+
+	/** Consultas en curso por llave */
+	private final Map<K, CompletableFuture<Object>> enCurso = new ConcurrentHashMap<>();
+
+	/** Peticiones que usaron una consulta en curso */
+	private final Counter colapsadas;
+
+	/** Consultas ejecutadas en el directorio */
+	private final Counter ejecutadas;
+
+	/** Peticiones que repitieron la consulta por el tiempo limite de otra */
+	private final Counter repetidas;
+
+	/**
+	 * Constructor del agrupador de consultas.
+	 *
+	 * @param activo        con el valor verdadero se agrupan las consultas.
+	 * @param modo          etiqueta de las metricas: blocking o async.
+	 * @param meterRegistry registro de metricas.
+	 */
+	public LdapSingleFlight(boolean activo, String modo, MeterRegistry meterRegistry) {
+		this.activo = activo;
+		this.colapsadas = Counter.builder("ldap.singleflight.collapsed").tag("mode", modo)
+				.description("Peticiones que recibieron el resultado de una consulta en curso")
+				.register(meterRegistry);
+		this.ejecutadas = Counter.builder("ldap.singleflight.executed").tag("mode", modo)
+				.description("Consultas al directorio ejecutadas por el agrupador").register(meterRegistry);
+		this.repetidas = Counter.builder("ldap.singleflight.retried").tag("mode", modo)
+				.description("Peticiones que repitieron la consulta por el tiempo limite de otra peticion")
+				.register(meterRegistry);
+		Gauge.builder("ldap.singleflight.in.flight", enCurso, Map::size).tag("mode", modo).register(meterRegistry);
+	}
+
+	/**
+	 * Metodo para ejecutar una consulta bloqueante, si ya hay una en curso con
+	 * la misma llave se espera su resultado hasta el tiempo limite de la
+	 * peticion.
+	 *
+	 * @param llave    llave de la consulta.
+	 * @param deadline tiempo limite de la peticion, nulo sin limite.
+	 * @param consulta consulta al directorio.
+	 * @return T resultado de la consulta.
+	 * @throws Exception la excepcion de la consulta.
+	 */
+	public <T> T ejecuta(K llave, Deadline deadline, ConsultaLdap<T> consulta) throws Exception {
+		return ejecuta(llave, deadline, consulta, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T ejecuta(K llave, Deadline deadline, ConsultaLdap<T> consulta, boolean repite) throws Exception {
+		if (!activo) {
+			return consulta.ejecuta();
+		}
+		CompletableFuture<Object> nueva = new CompletableFuture<>();
+		CompletableFuture<Object> existente = enCurso.putIfAbsent(llave, nueva);
+		if (existente == null) {
+			ejecutadas.increment();
+			/** Se elimina antes de completar, quien repita la consulta no debe encontrarla */
+			T resultado;
+			try {
+				resultado = consulta.ejecuta();
+			} catch (Exception | Error ex) {
+				enCurso.remove(llave, nueva);
+				nueva.completeExceptionally(ex);
+				throw ex;
+			}
+			enCurso.remove(llave, nueva);
+			nueva.complete(resultado);
+			return resultado;
+		}
+		colapsadas.increment();
+		try {
+			return (T) (deadline == null ? existente.get()
+					: existente.get(Math.max(1, deadline.restanteMs()), TimeUnit.MILLISECONDS));
+		} catch (ExecutionException ex) {
+			Exception causa = causa(ex);
+			if (repite && agotoTiempo(causa) && tieneTiempo(deadline)) {
+				repetidas.increment();
+				return ejecuta(llave, deadline, consulta, false);
+			}
+			throw causa;
+		} catch (TimeoutException ex) {
+			throw new DeadlineExceededException();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedNamingException("Interrumpido en espera de la consulta LDAP en curso.");
+		}
+	}
+
+	/**
+	 * Metodo para ejecutar una consulta asincrona, si ya hay una en curso con
+	 * la misma llave se regresa un futuro dependiente de ella, sin ocupar un
+	 * hilo del pool de LDAP. El tiempo limite o la cancelacion de una peticion
+	 * no afectan la consulta compartida.
+	 *
+	 * @param llave    llave de la consulta.
+	 * @param deadline tiempo limite de la peticion, nulo sin limite.
+	 * @param consulta inicia la consulta al directorio.
+	 * @return CompletableFuture con el resultado de la consulta.
+	 */
+	public <T> CompletableFuture<T> ejecutaAsync(K llave, Deadline deadline, Supplier<CompletableFuture<T>> consulta) {
+		return ejecutaAsync(llave, deadline, consulta, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> ejecutaAsync(K llave, Deadline deadline, Supplier<CompletableFuture<T>> consulta,
+			boolean repite) {
+		if (!activo) {
+			return consulta.get();
+		}
+		CompletableFuture<Object> nueva = new CompletableFuture<>();
+		CompletableFuture<Object> existente = enCurso.putIfAbsent(llave, nueva);
+		if (existente != null) {
+			colapsadas.increment();
+			return existente.thenApply(resultado -> (T) resultado).exceptionallyCompose(ex -> {
+				Throwable causa = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+				if (repite && agotoTiempo(causa) && tieneTiempo(deadline)) {
+					repetidas.increment();
+					return ejecutaAsync(llave, deadline, consulta, false);
+				}
+				return CompletableFuture.failedFuture(causa);
+			});
+		}
+		ejecutadas.increment();
+		CompletableFuture<T> resultado;
+		try {
+			resultado = consulta.get();
+		} catch (RuntimeException ex) {
+			resultado = CompletableFuture.failedFuture(ex);
+		}
+		resultado.whenComplete((valor, ex) -> {
+			enCurso.remove(llave, nueva);
+			if (ex == null) {
+				nueva.complete(valor);
+			} else {
+				nueva.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+						? ex.getCause()
+						: ex);
+			}
+		});
+		return nueva.thenApply(valor -> (T) valor);
+	}
+
+	/**
+	 * @return numero de consultas en curso.
+	 */
+	public int getEnCurso() {
+		return enCurso.size();
+	}
+
+	/**
+	 * Metodo para saber si la consulta fallo por el tiempo limite de la
+	 * peticion que la ejecuto y no por el directorio.
+	 */
+	private static boolean agotoTiempo(Throwable ex) {
+		return ex instanceof DeadlineExceededException || ex instanceof TimeoutException
+				|| ex instanceof TimeLimitExceededException;
+	}
+
+	private static boolean tieneTiempo(Deadline deadline) {
+		return deadline == null || !deadline.isVencido();
+	}
+
+	private static Exception causa(ExecutionException ex) {
+		Throwable causa = ex.getCause();
+		if (causa instanceof Exception e) {
+			return e;
+		}
+		if (causa instanceof Error e) {
+			throw e;
+		}
+		return new CancellationException(ex.getMessage());
+	}
+
+	/**
+	 * Consulta a LDAP que puede lanzar excepciones.
+	 */
+	@FunctionalInterface
+	public interface ConsultaLdap<T> {
+		T ejecuta() throws Exception;
+	}
+
+}
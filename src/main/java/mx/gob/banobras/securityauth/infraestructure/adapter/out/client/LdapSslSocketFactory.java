@@ -0,0 +1,147 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapSslSocketFactory.java:
+ *
+ * Fabrica de sockets SSL para las conexiones LDAPS de JNDI. JNDI crea la
+ * fabrica por nombre de clase con el metodo estatico getDefault, por lo que
+ * el contexto SSL compartido se asigna una sola vez al iniciar (LdapTlsSupport).
+ * Todas las conexiones usan el mismo contexto y su cache de sesiones, asi las
+ * conexiones nuevas al mismo servidor reanudan la sesion TLS sin el handshake
+ * completo.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.function.Consumer;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+public class LdapSslSocketFactory extends SSLSocketFactory {
+
+	/** Fabrica del contexto SSL compartido */
+	private static volatile SSLSocketFactory delegado;
+
+	/** Receptor de los handshakes terminados, para las metricas */
+	private static volatile Consumer<Handshake> receptor = h -> {
+	};
+
+	/** Instancia que regresa getDefault */
+	private static final LdapSslSocketFactory INSTANCIA = new LdapSslSocketFactory();
+
+	/**
+	 * Metodo que usa JNDI para obtener la fabrica.
+	 *
+	 * @return SocketFactory fabrica compartida.
+	 */
+	public static SocketFactory getDefault() {
+		return INSTANCIA;
+	}
+
+	/**
+	 * Metodo para asignar el contexto SSL compartido.
+	 *
+	 * @param fabrica  fabrica de sockets del contexto SSL.
+	 * @param receptor receptor de los handshakes terminados.
+	 */
+	static void configura(SSLSocketFactory fabrica, Consumer<Handshake> receptor) {
+		LdapSslSocketFactory.delegado = fabrica;
+		LdapSslSocketFactory.receptor = receptor;
+	}
+
+	/**
+	 * @return fabrica del contexto SSL compartido, para negociar StartTLS.
+	 */
+	static SSLSocketFactory delegado() {
+		SSLSocketFactory fabrica = delegado;
+		if (fabrica == null) {
+			throw new IllegalStateException("El contexto SSL de LDAP no esta configurado.");
+		}
+		return fabrica;
+	}
+
+	/**
+	 * Metodo para registrar el handshake de un socket, el tiempo se mide
+	 * desde que se crea el socket e incluye la conexion TCP.
+	 *
+	 * @param socket socket SSL.
+	 * @return Socket el mismo socket.
+	 */
+	static Socket observa(Socket socket) {
+		if (socket instanceof SSLSocket ssl) {
+			long inicio = System.nanoTime();
+			long creacion = System.currentTimeMillis();
+			ssl.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+				@Override
+				public void handshakeCompleted(HandshakeCompletedEvent event) {
+					/** Una sesion creada antes que el socket es una sesion reanudada */
+					boolean reanudada = event.getSession().getCreationTime() < creacion;
+					receptor.accept(new Handshake(System.nanoTime() - inicio, reanudada));
+					event.getSocket().removeHandshakeCompletedListener(this);
+				}
+			});
+		}
+		return socket;
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return observa(delegado().createSocket());
+	}
+
+	@Override
+	public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+		return observa(delegado().createSocket(s, host, port, autoClose));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		return observa(delegado().createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return observa(delegado().createSocket(host, port, localHost, localPort));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return observa(delegado().createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+			throws IOException {
+		return observa(delegado().createSocket(address, port, localAddress, localPort));
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return delegado().getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return delegado().getSupportedCipherSuites();
+	}
+
+	/**
+	 * Handshake terminado.
+	 *
+	 * @param duracionNanos duracion desde la creacion del socket.
+	 * @param reanudada     verdadero si se reanudo una sesion de la cache.
+	 */
+	record Handshake(long duracionNanos, boolean reanudada) {
+	}
+
+}
@@ -0,0 +1,180 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapTlsSupport.java:
+ *
+ * Clase para crear las conexiones a LDAP con TLS, segun app.ldap.tls.mode:
+ * none - conexion sin cifrar (ldap://).
+ * ldaps - TLS desde la conexion (ldaps://, puerto 636).
+ * starttls - la conexion inicia sin cifrar en el puerto 389, se negocia TLS
+ * con la operacion StartTLS y despues se autentica el usuario.
+ *
+ * Se usa el almacen de certificados de app.file.filejks (HttpClientFactory)
+ * y un solo contexto SSL para todas las conexiones, con una cache de
+ * sesiones para que las conexiones nuevas del pool reanuden la sesion TLS.
+ * Se miden los handshakes completos y reanudados.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.StartTlsRequest;
+import javax.naming.ldap.StartTlsResponse;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+
+@Component
+public class LdapTlsSupport {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(LdapTlsSupport.class);
+
+	/** Modo sin cifrar */
+	public static final String MODO_NONE = "none";
+
+	/** Modo con TLS desde la conexion */
+	public static final String MODO_LDAPS = "ldaps";
+
+	/** Modo con la operacion StartTLS */
+	public static final String MODO_STARTTLS = "starttls";
+
+	/** Modo de TLS de las conexiones */
+	private final String modo;
+
+	/** Con el valor uno no se valida el nombre del servidor en StartTLS */
+	private final boolean byPassCert;
+
+	/** Handshakes completos */
+	private final Timer handshakeCompleto;
+
+	/** Handshakes con sesion reanudada */
+	private final Timer handshakeReanudado;
+
+	/**
+	 * Constructor del soporte de TLS, crea el contexto SSL si el modo lo
+	 * requiere.
+	 *
+	 * @param modo              modo de TLS: none, ldaps o starttls.
+	 * @param tamanoCache       sesiones TLS en la cache del cliente.
+	 * @param duracionSesionSeg tiempo de vida de las sesiones, en segundos.
+	 * @param byPassCert        con el valor uno no se validan certificados.
+	 * @param httpClientFactory fabrica con el almacen de certificados.
+	 * @param meterRegistry     registro de metricas.
+	 * @throws Exception Excepción al cargar el almacen de certificados.
+	 */
+	public LdapTlsSupport(@Value("${app.ldap.tls.mode:none}") String modo,
+			@Value("${app.ldap.tls.session-cache-size:1000}") int tamanoCache,
+			@Value("${app.ldap.tls.session-timeout-s:3600}") int duracionSesionSeg,
+			@Value("${app.bypass.cert}") boolean byPassCert, HttpClientFactory httpClientFactory,
+			MeterRegistry meterRegistry) throws Exception {
+		this.modo = modo.trim().toLowerCase(Locale.ROOT);
+		this.byPassCert = byPassCert;
+		if (!MODO_NONE.equals(this.modo) && !MODO_LDAPS.equals(this.modo) && !MODO_STARTTLS.equals(this.modo)) {
+			throw new IllegalArgumentException("Modo de TLS de LDAP no valido: " + modo);
+		}
+		this.handshakeCompleto = Timer.builder("ldap.tls.handshake").tag("resumed", "false")
+				.register(meterRegistry);
+		this.handshakeReanudado = Timer.builder("ldap.tls.handshake").tag("resumed", "true")
+				.register(meterRegistry);
+		if (isActivo()) {
+			SSLContext sslContext = httpClientFactory.createSslContext();
+			SSLSessionContext sesiones = sslContext.getClientSessionContext();
+			sesiones.setSessionCacheSize(tamanoCache);
+			sesiones.setSessionTimeout(duracionSesionSeg);
+			LdapSslSocketFactory.configura(sslContext.getSocketFactory(), this::registra);
+			Gauge.builder("ldap.tls.session.cache.size", sesiones, s -> Collections.list(s.getIds()).size())
+					.register(meterRegistry);
+			log.info(new StringBuilder().append("Conexiones LDAP con TLS, modo: ").append(this.modo));
+		}
+	}
+
+	/**
+	 * @return verdadero si las conexiones usan TLS.
+	 */
+	public boolean isActivo() {
+		return !MODO_NONE.equals(modo);
+	}
+
+	/**
+	 * Metodo para crear una conexion autenticada con el modo de TLS
+	 * configurado. Con StartTLS la autenticacion se realiza despues de negociar
+	 * TLS, sobre la misma conexion.
+	 *
+	 * @param env ambiente de JNDI con el servidor y las credenciales.
+	 * @return InitialLdapContext contexto conectado.
+	 * @throws NamingException Excepción durante la conexion.
+	 */
+	public InitialLdapContext conecta(Hashtable<String, String> env) throws NamingException {
+		if (MODO_LDAPS.equals(modo)) {
+			env.put(Context.SECURITY_PROTOCOL, "ssl");
+			env.put(ConstantsSecurityAuth.LDAP_SOCKET_FACTORY.getName(), LdapSslSocketFactory.class.getName());
+			return new InitialLdapContext(env, null);
+		}
+		if (!MODO_STARTTLS.equals(modo)) {
+			return new InitialLdapContext(env, null);
+		}
+		/** La conexion inicia sin autenticar para no enviar el password sin cifrar */
+		String autenticacion = env.remove(Context.SECURITY_AUTHENTICATION);
+		String usuario = env.remove(Context.SECURITY_PRINCIPAL);
+		String password = env.remove(Context.SECURITY_CREDENTIALS);
+		env.put(Context.SECURITY_AUTHENTICATION, "none");
+		InitialLdapContext ctx = new InitialLdapContext(env, null);
+		try {
+			StartTlsResponse tls = (StartTlsResponse) ctx.extendedOperation(new StartTlsRequest());
+			if (byPassCert) {
+				tls.setHostnameVerifier((host, sesion) -> true);
+			}
+			tls.negotiate((SSLSocketFactory) LdapSslSocketFactory.getDefault());
+			ctx.addToEnvironment(Context.SECURITY_AUTHENTICATION, autenticacion);
+			ctx.addToEnvironment(Context.SECURITY_PRINCIPAL, usuario);
+			ctx.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+			/** El bind se realiza sobre la misma conexion, ya cifrada */
+			ctx.reconnect(null);
+			return ctx;
+		} catch (IOException ex) {
+			cierra(ctx);
+			NamingException ne = new NamingException("Error al negociar StartTLS: " + ex.getMessage());
+			ne.setRootCause(ex);
+			throw ne;
+		} catch (NamingException ex) {
+			cierra(ctx);
+			throw ex;
+		}
+	}
+
+	private void registra(LdapSslSocketFactory.Handshake handshake) {
+		(handshake.reanudada() ? handshakeReanudado : handshakeCompleto).record(handshake.duracionNanos(),
+				TimeUnit.NANOSECONDS);
+	}
+
+	private void cierra(InitialLdapContext ctx) {
+		try {
+			ctx.close();
+		} catch (NamingException ex) {
+			log.info(new StringBuilder().append("Error al cerrar conexion LDAP: ").append(ex.getMessage()));
+		}
+	}
+
+}
@@ -0,0 +1,252 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapUserReplica.java:
+ *
+ * Clase que mantiene en memoria una copia de los usuarios de la base de
+ * busqueda de LDAP, indexada por sAMAccountName. Al iniciar se realiza una
+ * carga completa paginada y despues se aplican solo los cambios, buscando los
+ * usuarios con uSNChanged mayor al ultimo leido. El uSNChanged es propio de
+ * cada controlador de dominio, por eso la replica se sincroniza siempre con
+ * el mismo servidor en una conexion dedicada y solo si ese servidor deja de
+ * responder se cambia a otro y se repite la carga completa. Las bajas se
+ * reflejan en la carga completa periodica.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Component
+public class LdapUserReplica {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(LdapUserReplica.class);
+
+	/** Filtro de los usuarios de la replica */
+	private static final String FILTRO_USUARIOS = "(&(objectCategory=person)(objectClass=user))";
+
+	/** Atributo con el numero de cambio del objeto */
+	private static final String USN_CHANGED = "uSNChanged";
+
+	/** Con el valor uno se mantiene la replica de usuarios en memoria */
+	@Value("${app.ldap.replica.enabled:0}")
+	boolean activa;
+
+	/** Variable que contiene el filtro para la busqueda en ldap */
+	@Value("${app.ldap.search.base}")
+	String ldapSearchBase;
+
+	/** Tamaño de pagina de las busquedas de la replica */
+	@Value("${app.ldap.replica.page-size:1000}")
+	int tamanoPagina;
+
+	/** Tiempo entre cargas completas, en milisegundos */
+	@Value("${app.ldap.replica.full-reload-ms:21600000}")
+	long cargaCompletaMs;
+
+	/** Pool de conexiones con el usuario de servicio */
+	private final LdapContextPool ldapServicePool;
+
+	/** Atributos que se guardan de cada usuario */
+	private final String[] atributos;
+
+	/** Usuarios por sAMAccountName en minusculas */
+	private volatile Map<String, SearchResult> indice = new ConcurrentHashMap<>();
+
+	/** URL del servidor con el que se sincroniza la replica */
+	private volatile String servidorFijo;
+
+	/** Servidor del que se leyo el ultimo uSNChanged */
+	private volatile String servidor;
+
+	/** Ultimo uSNChanged aplicado */
+	private volatile long usn;
+
+	/** Fecha de la ultima sincronizacion exitosa, en milisegundos */
+	private volatile long ultimaSincronizacion;
+
+	/** Fecha de la ultima carga completa, en milisegundos */
+	private volatile long ultimaCargaCompleta;
+
+	public LdapUserReplica(LdapContextPool ldapServicePool, MeterRegistry meterRegistry) {
+		this.ldapServicePool = ldapServicePool;
+		this.atributos = Arrays.copyOf(LdapClient.ATRIBUTOS_USUARIO, LdapClient.ATRIBUTOS_USUARIO.length + 1);
+		this.atributos[atributos.length - 1] = USN_CHANGED;
+		Gauge.builder("ldap.replica.size", this, r -> r.indice.size()).register(meterRegistry);
+		Gauge.builder("ldap.replica.lag.seconds", this,
+				r -> r.ultimaSincronizacion == 0 ? -1 : (System.currentTimeMillis() - r.ultimaSincronizacion) / 1000d)
+				.register(meterRegistry);
+		Gauge.builder("ldap.replica.usn", this, r -> r.usn).register(meterRegistry);
+	}
+
+	/**
+	 * @return verdadero si la replica esta activa y cargada.
+	 */
+	public boolean isDisponible() {
+		return activa && ultimaCargaCompleta > 0;
+	}
+
+	/**
+	 * Metodo para buscar un usuario en la replica.
+	 *
+	 * @param userName sAMAccountName del usuario.
+	 * @return SearchResult datos del usuario, nulo si no esta en la replica.
+	 */
+	public SearchResult busca(String userName) {
+		return userName == null ? null : indice.get(userName.trim().toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Metodo para sincronizar la replica en segundo plano, con carga completa
+	 * la primera vez, si cambia el servidor fijo o si se cumple el tiempo entre
+	 * cargas completas, en otro caso solo se aplican los cambios. La conexion
+	 * es dedicada para no ocupar el pool con las busquedas paginadas.
+	 */
+	@Scheduled(initialDelayString = "${app.ldap.replica.initial-delay-ms:0}",
+			fixedDelayString = "${app.ldap.replica.poll-ms:30000}")
+	public void sincroniza() {
+		if (!activa) {
+			return;
+		}
+		/** Se realiza la asignacion de variables desde OpenShift */
+		if (System.getenv("app.ldap.search.base") != null) {
+			ldapSearchBase = System.getenv("app.ldap.search.base");
+		}
+		InitialLdapContext ctx = null;
+		try {
+			ctx = ldapServicePool.conexionDedicada(servidorFijo);
+			String url = String.valueOf(ctx.getEnvironment().get(Context.PROVIDER_URL));
+			if (servidorFijo != null && !servidorFijo.equals(url)) {
+				log.info(new StringBuilder().append("El servidor ").append(servidorFijo)
+						.append(" no responde, la replica de usuarios se sincroniza con ").append(url));
+			}
+			long inicio = System.currentTimeMillis();
+			Attributes rootDse = ctx.getAttributes("", new String[] { "highestCommittedUSN", "dnsHostName" });
+			long usnServidor = Long.parseLong(valor(rootDse.get("highestCommittedUSN")));
+			String nombreServidor = valor(rootDse.get("dnsHostName"));
+
+			if (ultimaCargaCompleta == 0 || !Objects.equals(nombreServidor, servidor)
+					|| inicio - ultimaCargaCompleta >= cargaCompletaMs) {
+				Map<String, SearchResult> nuevo = new ConcurrentHashMap<>();
+				busca(ctx, FILTRO_USUARIOS, usuario -> guarda(nuevo, usuario));
+				indice = nuevo;
+				ultimaCargaCompleta = System.currentTimeMillis();
+				log.info(new StringBuilder().append("Replica de usuarios cargada de ").append(nombreServidor)
+						.append(": ").append(nuevo.size()).append(" usuarios en ")
+						.append(ultimaCargaCompleta - inicio).append(" ms"));
+			} else if (usnServidor > usn) {
+				Map<String, SearchResult> actual = indice;
+				int[] cambios = new int[1];
+				String filtro = new StringBuilder().append("(&").append(FILTRO_USUARIOS).append("(")
+						.append(USN_CHANGED).append(">=").append(usn + 1).append("))").toString();
+				busca(ctx, filtro, usuario -> {
+					guarda(actual, usuario);
+					cambios[0]++;
+				});
+				log.info(new StringBuilder().append("Cambios aplicados a la replica de usuarios: ").append(cambios[0]));
+			}
+			/** Los cambios posteriores al highestCommittedUSN leido se aplican en la siguiente sincronizacion */
+			usn = usnServidor;
+			servidor = nombreServidor;
+			servidorFijo = url;
+			ultimaSincronizacion = System.currentTimeMillis();
+		} catch (CommunicationException | ServiceUnavailableException ex) {
+			log.error(new StringBuilder().append("Sin comunicacion con LDAP al sincronizar la replica: ")
+					.append(ex.getMessage()));
+		} catch (Exception ex) {
+			/** Se conserva la replica anterior */
+			log.error(new StringBuilder().append("Error al sincronizar la replica de usuarios: ")
+					.append(ex.getMessage()));
+		} finally {
+			if (ctx != null) {
+				try {
+					ctx.close();
+				} catch (NamingException ex) {
+					log.info(new StringBuilder().append("Error al cerrar la conexion de la replica: ")
+							.append(ex.getMessage()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Metodo para realizar una busqueda paginada de usuarios.
+	 */
+	private void busca(InitialLdapContext ctx, String filtro, Consumer<SearchResult> consumidor) throws Exception {
+		SearchControls controls = new SearchControls();
+		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		controls.setReturningAttributes(atributos);
+		byte[] cookie = null;
+		do {
+			ctx.setRequestControls(new Control[] { new PagedResultsControl(tamanoPagina, cookie, Control.CRITICAL) });
+			NamingEnumeration<SearchResult> objs = ctx.search(ldapSearchBase, filtro, controls);
+			try {
+				while (objs.hasMore()) {
+					consumidor.accept(objs.next());
+				}
+			} finally {
+				objs.close();
+			}
+			cookie = cookie(ctx.getResponseControls());
+		} while (cookie != null && cookie.length > 0);
+	}
+
+	private void guarda(Map<String, SearchResult> destino, SearchResult usuario) {
+		try {
+			String userName = valor(usuario.getAttributes().get("sAMAccountName"));
+			if (userName != null) {
+				destino.put(userName.toLowerCase(Locale.ROOT), usuario);
+			}
+		} catch (NamingException ex) {
+			log.error(new StringBuilder().append("Usuario no valido en la replica: ").append(usuario.getName()));
+		}
+	}
+
+	private String valor(Attribute attr) throws NamingException {
+		return attr == null || attr.size() == 0 ? null : String.valueOf(attr.get());
+	}
+
+	private byte[] cookie(Control[] controles) {
+		if (controles != null) {
+			for (Control control : controles) {
+				if (control instanceof PagedResultsResponseControl paginado) {
+					return paginado.getCookie();
+				}
+			}
+		}
+		return null;
+	}
+
+}
@@ -14,6 +14,7 @@ import java.util.Date;
  */
 
 import java.util.List;
+import java.util.Map;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -38,7 +39,10 @@ public class LdapVO {
 	private String email;
 	private Integer intentosFallidos;
 	private Date fecBloqueoPassword;   //lockoutTime
+	private Date fecUltimoFallo;   //badPasswordTime
 	private List<String> grupoAplicativoPerfil;
 	private List<String> listaTotalGrupos;
 	private String detalle;
+	/** Atributos solicitados en la lista fields, nulo si se uso un perfil */
+	private Map<String, Object> atributos;
 }
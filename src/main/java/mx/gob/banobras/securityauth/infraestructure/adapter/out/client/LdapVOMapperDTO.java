@@ -24,6 +24,7 @@ public class LdapVOMapperDTO {
 		ldapDTO.setGrupoAplicativoPerfil(ldapVO.getGrupoAplicativoPerfil());
 		ldapDTO.setListaTotalGrupos(ldapVO.getListaTotalGrupos());
 		ldapDTO.setDetalle(ldapVO.getDetalle());
+		ldapDTO.setAtributos(ldapVO.getAtributos());
 		ldapDTO.setIntentosFallidos(ldapVO.getIntentosFallidos());
 		ldapDTO.setFecBloqueoPassword(ldapVO.getFecBloqueoPassword());
 		
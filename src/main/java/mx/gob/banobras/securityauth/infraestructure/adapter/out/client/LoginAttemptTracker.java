@@ -0,0 +1,238 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LoginAttemptTracker.java:
+ *
+ * Clase que lleva en memoria los intentos fallidos de password recientes de
+ * cada usuario, en una ventana de tiempo deslizante. Se alimenta con los
+ * valores badPwdCount, badPasswordTime y lockoutTime que se leen de LDAP y con los fallos de
+ * validacion del servicio. Mientras se sabe que la cuenta esta bloqueada, se
+ * rechaza la validacion sin enviar el bind a LDAP.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Component
+public class LoginAttemptTracker {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(LoginAttemptTracker.class);
+
+	/** Indica si se usa el control local de intentos */
+	private final boolean activo;
+
+	/** Intentos fallidos permitidos antes de bloquear la cuenta */
+	private final int maxIntentos;
+
+	/** Ventana de tiempo de los intentos fallidos, en milisegundos */
+	private final long ventanaMs;
+
+	/** Tiempo de bloqueo de la cuenta, en milisegundos */
+	private final long bloqueoMs;
+
+	/**
+	 * Intentos por usuario. Las actualizaciones se realizan con compute del
+	 * mapa concurrente, que bloquea solo la particion del usuario.
+	 */
+	private final Cache<String, Intentos> intentos;
+
+	/** Validaciones rechazadas sin consultar LDAP */
+	private final Counter rechazos;
+
+	/**
+	 * Constructor del control de intentos fallidos.
+	 *
+	 * @param activo        con el valor uno se usa el control local.
+	 * @param maxIntentos   intentos fallidos permitidos.
+	 * @param ventanaMs     ventana de tiempo de los intentos, en milisegundos.
+	 * @param bloqueoMs     tiempo de bloqueo de la cuenta, en milisegundos.
+	 * @param maxUsuarios   maximo de usuarios en memoria.
+	 * @param meterRegistry registro de metricas.
+	 */
+	public LoginAttemptTracker(@Value("${app.ldap.lockout.enabled:1}") boolean activo,
+			@Value("${app.ldap.lockout.max-attempts:3}") int maxIntentos,
+			@Value("${app.ldap.lockout.window-ms:1800000}") long ventanaMs,
+			@Value("${app.ldap.lockout.duration-ms:1800000}") long bloqueoMs,
+			@Value("${app.ldap.lockout.max-users:50000}") long maxUsuarios, MeterRegistry meterRegistry) {
+		this.activo = activo;
+		this.maxIntentos = maxIntentos;
+		this.ventanaMs = ventanaMs;
+		this.bloqueoMs = bloqueoMs;
+		this.intentos = Caffeine.newBuilder().maximumSize(maxUsuarios)
+				.expireAfterAccess(Duration.ofMillis(Math.max(ventanaMs, bloqueoMs))).build();
+		this.rechazos = Counter.builder("ldap.lockout.rejected").register(meterRegistry);
+		Gauge.builder("ldap.lockout.tracked", intentos, c -> c.estimatedSize()).register(meterRegistry);
+		Gauge.builder("ldap.lockout.locked", this, LoginAttemptTracker::bloqueados).register(meterRegistry);
+	}
+
+	/**
+	 * Metodo para saber si la cuenta esta bloqueada, sin consultar LDAP.
+	 *
+	 * @param userName usuario a validar.
+	 * @return verdadero si se sabe que la cuenta esta bloqueada.
+	 */
+	public boolean estaBloqueado(String userName) {
+		if (!activo) {
+			return false;
+		}
+		Intentos actual = intentos.getIfPresent(normaliza(userName));
+		if (actual != null && actual.bloqueado(System.currentTimeMillis())) {
+			rechazos.increment();
+			log.info(new StringBuilder().append("Usuario bloqueado en el control local de intentos: ").append(userName));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Metodo para actualizar los intentos con los valores leidos de LDAP. Los
+	 * fallos de badPwdCount se registran con la fecha de badPasswordTime, si
+	 * esa fecha queda fuera de la ventana los fallos de LDAP se ignoran.
+	 *
+	 * @param userName          usuario consultado.
+	 * @param intentosFallidos  valor de badPwdCount.
+	 * @param fecBloqueo        valor de lockoutTime.
+	 * @param fecUltimoFallo    valor de badPasswordTime, si es nulo se usa la
+	 *                          fecha actual.
+	 * @return verdadero si la cuenta esta bloqueada.
+	 */
+	public boolean sincroniza(String userName, Integer intentosFallidos, Date fecBloqueo, Date fecUltimoFallo) {
+		int intentosLdap = intentosFallidos == null ? 0 : intentosFallidos;
+		if (!activo) {
+			return intentosLdap > maxIntentos;
+		}
+		long ahora = System.currentTimeMillis();
+		long ultimoFallo = fecUltimoFallo == null ? ahora : Math.min(fecUltimoFallo.getTime(), ahora);
+		if (ultimoFallo < ahora - ventanaMs) {
+			/** Los fallos de LDAP son anteriores a la ventana */
+			intentosLdap = 0;
+		}
+		long bloqueoLdap = fecBloqueo == null ? 0 : fecBloqueo.getTime() + bloqueoMs;
+		if (intentosLdap == 0 && bloqueoLdap <= ahora) {
+			/** Sin fallos en LDAP se conservan solo los fallos locales */
+			Intentos actual = intentos.getIfPresent(normaliza(userName));
+			return actual != null && actual.bloqueado(ahora);
+		}
+		int fallosLdap = intentosLdap;
+		Intentos actual = intentos.asMap().compute(normaliza(userName), (k, v) -> {
+			Intentos estado = v == null ? new Intentos() : v;
+			estado.depura(ahora - ventanaMs);
+			estado.agrega(fallosLdap - estado.fallos.size(), ultimoFallo);
+			if (fallosLdap > maxIntentos) {
+				estado.bloqueadoHasta = Math.max(estado.bloqueadoHasta, ultimoFallo + bloqueoMs);
+			}
+			estado.bloqueadoHasta = Math.max(estado.bloqueadoHasta, bloqueoLdap);
+			return estado;
+		});
+		return actual.bloqueado(ahora);
+	}
+
+	/**
+	 * Metodo para registrar un password incorrecto.
+	 *
+	 * @param userName usuario validado.
+	 */
+	public void registraFallo(String userName) {
+		if (!activo) {
+			return;
+		}
+		long ahora = System.currentTimeMillis();
+		intentos.asMap().compute(normaliza(userName), (k, v) -> {
+			Intentos estado = v == null ? new Intentos() : v;
+			estado.depura(ahora - ventanaMs);
+			estado.fallos.addLast(ahora);
+			if (estado.fallos.size() > maxIntentos) {
+				estado.bloqueadoHasta = ahora + bloqueoMs;
+				log.info(new StringBuilder().append("Usuario bloqueado por intentos fallidos: ").append(k));
+			}
+			return estado;
+		});
+	}
+
+	/**
+	 * Metodo para registrar una validacion correcta, se eliminan los fallos.
+	 *
+	 * @param userName usuario validado.
+	 */
+	public void registraExito(String userName) {
+		if (activo) {
+			intentos.invalidate(normaliza(userName));
+		}
+	}
+
+	private double bloqueados() {
+		long ahora = System.currentTimeMillis();
+		return intentos.asMap().values().stream().filter(i -> i.bloqueado(ahora)).count();
+	}
+
+	private static String normaliza(String userName) {
+		return userName == null ? "" : userName.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Fallos recientes de un usuario, solo se modifica dentro de compute.
+	 */
+	static final class Intentos {
+
+		/** Fecha de cada fallo dentro de la ventana, en milisegundos */
+		final Deque<Long> fallos = new ArrayDeque<>();
+
+		/** Fecha en que termina el bloqueo, en milisegundos */
+		volatile long bloqueadoHasta;
+
+		void depura(long desde) {
+			while (!fallos.isEmpty() && fallos.peekFirst() < desde) {
+				fallos.pollFirst();
+			}
+		}
+
+		/**
+		 * Agrega fallos con la misma fecha conservando el orden de la cola, la
+		 * fecha de LDAP puede ser anterior a los fallos locales.
+		 */
+		void agrega(int cantidad, long fecha) {
+			for (int i = 0; i < cantidad; i++) {
+				if (fallos.isEmpty() || fecha >= fallos.peekLast()) {
+					fallos.addLast(fecha);
+				} else if (fecha <= fallos.peekFirst()) {
+					fallos.addFirst(fecha);
+				} else {
+					List<Long> ordenados = new ArrayList<>(fallos);
+					ordenados.add(fecha);
+					Collections.sort(ordenados);
+					fallos.clear();
+					fallos.addAll(ordenados);
+				}
+			}
+		}
+
+		boolean bloqueado(long ahora) {
+			return bloqueadoHasta > ahora;
+		}
+	}
+
+}
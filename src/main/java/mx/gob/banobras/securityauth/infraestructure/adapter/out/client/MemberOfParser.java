@@ -0,0 +1,184 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * MemberOfParser.java:
+ *
+ * Clase para obtener los grupos de un usuario a partir del atributo memberOf,
+ * recorre una sola vez los valores del atributo y genera la lista de grupos
+ * del aplicativo y la lista total de grupos. Los nombres de los grupos se
+ * guardan en un diccionario compartido para reutilizar la misma cadena entre
+ * peticiones.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class MemberOfParser {
+
+	/** Maximo de nombres de grupo en el diccionario */
+	private static final int MAX_DICCIONARIO = 100_000;
+
+	/** Prefijo del nombre del grupo en el DN */
+	private static final String CN = "CN=";
+
+	/** Diccionario compartido de nombres de grupo */
+	private static final ConcurrentHashMap<String, String> DICCIONARIO = new ConcurrentHashMap<>();
+
+	/**
+	 * Metodo para obtener los grupos del usuario.
+	 *
+	 * @param memberOf atributo memberOf del usuario.
+	 * @param app      nombre del aplicativo para filtrar sus grupos.
+	 * @return Grupos listas de grupos del aplicativo y de todos los grupos, nulo
+	 *         si el usuario no tiene el atributo.
+	 * @throws NamingException Excepción al leer los valores del atributo.
+	 */
+	public Grupos parse(Attribute memberOf, String app) throws NamingException {
+		if (memberOf == null) {
+			return null;
+		}
+		int total = memberOf.size();
+		Acumulador acumulador = new Acumulador(total, app);
+		for (int i = 0; i < total; i++) {
+			Object valor = memberOf.get(i);
+			if (valor instanceof String dn) {
+				acumulador.agrega(dn);
+			}
+		}
+		return acumulador.grupos();
+	}
+
+	/**
+	 * Metodo para obtener los grupos a partir de una lista de DN, se usa con la
+	 * membresia efectiva (grupos anidados).
+	 *
+	 * @param dns nombres distinguidos de los grupos.
+	 * @param app nombre del aplicativo para filtrar sus grupos.
+	 * @return Grupos listas de grupos del aplicativo y de todos los grupos, nulo
+	 *         si la lista es nula.
+	 */
+	public Grupos parse(List<String> dns, String app) {
+		if (dns == null) {
+			return null;
+		}
+		Acumulador acumulador = new Acumulador(dns.size(), app);
+		for (String dn : dns) {
+			acumulador.agrega(dn);
+		}
+		return acumulador.grupos();
+	}
+
+	/**
+	 * Metodo para obtener el CN de un DN, respeta las comas escapadas.
+	 *
+	 * @param dn nombre distinguido del grupo.
+	 * @return String nombre del grupo, nulo si el DN no tiene CN.
+	 */
+	public static String extraeCn(String dn) {
+		int inicio = dn.regionMatches(true, 0, CN, 0, CN.length()) ? 0 : dn.indexOf(CN);
+		if (inicio < 0) {
+			return null;
+		}
+		inicio += CN.length();
+		int fin = inicio;
+		int largo = dn.length();
+		while (fin < largo) {
+			char c = dn.charAt(fin);
+			if (c == '\\') {
+				fin += 2;
+				continue;
+			}
+			if (c == ',') {
+				break;
+			}
+			fin++;
+		}
+		return intern(dn.substring(inicio, Math.min(fin, largo)));
+	}
+
+	/**
+	 * Metodo para obtener la instancia compartida del nombre del grupo.
+	 *
+	 * @param grupo nombre del grupo.
+	 * @return String instancia del diccionario.
+	 */
+	private static String intern(String grupo) {
+		String existente = DICCIONARIO.get(grupo);
+		if (existente != null) {
+			return existente;
+		}
+		if (DICCIONARIO.size() >= MAX_DICCIONARIO) {
+			return grupo;
+		}
+		existente = DICCIONARIO.putIfAbsent(grupo, grupo);
+		return existente == null ? grupo : existente;
+	}
+
+	/**
+	 * @return el numero de grupos en el diccionario.
+	 */
+	public static int tamanoDiccionario() {
+		return DICCIONARIO.size();
+	}
+
+	/**
+	 * Acumula en una sola pasada los grupos del aplicativo y todos los grupos,
+	 * sin duplicados.
+	 */
+	private static final class Acumulador {
+
+		private final String app;
+		private final boolean filtraApp;
+		private final Set<String> vistosAll;
+		private final Set<String> vistosApp;
+		private final List<String> listaAll;
+		private final List<String> listaApp = new ArrayList<>();
+
+		Acumulador(int total, String app) {
+			this.app = app;
+			this.filtraApp = app != null && !app.isEmpty();
+			this.vistosAll = new HashSet<>(total * 2);
+			this.vistosApp = filtraApp ? new HashSet<>() : null;
+			this.listaAll = new ArrayList<>(total);
+		}
+
+		void agrega(String dn) {
+			String grupo = extraeCn(dn);
+			if (grupo == null) {
+				return;
+			}
+			if (vistosAll.add(grupo)) {
+				listaAll.add(grupo);
+			}
+			/** El aplicativo se busca en todo el DN del grupo */
+			if (filtraApp && dn.contains(app) && vistosApp.add(grupo)) {
+				listaApp.add(grupo);
+			}
+		}
+
+		Grupos grupos() {
+			return new Grupos(listaApp, listaAll);
+		}
+	}
+
+	/**
+	 * Grupos del usuario, los del aplicativo y todos.
+	 */
+	public record Grupos(List<String> grupoAplicativo, List<String> todos) {
+	}
+
+}
@@ -0,0 +1,299 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * NestedGroupResolver.java:
+ *
+ * Clase para obtener la membresia efectiva de un usuario (grupos directos y
+ * los grupos que los contienen). Tiene dos modos:
+ * chain - LDAP resuelve la cadena con LDAP_MATCHING_RULE_IN_CHAIN en una sola
+ * busqueda.
+ * graph - se mantiene en memoria el grafo grupo -> grupos padre, se recarga
+ * en segundo plano en una conexion dedicada, fuera del pool, y la resolucion
+ * no hace busquedas adicionales en LDAP.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.InitialDirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.LdapFilterUtil;
+
+@Component
+public class NestedGroupResolver {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(NestedGroupResolver.class);
+
+	/** Modo con la regla LDAP_MATCHING_RULE_IN_CHAIN */
+	public static final String MODO_CHAIN = "chain";
+
+	/** Modo con el grafo de grupos en memoria */
+	public static final String MODO_GRAPH = "graph";
+
+	/** OID de la regla LDAP_MATCHING_RULE_IN_CHAIN */
+	private static final String IN_CHAIN = "1.2.840.113556.1.4.1941";
+
+	/** Modo de resolucion de grupos anidados: none, chain o graph */
+	@Value("${app.ldap.nested-groups.mode:none}")
+	String modo;
+
+	/** Base de busqueda de los grupos, vacio para usar la base de usuarios */
+	@Value("${app.ldap.nested-groups.base:}")
+	String baseGrupos;
+
+	/** Variable que contiene el filtro para la busqueda en ldap */
+	@Value("${app.ldap.search.base}")
+	String ldapSearchBase;
+
+	/** Tamaño de pagina en la carga del grafo */
+	@Value("${app.ldap.nested-groups.page-size:1000}")
+	int tamanoPagina;
+
+	/** Profundidad maxima a recorrer en el grafo */
+	@Value("${app.ldap.nested-groups.max-depth:32}")
+	int profundidadMaxima;
+
+	/** Pool de conexiones con el usuario de servicio */
+	private final LdapContextPool ldapServicePool;
+
+	/** Grafo grupo (DN en minusculas) -> DN de los grupos padre */
+	private volatile Map<String, String[]> grafo = Map.of();
+
+	/** Fecha de la ultima carga del grafo, en milisegundos */
+	private volatile long ultimaCarga;
+
+	public NestedGroupResolver(LdapContextPool ldapServicePool, MeterRegistry meterRegistry) {
+		this.ldapServicePool = ldapServicePool;
+		Gauge.builder("ldap.group.graph.size", this, r -> r.grafo.size()).register(meterRegistry);
+		Gauge.builder("ldap.group.graph.age.seconds", this,
+				r -> r.ultimaCarga == 0 ? -1 : (System.currentTimeMillis() - r.ultimaCarga) / 1000d)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * @return verdadero si esta activa la resolucion de grupos anidados.
+	 */
+	public boolean isActivo() {
+		return MODO_CHAIN.equalsIgnoreCase(modo) || MODO_GRAPH.equalsIgnoreCase(modo);
+	}
+
+	/**
+	 * @return verdadero si la resolucion requiere una conexion a LDAP.
+	 */
+	public boolean requiereConexion() {
+		return MODO_CHAIN.equalsIgnoreCase(modo);
+	}
+
+	/**
+	 * Metodo para obtener los DN de todos los grupos del usuario, directos y
+	 * anidados.
+	 *
+	 * @param ctx      conexion con la que se busco al usuario.
+	 * @param userDn   DN del usuario.
+	 * @param memberOf atributo memberOf del usuario (grupos directos).
+	 * @param limiteMs tiempo limite de la busqueda en cadena, con el tiempo
+	 *                 restante de la peticion, cero sin limite.
+	 * @return List DN de los grupos, primero los directos.
+	 * @throws NamingException Excepción durante la busqueda en LDAP.
+	 */
+	public List<String> gruposEfectivos(InitialDirContext ctx, String userDn, Attribute memberOf, int limiteMs)
+			throws NamingException {
+		List<String> directos = new ArrayList<>(memberOf.size());
+		for (int i = 0; i < memberOf.size(); i++) {
+			Object valor = memberOf.get(i);
+			if (valor instanceof String dn) {
+				directos.add(dn);
+			}
+		}
+		if (MODO_CHAIN.equalsIgnoreCase(modo)) {
+			return buscaEnCadena(ctx, userDn, directos, limiteMs);
+		}
+		return resuelveEnGrafo(directos);
+	}
+
+	/**
+	 * Metodo para obtener la membresia efectiva con una sola busqueda en LDAP.
+	 */
+	private List<String> buscaEnCadena(InitialDirContext ctx, String userDn, List<String> directos, int limiteMs)
+			throws NamingException {
+		String filtro = new StringBuilder().append("(member:").append(IN_CHAIN).append(":=")
+				.append(LdapFilterUtil.escapaValor(userDn)).append(")").toString();
+		SearchControls controls = new SearchControls();
+		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		controls.setReturningAttributes(new String[0]);
+		controls.setTimeLimit(limiteMs);
+
+		List<String> grupos = new ArrayList<>(directos);
+		Set<String> vistos = new HashSet<>();
+		for (String dn : directos) {
+			vistos.add(dn.toLowerCase(Locale.ROOT));
+		}
+		NamingEnumeration<SearchResult> objs = ctx.search(base(), filtro, controls);
+		try {
+			while (objs.hasMore()) {
+				String dn = objs.next().getNameInNamespace();
+				if (vistos.add(dn.toLowerCase(Locale.ROOT))) {
+					grupos.add(dn);
+				}
+			}
+		} finally {
+			objs.close();
+		}
+		return grupos;
+	}
+
+	/**
+	 * Metodo para obtener la membresia efectiva recorriendo el grafo en memoria.
+	 */
+	private List<String> resuelveEnGrafo(List<String> directos) {
+		Map<String, String[]> actual = grafo;
+		if (actual.isEmpty()) {
+			log.info("El grafo de grupos no esta cargado, se usan los grupos directos.");
+			return directos;
+		}
+		List<String> grupos = new ArrayList<>(directos);
+		Set<String> vistos = new HashSet<>();
+		Deque<String> pendientes = new ArrayDeque<>();
+		for (String dn : directos) {
+			String llave = dn.toLowerCase(Locale.ROOT);
+			if (vistos.add(llave)) {
+				pendientes.add(llave);
+			}
+		}
+		/** Recorrido por niveles, los ciclos se evitan con los grupos vistos */
+		for (int nivel = 0; nivel < profundidadMaxima && !pendientes.isEmpty(); nivel++) {
+			for (int n = pendientes.size(); n > 0; n--) {
+				String[] padres = actual.get(pendientes.poll());
+				if (padres == null) {
+					continue;
+				}
+				for (String padre : padres) {
+					String llave = padre.toLowerCase(Locale.ROOT);
+					if (vistos.add(llave)) {
+						grupos.add(padre);
+						pendientes.add(llave);
+					}
+				}
+			}
+		}
+		return grupos;
+	}
+
+	/**
+	 * Metodo para recargar el grafo de grupos en segundo plano.
+	 */
+	@Scheduled(initialDelayString = "${app.ldap.nested-groups.refresh-initial-ms:0}",
+			fixedDelayString = "${app.ldap.nested-groups.refresh-ms:900000}")
+	public void refrescaGrafo() {
+		if (!MODO_GRAPH.equalsIgnoreCase(modo)) {
+			return;
+		}
+		try {
+			long inicio = System.currentTimeMillis();
+			grafo = cargaGrafo();
+			ultimaCarga = System.currentTimeMillis();
+			log.info(new StringBuilder().append("Grafo de grupos cargado: ").append(grafo.size())
+					.append(" grupos en ").append(ultimaCarga - inicio).append(" ms"));
+		} catch (Exception ex) {
+			/** Se conserva el grafo anterior */
+			log.error(new StringBuilder().append("Error al cargar el grafo de grupos: ").append(ex.getMessage()));
+		}
+	}
+
+	/**
+	 * Metodo para leer de LDAP todos los grupos con sus grupos padre, con
+	 * busqueda paginada en una conexion dedicada para no ocupar el pool ni
+	 * afectar la latencia con la que se balancean los servidores.
+	 */
+	private Map<String, String[]> cargaGrafo() throws Exception {
+		Map<String, String[]> nuevo = new HashMap<>();
+		SearchControls controls = new SearchControls();
+		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		controls.setReturningAttributes(new String[] { ConstantsSecurityAuth.MEMBER_OF.getName() });
+
+		InitialLdapContext ctx = ldapServicePool.conexionDedicada();
+		try {
+			byte[] cookie = null;
+			do {
+				ctx.setRequestControls(new Control[] { new PagedResultsControl(tamanoPagina, cookie, Control.CRITICAL) });
+				NamingEnumeration<SearchResult> objs = ctx.search(base(), "(objectClass=group)", controls);
+				try {
+					while (objs.hasMore()) {
+						SearchResult match = objs.next();
+						Attribute memberOf = match.getAttributes().get(ConstantsSecurityAuth.MEMBER_OF.getName());
+						if (memberOf == null || memberOf.size() == 0) {
+							continue;
+						}
+						String[] padres = new String[memberOf.size()];
+						for (int i = 0; i < padres.length; i++) {
+							padres[i] = String.valueOf(memberOf.get(i));
+						}
+						nuevo.put(match.getNameInNamespace().toLowerCase(Locale.ROOT), padres);
+					}
+				} finally {
+					objs.close();
+				}
+				cookie = cookie(ctx.getResponseControls());
+			} while (cookie != null && cookie.length > 0);
+		} finally {
+			try {
+				ctx.close();
+			} catch (NamingException ex) {
+				log.info(new StringBuilder().append("Error al cerrar la conexion del grafo de grupos: ")
+						.append(ex.getMessage()));
+			}
+		}
+		return nuevo;
+	}
+
+	private byte[] cookie(Control[] controles) {
+		if (controles != null) {
+			for (Control control : controles) {
+				if (control instanceof PagedResultsResponseControl paginado) {
+					return paginado.getCookie();
+				}
+			}
+		}
+		return null;
+	}
+
+	private String base() {
+		/** Se realiza la asignacion de variables desde OpenShift */
+		if (System.getenv("app.ldap.search.base") != null) {
+			ldapSearchBase = System.getenv("app.ldap.search.base");
+		}
+		return baseGrupos == null || baseGrupos.isBlank() ? ldapSearchBase : baseGrupos;
+	}
+
+}
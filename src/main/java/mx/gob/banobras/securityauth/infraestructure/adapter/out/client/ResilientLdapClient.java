@@ -0,0 +1,150 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * ResilientLdapClient.java:
+ *
+ * Clase que protege las consultas al directorio activo con un bulkhead y un
+ * circuit breaker. Si el directorio falla o responde lento el circuito se
+ * abre y las consultas se rechazan de inmediato con ServiceUnavailableException
+ * (503), sin esperar conexiones del pool, hasta que las llamadas de prueba
+ * confirman que se recupero. Se ubica debajo de la cache de usuarios, los
+ * usuarios en cache no cuentan.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import mx.gob.banobras.securityauth.application.port.out.ILdapClient;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+@Component
+public class ResilientLdapClient implements ILdapClient {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(ResilientLdapClient.class);
+
+	/** Cliente que consulta el directorio activo */
+	private final ILdapClient ldapDirectoryClient;
+
+	/** Circuit breaker de LDAP */
+	private final CircuitBreaker circuitBreaker;
+
+	/** Limite de consultas concurrentes */
+	private final Bulkhead bulkhead;
+
+	/** Indica si se usan el circuit breaker y el bulkhead */
+	private final boolean enabled;
+
+	/**
+	 * Constructor del cliente protegido.
+	 *
+	 * @param ldapDirectoryClient cliente que consulta el directorio activo.
+	 * @param circuitBreaker      circuit breaker de LDAP.
+	 * @param bulkhead            limite de consultas concurrentes.
+	 * @param enabled             con el valor uno se protegen las consultas.
+	 */
+	public ResilientLdapClient(@Qualifier("ldapDirectoryClient") ILdapClient ldapDirectoryClient,
+			@Qualifier("ldapCircuitBreaker") CircuitBreaker circuitBreaker,
+			@Qualifier("ldapBulkhead") Bulkhead bulkhead, @Value("${app.ldap.breaker.enabled:1}") boolean enabled) {
+		this.ldapDirectoryClient = ldapDirectoryClient;
+		this.circuitBreaker = circuitBreaker;
+		this.bulkhead = bulkhead;
+		this.enabled = enabled;
+	}
+
+	@Override
+	public LdapResponseDTO autentication(SecurityAuthDTO securityAuthDTO)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		return protege(() -> ldapDirectoryClient.autentication(securityAuthDTO));
+	}
+
+	@Override
+	public LdapVO allDataUserLdap(SecurityAuthDTO securityAuthDTO)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		return protege(() -> ldapDirectoryClient.allDataUserLdap(securityAuthDTO));
+	}
+
+	@Override
+	public List<LdapVO> allDataUsersLdap(List<String> userNames, String appName) throws NamingException {
+		try {
+			return protege(() -> ldapDirectoryClient.allDataUsersLdap(userNames, appName));
+		} catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException
+				| InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	@Override
+	public int invalidaCacheUsuario(String userName) {
+		return ldapDirectoryClient.invalidaCacheUsuario(userName);
+	}
+
+	/**
+	 * Metodo para ejecutar la consulta con el bulkhead y el circuit breaker, si
+	 * el circuito esta abierto o no hay lugar en el bulkhead se lanza
+	 * ServiceUnavailableException sin consultar el directorio.
+	 *
+	 * @param consulta consulta al directorio.
+	 * @return T resultado de la consulta.
+	 */
+	private <T> T protege(LdapSingleFlight.ConsultaLdap<T> consulta)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		try {
+			if (!enabled) {
+				return consulta.ejecuta();
+			}
+			return Bulkhead.decorateCheckedSupplier(bulkhead,
+					CircuitBreaker.decorateCheckedSupplier(circuitBreaker, consulta::ejecuta)).get();
+		} catch (CallNotPermittedException ex) {
+			log.error("Circuit breaker de LDAP abierto, se rechaza la consulta");
+			throw noDisponible(ex);
+		} catch (BulkheadFullException ex) {
+			log.error("Limite de consultas concurrentes a LDAP alcanzado");
+			throw noDisponible(ex);
+		} catch (NamingException | InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException
+				| InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException
+				| RuntimeException ex) {
+			throw ex;
+		} catch (Error ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static ServiceUnavailableException noDisponible(RuntimeException ex) {
+		ServiceUnavailableException noDisponible = new ServiceUnavailableException(
+				ConstantsSecurityAuth.MSG_NO_SERVICE_LDAP.getName());
+		noDisponible.setRootCause(ex);
+		return noDisponible;
+	}
+
+}
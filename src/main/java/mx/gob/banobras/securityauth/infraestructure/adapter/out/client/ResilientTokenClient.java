@@ -0,0 +1,125 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * ResilientTokenClient.java:
+ *
+ * Clase que protege las peticiones al tokenizer con un bulkhead y un circuit
+ * breaker. Si el tokenizer falla o responde lento el circuito se abre y las
+ * validaciones se rechazan de inmediato con 503, sin ocupar hilos ni
+ * conexiones, hasta que las llamadas de prueba confirman que se recupero. Se
+ * ubica debajo de la cache de validaciones, los tokens en cache no cuentan.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.Date;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
+
+@Component
+public class ResilientTokenClient implements ITokenClient {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(ResilientTokenClient.class);
+
+	/** Cliente que consulta el tokenizer */
+	private final ITokenClient tokenClient;
+
+	/** Circuit breaker del tokenizer */
+	private final CircuitBreaker circuitBreaker;
+
+	/** Limite de validaciones concurrentes */
+	private final Bulkhead bulkhead;
+
+	/** Indica si se usan el circuit breaker y el bulkhead */
+	private final boolean enabled;
+
+	/**
+	 * Constructor del cliente protegido.
+	 *
+	 * @param tokenClient    cliente que consulta el tokenizer.
+	 * @param circuitBreaker circuit breaker del tokenizer.
+	 * @param bulkhead       limite de validaciones concurrentes.
+	 * @param enabled        con el valor uno se protegen las peticiones.
+	 */
+	public ResilientTokenClient(@Qualifier("tokenClient") ITokenClient tokenClient,
+			@Qualifier("tokenizerCircuitBreaker") CircuitBreaker circuitBreaker,
+			@Qualifier("tokenizerBulkhead") Bulkhead bulkhead,
+			@Value("${app.token.breaker.enabled:1}") boolean enabled) {
+		this.tokenClient = tokenClient;
+		this.circuitBreaker = circuitBreaker;
+		this.bulkhead = bulkhead;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Metodo para validar el token, si el circuito esta abierto o no hay
+	 * lugar en el bulkhead se responde 503 sin llamar al tokenizer.
+	 *
+	 * @param securityAuthDTO componente que contiene los datos del token.
+	 * @return TokenizerResponseDTO respuesta del tokenizer.
+	 */
+	@Override
+	public TokenizerResponseDTO validToken(SecurityAuthDTO securityAuthDTO) {
+		if (!enabled) {
+			return tokenClient.validToken(securityAuthDTO);
+		}
+		try {
+			return Bulkhead.decorateSupplier(bulkhead,
+					CircuitBreaker.decorateSupplier(circuitBreaker, () -> tokenClient.validToken(securityAuthDTO)))
+					.get();
+		} catch (CallNotPermittedException ex) {
+			log.error("Circuit breaker del tokenizer abierto, se rechaza la validacion");
+			return noDisponible(ex.getMessage());
+		} catch (BulkheadFullException ex) {
+			log.error("Limite de validaciones concurrentes del tokenizer alcanzado");
+			return noDisponible(ex.getMessage());
+		}
+	}
+
+	/**
+	 * El precalentamiento no pasa por el circuit breaker.
+	 */
+	@Override
+	public boolean precalienta(long timeoutMs) {
+		return tokenClient.precalienta(timeoutMs);
+	}
+
+	/**
+	 * Metodo para crear la respuesta de servicio no disponible.
+	 *
+	 * @param detalle motivo del rechazo.
+	 * @return TokenizerResponseDTO respuesta con estatus 503.
+	 */
+	private static TokenizerResponseDTO noDisponible(String detalle) {
+		ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
+		errorMessageDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+		errorMessageDTO.setTimestamp(new Date());
+		errorMessageDTO.setMessage(ConstantsSecurityAuth.MSG_NO_SERVICE_TOKENIZER.getName());
+		errorMessageDTO.setDetail(detalle);
+		/** Respuesta del servicio */
+		TokenizerResponseDTO tokenizerResponseDTO = new TokenizerResponseDTO();
+		tokenizerResponseDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+		tokenizerResponseDTO.setErrorMessageDTO(errorMessageDTO);
+		return tokenizerResponseDTO;
+	}
+
+}
@@ -0,0 +1,388 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * SyntheticLdapClient.java:
+ *
+ * Directorio sintetico en memoria para las pruebas de carga sin Directorio
+ * Activo, se activa con el perfil "synthetic" y sustituye a LdapClient. Los
+ * usuarios y grupos se generan al iniciar (N usuarios, M grupos y una
+ * distribucion configurable de memberOf) o se cargan de un archivo con el
+ * formato usuario;GRUPO1,GRUPO2 por linea. Los usuarios se indexan por
+ * sAMAccountName y cada usuario guarda solo los indices de sus grupos. Las
+ * respuestas tienen una latencia simulada para la busqueda y el bind.
+ *
+ * La exportacion de miembros de grupo sigue usando LDAP.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import mx.gob.banobras.securityauth.application.port.out.ILdapClient;
+import mx.gob.banobras.securityauth.common.util.CipherAESCommon;
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.infraestructure.config.LdapAttributeProfiles;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.LdapResponseDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+@Profile("synthetic")
+@Component("ldapDirectoryClient")
+public class SyntheticLdapClient implements ILdapClient {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(SyntheticLdapClient.class);
+
+	/** Prefijo del nombre de los usuarios generados */
+	private static final String PREFIJO_USUARIO = "sintetico";
+
+	/** Password de todos los usuarios del directorio sintetico */
+	private final String password;
+
+	/** Dominio de mail de los usuarios */
+	private final String dominioMail;
+
+	/** Base de los DN de usuarios y grupos */
+	private final String base;
+
+	/** Latencia simulada de cada busqueda, en milisegundos */
+	private final long latenciaMs;
+
+	/** Variacion aleatoria de la latencia, en milisegundos */
+	private final long variacionMs;
+
+	/** Latencia simulada del bind para validar el password, en milisegundos */
+	private final long latenciaBindMs;
+
+	private final CipherAESCommon cipherAESCommon;
+
+	/** Perfiles de atributos de los datos del usuario */
+	private final LdapAttributeProfiles ldapAttributeProfiles;
+
+	/** Componente para obtener los grupos del atributo memberOf */
+	private final MemberOfParser memberOfParser;
+
+	/** DN de los grupos, los usuarios guardan el indice */
+	private final List<String> grupos = new ArrayList<>();
+
+	/** Usuarios por sAMAccountName en minusculas */
+	private final Map<String, Usuario> usuarios = new HashMap<>();
+
+	/**
+	 * Constructor del directorio sintetico, genera o carga los usuarios.
+	 *
+	 * @param totalUsuarios   usuarios a generar.
+	 * @param totalGrupos     grupos a generar.
+	 * @param aplicativos     aplicativos de los grupos de perfil.
+	 * @param gruposPorPerfil cada cuantos grupos se genera uno de perfil.
+	 * @param minGrupos       grupos minimos por usuario.
+	 * @param maxGrupos       grupos maximos por usuario.
+	 * @param sesgo           exponente de la distribucion de grupos por
+	 *                        usuario, uno es uniforme y con valores mayores la
+	 *                        mayoria de usuarios tiene pocos grupos.
+	 * @param semilla         semilla del generador, el directorio es el mismo en
+	 *                        cada inicio.
+	 * @param archivo         archivo con los usuarios a cargar, vacio para
+	 *                        generarlos.
+	 */
+	public SyntheticLdapClient(@Value("${app.ldap.synthetic.users:10000}") int totalUsuarios,
+			@Value("${app.ldap.synthetic.groups:5000}") int totalGrupos,
+			@Value("${app.ldap.synthetic.app-names:APLICATIVO}") String aplicativos,
+			@Value("${app.ldap.synthetic.app-group-every:10}") int gruposPorPerfil,
+			@Value("${app.ldap.synthetic.member-of.min:5}") int minGrupos,
+			@Value("${app.ldap.synthetic.member-of.max:2000}") int maxGrupos,
+			@Value("${app.ldap.synthetic.member-of.skew:3.0}") double sesgo,
+			@Value("${app.ldap.synthetic.seed:1}") long semilla,
+			@Value("${app.ldap.synthetic.file:}") String archivo,
+			@Value("${app.ldap.synthetic.password:Sintetico2024}") String password,
+			@Value("${app.ldap.synthetic.latency-ms:2}") long latenciaMs,
+			@Value("${app.ldap.synthetic.latency-jitter-ms:3}") long variacionMs,
+			@Value("${app.ldap.synthetic.bind-latency-ms:5}") long latenciaBindMs,
+			@Value("${app.ldap.search.base}") String base, @Value("${app.ldap.dominio.mail}") String dominioMail,
+			CipherAESCommon cipherAESCommon, LdapAttributeProfiles ldapAttributeProfiles,
+			MemberOfParser memberOfParser) throws IOException {
+		this.password = password;
+		this.dominioMail = dominioMail;
+		this.base = base;
+		this.latenciaMs = latenciaMs;
+		this.variacionMs = variacionMs;
+		this.latenciaBindMs = latenciaBindMs;
+		this.cipherAESCommon = cipherAESCommon;
+		this.ldapAttributeProfiles = ldapAttributeProfiles;
+		this.memberOfParser = memberOfParser;
+
+		long inicio = System.currentTimeMillis();
+		if (archivo == null || archivo.isBlank()) {
+			genera(totalUsuarios, totalGrupos, aplicativos.split(","), Math.max(gruposPorPerfil, 1),
+					Math.min(minGrupos, totalGrupos), Math.min(maxGrupos, totalGrupos), sesgo, semilla);
+		} else {
+			carga(Path.of(archivo));
+		}
+		log.info(new StringBuilder().append("Directorio sintetico creado: ").append(usuarios.size())
+				.append(" usuarios, ").append(grupos.size()).append(" grupos en ")
+				.append(System.currentTimeMillis() - inicio).append(" ms"));
+	}
+
+	/**
+	 * Metodo para generar los grupos y los usuarios. Los grupos de cada usuario
+	 * son un bloque consecutivo a partir de una posicion aleatoria.
+	 */
+	private void genera(int totalUsuarios, int totalGrupos, String[] aplicativos, int gruposPorPerfil,
+			int minGrupos, int maxGrupos, double sesgo, long semilla) {
+		for (int i = 0; i < totalGrupos; i++) {
+			String cn = i % gruposPorPerfil == 0
+					? aplicativos[(i / gruposPorPerfil) % aplicativos.length].trim() + "_PERFIL_" + i
+					: "GRUPO_" + i;
+			grupos.add(dnGrupo(cn));
+		}
+		Random random = new Random(semilla);
+		for (int n = 0; n < totalUsuarios; n++) {
+			int cantidad = minGrupos + (int) ((maxGrupos - minGrupos) * Math.pow(random.nextDouble(), sesgo));
+			int[] memberOf = new int[cantidad];
+			int desde = totalGrupos == 0 ? 0 : random.nextInt(totalGrupos);
+			for (int j = 0; j < cantidad; j++) {
+				memberOf[j] = (desde + j) % totalGrupos;
+			}
+			agrega(String.format("%s%05d", PREFIJO_USUARIO, n), memberOf);
+		}
+	}
+
+	/**
+	 * Metodo para cargar los usuarios de un archivo, una linea por usuario con
+	 * el formato usuario;GRUPO1,GRUPO2. Las lineas vacias o que inician con #
+	 * se ignoran.
+	 */
+	private void carga(Path archivo) throws IOException {
+		Map<String, Integer> indiceGrupos = new HashMap<>();
+		try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+			String linea;
+			while ((linea = lector.readLine()) != null) {
+				linea = linea.trim();
+				if (linea.isEmpty() || linea.startsWith("#")) {
+					continue;
+				}
+				String[] partes = linea.split(";", 2);
+				String[] nombres = partes.length > 1 && !partes[1].isBlank() ? partes[1].split(",") : new String[0];
+				int[] memberOf = new int[nombres.length];
+				for (int j = 0; j < nombres.length; j++) {
+					memberOf[j] = indiceGrupos.computeIfAbsent(nombres[j].trim(), cn -> {
+						grupos.add(dnGrupo(cn));
+						return grupos.size() - 1;
+					});
+				}
+				agrega(partes[0].trim(), memberOf);
+			}
+		}
+	}
+
+	private void agrega(String userName, int[] memberOf) {
+		usuarios.put(userName.toLowerCase(Locale.ROOT), new Usuario(userName, memberOf));
+	}
+
+	private String dnGrupo(String cn) {
+		return new StringBuilder().append("CN=").append(cn).append(",OU=Grupos,").append(base).toString();
+	}
+
+	@Override
+	public LdapResponseDTO autentication(SecurityAuthDTO securityAuthDTO)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		Deadline.verifica(securityAuthDTO.getDeadline());
+		LdapResponseDTO ldapResponseDTO = new LdapResponseDTO();
+		LdapVOMapperDTO mapperLdapDTO = new LdapVOMapperDTO();
+		espera(latenciaMs, variacionMs);
+		Usuario usuario = busca(securityAuthDTO.getUserName());
+		if (usuario == null) {
+			ldapResponseDTO.setStatusCode(403);
+			ldapResponseDTO.setErrorMessageDTO(error(1, ConstantsSecurityAuth.MSG_USER_DISAEBLE.getName()));
+			log.info(new StringBuilder().append("Usuario no encontrado."));
+			return ldapResponseDTO;
+		}
+		LdapVO dataLdapVO = creaLdapVO(usuario, securityAuthDTO, true, null, null);
+		if (securityAuthDTO.isValidUserPwd()) {
+			espera(latenciaBindMs, 0);
+			if (!password.equals(securityAuthDTO.getPassword())) {
+				ldapResponseDTO.setStatusCode(403);
+				ldapResponseDTO.setErrorMessageDTO(error(2, ConstantsSecurityAuth.MSG_PASSWORD_INCORRECT.getName()));
+				ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
+				log.info(new StringBuilder().append("EL password es incorrecto."));
+				return ldapResponseDTO;
+			}
+		}
+		ldapResponseDTO.setStatusCode(200);
+		ldapResponseDTO.setLdapDTO(mapperLdapDTO.mapperVOtoDTO(dataLdapVO));
+		return ldapResponseDTO;
+	}
+
+	@Override
+	public LdapVO allDataUserLdap(SecurityAuthDTO securityAuthDTO)
+			throws NamingException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException,
+			InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		Deadline.verifica(securityAuthDTO.getDeadline());
+		LdapAttributeProfiles.Proyeccion proyeccion = ldapAttributeProfiles.resuelve(securityAuthDTO);
+		espera(latenciaMs, variacionMs);
+		Usuario usuario = busca(securityAuthDTO.getUserName());
+		if (usuario == null) {
+			return null;
+		}
+		String detalle = null;
+		Map<String, Object> atributos = null;
+		if (proyeccion.isCompleta() || proyeccion.campos() != null) {
+			Attributes attrs = atributos(usuario);
+			detalle = proyeccion.isCompleta() ? attrs.toString() : null;
+			atributos = proyeccion.campos() != null ? LdapAttributeProfiles.aMapa(attrs, proyeccion.campos()) : null;
+		}
+		return creaLdapVO(usuario, securityAuthDTO, proyeccion.incluye(ConstantsSecurityAuth.MEMBER_OF.getName()),
+				detalle, atributos);
+	}
+
+	@Override
+	public List<LdapVO> allDataUsersLdap(List<String> userNames, String appName) throws NamingException {
+		espera(latenciaMs, variacionMs);
+		List<LdapVO> resultado = new ArrayList<>(userNames.size());
+		for (String userName : userNames) {
+			Usuario usuario = busca(userName);
+			if (usuario != null) {
+				MemberOfParser.Grupos gruposUsuario = memberOfParser.parse(usuario.memberOf(grupos), appName);
+				resultado.add(creaLdapVO(usuario, null, gruposUsuario, null, null));
+			}
+		}
+		return resultado;
+	}
+
+	private Usuario busca(String userName) {
+		return userName == null ? null : usuarios.get(userName.trim().toLowerCase(Locale.ROOT));
+	}
+
+	private LdapVO creaLdapVO(Usuario usuario, SecurityAuthDTO securityAuthDTO, boolean conGrupos, String detalle,
+			Map<String, Object> atributos) throws InvalidKeyException, NoSuchAlgorithmException,
+			NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException,
+			BadPaddingException {
+		MemberOfParser.Grupos gruposUsuario = conGrupos
+				? memberOfParser.parse(usuario.memberOf(grupos), securityAuthDTO.getAppName())
+				: null;
+		String passwordCifrado = securityAuthDTO.isValidUserPwd()
+				? cipherAESCommon.encryptStringToAesHex(securityAuthDTO.getPassword())
+				: null;
+		return creaLdapVO(usuario, passwordCifrado, gruposUsuario, detalle, atributos);
+	}
+
+	private LdapVO creaLdapVO(Usuario usuario, String passwordCifrado, MemberOfParser.Grupos gruposUsuario,
+			String detalle, Map<String, Object> atributos) {
+		String userName = usuario.userName();
+		return new LdapVO(userName, passwordCifrado, usuario.expediente(), "512", userName, "Usuario " + userName,
+				"Experto Técnico", "Area Prueba", "1530", 1, userName + dominioMail, userName + dominioMail, 0, null,
+				null, gruposUsuario != null ? gruposUsuario.grupoAplicativo() : null,
+				gruposUsuario != null ? gruposUsuario.todos() : null, detalle, atributos);
+	}
+
+	/**
+	 * Metodo para crear los atributos de LDAP del usuario, solo se usa si se
+	 * solicitan todos los atributos o una lista de atributos.
+	 */
+	private Attributes atributos(Usuario usuario) {
+		String userName = usuario.userName();
+		Attributes attrs = new BasicAttributes(true);
+		attrs.put("sAMAccountName", userName);
+		attrs.put("cn", userName);
+		attrs.put("givenName", "Usuario " + userName);
+		attrs.put("initials", usuario.expediente());
+		attrs.put("title", "Experto Técnico");
+		attrs.put("department", "Area Prueba");
+		attrs.put("telephoneNumber", "1530");
+		attrs.put("userPrincipalName", userName + dominioMail);
+		attrs.put("mail", userName + dominioMail);
+		attrs.put("userAccountControl", "512");
+		attrs.put("badPwdCount", "0");
+		attrs.put("lockoutTime", "0");
+		BasicAttribute memberOf = new BasicAttribute(ConstantsSecurityAuth.MEMBER_OF.getName());
+		for (String dn : usuario.memberOf(grupos)) {
+			memberOf.add(dn);
+		}
+		attrs.put(memberOf);
+		return attrs;
+	}
+
+	private ErrorMessageDTO error(int codigo, String mensaje) {
+		ErrorMessageDTO errorMessageDTO = new ErrorMessageDTO();
+		errorMessageDTO.setStatusCode(codigo);
+		errorMessageDTO.setTimestamp(new Date());
+		errorMessageDTO.setMessage(mensaje);
+		return errorMessageDTO;
+	}
+
+	/**
+	 * Metodo para simular la latencia del directorio.
+	 */
+	private static void espera(long latenciaMs, long variacionMs) {
+		long total = latenciaMs + (variacionMs > 0 ? ThreadLocalRandom.current().nextLong(variacionMs + 1) : 0);
+		if (total > 0) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(total));
+		}
+	}
+
+	/**
+	 * Usuario del directorio sintetico.
+	 *
+	 * @param userName sAMAccountName del usuario.
+	 * @param grupos   indices de sus grupos en la lista de DN.
+	 */
+	private record Usuario(String userName, int[] grupos) {
+
+		String expediente() {
+			return String.valueOf(Math.abs(userName.hashCode()) % 100000);
+		}
+
+		/** Vista de los DN de los grupos del usuario, sin copiar */
+		List<String> memberOf(List<String> dns) {
+			return new AbstractList<>() {
+				@Override
+				public String get(int i) {
+					return dns.get(grupos[i]);
+				}
+
+				@Override
+				public int size() {
+					return grupos.length;
+				}
+			};
+		}
+	}
+
+}
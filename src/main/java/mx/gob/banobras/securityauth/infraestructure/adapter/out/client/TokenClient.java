@@ -1,6 +1,6 @@
 package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
 
-import java.io.IOException;
+import java.net.SocketTimeoutException;
 
 /**
  * TokenClient.java:
@@ -15,11 +15,14 @@ import java.io.IOException;
 
 
 import java.util.Date;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,6 +33,8 @@ import com.google.gson.Gson;
 
 import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
 import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.common.util.DeadlineExceededException;
 import mx.gob.banobras.securityauth.common.util.ErrorDetail;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.ErrorMessageDTO;
 import mx.gob.banobras.securityauth.infraestructure.config.dto.HttpErrorExceptionDTO;
@@ -46,6 +51,14 @@ public class TokenClient implements ITokenClient {
 	@Value("${app.url.token.valid}")
 	String urlTokenValid;
 
+	/** Tiempo maximo para conectar con el tokenizer, en milisegundos */
+	@Value("${app.token.connect-timeout-ms:3000}")
+	long connectTimeoutMs;
+
+	/** Tiempo maximo de espera de la respuesta del tokenizer, en milisegundos */
+	@Value("${app.token.read-timeout-ms:10000}")
+	long readTimeoutMs;
+
 	private final HttpClientFactory httpClientFactory;
 
 	public TokenClient(HttpClientFactory httpClientFactory) {
@@ -75,9 +88,17 @@ public class TokenClient implements ITokenClient {
 			if(System.getenv("app.url.token.valid") != null) {
 				urlTokenValid = System.getenv("app.url.token.valid");
 			}
-			client = httpClientFactory.getHttpClient(urlTokenValid);
+			/** Los tiempos de espera no exceden el tiempo restante de la peticion */
+			Deadline deadline = securityAuthInDTO.getDeadline();
+			RequestConfig requestConfig = RequestConfig.custom()
+					.setConnectTimeout(Timeout.ofMilliseconds(Deadline.restanteMs(deadline, connectTimeoutMs)))
+					.setConnectionRequestTimeout(Timeout.ofMilliseconds(Deadline.restanteMs(deadline, connectTimeoutMs)))
+					.setResponseTimeout(Timeout.ofMilliseconds(Deadline.restanteMs(deadline, readTimeoutMs))).build();
+			/** Cliente compartido con pool de conexiones, no se cierra */
+			client = httpClientFactory.getHttpClient();
 			
 			HttpPost httpPost = new HttpPost(urlTokenValid);
+			httpPost.setConfig(requestConfig);
 			httpPost.setHeader("Content-Type", "application/json");
 			httpPost.setHeader("credentials", securityAuthInDTO.getCredentials());
 			httpPost.setHeader("token-auth", securityAuthInDTO.getTokenAuth());
@@ -125,10 +146,18 @@ public class TokenClient implements ITokenClient {
 			} finally {
 				response.close();
 			}
+		} catch (DeadlineExceededException | SocketTimeoutException e) {
+			log.info(new StringBuilder().append("Tiempo limite agotado al validar el token: ").append(e.getMessage()));
+			errorMessageDTO = new ErrorMessageDTO();
+			errorMessageDTO.setStatusCode(HttpStatus.GATEWAY_TIMEOUT.value());
+			errorMessageDTO.setTimestamp(new Date());
+			errorMessageDTO.setMessage(ConstantsSecurityAuth.MSG_DEADLINE_EXCEEDED.getName());
+			/** Respuesta del servicio */
+			tokenizerResponseDTO = new TokenizerResponseDTO();
+			tokenizerResponseDTO.setStatusCode(HttpStatus.GATEWAY_TIMEOUT.value());
+			tokenizerResponseDTO.setErrorMessageDTO(errorMessageDTO);
 		} catch (Exception e) {
-			e.printStackTrace();
-			log.info("aqui");
-			log.info(e);
+			log.error(new StringBuilder().append("Error al validar el token con el tokenizer: ").append(e.getMessage()));
 			errorMessageDTO = new ErrorMessageDTO();
 			errorMessageDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
 			errorMessageDTO.setTimestamp(new Date());
@@ -138,15 +167,35 @@ public class TokenClient implements ITokenClient {
 			tokenizerResponseDTO = new TokenizerResponseDTO();
 			tokenizerResponseDTO.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
 			tokenizerResponseDTO.setErrorMessageDTO(errorMessageDTO);
-		} finally {
-			try {
-				client.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-
 		}
 		log.info("Finaliza restCient Valida Token");
 		return tokenizerResponseDTO;
 	}
+
+	/**
+	 * Metodo para abrir la conexion con el tokenizer con una peticion HEAD, se
+	 * crea el cliente compartido, se carga el almacen de certificados y se
+	 * realiza el handshake de TLS; la conexion queda en el pool. No
+	 * importa el codigo de respuesta, solo que el tokenizer responda.
+	 * 
+	 * @param timeoutMs tiempo maximo de la conexion, en milisegundos.
+	 * @return verdadero si el tokenizer respondio.
+	 */
+	@Override
+	public boolean precalienta(long timeoutMs) {
+		if (System.getenv("app.url.token.valid") != null) {
+			urlTokenValid = System.getenv("app.url.token.valid");
+		}
+		HttpHead httpHead = new HttpHead(urlTokenValid);
+		httpHead.setConfig(RequestConfig.custom().setConnectTimeout(Timeout.ofMilliseconds(timeoutMs))
+				.setConnectionRequestTimeout(Timeout.ofMilliseconds(timeoutMs))
+				.setResponseTimeout(Timeout.ofMilliseconds(timeoutMs)).build());
+		try (CloseableHttpResponse response = httpClientFactory.getHttpClient().execute(httpHead)) {
+			log.info(new StringBuilder().append("Conexion con el tokenizer: ").append(response.getCode()));
+			return true;
+		} catch (Exception e) {
+			log.info(new StringBuilder().append("Sin conexion con el tokenizer al iniciar: ").append(e.getMessage()));
+			return false;
+		}
+	}
 }
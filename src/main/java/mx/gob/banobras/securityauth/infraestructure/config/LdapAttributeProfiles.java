@@ -0,0 +1,216 @@
+package mx.gob.banobras.securityauth.infraestructure.config;
+
+/**
+ * LdapAttributeProfiles.java:
+ *
+ * Clase con los perfiles de atributos que se consultan en LDAP para los datos
+ * del usuario (minimal, standard y full) y la lista de atributos indicada por
+ * el consumidor (fields). El directorio solo envia los atributos del perfil y
+ * solo esos se serializan en la respuesta.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import mx.gob.banobras.securityauth.common.util.ConstantsSecurityAuth;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+@Component
+public class LdapAttributeProfiles {
+
+	/** Perfil con los atributos basicos del usuario y sus grupos */
+	public static final String MINIMAL = "minimal";
+
+	/** Perfil con los atributos que se regresan en LdapDTO */
+	public static final String STANDARD = "standard";
+
+	/** Perfil con todos los atributos del usuario */
+	public static final String FULL = "full";
+
+	/** Nombre valido de un atributo de LDAP (RFC 4512) */
+	private static final Pattern NOMBRE_ATRIBUTO = Pattern.compile("[A-Za-z][A-Za-z0-9-]*");
+
+	/** Atributo que siempre se consulta para identificar al usuario */
+	private static final String USUARIO = "sAMAccountName";
+
+	/** Perfil que se usa si la peticion no lo indica */
+	private final String perfilDefault;
+
+	/** Maximo de atributos en la lista del consumidor */
+	private final int maxCampos;
+
+	/** Atributos de cada perfil, nulo para todos los atributos */
+	private final Map<String, String[]> perfiles = new LinkedHashMap<>();
+
+	public LdapAttributeProfiles(@Value("${app.ldap.attributes.default-profile:full}") String perfilDefault,
+			@Value("${app.ldap.attributes.minimal:sAMAccountName,cn,mail,userAccountControl,memberOf}") String minimal,
+			@Value("${app.ldap.attributes.standard:sAMAccountName,cn,givenName,initials,title,department,telephoneNumber,userPrincipalName,mail,userAccountControl,badPwdCount,lockoutTime,memberOf}") String standard,
+			@Value("${app.ldap.attributes.max-fields:30}") int maxCampos) {
+		this.perfilDefault = perfilDefault.trim().toLowerCase(Locale.ROOT);
+		this.maxCampos = maxCampos;
+		perfiles.put(MINIMAL, lista(minimal).toArray(new String[0]));
+		perfiles.put(STANDARD, lista(standard).toArray(new String[0]));
+		perfiles.put(FULL, null);
+		if (!perfiles.containsKey(this.perfilDefault)) {
+			throw new IllegalArgumentException(new StringBuilder()
+					.append(ConstantsSecurityAuth.MSG_ATTRIBUTE_PROFILE_INVALID.getName()).append(" ")
+					.append(perfilDefault).toString());
+		}
+	}
+
+	/**
+	 * Metodo para validar el perfil y la lista de atributos de la peticion.
+	 *
+	 * @param securityAuthDTO datos de la peticion.
+	 * @return verdadero si el perfil existe y los atributos son validos.
+	 */
+	public boolean esValida(SecurityAuthDTO securityAuthDTO) {
+		try {
+			resuelve(securityAuthDTO);
+			return true;
+		} catch (IllegalArgumentException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Metodo para obtener los atributos a consultar en LDAP. La lista de
+	 * atributos del consumidor tiene prioridad sobre el perfil.
+	 *
+	 * @param securityAuthDTO datos de la peticion.
+	 * @return Proyeccion atributos a consultar.
+	 * @throws IllegalArgumentException si el perfil no existe o algun atributo
+	 *                                  no es valido.
+	 */
+	public Proyeccion resuelve(SecurityAuthDTO securityAuthDTO) {
+		String campos = securityAuthDTO.getFields();
+		if (campos != null && !campos.isBlank()) {
+			List<String> lista = campos(campos);
+			String[] solicitados = lista.toArray(new String[0]);
+			Set<String> atributos = new LinkedHashSet<>(lista);
+			atributos.add(USUARIO);
+			return new Proyeccion("fields:" + String.join(",", lista).toLowerCase(Locale.ROOT),
+					atributos.toArray(new String[0]), solicitados);
+		}
+		String perfil = securityAuthDTO.getAttributeProfile() == null || securityAuthDTO.getAttributeProfile().isBlank()
+				? perfilDefault
+				: securityAuthDTO.getAttributeProfile().trim().toLowerCase(Locale.ROOT);
+		if (!perfiles.containsKey(perfil)) {
+			throw new IllegalArgumentException(ConstantsSecurityAuth.MSG_ATTRIBUTE_PROFILE_INVALID.getName());
+		}
+		return new Proyeccion(perfil, perfiles.get(perfil), null);
+	}
+
+	/**
+	 * Metodo para validar una lista de atributos del consumidor, separados por
+	 * coma: nombres validos de LDAP y no mas del maximo configurado.
+	 *
+	 * @param campos atributos separados por coma.
+	 * @return List atributos sin repetidos ni vacios.
+	 * @throws IllegalArgumentException si la lista esta vacia, excede el maximo
+	 *                                  o algun atributo no es valido.
+	 */
+	public List<String> campos(String campos) {
+		List<String> lista = lista(campos);
+		if (lista.isEmpty() || lista.size() > maxCampos) {
+			throw new IllegalArgumentException(ConstantsSecurityAuth.MSG_ATTRIBUTE_PROFILE_INVALID.getName());
+		}
+		for (String campo : lista) {
+			if (!NOMBRE_ATRIBUTO.matcher(campo).matches()) {
+				throw new IllegalArgumentException(ConstantsSecurityAuth.MSG_ATTRIBUTE_PROFILE_INVALID.getName());
+			}
+		}
+		return lista;
+	}
+
+	/**
+	 * Metodo para convertir los atributos del usuario a un mapa, en el orden
+	 * solicitado. Los atributos con varios valores se regresan como lista y los
+	 * binarios en Base64.
+	 *
+	 * @param attrs     atributos del resultado de la busqueda.
+	 * @param atributos nombres de los atributos a convertir.
+	 * @return Map atributos con valor.
+	 * @throws NamingException Excepción al leer los atributos.
+	 */
+	public static Map<String, Object> aMapa(Attributes attrs, String[] atributos) throws NamingException {
+		Map<String, Object> mapa = new LinkedHashMap<>();
+		for (String nombre : atributos) {
+			Attribute attr = attrs.get(nombre);
+			if (attr == null || attr.size() == 0) {
+				continue;
+			}
+			if (attr.size() == 1) {
+				mapa.put(nombre, valor(attr.get()));
+			} else {
+				List<Object> valores = new ArrayList<>(attr.size());
+				for (int i = 0; i < attr.size(); i++) {
+					valores.add(valor(attr.get(i)));
+				}
+				mapa.put(nombre, valores);
+			}
+		}
+		return mapa;
+	}
+
+	private static Object valor(Object valor) {
+		return valor instanceof byte[] bytes ? Base64.getEncoder().encodeToString(bytes) : valor;
+	}
+
+	/** Lista de atributos separados por coma, sin repetidos ni vacios */
+	private static List<String> lista(String valor) {
+		Set<String> atributos = new LinkedHashSet<>();
+		Arrays.stream(valor.split(",")).map(String::trim).filter(s -> !s.isEmpty()).forEach(atributos::add);
+		return new ArrayList<>(atributos);
+	}
+
+	/**
+	 * Atributos a consultar en LDAP.
+	 *
+	 * @param llave     identificador del perfil, se usa en la llave de la cache.
+	 * @param atributos atributos de la busqueda, nulo para todos.
+	 * @param campos    atributos solicitados por el consumidor, nulo si se uso
+	 *                  un perfil.
+	 */
+	public record Proyeccion(String llave, String[] atributos, String[] campos) {
+
+		/** @return verdadero si se consultan todos los atributos */
+		public boolean isCompleta() {
+			return atributos == null;
+		}
+
+		/** @return verdadero si se consulta el atributo */
+		public boolean incluye(String atributo) {
+			if (atributos == null) {
+				return true;
+			}
+			for (String nombre : atributos) {
+				if (nombre.equalsIgnoreCase(atributo)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+}
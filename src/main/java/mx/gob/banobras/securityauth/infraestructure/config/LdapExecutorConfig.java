@@ -0,0 +1,79 @@
+package mx.gob.banobras.securityauth.infraestructure.config;
+
+/**
+ * LdapExecutorConfig.java:
+ *
+ * Clase de configuracion que crea el pool de hilos dedicado a las consultas
+ * a LDAP, para liberar los hilos de las peticiones HTTP mientras el
+ * directorio activo responde. El pool y su cola son acotados, si estan
+ * llenos la peticion se rechaza de inmediato.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.Map;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class LdapExecutorConfig {
+
+	/** Numero de hilos base */
+	@Value("${app.ldap.executor.core-size:8}")
+	int coreSize;
+
+	/** Numero maximo de hilos */
+	@Value("${app.ldap.executor.max-size:16}")
+	int maxSize;
+
+	/** Peticiones en espera de un hilo */
+	@Value("${app.ldap.executor.queue-capacity:100}")
+	int queueCapacity;
+
+	/**
+	 * Pool de hilos para las consultas a LDAP.
+	 *
+	 * @return ThreadPoolTaskExecutor pool de hilos.
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor ldapExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(coreSize);
+		executor.setMaxPoolSize(maxSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("ldap-");
+		executor.setTaskDecorator(threadContextDecorator());
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(10);
+		return executor;
+	}
+
+	/**
+	 * Copia al hilo de LDAP los datos del log (transaction_id, ip) de la
+	 * peticion.
+	 *
+	 * @return TaskDecorator decorador de las tareas.
+	 */
+	private TaskDecorator threadContextDecorator() {
+		return tarea -> {
+			Map<String, String> contexto = ThreadContext.getImmutableContext();
+			return () -> {
+				ThreadContext.putAll(contexto);
+				try {
+					tarea.run();
+				} finally {
+					ThreadContext.clearMap();
+				}
+			};
+		};
+	}
+
+}
@@ -0,0 +1,197 @@
+package mx.gob.banobras.securityauth.infraestructure.config;
+
+/**
+ * LdapPoolConfig.java:
+ *
+ * Clase de configuracion que crea el pool de conexiones a LDAP con el
+ * usuario de servicio. La propiedad app.ldap.server acepta varios servidores
+ * separados por coma, se crea un pool por servidor y se balancean las
+ * conexiones entre ellos.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.ldap.InitialLdapContext;
+
+import org.apache.commons.pool2.impl.AbandonedConfig;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapContextPool;
+import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapContextPooledFactory;
+import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapTlsSupport;
+
+@Configuration
+public class LdapPoolConfig {
+
+	/** Variable que contiene la url del ldap */
+	@Value("${app.ldap.server}")
+	String ldapServer;
+
+	/** Variable que contiene el usuario de servicio de conexion en ldap */
+	@Value("${app.ldap.username}")
+	String ldapUsername;
+
+	/** Variable que contiene el password de servicio deconexión de ldap */
+	@Value("${app.ldap.password}")
+	String ldapPassword;
+
+	/** Minimo de conexiones libres en el pool */
+	@Value("${app.ldap.pool.min-idle:2}")
+	int minIdle;
+
+	/** Maximo de conexiones libres en el pool */
+	@Value("${app.ldap.pool.max-idle:8}")
+	int maxIdle;
+
+	/** Maximo de conexiones en el pool */
+	@Value("${app.ldap.pool.max-total:16}")
+	int maxTotal;
+
+	/** Tiempo maximo de espera por una conexion, en milisegundos */
+	@Value("${app.ldap.pool.max-wait-ms:3000}")
+	long maxWaitMs;
+
+	/** Indica si se valida la conexion al obtenerla del pool */
+	@Value("${app.ldap.pool.test-on-borrow:1}")
+	boolean testOnBorrow;
+
+	/** Tiempo sin uso para cerrar una conexion libre, en milisegundos */
+	@Value("${app.ldap.pool.idle-evict-ms:300000}")
+	long idleEvictMs;
+
+	/** Intervalo de revision de conexiones libres, en milisegundos */
+	@Value("${app.ldap.pool.eviction-interval-ms:60000}")
+	long evictionIntervalMs;
+
+	/** Tiempo para considerar una conexion como no devuelta, en milisegundos */
+	@Value("${app.ldap.pool.abandoned-timeout-ms:60000}")
+	long abandonedTimeoutMs;
+
+	/** Tiempo maximo para conectar con LDAP, en milisegundos */
+	@Value("${app.ldap.connect-timeout-ms:3000}")
+	int connectTimeoutMs;
+
+	/** Tiempo maximo de espera de cada respuesta de LDAP, en milisegundos */
+	@Value("${app.ldap.read-timeout-ms:10000}")
+	int readTimeoutMs;
+
+	/** Fallos consecutivos para retirar un servidor del balanceo */
+	@Value("${app.ldap.balance.failure-threshold:3}")
+	int fallosExpulsion;
+
+	/** Tiempo minimo que un servidor permanece retirado, en milisegundos */
+	@Value("${app.ldap.balance.ejection-ms:30000}")
+	long expulsionMs;
+
+	/** Minimo de conexiones libres en el pool de validacion de password */
+	@Value("${app.ldap.bind-pool.min-idle:1}")
+	int bindMinIdle;
+
+	/** Maximo de conexiones libres en el pool de validacion de password */
+	@Value("${app.ldap.bind-pool.max-idle:8}")
+	int bindMaxIdle;
+
+	/** Maximo de conexiones en el pool de validacion de password */
+	@Value("${app.ldap.bind-pool.max-total:16}")
+	int bindMaxTotal;
+
+	/**
+	 * Pool de conexiones con el usuario de servicio.
+	 *
+	 * @param meterRegistry  registro de metricas.
+	 * @param ldapTlsSupport soporte de TLS de las conexiones.
+	 * @return LdapContextPool pool de conexiones.
+	 */
+	@Bean(destroyMethod = "close")
+	public LdapContextPool ldapServicePool(MeterRegistry meterRegistry, LdapTlsSupport ldapTlsSupport) {
+		/** Se realiza la asignacion de variables desde OpenShift */
+		obtenerValoresOpenShift();
+		LdapContextPool pool = new LdapContextPool("service", factories(ldapTlsSupport),
+				poolConfig(minIdle, maxIdle, maxTotal, testOnBorrow), abandonedConfig(), fallosExpulsion, expulsionMs);
+		pool.registerMetrics(meterRegistry);
+		return pool;
+	}
+
+	/**
+	 * Pool de conexiones dedicadas a validar el password de los usuarios, las
+	 * conexiones se autentican con el usuario de servicio y en cada validacion
+	 * se vuelve a autenticar (bind) con las credenciales del usuario. No se
+	 * validan al obtenerlas del pool, el bind del usuario sirve como validacion.
+	 *
+	 * @param meterRegistry  registro de metricas.
+	 * @param ldapTlsSupport soporte de TLS de las conexiones.
+	 * @return LdapContextPool pool de conexiones.
+	 */
+	@Bean(destroyMethod = "close")
+	public LdapContextPool ldapBindPool(MeterRegistry meterRegistry, LdapTlsSupport ldapTlsSupport) {
+		/** Se realiza la asignacion de variables desde OpenShift */
+		obtenerValoresOpenShift();
+		LdapContextPool pool = new LdapContextPool("bind", factories(ldapTlsSupport),
+				poolConfig(bindMinIdle, bindMaxIdle, bindMaxTotal, false), abandonedConfig(), fallosExpulsion,
+				expulsionMs);
+		pool.registerMetrics(meterRegistry);
+		return pool;
+	}
+
+	/**
+	 * Fabrica de conexiones por cada servidor de app.ldap.server.
+	 */
+	private List<LdapContextPooledFactory> factories(LdapTlsSupport ldapTlsSupport) {
+		List<LdapContextPooledFactory> factories = new ArrayList<>();
+		for (String servidor : ldapServer.split(",")) {
+			if (!servidor.isBlank()) {
+				factories.add(new LdapContextPooledFactory(servidor.trim(), ldapUsername, ldapPassword,
+						connectTimeoutMs, readTimeoutMs, ldapTlsSupport));
+			}
+		}
+		return factories;
+	}
+
+	private GenericObjectPoolConfig<InitialLdapContext> poolConfig(int minIdle, int maxIdle, int maxTotal,
+			boolean testOnBorrow) {
+		GenericObjectPoolConfig<InitialLdapContext> config = new GenericObjectPoolConfig<>();
+		config.setMinIdle(minIdle);
+		config.setMaxIdle(maxIdle);
+		config.setMaxTotal(maxTotal);
+		config.setMaxWait(Duration.ofMillis(maxWaitMs));
+		config.setTestOnBorrow(testOnBorrow);
+		config.setTestWhileIdle(true);
+		config.setMinEvictableIdleDuration(Duration.ofMillis(idleEvictMs));
+		config.setTimeBetweenEvictionRuns(Duration.ofMillis(evictionIntervalMs));
+		config.setJmxEnabled(false);
+		return config;
+	}
+
+	private AbandonedConfig abandonedConfig() {
+		AbandonedConfig abandonedConfig = new AbandonedConfig();
+		abandonedConfig.setRemoveAbandonedOnBorrow(true);
+		abandonedConfig.setRemoveAbandonedOnMaintenance(true);
+		abandonedConfig.setRemoveAbandonedTimeout(Duration.ofMillis(abandonedTimeoutMs));
+		abandonedConfig.setLogAbandoned(true);
+		return abandonedConfig;
+	}
+
+	private void obtenerValoresOpenShift() {
+		if (System.getenv("app.ldap.server") != null) {
+			ldapServer = System.getenv("app.ldap.server");
+		}
+		if (System.getenv("app.ldap.username") != null) {
+			ldapUsername = System.getenv("app.ldap.username");
+		}
+		if (System.getenv("app.ldap.password") != null) {
+			ldapPassword = System.getenv("app.ldap.password");
+		}
+	}
+
+}
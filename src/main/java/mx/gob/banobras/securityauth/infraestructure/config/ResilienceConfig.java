@@ -0,0 +1,185 @@
+package mx.gob.banobras.securityauth.infraestructure.config;
+
+/**
+ * ResilienceConfig.java:
+ *
+ * Clase de configuracion que crea los circuit breakers y bulkheads del
+ * tokenizer y de LDAP. El circuit breaker se abre cuando el porcentaje de
+ * fallas o de llamadas lentas supera el umbral, mientras esta abierto las
+ * peticiones se rechazan de inmediato y despues de la espera se permiten
+ * algunas llamadas de prueba (medio abierto) para decidir si se cierra. El
+ * bulkhead limita las llamadas concurrentes a cada servicio. Los estados se
+ * publican como metricas (resilience4j.circuitbreaker.state,
+ * resilience4j.bulkhead.available.concurrent.calls).
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.time.Duration;
+
+import javax.naming.CommunicationException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.TimeLimitExceededException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import mx.gob.banobras.securityauth.common.util.DeadlineExceededException;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
+
+@Configuration
+public class ResilienceConfig {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(ResilienceConfig.class);
+
+	/** Nombre del circuit breaker y bulkhead del tokenizer */
+	public static final String TOKENIZER = "tokenizer";
+
+	/** Nombre del circuit breaker y bulkhead de LDAP */
+	public static final String LDAP = "ldap";
+
+	/**
+	 * Registro de circuit breakers, sus estados y tasas de falla se publican
+	 * como metricas.
+	 *
+	 * @param meterRegistry registro de metricas.
+	 * @return CircuitBreakerRegistry registro de circuit breakers.
+	 */
+	@Bean
+	public CircuitBreakerRegistry circuitBreakerRegistry(MeterRegistry meterRegistry) {
+		CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+		TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+		return registry;
+	}
+
+	/**
+	 * Registro de bulkheads, las llamadas disponibles se publican como
+	 * metricas.
+	 *
+	 * @param meterRegistry registro de metricas.
+	 * @return BulkheadRegistry registro de bulkheads.
+	 */
+	@Bean
+	public BulkheadRegistry bulkheadRegistry(MeterRegistry meterRegistry) {
+		BulkheadRegistry registry = BulkheadRegistry.ofDefaults();
+		TaggedBulkheadMetrics.ofBulkheadRegistry(registry).bindTo(meterRegistry);
+		return registry;
+	}
+
+	/**
+	 * Circuit breaker del tokenizer. El cliente no lanza excepciones, las
+	 * respuestas 5xx (servicio no disponible, tiempo agotado) cuentan como
+	 * falla; un token invalido es una respuesta correcta del tokenizer.
+	 *
+	 * @return CircuitBreaker circuit breaker del tokenizer.
+	 */
+	@Bean
+	public CircuitBreaker tokenizerCircuitBreaker(CircuitBreakerRegistry registry,
+			@Value("${app.token.breaker.failure-rate-threshold:50}") float failureRate,
+			@Value("${app.token.breaker.slow-call-rate-threshold:80}") float slowCallRate,
+			@Value("${app.token.breaker.slow-call-duration-ms:3000}") long slowCallMs,
+			@Value("${app.token.breaker.sliding-window-size:50}") int slidingWindow,
+			@Value("${app.token.breaker.minimum-calls:20}") int minimumCalls,
+			@Value("${app.token.breaker.open-state-ms:30000}") long openStateMs,
+			@Value("${app.token.breaker.half-open-calls:5}") int halfOpenCalls) {
+		CircuitBreakerConfig config = breakerConfig(failureRate, slowCallRate, slowCallMs, slidingWindow,
+				minimumCalls, openStateMs, halfOpenCalls)
+				.recordResult(respuesta -> respuesta instanceof TokenizerResponseDTO tokenizer
+						&& tokenizer.getStatusCode() != null && tokenizer.getStatusCode() >= 500)
+				.build();
+		return registraTransiciones(registry.circuitBreaker(TOKENIZER, config));
+	}
+
+	/**
+	 * Circuit breaker de LDAP. Solo las fallas de comunicacion y los tiempos
+	 * agotados cuentan como falla; un password incorrecto o un usuario no
+	 * encontrado son respuestas correctas del directorio.
+	 *
+	 * @return CircuitBreaker circuit breaker de LDAP.
+	 */
+	@Bean
+	public CircuitBreaker ldapCircuitBreaker(CircuitBreakerRegistry registry,
+			@Value("${app.ldap.breaker.failure-rate-threshold:50}") float failureRate,
+			@Value("${app.ldap.breaker.slow-call-rate-threshold:80}") float slowCallRate,
+			@Value("${app.ldap.breaker.slow-call-duration-ms:3000}") long slowCallMs,
+			@Value("${app.ldap.breaker.sliding-window-size:50}") int slidingWindow,
+			@Value("${app.ldap.breaker.minimum-calls:20}") int minimumCalls,
+			@Value("${app.ldap.breaker.open-state-ms:30000}") long openStateMs,
+			@Value("${app.ldap.breaker.half-open-calls:5}") int halfOpenCalls) {
+		CircuitBreakerConfig config = breakerConfig(failureRate, slowCallRate, slowCallMs, slidingWindow,
+				minimumCalls, openStateMs, halfOpenCalls)
+				.recordExceptions(CommunicationException.class, ServiceUnavailableException.class,
+						TimeLimitExceededException.class, DeadlineExceededException.class)
+				.build();
+		return registraTransiciones(registry.circuitBreaker(LDAP, config));
+	}
+
+	/**
+	 * Bulkhead del tokenizer, limita las validaciones concurrentes.
+	 *
+	 * @return Bulkhead bulkhead del tokenizer.
+	 */
+	@Bean
+	public Bulkhead tokenizerBulkhead(BulkheadRegistry registry,
+			@Value("${app.token.bulkhead.max-concurrent:40}") int maxConcurrent,
+			@Value("${app.token.bulkhead.max-wait-ms:50}") long maxWaitMs) {
+		return registry.bulkhead(TOKENIZER, bulkheadConfig(maxConcurrent, maxWaitMs));
+	}
+
+	/**
+	 * Bulkhead de LDAP, limita las consultas concurrentes al directorio.
+	 *
+	 * @return Bulkhead bulkhead de LDAP.
+	 */
+	@Bean
+	public Bulkhead ldapBulkhead(BulkheadRegistry registry,
+			@Value("${app.ldap.bulkhead.max-concurrent:32}") int maxConcurrent,
+			@Value("${app.ldap.bulkhead.max-wait-ms:50}") long maxWaitMs) {
+		return registry.bulkhead(LDAP, bulkheadConfig(maxConcurrent, maxWaitMs));
+	}
+
+	/**
+	 * Configuracion comun de los circuit breakers, ventana por numero de
+	 * llamadas y paso automatico a medio abierto al terminar la espera.
+	 */
+	private static CircuitBreakerConfig.Builder breakerConfig(float failureRate, float slowCallRate, long slowCallMs,
+			int slidingWindow, int minimumCalls, long openStateMs, int halfOpenCalls) {
+		return CircuitBreakerConfig.custom().failureRateThreshold(failureRate).slowCallRateThreshold(slowCallRate)
+				.slowCallDurationThreshold(Duration.ofMillis(slowCallMs)).slidingWindowSize(slidingWindow)
+				.minimumNumberOfCalls(minimumCalls).waitDurationInOpenState(Duration.ofMillis(openStateMs))
+				.permittedNumberOfCallsInHalfOpenState(halfOpenCalls).automaticTransitionFromOpenToHalfOpenEnabled(true);
+	}
+
+	private static BulkheadConfig bulkheadConfig(int maxConcurrent, long maxWaitMs) {
+		return BulkheadConfig.custom().maxConcurrentCalls(maxConcurrent).maxWaitDuration(Duration.ofMillis(maxWaitMs))
+				.build();
+	}
+
+	/**
+	 * Registra en el log los cambios de estado del circuit breaker.
+	 */
+	private CircuitBreaker registraTransiciones(CircuitBreaker circuitBreaker) {
+		circuitBreaker.getEventPublisher().onStateTransition(evento -> log.error(new StringBuilder()
+				.append("Circuit breaker ").append(evento.getCircuitBreakerName()).append(": ")
+				.append(evento.getStateTransition().getFromState()).append(" -> ")
+				.append(evento.getStateTransition().getToState())));
+		return circuitBreaker;
+	}
+
+}
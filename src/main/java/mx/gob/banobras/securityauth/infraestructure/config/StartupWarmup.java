@@ -0,0 +1,166 @@
+package mx.gob.banobras.securityauth.infraestructure.config;
+
+/**
+ * StartupWarmup.java:
+ *
+ * Clase que prepara el servicio antes de recibir trafico: llena los pools de
+ * conexiones de LDAP, abre la conexion con el tokenizer (almacen de
+ * certificados y TLS) y ejecuta busquedas y cifrados de prueba para cargar
+ * las clases y compilar el codigo mas usado. Se ejecuta antes de que Spring
+ * publique el estado ACCEPTING_TRAFFIC, por lo que la sonda de readiness
+ * (/actuator/health/readiness) responde OUT_OF_SERVICE hasta que termina. Un
+ * error en el precalentamiento no impide el arranque.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import mx.gob.banobras.securityauth.application.port.out.ILdapClient;
+import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
+import mx.gob.banobras.securityauth.common.util.CipherAESCommon;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapContextPool;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+	/** Variable para las trazas de la clase */
+	Logger log = LogManager.getLogger(StartupWarmup.class);
+
+	/** Con el valor uno se realiza el precalentamiento */
+	@Value("${app.warmup.enabled:1}")
+	boolean activo;
+
+	/** Repeticiones de las busquedas y cifrados de prueba */
+	@Value("${app.warmup.iterations:50}")
+	int repeticiones;
+
+	/** Usuario de las busquedas de prueba, vacio para no buscar */
+	@Value("${app.warmup.user:}")
+	String usuario;
+
+	/** Aplicativo de las busquedas de prueba */
+	@Value("${app.warmup.app-name:}")
+	String aplicativo;
+
+	/** Tiempo maximo del precalentamiento, en milisegundos */
+	@Value("${app.warmup.timeout-ms:30000}")
+	long timeoutMs;
+
+	/** Pool de conexiones con el usuario de servicio */
+	private final LdapContextPool ldapServicePool;
+
+	/** Pool de conexiones para validar el password de los usuarios */
+	private final LdapContextPool ldapBindPool;
+
+	/** Cliente del directorio sin la cache */
+	private final ILdapClient ldapDirectoryClient;
+
+	private final ITokenClient iTokenClient;
+
+	private final CipherAESCommon cipherAESCommon;
+
+	/** Duracion del ultimo precalentamiento, en milisegundos */
+	private volatile long duracionMs = -1;
+
+	/** Verdadero cuando termino el precalentamiento */
+	private volatile boolean terminado;
+
+	public StartupWarmup(LdapContextPool ldapServicePool, LdapContextPool ldapBindPool,
+			@Qualifier("ldapDirectoryClient") ILdapClient ldapDirectoryClient, ITokenClient iTokenClient,
+			CipherAESCommon cipherAESCommon, MeterRegistry meterRegistry) {
+		this.ldapServicePool = ldapServicePool;
+		this.ldapBindPool = ldapBindPool;
+		this.ldapDirectoryClient = ldapDirectoryClient;
+		this.iTokenClient = iTokenClient;
+		this.cipherAESCommon = cipherAESCommon;
+		TimeGauge.builder("app.warmup.duration", this, TimeUnit.MILLISECONDS, w -> w.duracionMs)
+				.register(meterRegistry);
+		Gauge.builder("app.warmup.completed", this, w -> w.terminado ? 1 : 0).register(meterRegistry);
+	}
+
+	/**
+	 * Metodo para ejecutar el precalentamiento al iniciar la aplicacion.
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!activo) {
+			terminado = true;
+			return;
+		}
+		long inicio = System.currentTimeMillis();
+		Deadline deadline = Deadline.of(timeoutMs);
+		log.info("Inicia precalentamiento del servicio.");
+
+		prepara("service", ldapServicePool);
+		prepara("bind", ldapBindPool);
+		iTokenClient.precalienta(Deadline.restanteMs(deadline, timeoutMs));
+
+		int cifrados = 0;
+		int busquedas = 0;
+		for (int i = 0; i < repeticiones && !deadline.isVencido(); i++) {
+			cifrados += cifra(i);
+			busquedas += busca(deadline);
+		}
+
+		duracionMs = System.currentTimeMillis() - inicio;
+		terminado = true;
+		log.info(new StringBuilder().append("Termina precalentamiento en ").append(duracionMs).append(" ms, ")
+				.append(cifrados).append(" cifrados y ").append(busquedas).append(" busquedas")
+				.append(deadline.isVencido() ? ", se agoto el tiempo maximo." : "."));
+	}
+
+	private void prepara(String nombre, LdapContextPool pool) {
+		try {
+			pool.preparePool();
+		} catch (Exception ex) {
+			log.error(new StringBuilder().append("No se pudo llenar el pool LDAP ").append(nombre).append(": ")
+					.append(ex.getMessage()));
+		}
+	}
+
+	private int cifra(int i) {
+		try {
+			String texto = "precalentamiento " + i;
+			return texto.equals(cipherAESCommon.decryptAesHexToString(cipherAESCommon.encryptStringToAesHex(texto)))
+					? 1
+					: 0;
+		} catch (Exception ex) {
+			log.error(new StringBuilder().append("Error en el cifrado de precalentamiento: ").append(ex.getMessage()));
+			return 0;
+		}
+	}
+
+	private int busca(Deadline deadline) {
+		if (usuario == null || usuario.isBlank()) {
+			return 0;
+		}
+		SecurityAuthDTO securityAuthDTO = new SecurityAuthDTO(null, usuario, null, null, aplicativo, "warmup",
+				"warmup", "warmup", false);
+		securityAuthDTO.setDeadline(deadline);
+		try {
+			ldapDirectoryClient.autentication(securityAuthDTO);
+			return 1;
+		} catch (Exception ex) {
+			log.error(new StringBuilder().append("Error en la busqueda de precalentamiento: ").append(ex.getMessage()));
+			return 0;
+		}
+	}
+
+}
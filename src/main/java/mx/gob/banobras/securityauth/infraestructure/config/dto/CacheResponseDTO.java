@@ -0,0 +1,26 @@
+package mx.gob.banobras.securityauth.infraestructure.config.dto;
+
+
+/**
+ * CacheResponseDTO.java:
+ * 
+ * Objeto que contiene los datos de respuesta al eliminar un usuario de la cache. 
+ *  
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see Documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheResponseDTO {
+	private Integer statusCode;
+	private String userName;
+	private Integer entradasEliminadas;
+	private ErrorMessageDTO errorMessageDTO;
+}
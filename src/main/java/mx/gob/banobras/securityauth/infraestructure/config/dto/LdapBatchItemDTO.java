@@ -0,0 +1,27 @@
+package mx.gob.banobras.securityauth.infraestructure.config.dto;
+
+
+/**
+ * LdapBatchItemDTO.java:
+ * 
+ * Objeto que contiene el resultado de la busqueda de un usuario en la
+ * busqueda por lista. 
+ *  
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see Documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LdapBatchItemDTO {
+	private String userName;
+	private Integer statusCode;
+	private LdapDTO ldapDTO;
+	private ErrorMessageDTO errorMessageDTO;
+}
@@ -0,0 +1,25 @@
+package mx.gob.banobras.securityauth.infraestructure.config.dto;
+
+
+/**
+ * LdapBatchRequestDTO.java:
+ * 
+ * Objeto que contiene la lista de usuarios a buscar en LDAP. 
+ *  
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see Documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+import java.util.List;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LdapBatchRequestDTO {
+	private List<String> userNames;
+}
@@ -0,0 +1,28 @@
+package mx.gob.banobras.securityauth.infraestructure.config.dto;
+
+
+/**
+ * LdapBatchResponseDTO.java:
+ * 
+ * Objeto que contiene los datos de respuesta de la busqueda por lista de
+ * usuarios, un elemento por usuario solicitado. 
+ *  
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see Documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+import java.util.List;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LdapBatchResponseDTO {
+	private Integer statusCode;
+	private List<LdapBatchItemDTO> usuarios;
+	private ErrorMessageDTO errorMessageDTO;
+}
@@ -12,6 +12,7 @@ package mx.gob.banobras.securityauth.infraestructure.config.dto;
 * @since JDK 17
 */
 import java.util.List;
+import java.util.Map;
 import java.util.Date;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -38,5 +39,7 @@ public class LdapDTO {
 	private List<String> grupoAplicativoPerfil;
 	private List<String> listaTotalGrupos;
 	private String detalle;
+	/** Atributos solicitados en la lista fields, nulo si se uso un perfil */
+	private Map<String, Object> atributos;
 	
 }
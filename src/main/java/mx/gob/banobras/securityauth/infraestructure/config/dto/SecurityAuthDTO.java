@@ -14,6 +14,8 @@ package mx.gob.banobras.securityauth.infraestructure.config.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.common.util.Especulacion;
 
 @Data
 @AllArgsConstructor
@@ -28,5 +30,19 @@ public class SecurityAuthDTO {
 	private String functionalId;
 	private String transactionId;
 	private boolean isValidUserPwd;
-	
+	/** Perfil de atributos a consultar en LDAP: minimal, standard o full */
+	private String attributeProfile;
+	/** Atributos a consultar en LDAP separados por coma */
+	private String fields;
+	/** Tiempo limite de la peticion */
+	private transient Deadline deadline;
+	/** Estado de la consulta a LDAP adelantada, nulo si no es especulativa */
+	private transient Especulacion especulacion;
+
+	public SecurityAuthDTO(String credentials, String userName, String password, String tokenAuth, String appName,
+			String consumerId, String functionalId, String transactionId, boolean isValidUserPwd) {
+		this(credentials, userName, password, tokenAuth, appName, consumerId, functionalId, transactionId,
+				isValidUserPwd, null, null, null, null);
+	}
+
 }
@@ -0,0 +1,184 @@
+package mx.gob.banobras.securityauth.benchmark;
+
+/**
+ * LdapAttributeDecoderBenchmark.java:
+ *
+ * Benchmark JMH que compara la lectura de los atributos del usuario con
+ * LdapAttributeDecoder contra los metodos anteriores de LdapClient
+ * (cleanText, cleanTextToInteger, findDisabled y ldapDateToDateTime), para
+ * usuarios de 10 a 2000 grupos. El perfilador gc reporta los bytes asignados
+ * por operacion (gc.alloc.rate.norm).
+ *
+ * Ejecucion:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=mx.gob.banobras.securityauth.benchmark.LdapAttributeDecoderBenchmark
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.LdapAttributeDecoder;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LdapAttributeDecoderBenchmark {
+
+	/** Numero de grupos del usuario, el resultado anterior los copiaba a cadena */
+	@Param({ "10", "500", "2000" })
+	int grupos;
+
+	/** Resultado de la busqueda del usuario */
+	SearchResult match;
+
+	@Setup
+	public void setup() {
+		Attributes attrs = new BasicAttributes(true);
+		attrs.put("sAMAccountName", "usuario00001");
+		attrs.put("initials", "34505");
+		attrs.put("userAccountControl", "512");
+		attrs.put("cn", "Perez Lopez, Juan");
+		attrs.put("givenName", "Juan");
+		attrs.put("title", "Experto Tecnico");
+		attrs.put("department", "193210-GERENCIA DE SOLUCIONES TECNOLOGICAS");
+		attrs.put("telephoneNumber", "1001");
+		attrs.put("userPrincipalName", "usuario00001@banobras.gob.mx");
+		attrs.put("mail", "usuario00001@banobras.gob.mx");
+		attrs.put("badPwdCount", "2");
+		attrs.put("lockoutTime", "133614144000000000");
+		Attribute memberOf = new BasicAttribute("memberOf");
+		for (int i = 0; i < grupos; i++) {
+			memberOf.add("CN=GRUPO_" + i + ",OU=Grupos,OU=Aplicativos,DC=banobras,DC=gob,DC=mx");
+		}
+		attrs.put(memberOf);
+		match = new SearchResult("CN=Perez Lopez\\, Juan,OU=Usuarios", null, attrs);
+		match.setNameInNamespace("CN=Perez Lopez\\, Juan,OU=Usuarios,DC=banobras,DC=gob,DC=mx");
+	}
+
+	@Benchmark
+	public void anterior(Blackhole blackhole) {
+		Attributes attrs = match.getAttributes();
+		blackhole.consume(cleanText(attrs, "sAMAccountName"));
+		blackhole.consume(cleanText(attrs, "initials"));
+		blackhole.consume(cleanText(attrs, "userAccountControl"));
+		blackhole.consume(cleanText(attrs, "cn"));
+		blackhole.consume(cleanText(attrs, "givenName"));
+		blackhole.consume(cleanText(attrs, "title"));
+		blackhole.consume(cleanText(attrs, "department"));
+		blackhole.consume(cleanText(attrs, "telephoneNumber"));
+		blackhole.consume(findDisabled(match, "Disabled Accounts"));
+		blackhole.consume(cleanText(attrs, "userPrincipalName"));
+		blackhole.consume(cleanText(attrs, "mail"));
+		blackhole.consume(cleanTextToInteger(attrs, "badPwdCount"));
+		blackhole.consume(ldapDateToDateTime(cleanText(attrs, "lockoutTime")));
+		/** Atributo que el usuario no tiene */
+		blackhole.consume(cleanText(attrs, "accountExpires"));
+	}
+
+	@Benchmark
+	public void tipado(Blackhole blackhole) throws NamingException {
+		Attributes attrs = match.getAttributes();
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "sAMAccountName"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "initials"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "userAccountControl"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "cn"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "givenName"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "title"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "department"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "telephoneNumber"));
+		blackhole.consume(LdapAttributeDecoder.activo(match, attrs));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "userPrincipalName"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "mail"));
+		blackhole.consume(LdapAttributeDecoder.entero(attrs, "badPwdCount"));
+		blackhole.consume(LdapAttributeDecoder.fecha(attrs, "lockoutTime"));
+		blackhole.consume(LdapAttributeDecoder.texto(attrs, "accountExpires"));
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private String cleanText(Attributes attrs, String etiqueta) {
+		String cadenaResult = "etiqueta";
+		try {
+			cadenaResult = attrs.get(etiqueta).toString();
+			cadenaResult = cadenaResult.replace(etiqueta, "");
+			cadenaResult = cadenaResult.replace(":", "");
+		} catch (Exception exx) {
+			cadenaResult = "";
+		}
+		return cadenaResult.trim();
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private Integer cleanTextToInteger(Attributes attrs, String etiqueta) {
+		String cadenaResult = "0";
+		try {
+			cadenaResult = attrs.get(etiqueta).toString();
+			cadenaResult = cadenaResult.replace(etiqueta, "");
+			cadenaResult = cadenaResult.replace(":", "");
+		} catch (Exception exx) {
+			return 0;
+		}
+		return Integer.parseInt(cadenaResult.trim());
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private Integer findDisabled(SearchResult match, String etiqueta) {
+		String cadena = match.toString();
+		if (cadena.contains(etiqueta)) {
+			return 0;
+		} else {
+			return 1;
+		}
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private Date ldapDateToDateTime(String inputDateString) {
+		try {
+			if (inputDateString != null && inputDateString.length() > 5) {
+				long fileTime = (Long.parseLong(inputDateString) / 10000L) - +11644473600000L;
+				return new Date(fileTime);
+			}
+			return null;
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(LdapAttributeDecoderBenchmark.class.getSimpleName())
+				.addProfiler("gc").build();
+		new Runner(options).run();
+	}
+
+}
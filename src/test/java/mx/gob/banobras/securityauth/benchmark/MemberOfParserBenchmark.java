@@ -0,0 +1,135 @@
+package mx.gob.banobras.securityauth.benchmark;
+
+/**
+ * MemberOfParserBenchmark.java:
+ *
+ * Benchmark JMH que compara la obtencion de grupos del atributo memberOf de
+ * una sola pasada contra el metodo anterior (split de la cadena del atributo
+ * y busqueda de duplicados con containsValue), para usuarios de 10 a 2000
+ * grupos.
+ *
+ * Ejecucion:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=mx.gob.banobras.securityauth.benchmark.MemberOfParserBenchmark
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import mx.gob.banobras.securityauth.infraestructure.adapter.out.client.MemberOfParser;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemberOfParserBenchmark {
+
+	/** Numero de grupos del usuario */
+	@Param({ "10", "100", "500", "2000" })
+	int grupos;
+
+	/** Aplicativo a filtrar */
+	String app = "SICOVI";
+
+	/** Atributo memberOf del usuario */
+	Attribute memberOf;
+
+	/** Componente a medir */
+	MemberOfParser memberOfParser = new MemberOfParser();
+
+	@Setup
+	public void setup() {
+		memberOf = new BasicAttribute("memberOf");
+		for (int i = 0; i < grupos; i++) {
+			String nombre = (i % 10 == 0 ? app + "_PERFIL_" : "GRUPO_") + i;
+			memberOf.add("CN=" + nombre + ",OU=Grupos,OU=Aplicativos,DC=banobras,DC=gob,DC=mx");
+		}
+	}
+
+	@Benchmark
+	public void anterior(Blackhole blackhole) {
+		blackhole.consume(findGroupsApp(memberOf.toString(), app));
+		blackhole.consume(findGroupsAll(memberOf.toString()));
+	}
+
+	@Benchmark
+	public void unaPasada(Blackhole blackhole) throws NamingException {
+		blackhole.consume(memberOfParser.parse(memberOf, app));
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private List<String> findGroupsApp(String attr, String app) {
+		String[] memberOfList = attr.split("DC=mx,");
+		List<String> listGroup = new ArrayList<>();
+		Map<String, Object> gruposMap = new HashMap<>();
+		for (String grupo : memberOfList) {
+			if (grupo.contains(app)) {
+				int ii = grupo.indexOf("CN=");
+				String grupoAux = grupo.substring(ii + 3);
+				int fi = grupoAux.indexOf(",");
+				String valGrupo = grupoAux.substring(0, fi);
+				if (!gruposMap.containsValue(valGrupo)) {
+					listGroup.add(valGrupo);
+					gruposMap.put(valGrupo, valGrupo);
+				}
+			}
+		}
+		return listGroup;
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private List<String> findGroupsAll(String attr) {
+		String[] memberOfList = attr.split("DC=mx,");
+		List<String> listGroup = new ArrayList<>();
+		Map<String, Object> gruposMap = new HashMap<>();
+		for (String grupo : memberOfList) {
+			int ii = grupo.indexOf("CN=");
+			String grupoAux = grupo.substring(ii + 3);
+			int fi = grupoAux.indexOf(",");
+			String valGrupo = grupoAux.substring(0, fi);
+			if (!gruposMap.containsValue(valGrupo)) {
+				listGroup.add(valGrupo);
+				gruposMap.put(valGrupo, valGrupo);
+			}
+		}
+		return listGroup;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(MemberOfParserBenchmark.class.getSimpleName())
+				.addProfiler("gc").build();
+		new Runner(options).run();
+	}
+
+}
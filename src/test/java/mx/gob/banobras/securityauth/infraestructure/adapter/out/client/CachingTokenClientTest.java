@@ -0,0 +1,178 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * CachingTokenClientTest.java:
+ *
+ * Pruebas de CachingTokenClient, valida el tiempo de vida de las entradas
+ * segun el claim exp del token (vencido, sin exp, con prefijo Bearer,
+ * payload no valido) y que solo se guarden las validaciones exitosas.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
+
+class CachingTokenClientTest {
+
+	/** Tiempo de vida maximo de las entradas, en segundos */
+	private static final long TTL_SEGUNDOS = 60;
+
+	/** Margen del reloj, en segundos */
+	private static final long MARGEN_SEGUNDOS = 5;
+
+	private ITokenClient tokenClient;
+
+	private CachingTokenClient cachingTokenClient;
+
+	@BeforeEach
+	void inicializa() {
+		tokenClient = mock(ITokenClient.class);
+		cachingTokenClient = new CachingTokenClient(tokenClient, true, TTL_SEGUNDOS, 100, MARGEN_SEGUNDOS,
+				new SimpleMeterRegistry());
+	}
+
+	@Test
+	void tokenVigenteSeGuarda() {
+		String token = jwt("{\"sub\":\"usuario01\",\"exp\":" + segundos(3600) + "}");
+		TokenizerResponseDTO respuesta = respuesta(200);
+		when(tokenClient.validToken(any())).thenReturn(respuesta);
+
+		assertSame(respuesta, cachingTokenClient.validToken(peticion(token, "usuario01")));
+		assertSame(respuesta, cachingTokenClient.validToken(peticion(token, "USUARIO01")));
+
+		verify(tokenClient, times(1)).validToken(any());
+	}
+
+	@Test
+	void tokenVencidoNoSeGuarda() {
+		String token = jwt("{\"exp\":" + segundos(-60) + "}");
+		when(tokenClient.validToken(any())).thenReturn(respuesta(200));
+
+		assertEquals(0, cachingTokenClient.ttlNanos(token));
+		cachingTokenClient.validToken(peticion(token, "usuario01"));
+		cachingTokenClient.validToken(peticion(token, "usuario01"));
+
+		verify(tokenClient, times(2)).validToken(any());
+	}
+
+	@Test
+	void tokenDentroDelMargenNoSeGuarda() {
+		String token = jwt("{\"exp\":" + segundos(MARGEN_SEGUNDOS - 1) + "}");
+
+		assertEquals(0, cachingTokenClient.ttlNanos(token));
+	}
+
+	@Test
+	void vigenciaCortaLimitaElTiempoDeVida() {
+		long ttlNanos = cachingTokenClient.ttlNanos(jwt("{\"exp\":" + segundos(30) + "}"));
+
+		assertTrue(ttlNanos > 0 && ttlNanos <= TimeUnit.SECONDS.toNanos(30 - MARGEN_SEGUNDOS));
+	}
+
+	@Test
+	void tokenSinExpUsaElMaximo() {
+		assertEquals(TimeUnit.SECONDS.toNanos(TTL_SEGUNDOS),
+				cachingTokenClient.ttlNanos(jwt("{\"sub\":\"usuario01\"}")));
+		assertEquals(TimeUnit.SECONDS.toNanos(TTL_SEGUNDOS),
+				cachingTokenClient.ttlNanos(jwt("{\"exp\":" + segundos(86_400) + "}")));
+	}
+
+	@Test
+	void prefijoBearerSeIgnora() {
+		long exp = segundos(3600);
+		String token = jwt("{\"exp\":" + exp + "}");
+
+		assertEquals(TimeUnit.SECONDS.toMillis(exp), CachingTokenClient.expiracionMs(token));
+		assertEquals(TimeUnit.SECONDS.toMillis(exp), CachingTokenClient.expiracionMs("Bearer " + token));
+		assertEquals(TimeUnit.SECONDS.toMillis(exp), CachingTokenClient.expiracionMs("  bearer   " + token));
+	}
+
+	@Test
+	void payloadNoValidoRegresaMenosUno() {
+		assertEquals(-1, CachingTokenClient.expiracionMs("token-opaco"));
+		assertEquals(-1, CachingTokenClient.expiracionMs("a.%%%.c"));
+		assertEquals(-1, CachingTokenClient.expiracionMs(jwt("no es json")));
+		assertEquals(-1, CachingTokenClient.expiracionMs(jwt("[1,2,3]")));
+		assertEquals(-1, CachingTokenClient.expiracionMs(jwt("{\"exp\":\"manana\"}")));
+		assertEquals(-1, CachingTokenClient.expiracionMs(jwt("{\"exp\":{\"valor\":1}}")));
+	}
+
+	@Test
+	void respuestasConErrorNoSeGuardan() {
+		String token = jwt("{\"exp\":" + segundos(3600) + "}");
+		when(tokenClient.validToken(any())).thenReturn(respuesta(401), respuesta(503), respuesta(null), null);
+
+		for (int i = 0; i < 4; i++) {
+			cachingTokenClient.validToken(peticion(token, "usuario01"));
+		}
+
+		verify(tokenClient, times(4)).validToken(any());
+	}
+
+	@Test
+	void otroUsuarioNoUsaLaEntrada() {
+		String token = jwt("{\"exp\":" + segundos(3600) + "}");
+		when(tokenClient.validToken(any())).thenReturn(respuesta(200));
+
+		cachingTokenClient.validToken(peticion(token, "usuario01"));
+		cachingTokenClient.validToken(peticion(token, "usuario02"));
+
+		verify(tokenClient, times(2)).validToken(any());
+	}
+
+	@Test
+	void cacheInactivaSiempreConsulta() {
+		CachingTokenClient sinCache = new CachingTokenClient(tokenClient, false, TTL_SEGUNDOS, 100, MARGEN_SEGUNDOS,
+				new SimpleMeterRegistry());
+		String token = jwt("{\"exp\":" + segundos(3600) + "}");
+		when(tokenClient.validToken(any())).thenReturn(respuesta(200));
+
+		sinCache.validToken(peticion(token, "usuario01"));
+		sinCache.validToken(peticion(token, "usuario01"));
+
+		verify(tokenClient, times(2)).validToken(any());
+	}
+
+	private static String jwt(String payload) {
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+				+ encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".firma";
+	}
+
+	private static long segundos(long desdeAhora) {
+		return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + desdeAhora;
+	}
+
+	private static SecurityAuthDTO peticion(String token, String userName) {
+		return new SecurityAuthDTO(null, userName, null, token, "SICOVI", "consumidor", null, null, false);
+	}
+
+	private static TokenizerResponseDTO respuesta(Integer statusCode) {
+		TokenizerResponseDTO tokenizerResponseDTO = new TokenizerResponseDTO();
+		tokenizerResponseDTO.setStatusCode(statusCode);
+		return tokenizerResponseDTO;
+	}
+
+}
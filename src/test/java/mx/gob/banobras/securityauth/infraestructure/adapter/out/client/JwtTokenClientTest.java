@@ -0,0 +1,218 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * JwtTokenClientTest.java:
+ *
+ * Pruebas de JwtTokenClient con un JWKS local: firma, vigencia, audiencia,
+ * usuario y aplicativo del token, y validacion con el tokenizer remoto cuando
+ * el token no se puede validar localmente.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
+
+class JwtTokenClientTest {
+
+	/** Identificador de la llave publicada en el JWKS */
+	private static final String KID = "llave-1";
+
+	private static final String AUDIENCIA = "securityauth";
+
+	private static final String EMISOR = "tokenizer";
+
+	private static final String USUARIO = "usuario01";
+
+	private static final String APLICATIVO = "SICOVI";
+
+	/** Llave de firma, se genera una vez por ser costosa */
+	private static final RSAKey LLAVE = genera(KID);
+
+	@TempDir
+	Path directorio;
+
+	private ITokenClient cachingTokenClient;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private JwtTokenClient jwtTokenClient;
+
+	@BeforeEach
+	void inicializa() throws Exception {
+		Path archivo = directorio.resolve("jwks.json");
+		Files.writeString(archivo, new JWKSet(LLAVE.toPublicJWK()).toString(), StandardCharsets.UTF_8);
+		cachingTokenClient = mock(ITokenClient.class);
+		TokenizerResponseDTO remota = new TokenizerResponseDTO();
+		remota.setStatusCode(200);
+		when(cachingTokenClient.validToken(any())).thenReturn(remota);
+		meterRegistry = new SimpleMeterRegistry();
+		jwtTokenClient = cliente(true, archivo.toString());
+	}
+
+	@Test
+	void tokenValidoSeValidaLocalmente() throws Exception {
+		String token = firma(LLAVE, claims().build());
+
+		assertEquals(200, jwtTokenClient.validToken(peticion(token)).getStatusCode());
+		assertEquals(200, jwtTokenClient.validToken(peticion("Bearer " + token)).getStatusCode());
+
+		verify(cachingTokenClient, never()).validToken(any());
+		assertEquals(2, contador("valid"));
+	}
+
+	@Test
+	void firmaIncorrectaSeRechaza() throws Exception {
+		String token = firma(genera(KID), claims().build());
+
+		assertEquals(401, jwtTokenClient.validToken(peticion(token)).getStatusCode());
+		verify(cachingTokenClient, never()).validToken(any());
+		assertEquals(1, contador("invalid"));
+	}
+
+	@Test
+	void tokenVencidoSeRechaza() throws Exception {
+		String token = firma(LLAVE,
+				claims().expirationTime(new Date(System.currentTimeMillis() - 120_000)).build());
+
+		assertEquals(401, jwtTokenClient.validToken(peticion(token)).getStatusCode());
+		verify(cachingTokenClient, never()).validToken(any());
+	}
+
+	@Test
+	void audienciaIncorrectaSeRechaza() throws Exception {
+		String token = firma(LLAVE, claims().audience("otro-servicio").build());
+
+		assertEquals(401, jwtTokenClient.validToken(peticion(token)).getStatusCode());
+	}
+
+	@Test
+	void usuarioDistintoSeRechaza() throws Exception {
+		String token = firma(LLAVE, claims().subject("usuario02").build());
+
+		assertEquals(401, jwtTokenClient.validToken(peticion(token)).getStatusCode());
+		verify(cachingTokenClient, never()).validToken(any());
+	}
+
+	@Test
+	void aplicativoDistintoSeRechaza() throws Exception {
+		String token = firma(LLAVE, claims().claim("app", "OTRO").build());
+
+		assertEquals(401, jwtTokenClient.validToken(peticion(token)).getStatusCode());
+	}
+
+	@Test
+	void usuarioYAplicativoSinDistinguirMayusculas() throws Exception {
+		String token = firma(LLAVE, claims().subject("USUARIO01").claim("app", List.of("MAC", "sicovi")).build());
+
+		assertEquals(200, jwtTokenClient.validToken(peticion(token)).getStatusCode());
+	}
+
+	@Test
+	void sinUsuarioOAplicativoSeValidaConElTokenizer() throws Exception {
+		String sinUsuario = firma(LLAVE, claims().subject(null).build());
+		String sinAplicativo = firma(LLAVE, claims().claim("app", null).build());
+
+		assertEquals(200, jwtTokenClient.validToken(peticion(sinUsuario)).getStatusCode());
+		assertEquals(200, jwtTokenClient.validToken(peticion(sinAplicativo)).getStatusCode());
+
+		verify(cachingTokenClient, times(2)).validToken(any());
+		assertEquals(2, contador("remote"));
+	}
+
+	@Test
+	void llaveDesconocidaSeValidaConElTokenizer() throws Exception {
+		String token = firma(genera("llave-2"), claims().build());
+
+		jwtTokenClient.validToken(peticion(token));
+
+		verify(cachingTokenClient, times(1)).validToken(any());
+	}
+
+	@Test
+	void tokenOpacoOAlgoritmoNoAceptadoSeValidaConElTokenizer() throws Exception {
+		SignedJWT hmac = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims().build());
+		hmac.sign(new MACSigner(new byte[32]));
+
+		jwtTokenClient.validToken(peticion("token-opaco"));
+		jwtTokenClient.validToken(peticion(hmac.serialize()));
+
+		verify(cachingTokenClient, times(2)).validToken(any());
+	}
+
+	@Test
+	void inactivoSiempreUsaElTokenizer() throws Exception {
+		JwtTokenClient inactivo = cliente(false, directorio.resolve("jwks.json").toString());
+
+		inactivo.validToken(peticion(firma(LLAVE, claims().build())));
+
+		verify(cachingTokenClient, times(1)).validToken(any());
+	}
+
+	private JwtTokenClient cliente(boolean activo, String archivo) throws Exception {
+		return new JwtTokenClient(cachingTokenClient, activo, "", archivo, "RS256", AUDIENCIA, EMISOR, "sub", "app",
+				30, 3600, 300, 3000, 10000, null, meterRegistry);
+	}
+
+	private double contador(String resultado) {
+		return meterRegistry.counter("token.jwt.validations", "result", resultado).count();
+	}
+
+	private static JWTClaimsSet.Builder claims() {
+		return new JWTClaimsSet.Builder().subject(USUARIO).claim("app", APLICATIVO).audience(AUDIENCIA)
+				.issuer(EMISOR).expirationTime(new Date(System.currentTimeMillis() + 600_000));
+	}
+
+	private static String firma(RSAKey llave, JWTClaimsSet claims) throws Exception {
+		SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(llave.getKeyID()).build(),
+				claims);
+		jwt.sign(new RSASSASigner(llave));
+		return jwt.serialize();
+	}
+
+	private static SecurityAuthDTO peticion(String token) {
+		return new SecurityAuthDTO(null, USUARIO, null, token, APLICATIVO, "consumidor", null, null, false);
+	}
+
+	private static RSAKey genera(String kid) {
+		try {
+			return new RSAKeyGenerator(2048).keyID(kid).generate();
+		} catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapClientTest.java:
+ *
+ * Pruebas de LdapClient en la validacion por usuario: los datos de bloqueo
+ * (badPwdCount, badPasswordTime) leidos de un controlador de dominio se cargan
+ * en el control local de intentos y los de la replica en memoria no, porque
+ * AD no los replica.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mx.gob.banobras.securityauth.common.util.CipherAESCommon;
+import mx.gob.banobras.securityauth.infraestructure.config.LdapAttributeProfiles;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.SecurityAuthDTO;
+
+class LdapClientTest {
+
+	private static final String USUARIO = "usuario01";
+
+	private static final String DN = "CN=usuario01,OU=Usuarios,DC=banobras,DC=gob,DC=mx";
+
+	/** Intentos fallidos permitidos */
+	private static final int MAX_INTENTOS = 3;
+
+	/** Diferencia entre la epoca de FILETIME (1601) y la de Java, en milisegundos */
+	private static final long EPOCA_FILETIME_MS = 11_644_473_600_000L;
+
+	private LdapContextPool ldapServicePool;
+
+	private LdapUserReplica ldapUserReplica;
+
+	private LoginAttemptTracker loginAttemptTracker;
+
+	private LdapClient ldapClient;
+
+	@BeforeEach
+	void inicializa() {
+		ldapServicePool = mock(LdapContextPool.class);
+		ldapUserReplica = mock(LdapUserReplica.class);
+		NestedGroupResolver nestedGroupResolver = mock(NestedGroupResolver.class);
+		loginAttemptTracker = new LoginAttemptTracker(true, MAX_INTENTOS, 60_000, 60_000, 1000,
+				new SimpleMeterRegistry());
+		ldapClient = new LdapClient(mock(CipherAESCommon.class), ldapServicePool, mock(LdapContextPool.class),
+				new MemberOfParser(), nestedGroupResolver,
+				new LdapAttributeProfiles("full", "sAMAccountName", "sAMAccountName", 30), ldapUserReplica,
+				loginAttemptTracker, mock(LdapTlsSupport.class));
+		ldapClient.ldapValidate = true;
+		ldapClient.ldapSearchBase = "DC=banobras,DC=gob,DC=mx";
+	}
+
+	@Test
+	void fallosDelControladorDeDominioSeCargan() throws Exception {
+		when(ldapUserReplica.isDisponible()).thenReturn(false);
+		InitialLdapContext ctx = mock(InitialLdapContext.class);
+		NamingEnumeration<SearchResult> resultados = resultados(usuarioConFallos());
+		when(ctx.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(resultados);
+		when(ldapServicePool.borrow()).thenReturn(ctx);
+
+		assertEquals(403, ldapClient.autentication(peticion()).getStatusCode());
+	}
+
+	@Test
+	void fallosDeLaReplicaNoSeCargan() throws Exception {
+		when(ldapUserReplica.isDisponible()).thenReturn(true);
+		when(ldapUserReplica.busca(USUARIO)).thenReturn(usuarioConFallos());
+
+		assertEquals(200, ldapClient.autentication(peticion()).getStatusCode());
+		verify(ldapServicePool, never()).borrow();
+
+		/** Un fallo local no alcanza el limite, los de la replica no se sumaron */
+		loginAttemptTracker.registraFallo(USUARIO);
+		assertFalse(loginAttemptTracker.estaBloqueado(USUARIO));
+	}
+
+	/**
+	 * Usuario con mas fallos que los permitidos, el ultimo hace un segundo.
+	 */
+	private static SearchResult usuarioConFallos() {
+		Attributes attrs = new BasicAttributes(true);
+		attrs.put("sAMAccountName", USUARIO);
+		attrs.put("userAccountControl", "512");
+		attrs.put("badPwdCount", String.valueOf(MAX_INTENTOS + 1));
+		attrs.put("badPasswordTime",
+				String.valueOf((System.currentTimeMillis() - 1000 + EPOCA_FILETIME_MS) * 10_000L));
+		SearchResult match = new SearchResult(DN, null, attrs);
+		match.setNameInNamespace(DN);
+		return match;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static NamingEnumeration<SearchResult> resultados(SearchResult match) throws Exception {
+		NamingEnumeration<SearchResult> resultados = mock(NamingEnumeration.class);
+		when(resultados.hasMoreElements()).thenReturn(true, true, false);
+		when(resultados.nextElement()).thenReturn(match);
+		return resultados;
+	}
+
+	private static SecurityAuthDTO peticion() {
+		return new SecurityAuthDTO(null, USUARIO, null, null, "APP", "consumidor", null, null, false);
+	}
+
+}
@@ -0,0 +1,167 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapContextPoolTest.java:
+ *
+ * Pruebas de LdapContextPool con dos controladores de dominio en memoria:
+ * reparto de las conexiones, retiro del servidor que deja de responder sin
+ * afectar las peticiones y regreso al balanceo con sondeaServidores.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+
+import org.apache.commons.pool2.impl.AbandonedConfig;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mx.gob.banobras.securityauth.ldap.InMemoryDirectory;
+
+class LdapContextPoolTest {
+
+	/** Fallos consecutivos para retirar un servidor */
+	private static final int FALLOS_EXPULSION = 2;
+
+	/** Rondas de peticiones con un servidor detenido */
+	private static final int RONDAS = 5;
+
+	private InMemoryDirectory primario;
+
+	private InMemoryDirectory secundario;
+
+	/** URL de cada directorio, el directorio detenido no tiene puerto */
+	private String urlPrimario;
+
+	private String urlSecundario;
+
+	private LdapContextPool pool;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void inicializa() throws Exception {
+		primario = new InMemoryDirectory(1, 1, 1);
+		secundario = new InMemoryDirectory(1, 1, 1, puertoLibre());
+		urlPrimario = primario.getUrl();
+		urlSecundario = secundario.getUrl();
+
+		GenericObjectPoolConfig<InitialLdapContext> config = new GenericObjectPoolConfig<>();
+		config.setMaxTotal(4);
+		config.setTestOnBorrow(true);
+		config.setMaxWait(Duration.ofMillis(500));
+		config.setJmxEnabled(false);
+		/** Sin tiempo minimo de retiro, cada sondeo vuelve a probar el servidor */
+		pool = new LdapContextPool("service", List.of(fabrica(urlPrimario), fabrica(urlSecundario)), config,
+				new AbandonedConfig(), FALLOS_EXPULSION, 0);
+		meterRegistry = new SimpleMeterRegistry();
+		pool.registerMetrics(meterRegistry);
+	}
+
+	@AfterEach
+	void finaliza() {
+		pool.close();
+		primario.close();
+		secundario.close();
+	}
+
+	@Test
+	void servidorDetenidoSeRetiraYVuelveConElSondeo() throws Exception {
+		assertEquals(Set.of(urlPrimario, urlSecundario), servidoresDeUnaRonda());
+
+		secundario.detiene();
+		for (int i = 0; i < RONDAS; i++) {
+			assertEquals(Set.of(urlPrimario), servidoresDeUnaRonda());
+		}
+		assertEquals(0, arriba(urlSecundario));
+		assertEquals(1, arriba(urlPrimario));
+		assertEquals(1, meterRegistry.get("ldap.server.ejections").tag("server", urlSecundario)
+				.functionCounter().count());
+
+		/** Mientras no responda el sondeo lo mantiene retirado */
+		pool.sondeaServidores();
+		assertEquals(0, arriba(urlSecundario));
+
+		secundario.reinicia();
+		pool.sondeaServidores();
+
+		assertEquals(1, arriba(urlSecundario));
+		/**
+		 * La latencia del sondeo puede dejar al secundario con mas peso en el
+		 * balanceo, se valida que vuelva a atender conexiones
+		 */
+		assertEquals(urlSecundario, servidorDedicado(urlSecundario));
+	}
+
+	@Test
+	void conexionDedicadaEvitaElServidorRetirado() throws Exception {
+		secundario.detiene();
+		for (int i = 0; i < RONDAS; i++) {
+			servidoresDeUnaRonda();
+		}
+
+		assertEquals(urlPrimario, servidorDedicado(urlSecundario));
+	}
+
+	/**
+	 * Metodo para tomar dos conexiones al mismo tiempo, con los dos servidores
+	 * disponibles el balanceo las reparte entre ambos.
+	 *
+	 * @return servidores de las conexiones.
+	 */
+	private Set<String> servidoresDeUnaRonda() throws NamingException {
+		InitialLdapContext uno = pool.borrow();
+		InitialLdapContext dos = pool.borrow();
+		try {
+			Set<String> servidores = new HashSet<>();
+			servidores.add((String) uno.getEnvironment().get(Context.PROVIDER_URL));
+			servidores.add((String) dos.getEnvironment().get(Context.PROVIDER_URL));
+			return servidores;
+		} finally {
+			pool.release(uno);
+			pool.release(dos);
+		}
+	}
+
+	private String servidorDedicado(String url) throws NamingException {
+		InitialLdapContext ctx = pool.conexionDedicada(url);
+		try {
+			return (String) ctx.getEnvironment().get(Context.PROVIDER_URL);
+		} finally {
+			ctx.close();
+		}
+	}
+
+	private double arriba(String url) {
+		return meterRegistry.get("ldap.server.up").tag("server", url).gauge().value();
+	}
+
+	private static LdapContextPooledFactory fabrica(String url) {
+		return new LdapContextPooledFactory(url, InMemoryDirectory.USUARIO_SERVICIO + InMemoryDirectory.DOMINIO,
+				InMemoryDirectory.PASSWORD, 1000, 1000);
+	}
+
+	private static int puertoLibre() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LdapSingleFlightTest.java:
+ *
+ * Pruebas de LdapSingleFlight: las peticiones en espera reciben el resultado
+ * o el error de la consulta en curso, y la repiten si esta fallo por el
+ * tiempo limite de la peticion que la ejecuto y aun tienen tiempo.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.ServiceUnavailableException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mx.gob.banobras.securityauth.common.util.Deadline;
+import mx.gob.banobras.securityauth.common.util.DeadlineExceededException;
+
+class LdapSingleFlightTest {
+
+	private static final String LLAVE = "all-data|usuario01|app";
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private LdapSingleFlight<String> singleFlight;
+
+	private ExecutorService hilos;
+
+	@BeforeEach
+	void inicializa() {
+		singleFlight = new LdapSingleFlight<>(true, "blocking", meterRegistry);
+		hilos = Executors.newFixedThreadPool(2);
+	}
+
+	@AfterEach
+	void finaliza() {
+		hilos.shutdownNow();
+	}
+
+	@Test
+	void laPeticionEnEsperaRecibeElResultado() throws Exception {
+		CountDownLatch enCurso = new CountDownLatch(1);
+		CountDownLatch libera = new CountDownLatch(1);
+		AtomicInteger consultas = new AtomicInteger();
+
+		Future<String> lider = hilos.submit(() -> singleFlight.ejecuta(LLAVE, null, () -> {
+			consultas.incrementAndGet();
+			enCurso.countDown();
+			libera.await();
+			return "resultado";
+		}));
+		enCurso.await();
+		Future<String> seguidor = hilos.submit(() -> singleFlight.ejecuta(LLAVE, Deadline.of(5000), () -> {
+			consultas.incrementAndGet();
+			return "otro";
+		}));
+		esperaColapsadas(1);
+		libera.countDown();
+
+		assertEquals("resultado", lider.get(5, TimeUnit.SECONDS));
+		assertEquals("resultado", seguidor.get(5, TimeUnit.SECONDS));
+		assertEquals(1, consultas.get());
+	}
+
+	@Test
+	void errorDelDirectorioNoSeRepite() throws Exception {
+		CountDownLatch enCurso = new CountDownLatch(1);
+		CountDownLatch libera = new CountDownLatch(1);
+		AtomicInteger consultas = new AtomicInteger();
+
+		Future<String> lider = hilos.submit(() -> singleFlight.ejecuta(LLAVE, null, () -> {
+			consultas.incrementAndGet();
+			enCurso.countDown();
+			libera.await();
+			throw new ServiceUnavailableException("sin servidor");
+		}));
+		enCurso.await();
+		Future<String> seguidor = hilos.submit(() -> singleFlight.ejecuta(LLAVE, Deadline.of(5000), () -> {
+			consultas.incrementAndGet();
+			return "otro";
+		}));
+		esperaColapsadas(1);
+		libera.countDown();
+
+		assertInstanceOf(ServiceUnavailableException.class,
+				assertThrows(ExecutionException.class, () -> lider.get(5, TimeUnit.SECONDS)).getCause());
+		assertInstanceOf(ServiceUnavailableException.class,
+				assertThrows(ExecutionException.class, () -> seguidor.get(5, TimeUnit.SECONDS)).getCause());
+		assertEquals(1, consultas.get());
+	}
+
+	@Test
+	void tiempoAgotadoDelLiderSeRepiteConTiempoRestante() throws Exception {
+		CountDownLatch enCurso = new CountDownLatch(1);
+		CountDownLatch libera = new CountDownLatch(1);
+
+		Future<String> lider = hilos.submit(() -> singleFlight.ejecuta(LLAVE, null, () -> {
+			enCurso.countDown();
+			libera.await();
+			throw new DeadlineExceededException();
+		}));
+		enCurso.await();
+		Future<String> seguidor = hilos.submit(() -> singleFlight.ejecuta(LLAVE, Deadline.of(5000), () -> "resultado"));
+		esperaColapsadas(1);
+		libera.countDown();
+
+		assertInstanceOf(DeadlineExceededException.class,
+				assertThrows(ExecutionException.class, () -> lider.get(5, TimeUnit.SECONDS)).getCause());
+		assertEquals("resultado", seguidor.get(5, TimeUnit.SECONDS));
+		assertEquals(1, repetidas());
+	}
+
+	@Test
+	void tiempoAgotadoAsincronoSeRepiteConTiempoRestante() throws Exception {
+		LdapSingleFlight<String> asincrono = new LdapSingleFlight<>(true, "async", meterRegistry);
+		CompletableFuture<String> consultaLider = new CompletableFuture<>();
+
+		CompletableFuture<String> lider = asincrono.ejecutaAsync(LLAVE, null, () -> consultaLider);
+		CompletableFuture<String> seguidor = asincrono.ejecutaAsync(LLAVE, Deadline.of(5000),
+				() -> CompletableFuture.completedFuture("resultado"));
+		consultaLider.completeExceptionally(new DeadlineExceededException());
+
+		assertInstanceOf(DeadlineExceededException.class,
+				assertThrows(ExecutionException.class, () -> lider.get(5, TimeUnit.SECONDS)).getCause());
+		assertEquals("resultado", seguidor.get(5, TimeUnit.SECONDS));
+		assertEquals(1, meterRegistry.counter("ldap.singleflight.retried", "mode", "async").count());
+	}
+
+	@Test
+	void sinTiempoRestanteNoSeRepite() throws Exception {
+		LdapSingleFlight<String> asincrono = new LdapSingleFlight<>(true, "async", meterRegistry);
+		CompletableFuture<String> consultaLider = new CompletableFuture<>();
+		AtomicInteger consultas = new AtomicInteger();
+
+		asincrono.ejecutaAsync(LLAVE, null, () -> consultaLider);
+		CompletableFuture<String> seguidor = asincrono.ejecutaAsync(LLAVE, Deadline.of(1), () -> {
+			consultas.incrementAndGet();
+			return CompletableFuture.completedFuture("resultado");
+		});
+		Thread.sleep(20);
+		consultaLider.completeExceptionally(new DeadlineExceededException());
+
+		assertInstanceOf(DeadlineExceededException.class,
+				assertThrows(ExecutionException.class, () -> seguidor.get(5, TimeUnit.SECONDS)).getCause());
+		assertEquals(0, consultas.get());
+	}
+
+	private double repetidas() {
+		return meterRegistry.counter("ldap.singleflight.retried", "mode", "blocking").count();
+	}
+
+	/**
+	 * Metodo para esperar a que las peticiones se unan a la consulta en curso.
+	 */
+	private void esperaColapsadas(int esperadas) throws InterruptedException {
+		long limite = System.currentTimeMillis() + 5000;
+		while (meterRegistry.counter("ldap.singleflight.collapsed", "mode", "blocking").count() < esperadas
+				&& System.currentTimeMillis() < limite) {
+			Thread.sleep(5);
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * LoginAttemptTrackerTest.java:
+ *
+ * Pruebas de LoginAttemptTracker, valida la ventana deslizante de los fallos
+ * locales y la carga de los fallos de LDAP con badPwdCount, badPasswordTime
+ * y lockoutTime.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LoginAttemptTrackerTest {
+
+	/** Intentos fallidos permitidos */
+	private static final int MAX_INTENTOS = 3;
+
+	/** Ventana larga para las pruebas que no dependen del tiempo */
+	private static final long VENTANA_MS = 60_000;
+
+	/** Ventana corta para las pruebas de expiracion */
+	private static final long VENTANA_CORTA_MS = 300;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private LoginAttemptTracker tracker(boolean activo, long ventanaMs) {
+		return new LoginAttemptTracker(activo, MAX_INTENTOS, ventanaMs, ventanaMs, 1000, meterRegistry);
+	}
+
+	@Test
+	void bloqueaAlSuperarLosIntentosPermitidos() {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_MS);
+		for (int i = 0; i < MAX_INTENTOS; i++) {
+			tracker.registraFallo("Usuario01");
+		}
+		assertFalse(tracker.estaBloqueado("usuario01"));
+
+		tracker.registraFallo("usuario01");
+
+		assertTrue(tracker.estaBloqueado(" USUARIO01 "));
+		assertEquals(1, meterRegistry.counter("ldap.lockout.rejected").count());
+	}
+
+	@Test
+	void losFallosSalenDeLaVentana() throws InterruptedException {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_CORTA_MS);
+		for (int i = 0; i < MAX_INTENTOS; i++) {
+			tracker.registraFallo("usuario01");
+		}
+		Thread.sleep(VENTANA_CORTA_MS + 100);
+
+		tracker.registraFallo("usuario01");
+
+		assertFalse(tracker.estaBloqueado("usuario01"));
+	}
+
+	@Test
+	void exitoEliminaLosFallos() {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_MS);
+		for (int i = 0; i < MAX_INTENTOS; i++) {
+			tracker.registraFallo("usuario01");
+		}
+		tracker.registraExito("usuario01");
+		tracker.registraFallo("usuario01");
+
+		assertFalse(tracker.estaBloqueado("usuario01"));
+	}
+
+	@Test
+	void fallosRecientesDeLdapSeCargan() {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_MS);
+		Date ultimoFallo = new Date(System.currentTimeMillis() - 1000);
+
+		assertFalse(tracker.sincroniza("usuario01", MAX_INTENTOS, null, ultimoFallo));
+		tracker.registraFallo("usuario01");
+
+		assertTrue(tracker.estaBloqueado("usuario01"));
+	}
+
+	@Test
+	void fallosDeLdapFueraDeLaVentanaSeIgnoran() {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_MS);
+		Date ultimoFallo = new Date(System.currentTimeMillis() - 2 * VENTANA_MS);
+
+		assertFalse(tracker.sincroniza("usuario01", MAX_INTENTOS + 1, null, ultimoFallo));
+		tracker.registraFallo("usuario01");
+
+		assertFalse(tracker.estaBloqueado("usuario01"));
+	}
+
+	@Test
+	void fallosDeLdapSalenDeLaVentanaConSuFecha() throws InterruptedException {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_CORTA_MS);
+		Date ultimoFallo = new Date(System.currentTimeMillis() - (VENTANA_CORTA_MS - 100));
+		assertFalse(tracker.sincroniza("usuario01", MAX_INTENTOS, null, ultimoFallo));
+
+		/** Con la fecha actual los fallos de LDAP seguirian en la ventana */
+		Thread.sleep(200);
+		tracker.registraFallo("usuario01");
+
+		assertFalse(tracker.estaBloqueado("usuario01"));
+	}
+
+	@Test
+	void fallosDeLdapSobreElLimiteBloquean() {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_MS);
+
+		assertTrue(tracker.sincroniza("usuario01", MAX_INTENTOS + 1, null, new Date()));
+		assertTrue(tracker.estaBloqueado("usuario01"));
+	}
+
+	@Test
+	void sinFechaDeFalloSeUsaLaFechaActual() {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_MS);
+
+		assertTrue(tracker.sincroniza("usuario01", MAX_INTENTOS + 1, null, null));
+	}
+
+	@Test
+	void lockoutTimeRecienteBloquea() {
+		LoginAttemptTracker tracker = tracker(true, VENTANA_MS);
+
+		assertTrue(tracker.sincroniza("usuario01", 0, new Date(), null));
+		assertFalse(tracker.sincroniza("usuario02", 0, new Date(System.currentTimeMillis() - 2 * VENTANA_MS),
+				null));
+	}
+
+	@Test
+	void inactivoSoloComparaBadPwdCount() {
+		LoginAttemptTracker tracker = tracker(false, VENTANA_MS);
+		for (int i = 0; i <= MAX_INTENTOS; i++) {
+			tracker.registraFallo("usuario01");
+		}
+
+		assertFalse(tracker.estaBloqueado("usuario01"));
+		assertFalse(tracker.sincroniza("usuario01", MAX_INTENTOS, null, null));
+		assertTrue(tracker.sincroniza("usuario01", MAX_INTENTOS + 1, null, null));
+	}
+
+}
@@ -0,0 +1,167 @@
+package mx.gob.banobras.securityauth.infraestructure.adapter.out.client;
+
+/**
+ * MemberOfParserTest.java:
+ *
+ * Pruebas de MemberOfParser, compara los grupos del aplicativo y la lista
+ * total de grupos contra los metodos anteriores de LdapClient (findGroupsApp
+ * y findGroupsAll) y valida los casos de duplicados, atributo ausente y comas
+ * escapadas en el CN.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+
+import org.junit.jupiter.api.Test;
+
+class MemberOfParserTest {
+
+	/** Sufijo de los DN de los grupos */
+	private static final String OU_GRUPOS = ",OU=Grupos,OU=Aplicativos,DC=banobras,DC=gob,DC=mx";
+
+	private final MemberOfParser memberOfParser = new MemberOfParser();
+
+	@Test
+	void mismosGruposQueElMetodoAnterior() throws NamingException {
+		Attribute memberOf = new BasicAttribute("memberOf");
+		for (int i = 0; i < 200; i++) {
+			String nombre = (i % 7 == 0 ? "SICOVI_PERFIL_" : "GRUPO_") + i;
+			memberOf.add("CN=" + nombre + OU_GRUPOS);
+		}
+		/** Grupo del aplicativo por su unidad organizacional */
+		memberOf.add("CN=CONSULTA,OU=SICOVI,OU=Aplicativos,DC=banobras,DC=gob,DC=mx");
+
+		MemberOfParser.Grupos grupos = memberOfParser.parse(memberOf, "SICOVI");
+
+		assertEquals(findGroupsApp(memberOf.toString(), "SICOVI"), grupos.grupoAplicativo());
+		assertEquals(findGroupsAll(memberOf.toString()), grupos.todos());
+	}
+
+	@Test
+	void gruposDuplicadosSeRegresanUnaVez() throws NamingException {
+		Attribute memberOf = new BasicAttribute("memberOf");
+		memberOf.add("CN=SICOVI_ADMIN" + OU_GRUPOS);
+		memberOf.add("CN=SICOVI_ADMIN,OU=SICOVI,OU=Aplicativos,DC=banobras,DC=gob,DC=mx");
+		memberOf.add("CN=GRUPO_1" + OU_GRUPOS);
+		memberOf.add("CN=GRUPO_1,OU=Otros,DC=banobras,DC=gob,DC=mx");
+
+		MemberOfParser.Grupos grupos = memberOfParser.parse(memberOf, "SICOVI");
+
+		assertEquals(List.of("SICOVI_ADMIN"), grupos.grupoAplicativo());
+		assertEquals(List.of("SICOVI_ADMIN", "GRUPO_1"), grupos.todos());
+		assertEquals(findGroupsAll(memberOf.toString()), grupos.todos());
+	}
+
+	@Test
+	void sinAplicativoNoHayGruposDelAplicativo() throws NamingException {
+		Attribute memberOf = new BasicAttribute("memberOf");
+		memberOf.add("CN=SICOVI_ADMIN" + OU_GRUPOS);
+
+		assertTrue(memberOfParser.parse(memberOf, null).grupoAplicativo().isEmpty());
+		assertTrue(memberOfParser.parse(memberOf, "").grupoAplicativo().isEmpty());
+		assertEquals(List.of("SICOVI_ADMIN"), memberOfParser.parse(memberOf, null).todos());
+	}
+
+	@Test
+	void sinMemberOfRegresaNulo() throws NamingException {
+		assertNull(memberOfParser.parse((Attribute) null, "SICOVI"));
+		assertNull(memberOfParser.parse((List<String>) null, "SICOVI"));
+	}
+
+	@Test
+	void memberOfVacioRegresaListasVacias() throws NamingException {
+		MemberOfParser.Grupos grupos = memberOfParser.parse(new BasicAttribute("memberOf"), "SICOVI");
+
+		assertTrue(grupos.grupoAplicativo().isEmpty());
+		assertTrue(grupos.todos().isEmpty());
+	}
+
+	@Test
+	void comaEscapadaEnElCnNoCortaElNombre() throws NamingException {
+		/** El metodo anterior cortaba el nombre en la coma escapada */
+		Attribute memberOf = new BasicAttribute("memberOf");
+		memberOf.add("CN=SICOVI\\, Consulta" + OU_GRUPOS);
+		memberOf.add("CN=Finanzas\\, Tesoreria" + OU_GRUPOS);
+
+		MemberOfParser.Grupos grupos = memberOfParser.parse(memberOf, "SICOVI");
+
+		assertEquals(List.of("SICOVI\\, Consulta"), grupos.grupoAplicativo());
+		assertEquals(List.of("SICOVI\\, Consulta", "Finanzas\\, Tesoreria"), grupos.todos());
+	}
+
+	@Test
+	void listaDeDnUsaLasMismasReglas() throws NamingException {
+		List<String> dns = List.of("CN=SICOVI_ADMIN" + OU_GRUPOS, "CN=GRUPO_1" + OU_GRUPOS,
+				"CN=SICOVI_ADMIN" + OU_GRUPOS);
+		Attribute memberOf = new BasicAttribute("memberOf");
+		dns.forEach(memberOf::add);
+
+		assertEquals(memberOfParser.parse(memberOf, "SICOVI"), memberOfParser.parse(dns, "SICOVI"));
+	}
+
+	@Test
+	void nombresDeGrupoSeComparten() {
+		String primero = MemberOfParser.extraeCn(new String("CN=GRUPO_COMPARTIDO" + OU_GRUPOS));
+		String segundo = MemberOfParser.extraeCn(new String("CN=GRUPO_COMPARTIDO" + OU_GRUPOS));
+
+		assertSame(primero, segundo);
+		assertNull(MemberOfParser.extraeCn("OU=Grupos,DC=banobras,DC=gob,DC=mx"));
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private static List<String> findGroupsApp(String attr, String app) {
+		String[] memberOfList = attr.split("DC=mx,");
+		List<String> listGroup = new ArrayList<>();
+		Map<String, Object> gruposMap = new HashMap<>();
+		if (app != null && app.length() > 0) {
+			for (String grupo : memberOfList) {
+				if (grupo.contains(app)) {
+					int ii = grupo.indexOf("CN=");
+					String grupoAux = grupo.substring(ii + 3);
+					int fi = grupoAux.indexOf(",");
+					String valGrupo = grupoAux.substring(0, fi);
+					if (!gruposMap.containsValue(valGrupo)) {
+						listGroup.add(valGrupo);
+						gruposMap.put(valGrupo, valGrupo);
+					}
+				}
+			}
+		}
+		return listGroup;
+	}
+
+	/** Metodo anterior de LdapClient, se conserva como referencia */
+	private static List<String> findGroupsAll(String attr) {
+		String[] memberOfList = attr.split("DC=mx,");
+		List<String> listGroup = new ArrayList<>();
+		Map<String, Object> gruposMap = new HashMap<>();
+		for (String grupo : memberOfList) {
+			int ii = grupo.indexOf("CN=");
+			String grupoAux = grupo.substring(ii + 3);
+			int fi = grupoAux.indexOf(",");
+			String valGrupo = grupoAux.substring(0, fi);
+			if (!gruposMap.containsValue(valGrupo)) {
+				listGroup.add(valGrupo);
+				gruposMap.put(valGrupo, valGrupo);
+			}
+		}
+		return listGroup;
+	}
+
+}
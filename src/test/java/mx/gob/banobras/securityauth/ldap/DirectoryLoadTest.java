@@ -0,0 +1,211 @@
+package mx.gob.banobras.securityauth.ldap;
+
+/**
+ * DirectoryLoadTest.java:
+ *
+ * Prueba de carga de los endpoints que consultan el directorio
+ * (/ldap-user, /ldap-user-pwd y /all-data-user-ldap) contra el directorio
+ * LDAP en memoria. Por cada endpoint se reporta el numero de peticiones, los
+ * errores, las peticiones por segundo y las latencias p50, p95 y p99.
+ *
+ * Ejecucion:
+ * mvn test -Pload-test -Dldap.load.requests=5000 -Dldap.load.threads=32
+ * -Dldap.fixture.users=500 -Dldap.fixture.member-of=2000
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import mx.gob.banobras.securityauth.application.port.out.ITokenClient;
+import mx.gob.banobras.securityauth.common.util.CipherAESCommon;
+import mx.gob.banobras.securityauth.infraestructure.config.dto.TokenizerResponseDTO;
+
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class DirectoryLoadTest {
+
+	/** Trazas de la prueba, el reporte de cada endpoint se escribe en el log */
+	Logger log = LogManager.getLogger(DirectoryLoadTest.class);
+
+	/** Peticiones por endpoint */
+	private static final int PETICIONES = Integer.getInteger("ldap.load.requests", 2000);
+
+	/** Hilos concurrentes del generador de carga */
+	private static final int HILOS = Integer.getInteger("ldap.load.threads", 16);
+
+	/** Peticiones de calentamiento por endpoint, no se miden */
+	private static final int CALENTAMIENTO = Integer.getInteger("ldap.load.warmup", 200);
+
+	/** Directorio en memoria, se inicia antes que el contexto de Spring */
+	private static InMemoryDirectory directorio;
+
+	@LocalServerPort
+	int puerto;
+
+	@Autowired
+	CipherAESCommon cipherAESCommon;
+
+	/** El token se da por valido para medir solo el directorio */
+	@MockBean
+	ITokenClient iTokenClient;
+
+	private final HttpClient cliente = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+	@DynamicPropertySource
+	static void directorio(DynamicPropertyRegistry registry) throws Exception {
+		directorio = new InMemoryDirectory();
+		registry.add("app.ldap.validate", () -> "1");
+		registry.add("app.ldap.server", directorio::getUrl);
+		registry.add("app.ldap.search.base", () -> InMemoryDirectory.BASE);
+		registry.add("app.ldap.username", directorio::getUsuarioServicio);
+		registry.add("app.ldap.password", () -> InMemoryDirectory.PASSWORD);
+		registry.add("app.ldap.dominio.mail", () -> InMemoryDirectory.DOMINIO);
+		/** Sin cache ni replica para que cada peticion llegue al directorio */
+		registry.add("app.ldap.cache.enabled", () -> "0");
+		registry.add("app.ldap.negative-cache.enabled", () -> "0");
+		registry.add("app.ldap.replica.enabled", () -> "0");
+		registry.add("app.ldap.nested-groups.mode", () -> "none");
+	}
+
+	@AfterAll
+	static void detiene() {
+		if (directorio != null) {
+			directorio.close();
+		}
+	}
+
+	@BeforeEach
+	void token() {
+		when(iTokenClient.validToken(any())).thenReturn(new TokenizerResponseDTO(200, null, null));
+	}
+
+	@Test
+	void ldapUser() throws Exception {
+		ejecuta("/ldap-user", n -> post("/ldap-user", credenciales(n, false)));
+	}
+
+	@Test
+	void ldapUserPwd() throws Exception {
+		ejecuta("/ldap-user-pwd", n -> post("/ldap-user-pwd", credenciales(n, true)));
+	}
+
+	@Test
+	void allDataUserLdap() throws Exception {
+		ejecuta("/all-data-user-ldap", n -> encabezados(HttpRequest.newBuilder(url("/all-data-user-ldap")).GET(),
+				credenciales(n, false)).header("token-auth", "token-prueba").build());
+	}
+
+	/**
+	 * Metodo para ejecutar la carga de un endpoint y reportar sus latencias.
+	 *
+	 * @param endpoint nombre del endpoint en el reporte.
+	 * @param peticion peticion para el n-esimo usuario.
+	 */
+	private void ejecuta(String endpoint, IntFunction<HttpRequest> peticion) throws Exception {
+		HttpRequest[] peticiones = new HttpRequest[directorio.getUsuarios()];
+		for (int n = 0; n < peticiones.length; n++) {
+			peticiones[n] = peticion.apply(n);
+		}
+		corre(peticiones, CALENTAMIENTO, new long[CALENTAMIENTO], new AtomicInteger());
+
+		long[] latencias = new long[PETICIONES];
+		AtomicInteger errores = new AtomicInteger();
+		long inicio = System.nanoTime();
+		corre(peticiones, PETICIONES, latencias, errores);
+		long total = System.nanoTime() - inicio;
+
+		Arrays.sort(latencias);
+		log.info(String.format(
+				"%-22s peticiones=%d errores=%d hilos=%d throughput=%.1f req/s p50=%.2f ms p95=%.2f ms p99=%.2f ms",
+				endpoint, PETICIONES, errores.get(), HILOS, PETICIONES / (total / 1e9), percentil(latencias, 50),
+				percentil(latencias, 95), percentil(latencias, 99)));
+		assertEquals(0, errores.get(), "Peticiones con error en " + endpoint);
+	}
+
+	private void corre(HttpRequest[] peticiones, int total, long[] latencias, AtomicInteger errores)
+			throws InterruptedException {
+		AtomicInteger siguiente = new AtomicInteger();
+		ExecutorService hilos = Executors.newFixedThreadPool(HILOS);
+		for (int h = 0; h < HILOS; h++) {
+			hilos.execute(() -> {
+				for (int i = siguiente.getAndIncrement(); i < total; i = siguiente.getAndIncrement()) {
+					long inicio = System.nanoTime();
+					try {
+						HttpResponse<String> respuesta = cliente.send(peticiones[i % peticiones.length],
+								HttpResponse.BodyHandlers.ofString());
+						if (respuesta.statusCode() != 200) {
+							errores.incrementAndGet();
+						}
+					} catch (Exception ex) {
+						errores.incrementAndGet();
+					}
+					latencias[i] = System.nanoTime() - inicio;
+				}
+			});
+		}
+		hilos.shutdown();
+		hilos.awaitTermination(30, TimeUnit.MINUTES);
+	}
+
+	private static double percentil(long[] ordenadas, int percentil) {
+		int indice = (int) Math.ceil(percentil / 100d * ordenadas.length) - 1;
+		return ordenadas[Math.max(indice, 0)] / 1e6;
+	}
+
+	private HttpRequest post(String endpoint, String credenciales) {
+		return encabezados(HttpRequest.newBuilder(url(endpoint)).POST(HttpRequest.BodyPublishers.noBody()),
+				credenciales).build();
+	}
+
+	private HttpRequest.Builder encabezados(HttpRequest.Builder builder, String credenciales) {
+		return builder.timeout(Duration.ofSeconds(30)).header("credentials", credenciales)
+				.header("app-name", InMemoryDirectory.APLICATIVO).header("consumer-id", "prueba-carga")
+				.header("functional-id", "prueba-carga").header("transaction-id", "prueba-carga");
+	}
+
+	private URI url(String endpoint) {
+		return URI.create("http://localhost:" + puerto + "/security-auth/v1" + endpoint);
+	}
+
+	private String credenciales(int n, boolean conPassword) {
+		try {
+			String usuario = InMemoryDirectory.usuario(n);
+			return cipherAESCommon
+					.encryptStringToAesHex(conPassword ? usuario + " " + InMemoryDirectory.PASSWORD : usuario);
+		} catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
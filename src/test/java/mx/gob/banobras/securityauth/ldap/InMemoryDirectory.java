@@ -0,0 +1,251 @@
+package mx.gob.banobras.securityauth.ldap;
+
+/**
+ * InMemoryDirectory.java:
+ *
+ * Directorio LDAP en memoria (UnboundID) con una estructura similar a Active
+ * Directory para las pruebas: unidades organizacionales de usuarios, grupos,
+ * cuentas deshabilitadas y servicio, usuarios con los atributos que consulta
+ * el servicio (sAMAccountName, userAccountControl, badPwdCount, lockoutTime,
+ * memberOf, ...) y miles de grupos por usuario. El bind con el formato
+ * usuario@dominio se traduce al DN del usuario, como lo hace AD.
+ *
+ * Los tamaños se configuran con las propiedades de sistema
+ * ldap.fixture.users, ldap.fixture.groups y ldap.fixture.member-of.
+ *
+ * @author Marcos Gonzalez
+ * @version 1.0, 13/06/2024
+ * @see documento "MAR - Marco Arquitectonico de Referencia"
+ * @since JDK 17
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+
+public class InMemoryDirectory implements AutoCloseable {
+
+	/** Base de busqueda del directorio */
+	public static final String BASE = "DC=banobras,DC=gob,DC=mx";
+
+	/** Dominio con el que se realiza el bind */
+	public static final String DOMINIO = "@banobras.gob.mx";
+
+	/** Usuario de servicio */
+	public static final String USUARIO_SERVICIO = "svcsecurityauth";
+
+	/** Password de todos los usuarios del directorio */
+	public static final String PASSWORD = "Pru3b4-C4rg4";
+
+	/** Aplicativo de los grupos de perfil (APP_PERFIL_n) */
+	public static final String APLICATIVO = "APP";
+
+	/** Servidor LDAP en memoria */
+	private final InMemoryDirectoryServer servidor;
+
+	/** Usuario del bind (usuario@dominio en minusculas) -> DN */
+	private final Map<String, String> principales = new ConcurrentHashMap<>();
+
+	/** Numero de usuarios */
+	private final int usuarios;
+
+	/** Numero de grupos */
+	private final int grupos;
+
+	/** Grupos por usuario */
+	private final int gruposPorUsuario;
+
+	/**
+	 * Crea e inicia el directorio con los tamaños de las propiedades de
+	 * sistema.
+	 *
+	 * @throws LDAPException Excepción al crear el directorio.
+	 */
+	public InMemoryDirectory() throws LDAPException {
+		this(Integer.getInteger("ldap.fixture.users", 200), Integer.getInteger("ldap.fixture.groups", 2000),
+				Integer.getInteger("ldap.fixture.member-of", 1500));
+	}
+
+	/**
+	 * Crea e inicia el directorio.
+	 *
+	 * @param usuarios         numero de usuarios.
+	 * @param grupos           numero de grupos.
+	 * @param gruposPorUsuario grupos (memberOf) de cada usuario.
+	 * @throws LDAPException Excepción al crear el directorio.
+	 */
+	public InMemoryDirectory(int usuarios, int grupos, int gruposPorUsuario) throws LDAPException {
+		this(usuarios, grupos, gruposPorUsuario, 0);
+	}
+
+	/**
+	 * Crea e inicia el directorio en un puerto fijo, para detenerlo y volver a
+	 * iniciarlo en la misma URL.
+	 *
+	 * @param usuarios         numero de usuarios.
+	 * @param grupos           numero de grupos.
+	 * @param gruposPorUsuario grupos (memberOf) de cada usuario.
+	 * @param puerto           puerto del directorio, cero para uno libre.
+	 * @throws LDAPException Excepción al crear el directorio.
+	 */
+	public InMemoryDirectory(int usuarios, int grupos, int gruposPorUsuario, int puerto) throws LDAPException {
+		this.usuarios = usuarios;
+		this.grupos = grupos;
+		this.gruposPorUsuario = Math.min(gruposPorUsuario, grupos);
+
+		InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+		/** Sin esquema para aceptar los atributos de AD */
+		config.setSchema(null);
+		config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("ldap", puerto));
+		config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+			@Override
+			public void processSimpleBindRequest(InMemoryInterceptedSimpleBindRequest request) throws LDAPException {
+				String dn = principales.get(request.getRequest().getBindDN().toLowerCase(Locale.ROOT));
+				if (dn != null) {
+					request.setRequest(new SimpleBindRequest(dn, request.getRequest().getPassword().getValue()));
+				}
+			}
+		});
+		servidor = new InMemoryDirectoryServer(config);
+		carga();
+		servidor.startListening();
+	}
+
+	/**
+	 * @return URL del directorio, por ejemplo ldap://localhost:38901.
+	 */
+	public String getUrl() {
+		return "ldap://localhost:" + servidor.getListenPort();
+	}
+
+	/**
+	 * @return usuario de servicio con dominio, para app.ldap.username.
+	 */
+	public String getUsuarioServicio() {
+		return USUARIO_SERVICIO + DOMINIO;
+	}
+
+	/**
+	 * @param n numero de usuario, de cero al total de usuarios.
+	 * @return sAMAccountName del usuario.
+	 */
+	public static String usuario(int n) {
+		return String.format("usuario%05d", n);
+	}
+
+	/**
+	 * @return numero de usuarios del directorio.
+	 */
+	public int getUsuarios() {
+		return usuarios;
+	}
+
+	/**
+	 * @return servidor en memoria, para modificar los datos en las pruebas.
+	 */
+	public InMemoryDirectoryServer getServidor() {
+		return servidor;
+	}
+
+	/**
+	 * Metodo para detener el directorio y cerrar las conexiones abiertas, como
+	 * un controlador de dominio que deja de responder.
+	 */
+	public void detiene() {
+		servidor.shutDown(true);
+	}
+
+	/**
+	 * Metodo para volver a iniciar el directorio detenido, en el mismo puerto
+	 * si se creo con un puerto fijo.
+	 *
+	 * @throws LDAPException Excepción al iniciar el directorio.
+	 */
+	public void reinicia() throws LDAPException {
+		servidor.startListening();
+	}
+
+	@Override
+	public void close() {
+		servidor.shutDown(true);
+	}
+
+	/**
+	 * Metodo para crear la estructura, los grupos y los usuarios.
+	 */
+	private void carga() throws LDAPException {
+		List<Entry> entradas = new ArrayList<>(usuarios + grupos + 8);
+		entradas.add(new Entry(BASE, new Attribute("objectClass", "top", "domain"), new Attribute("dc", "banobras")));
+		for (String ou : new String[] { "Usuarios", "Grupos", "Disabled Accounts", "Servicio" }) {
+			entradas.add(new Entry(ou("OU=" + ou), new Attribute("objectClass", "top", "organizationalUnit"),
+					new Attribute("ou", ou)));
+		}
+
+		String dnServicio = ou("CN=" + USUARIO_SERVICIO + ",OU=Servicio");
+		entradas.add(usuario(dnServicio, USUARIO_SERVICIO, new String[0], 1));
+		principales.put(getUsuarioServicio().toLowerCase(Locale.ROOT), dnServicio);
+
+		String[] dnGrupos = new String[grupos];
+		for (int i = 0; i < grupos; i++) {
+			String cn = i % 10 == 0 ? APLICATIVO + "_PERFIL_" + i : "GRUPO_" + i;
+			dnGrupos[i] = ou("CN=" + cn + ",OU=Grupos");
+			entradas.add(new Entry(dnGrupos[i], new Attribute("objectClass", "top", "group"),
+					new Attribute("objectCategory", "group"), new Attribute("cn", cn),
+					new Attribute("sAMAccountName", cn)));
+		}
+
+		for (int n = 0; n < usuarios; n++) {
+			String[] memberOf = new String[gruposPorUsuario];
+			int inicio = (n * 13) % Math.max(grupos, 1);
+			for (int j = 0; j < gruposPorUsuario; j++) {
+				memberOf[j] = dnGrupos[(inicio + j) % grupos];
+			}
+			String dn = ou("CN=" + usuario(n) + ",OU=Usuarios");
+			entradas.add(usuario(dn, usuario(n), memberOf, n + 2L));
+			principales.put((usuario(n) + DOMINIO).toLowerCase(Locale.ROOT), dn);
+		}
+		servidor.addEntries(entradas);
+	}
+
+	private Entry usuario(String dn, String userName, String[] memberOf, long usn) {
+		Entry entrada = new Entry(dn);
+		entrada.addAttribute("objectClass", "top", "person", "organizationalPerson", "user");
+		entrada.addAttribute("objectCategory", "person");
+		entrada.addAttribute("cn", userName);
+		entrada.addAttribute("sAMAccountName", userName);
+		entrada.addAttribute("givenName", "Usuario " + userName);
+		entrada.addAttribute("initials", userName.substring(userName.length() - 5));
+		entrada.addAttribute("title", "Experto Tecnico");
+		entrada.addAttribute("department", "Area de Pruebas");
+		entrada.addAttribute("telephoneNumber", "1530");
+		entrada.addAttribute("userPrincipalName", userName + DOMINIO);
+		entrada.addAttribute("mail", userName + DOMINIO);
+		entrada.addAttribute("userAccountControl", "512");
+		entrada.addAttribute("badPwdCount", "0");
+		entrada.addAttribute("lockoutTime", "0");
+		entrada.addAttribute("accountExpires", "9223372036854775807");
+		entrada.addAttribute("uSNChanged", String.valueOf(usn));
+		entrada.addAttribute("userPassword", PASSWORD);
+		if (memberOf.length > 0) {
+			entrada.addAttribute("memberOf", memberOf);
+		}
+		return entrada;
+	}
+
+	private static String ou(String rdn) {
+		return rdn + "," + BASE;
+	}
+
+}